@@ -0,0 +1,283 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb;
+
+import com.yandex.yoctodb.immutable.Database;
+import com.yandex.yoctodb.immutable.DatabaseReader;
+import com.yandex.yoctodb.immutable.IndexedDatabase;
+import com.yandex.yoctodb.query.DocumentProcessor;
+import com.yandex.yoctodb.query.Query;
+import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.util.mutable.ArrayBitSetPool;
+import com.yandex.yoctodb.util.mutable.impl.ThreadLocalCachedArrayBitSetPool;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.yandex.yoctodb.query.QueryBuilder.*;
+import static com.yandex.yoctodb.util.UnsignedByteArrays.from;
+
+/**
+ * End-to-end query execution benchmarks over synthetic databases (see
+ * {@link SyntheticDatabases}).
+ *
+ * Covers filter-only, filter+sort, paging and count workloads against a
+ * single database and a composite one of {@link #PARTITIONS} partitions,
+ * each read from heap, mmap or {@link FileChannel} buffers.
+ *
+ * Run with {@code java -jar benchmark/target/benchmarks.jar QueryBenchmarks}
+ * and {@code -p} to override the parameters.
+ *
+ * @author incubos
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QueryBenchmarks {
+    private static final int PARTITIONS = 4;
+    private static final long SEED = 42L;
+    private static final int PAGE = 20;
+
+    @Param({"100000"})
+    public int documents;
+
+    @Param({"16", "1024"})
+    public int cardinality;
+
+    @Param({"0.0", "1.0"})
+    public double skew;
+
+    @Param({"heap", "mmap", "channel"})
+    public String buffer;
+
+    private final List<Closeable> resources = new ArrayList<>();
+    private File dir;
+    private Database single;
+    private Database composite;
+
+    // Queries
+    private Query hotCategory;
+    private Query rareCategory;
+    private Query and;
+    private Query or;
+    private Query range;
+    private Query sorted;
+    private Query paged;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("benchmarks").toFile();
+        dir.deleteOnExit();
+
+        final ArrayBitSetPool pool = new ThreadLocalCachedArrayBitSetPool();
+        final DatabaseReader reader =
+                DatabaseFormat.getCurrent().getDatabaseReader();
+
+        // Single
+        single =
+                reader.from(
+                        read(
+                                SyntheticDatabases.build(
+                                        dir,
+                                        0,
+                                        documents,
+                                        cardinality,
+                                        skew,
+                                        SEED)),
+                        pool,
+                        false);
+
+        // Partitioned
+        final List<IndexedDatabase> partitions = new ArrayList<>(PARTITIONS);
+        final int partitionSize = (documents + PARTITIONS - 1) / PARTITIONS;
+        for (int from = 0; from < documents; from += partitionSize) {
+            partitions.add(
+                    reader.from(
+                            read(
+                                    SyntheticDatabases.build(
+                                            dir,
+                                            from,
+                                            Math.min(
+                                                    from + partitionSize,
+                                                    documents),
+                                            cardinality,
+                                            skew,
+                                            SEED)),
+                            pool,
+                            false));
+        }
+        composite = reader.composite(partitions, pool);
+
+        // Queries
+        hotCategory = select().where(eq("category", from(0)));
+        rareCategory =
+                select().where(eq("category", from(cardinality - 1)));
+        and = select().where(
+                and(
+                        eq("category", from(0)),
+                        lt("price", from(SyntheticDatabases.PRICES / 2)),
+                        eq("flag", from(true))));
+        or = select().where(
+                or(
+                        eq("category", from(1 % cardinality)),
+                        eq("category", from(cardinality - 1))));
+        range = select().where(
+                and(
+                        gte("price", from(SyntheticDatabases.PRICES / 4)),
+                        lt("price", from(SyntheticDatabases.PRICES / 2))));
+        sorted = select()
+                .where(eq("flag", from(true)))
+                .orderBy(desc("price"))
+                .limit(PAGE);
+        paged = select()
+                .where(eq("category", from(0)))
+                .orderBy(asc("price"))
+                .skip(documents / 100)
+                .limit(PAGE);
+    }
+
+    @NotNull
+    private Buffer read(
+            @NotNull
+            final File file) throws IOException {
+        switch (buffer) {
+            case "heap":
+                return Buffer.from(Files.readAllBytes(file.toPath()));
+            case "mmap":
+                return Buffer.mmap(file);
+            case "channel":
+                final FileChannel channel =
+                        FileChannel.open(
+                                file.toPath(),
+                                StandardOpenOption.READ);
+                resources.add(channel);
+                return Buffer.from(channel);
+            default:
+                throw new IllegalArgumentException(
+                        "Unsupported buffer: " + buffer);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        for (Closeable resource : resources) {
+            resource.close();
+        }
+        resources.clear();
+    }
+
+    private static void execute(
+            @NotNull
+            final Database db,
+            @NotNull
+            final Query query,
+            @NotNull
+            final Blackhole bh) {
+        db.execute(
+                query,
+                new DocumentProcessor() {
+                    @Override
+                    public boolean process(
+                            final int document,
+                            @NotNull
+                            final Database database) {
+                        bh.consume(document);
+                        return true;
+                    }
+                });
+    }
+
+    // Filter-only
+
+    @Benchmark
+    public void filterHot(final Blackhole bh) {
+        execute(single, hotCategory, bh);
+    }
+
+    @Benchmark
+    public void filterRare(final Blackhole bh) {
+        execute(single, rareCategory, bh);
+    }
+
+    @Benchmark
+    public void filterComposite(final Blackhole bh) {
+        execute(composite, hotCategory, bh);
+    }
+
+    // Filter + sort
+
+    @Benchmark
+    public void sort(final Blackhole bh) {
+        execute(single, sorted, bh);
+    }
+
+    @Benchmark
+    public void sortComposite(final Blackhole bh) {
+        execute(composite, sorted, bh);
+    }
+
+    // Paging
+
+    @Benchmark
+    public void page(final Blackhole bh) {
+        execute(single, paged, bh);
+    }
+
+    @Benchmark
+    public void pageComposite(final Blackhole bh) {
+        execute(composite, paged, bh);
+    }
+
+    // Count
+
+    @Benchmark
+    public int countAnd() {
+        return single.count(and);
+    }
+
+    @Benchmark
+    public int countOr() {
+        return single.count(or);
+    }
+
+    @Benchmark
+    public int countRange() {
+        return single.count(range);
+    }
+
+    @Benchmark
+    public int countComposite() {
+        return composite.count(and);
+    }
+
+    @Benchmark
+    public int estimateCountAnd() {
+        return single.estimateCount(and);
+    }
+}
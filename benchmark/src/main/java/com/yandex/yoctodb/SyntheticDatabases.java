@@ -0,0 +1,136 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb;
+
+import com.yandex.yoctodb.mutable.DatabaseBuilder;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.yandex.yoctodb.mutable.DocumentBuilder.IndexOption.FILTERABLE;
+import static com.yandex.yoctodb.mutable.DocumentBuilder.IndexOption.FULL;
+
+/**
+ * Generates reproducible synthetic databases for benchmarks.
+ *
+ * Each document has:
+ * <ul>
+ * <li>unique {@code id} (full index)</li>
+ * <li>{@code category} drawn from Zipf distribution with the specified
+ * cardinality and skew, {@code 0} being the most frequent (filterable)</li>
+ * <li>uniform {@code price} in {@code [0, PRICES)} (full index)</li>
+ * <li>uniform boolean {@code flag} (filterable)</li>
+ * <li>small payload</li>
+ * </ul>
+ *
+ * @author incubos
+ */
+final class SyntheticDatabases {
+    static final int PRICES = 10000;
+
+    private SyntheticDatabases() {
+        // Can't construct
+    }
+
+    /**
+     * Zipf distribution over {@code [0, cardinality)}
+     */
+    private static final class Zipf {
+        @NotNull
+        private final double[] cumulative;
+
+        private Zipf(
+                final int cardinality,
+                final double skew) {
+            cumulative = new double[cardinality];
+            double sum = 0.0;
+            for (int i = 0; i < cardinality; i++) {
+                sum += 1.0 / Math.pow(i + 1, skew);
+                cumulative[i] = sum;
+            }
+            for (int i = 0; i < cardinality; i++) {
+                cumulative[i] /= sum;
+            }
+        }
+
+        private int next(
+                @NotNull
+                final Random random) {
+            final int i = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(
+                    i >= 0 ? i : -i - 1,
+                    cumulative.length - 1);
+        }
+    }
+
+    /**
+     * Builds a database of the documents {@code [from, to)} in file
+     *
+     * @param dir         directory to put the file to
+     * @param from        the first document id
+     * @param to          the document id after the last one
+     * @param cardinality number of distinct categories
+     * @param skew        Zipf exponent of categories ({@code 0} is uniform)
+     * @param seed        random seed
+     * @return database file
+     */
+    @NotNull
+    static File build(
+            @NotNull
+            final File dir,
+            final int from,
+            final int to,
+            final int cardinality,
+            final double skew,
+            final long seed) throws IOException {
+        if (from >= to)
+            throw new IllegalArgumentException("Empty range");
+        if (cardinality <= 0)
+            throw new IllegalArgumentException("Nonpositive cardinality");
+
+        final DatabaseFormat format = DatabaseFormat.getCurrent();
+        final DatabaseBuilder builder = format.newDatabaseBuilder();
+        final Zipf categories = new Zipf(cardinality, skew);
+        final Random random = new Random(seed + from);
+        for (int id = from; id < to; id++) {
+            builder.merge(
+                    format.newDocumentBuilder()
+                            .withField("id", id, FULL)
+                            .withField(
+                                    "category",
+                                    categories.next(random),
+                                    FILTERABLE)
+                            .withField("price", random.nextInt(PRICES), FULL)
+                            .withField("flag", random.nextBoolean(), FILTERABLE)
+                            .withPayload(("payload" + id).getBytes()));
+        }
+
+        final File file =
+                File.createTempFile(
+                        "synthetic-" + from + "-" + to + "-",
+                        ".yoctodb",
+                        dir);
+        file.deleteOnExit();
+
+        try (OutputStream os =
+                     new BufferedOutputStream(new FileOutputStream(file))) {
+            builder.buildWritable().writeTo(os);
+        }
+
+        return file;
+    }
+}
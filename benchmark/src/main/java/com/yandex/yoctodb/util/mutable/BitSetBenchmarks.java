@@ -0,0 +1,108 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.util.mutable;
+
+import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.util.mutable.impl.LongArrayBitSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link LongArrayBitSet} operations.
+ *
+ * Stored bit sets are read from a direct {@link ByteBuffer} like mapped
+ * segments.
+ *
+ * Run with {@code java -jar benchmark/target/benchmarks.jar BitSetBenchmarks}
+ * and {@code -p} to override the parameters.
+ *
+ * @author incubos
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BitSetBenchmarks {
+    private static final int STORED = 16;
+
+    @Param({"1048576"})
+    public int size;
+
+    private ArrayBitSet dest;
+    private ArrayBitSet source;
+    private Buffer stored;
+    private int sizeInLongs;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+
+        dest = LongArrayBitSet.zero(size);
+        source = LongArrayBitSet.zero(size);
+        for (int i = 0; i < size / 16; i++) {
+            dest.set(random.nextInt(size));
+            source.set(random.nextInt(size));
+        }
+
+        sizeInLongs = source.toArray().length;
+        final ByteBuffer bytes =
+                ByteBuffer.allocateDirect(8 * sizeInLongs * STORED);
+        for (int i = 0; i < sizeInLongs * STORED; i++) {
+            bytes.putLong(random.nextLong() & random.nextLong());
+        }
+        bytes.flip();
+        stored = Buffer.from(bytes);
+    }
+
+    @Benchmark
+    public boolean and() {
+        return dest.and(source);
+    }
+
+    @Benchmark
+    public boolean andNot() {
+        return dest.andNot(source);
+    }
+
+    @Benchmark
+    public boolean or() {
+        return dest.or(source);
+    }
+
+    @Benchmark
+    public boolean inverse() {
+        return dest.inverse();
+    }
+
+    @Benchmark
+    public int cardinality() {
+        return dest.cardinality();
+    }
+
+    @Benchmark
+    public boolean orBuffer() {
+        return dest.or(stored, 0L, sizeInLongs);
+    }
+
+    @Benchmark
+    public boolean orRange() {
+        return dest.orRange(stored, 0L, sizeInLongs, STORED);
+    }
+}
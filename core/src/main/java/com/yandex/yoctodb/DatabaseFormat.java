@@ -17,6 +17,9 @@ import com.yandex.yoctodb.mutable.DatabaseBuilder;
 import com.yandex.yoctodb.mutable.DocumentBuilder;
 import com.yandex.yoctodb.v1.V1DatabaseFormat;
 
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+
 /**
  * Provides facilities to build a database using current format
  *
@@ -42,6 +45,33 @@ public abstract class DatabaseFormat {
     @NotNull
     public abstract DatabaseBuilder newDatabaseBuilder();
 
+    /**
+     * Creates {@link DatabaseBuilder} building index segments concurrently
+     * on {@code executor}. The database written is the same as built
+     * serially.
+     *
+     * @param executor executor to build segments on
+     * @return new database builder
+     */
+    @NotNull
+    public abstract DatabaseBuilder newDatabaseBuilder(
+            @NotNull
+            ExecutorService executor);
+
+    /**
+     * Creates {@link DatabaseBuilder} spilling field values to temporary
+     * files to keep heap usage bounded
+     *
+     * @param memoryBudget  maximum size of buffered field values in bytes
+     * @param tempDirectory directory to keep temporary files in
+     * @return new database builder
+     */
+    @NotNull
+    public abstract DatabaseBuilder newDatabaseBuilder(
+            long memoryBudget,
+            @NotNull
+            File tempDirectory);
+
     @NotNull
     public abstract DatabaseReader getDatabaseReader();
 }
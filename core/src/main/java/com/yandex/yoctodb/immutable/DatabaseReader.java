@@ -17,6 +17,7 @@ import net.jcip.annotations.ThreadSafe;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Collection;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Builds immutable {@link Database} from file or {@link Buffer}
@@ -40,6 +41,48 @@ public abstract class DatabaseReader {
             ArrayBitSetPool bitSetPool,
             boolean checksum);
 
+    /**
+     * Same as {@link #from(Buffer, ArrayBitSetPool, boolean)}, but in lazy
+     * mode records only the segment table and builds each segment on first
+     * use. Segment checksums, if present in the format, are verified on
+     * first use in lazy mode as well.
+     *
+     * @param b          buffer to read the database from
+     * @param bitSetPool {@link com.yandex.yoctodb.util.mutable.BitSet} pool
+     * @param checksum   whether to verify the checksum
+     * @param lazy       whether to build the segments on first use
+     * @return database
+     */
+    @NotNull
+    public abstract IndexedDatabase from(
+            @NotNull
+            Buffer b,
+            @NotNull
+            ArrayBitSetPool bitSetPool,
+            boolean checksum,
+            boolean lazy);
+
+    /**
+     * Reads the database verifying segment checksums concurrently on
+     * {@code verifier} before returning. Databases without segment checksums
+     * are verified with the digest in the calling thread.
+     *
+     * @param b          buffer to read the database from
+     * @param bitSetPool {@link com.yandex.yoctodb.util.mutable.BitSet} pool
+     * @param lazy       whether to build the segments on first use
+     * @param verifier   executor to verify the segments on
+     * @return database
+     */
+    @NotNull
+    public abstract IndexedDatabase from(
+            @NotNull
+            Buffer b,
+            @NotNull
+            ArrayBitSetPool bitSetPool,
+            boolean lazy,
+            @NotNull
+            ExecutorService verifier);
+
     @NotNull
     public abstract Database composite(
             @NotNull
@@ -47,6 +90,24 @@ public abstract class DatabaseReader {
             @NotNull
             ArrayBitSetPool bitSetPool);
 
+    /**
+     * Builds composite {@link Database} filtering {@code databases}
+     * concurrently using {@code executor}
+     *
+     * @param databases  databases to combine
+     * @param bitSetPool {@link com.yandex.yoctodb.util.mutable.BitSet} pool
+     * @param executor   executor to filter the databases with
+     * @return composite database
+     */
+    @NotNull
+    public abstract Database composite(
+            @NotNull
+            Collection<? extends IndexedDatabase> databases,
+            @NotNull
+            ArrayBitSetPool bitSetPool,
+            @NotNull
+            ExecutorService executor);
+
     @NotNull
     public Database composite(
             @NotNull
@@ -13,6 +13,8 @@ package com.yandex.yoctodb.immutable;
 import com.yandex.yoctodb.util.buf.Buffer;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.List;
+
 /**
  * Provides access to database documents
  *
@@ -50,4 +52,29 @@ public interface DocumentProvider {
             int document,
             @NotNull
             String fieldName);
+
+    /**
+     * Gets the values of {@code fieldNames} fields of {@code length}
+     * documents starting from {@code offset} in {@code documents}.
+     *
+     * The value of field {@code f} of {@code documents[offset + i]} is put
+     * to {@code to[i * fieldNames.size() + f]}. The documents are accessed
+     * in ascending order regardless of their order in {@code documents}.
+     *
+     * @see #getFieldValue(int, String)
+     * @param documents  document indexes
+     * @param offset     the first document index position
+     * @param length     the number of documents
+     * @param fieldNames stored field names
+     * @param to         destination for the values
+     */
+    void getFieldValues(
+            @NotNull
+            int[] documents,
+            int offset,
+            int length,
+            @NotNull
+            List<String> fieldNames,
+            @NotNull
+            Buffer[] to);
 }
@@ -47,6 +47,29 @@ public interface ExecutionEngine {
             @NotNull
             DocumentProcessor processor);
 
+    /**
+     * The same as {@link #execute(Query, DocumentProcessor)}, but writes
+     * ids of the documents found to {@code to} instead of processing them,
+     * so no objects are allocated per document.
+     *
+     * Ids are relative to this engine, i.e. ids written by composite
+     * databases are global and suitable for
+     * {@link DocumentProvider#getDocument(int)} of the composite database.
+     *
+     * @param query  query to be executed
+     * @param to     destination of document ids
+     * @param offset position in {@code to} to write the first id to
+     * @param length maximum number of ids to write in addition to query limit
+     * @return number of ids written
+     */
+    int executeIds(
+            @NotNull
+            Query query,
+            @NotNull
+            int[] to,
+            int offset,
+            int length);
+
     /**
      * The same as {@link #execute(Query, DocumentProcessor)}, but only
      * counts the documents satisfying the query
@@ -57,4 +80,20 @@ public interface ExecutionEngine {
     int count(
             @NotNull
             Query query);
+
+    /**
+     * Estimate the value {@link #count(Query)} would return using only index
+     * metadata and field statistics, i.e. without touching posting data.
+     *
+     * The estimate is never less than the exact count. It is exact for the
+     * queries without conditions and for single equality or range
+     * conditions over list-based indexes. Use {@link #count(Query)} when the
+     * exact value is needed.
+     *
+     * @param query query to be estimated
+     * @return upper bound of count of documents satisfying the query
+     */
+    int estimateCount(
+            @NotNull
+            Query query);
 }
@@ -0,0 +1,74 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.immutable;
+
+import com.yandex.yoctodb.util.buf.Buffer;
+import net.jcip.annotations.Immutable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Value distribution of an indexed field collected at build time.
+ *
+ * Contains the most frequent values (heavy hitters) and equi-depth
+ * histogram over the sorted values. Each histogram bucket covers the values
+ * greater than the upper bound of the previous bucket and not greater than
+ * its own upper bound.
+ *
+ * The same as in {@link FilterableIndex}, each estimation is an upper bound
+ * of the number of documents. Exact for heavy hitters, otherwise bounded by
+ * the postings of the histogram buckets overlapping with the values.
+ *
+ * @author incubos
+ */
+@Immutable
+public interface FieldStatistics extends Index {
+    int getDistinctValuesCount();
+
+    long getPostingsCount();
+
+    int getHeavyHittersCount();
+
+    @NotNull
+    Buffer getHeavyHitter(int i);
+
+    int getHeavyHitterPostings(int i);
+
+    int getBucketsCount();
+
+    @NotNull
+    Buffer getBucketUpperBound(int i);
+
+    long getBucketPostings(int i);
+
+    int getBucketDistinctValues(int i);
+
+    long estimateEq(
+            @NotNull
+            Buffer value);
+
+    /**
+     * Estimates the number of documents with values in the range
+     *
+     * @param from          lower bound or {@code null} if unbounded
+     * @param fromInclusive whether lower bound is inclusive
+     * @param to            upper bound or {@code null} if unbounded
+     * @param toInclusive   whether upper bound is inclusive
+     * @return upper bound of the number of documents
+     */
+    long estimateBetween(
+            @Nullable
+            Buffer from,
+            boolean fromInclusive,
+            @Nullable
+            Buffer to,
+            boolean toInclusive);
+}
@@ -24,6 +24,10 @@ import com.yandex.yoctodb.util.mutable.BitSet;
  *
  * Each method returns {@code boolean} result stating if any bit was set.
  *
+ * Each estimation method returns an upper bound of the number of documents
+ * the corresponding comparison method would set, so zero means that no
+ * documents conform.
+ *
  * @author incubos
  */
 @Immutable
@@ -63,4 +67,30 @@ public interface FilterableIndex extends Index {
             @NotNull
             Buffer to,
             boolean toInclusive);
+
+    long estimateEq(
+            @NotNull
+            Buffer value);
+
+    long estimateIn(
+            @NotNull
+            Buffer... value);
+
+    long estimateLessThan(
+            @NotNull
+            Buffer value,
+            boolean orEquals);
+
+    long estimateGreaterThan(
+            @NotNull
+            Buffer value,
+            boolean orEquals);
+
+    long estimateBetween(
+            @NotNull
+            Buffer from,
+            boolean fromInclusive,
+            @NotNull
+            Buffer to,
+            boolean toInclusive);
 }
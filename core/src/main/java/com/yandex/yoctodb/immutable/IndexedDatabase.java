@@ -10,6 +10,9 @@
 
 package com.yandex.yoctodb.immutable;
 
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
 /**
  * {@link Database} with support for indexed filtering and sorting
  *
@@ -17,4 +20,13 @@ package com.yandex.yoctodb.immutable;
  */
 public interface IndexedDatabase
         extends Database, FilterableIndexProvider, SortableIndexProvider {
+    /**
+     * @param fieldName field name
+     * @return statistics of the field or {@code null} if the field is not
+     *         indexed or the database was built without statistics
+     */
+    @Nullable
+    FieldStatistics getStatistics(
+            @NotNull
+            String fieldName);
 }
@@ -29,7 +29,8 @@ public interface SortableIndex extends StoredIndex {
      * Get {@code document} sort value index
      *
      * @param document document
-     * @return         index of sort value
+     * @return         index of sort value or {@code -1} if the document has
+     *                 no value
      */
     int getSortValueIndex(int document);
 
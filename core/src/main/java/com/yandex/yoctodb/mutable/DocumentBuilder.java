@@ -23,6 +23,8 @@ import org.jetbrains.annotations.NotNull;
 public interface DocumentBuilder {
     enum IndexOption {
         FILTERABLE,
+        // Filterable with bounded cost of range conditions
+        RANGE_FILTERABLE,
         SORTABLE,
         FULL,
         STORED,
@@ -42,4 +42,19 @@ public interface Condition {
             BitSet to,
             @NotNull
             ArrayBitSetPool bitSetPool);
+
+    /**
+     * Estimate the number of documents satisfying condition without
+     * touching any bit sets.
+     *
+     * The estimate is an upper bound, so zero means that no documents
+     * satisfy condition and {@link Long#MAX_VALUE} means that nothing is
+     * known.
+     *
+     * @param indexProvider index provider
+     * @return upper bound of the number of satisfying documents
+     */
+    long estimate(
+            @NotNull
+            FilterableIndexProvider indexProvider);
 }
@@ -10,6 +10,7 @@
 
 package com.yandex.yoctodb.query;
 
+import com.yandex.yoctodb.immutable.FilterableIndexProvider;
 import com.yandex.yoctodb.immutable.IndexedDatabase;
 import com.yandex.yoctodb.util.mutable.ArrayBitSetPool;
 import net.jcip.annotations.NotThreadSafe;
@@ -19,6 +20,7 @@ import com.yandex.yoctodb.immutable.Database;
 import com.yandex.yoctodb.util.mutable.BitSet;
 
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Query to be run against {@link Database}
@@ -58,6 +60,90 @@ public interface Query {
             @NotNull
             ArrayBitSetPool bitSetPool);
 
+    /**
+     * Return at most {@code limit} first sorted results not taking into
+     * account skip/limit of the query
+     *
+     * @param docs       docs to leave
+     * @param database   database
+     * @param bitSetPool {@link BitSet} factory
+     * @param limit      maximum number of results to return
+     * @return first sorted results
+     */
+    @NotNull
+    Iterator<? extends ScoredDocument<?>> sortedTop(
+            @NotNull
+            BitSet docs,
+            @NotNull
+            IndexedDatabase database,
+            @NotNull
+            ArrayBitSetPool bitSetPool,
+            int limit);
+
+    /**
+     * Write ids of sorted results not taking into account skip/limit of the
+     * query and without building {@link ScoredDocument}s
+     *
+     * @param docs     docs to leave
+     * @param database database
+     * @param skip     number of the first sorted results to skip
+     * @param to       destination of document ids
+     * @param offset   position in {@code to} to write the first id to
+     * @param length   maximum number of ids to write
+     * @return number of ids written
+     */
+    int sortedTopIds(
+            @NotNull
+            BitSet docs,
+            @NotNull
+            IndexedDatabase database,
+            int skip,
+            @NotNull
+            int[] to,
+            int offset,
+            int length);
+
+    /**
+     * Write global ids of sorted results of several databases not taking
+     * into account skip/limit of the query and without building
+     * {@link ScoredDocument}s
+     *
+     * @param docs            docs to leave in each database or {@code null}
+     *                        if there are none
+     * @param databases       databases
+     * @param documentOffsets global id of the first document of each
+     *                        database
+     * @param skip            number of the first sorted results to skip
+     * @param to              destination of document ids
+     * @param offset          position in {@code to} to write the first id to
+     * @param length          maximum number of ids to write
+     * @return number of ids written
+     */
+    int sortedTopIds(
+            @NotNull
+            List<? extends BitSet> docs,
+            @NotNull
+            List<? extends IndexedDatabase> databases,
+            @NotNull
+            int[] documentOffsets,
+            int skip,
+            @NotNull
+            int[] to,
+            int offset,
+            int length);
+
+    /**
+     * Estimate the number of documents satisfying the query not taking into
+     * account skip/limit without evaluating the conditions
+     *
+     * @param indexProvider index provider
+     * @return upper bound of the number of documents or
+     *         {@link Long#MAX_VALUE} if unknown
+     */
+    long estimateUnlimited(
+            @NotNull
+            FilterableIndexProvider indexProvider);
+
     int getSkip();
 
     int getLimit();
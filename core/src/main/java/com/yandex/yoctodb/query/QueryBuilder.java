@@ -14,6 +14,7 @@ import com.yandex.yoctodb.query.simple.*;
 import com.yandex.yoctodb.util.UnsignedByteArray;
 import net.jcip.annotations.NotThreadSafe;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -116,6 +117,10 @@ public final class QueryBuilder {
     public static Condition not(
             @NotNull
             final Condition condition) {
+        // not(not(x)) = x
+        if (condition instanceof SimpleNotCondition)
+            return ((SimpleNotCondition) condition).getDelegate();
+
         return new SimpleNotCondition(condition);
     }
 
@@ -138,6 +143,25 @@ public final class QueryBuilder {
         return conditions;
     }
 
+    /**
+     * @return delegates if all the conditions are negations or {@code null}
+     */
+    @Nullable
+    private static Collection<Condition> negated(
+            @NotNull
+            final Collection<Condition> conditions) {
+        final Collection<Condition> result =
+                new ArrayList<>(conditions.size());
+        for (Condition c : conditions) {
+            if (!(c instanceof SimpleNotCondition))
+                return null;
+
+            result.add(((SimpleNotCondition) c).getDelegate());
+        }
+
+        return result;
+    }
+
     @NotNull
     public static Condition or(
             @NotNull
@@ -145,7 +169,14 @@ public final class QueryBuilder {
             @NotNull
             final Condition c2,
             final Condition... rest) {
-        return new SimpleOrCondition(collect(c1, c2, rest));
+        final Collection<Condition> conditions = collect(c1, c2, rest);
+
+        // or(not(x), not(y)) = not(and(x, y)) inverting once
+        final Collection<Condition> negated = negated(conditions);
+        if (negated != null)
+            return new SimpleNotCondition(new SimpleAndCondition(negated));
+
+        return new SimpleOrCondition(conditions);
     }
 
     @NotNull
@@ -155,7 +186,14 @@ public final class QueryBuilder {
             @NotNull
             final Condition c2,
             final Condition... rest) {
-        return new SimpleAndCondition(collect(c1, c2, rest));
+        final Collection<Condition> conditions = collect(c1, c2, rest);
+
+        // and(not(x), not(y)) = not(or(x, y)) inverting once
+        final Collection<Condition> negated = negated(conditions);
+        if (negated != null)
+            return new SimpleNotCondition(new SimpleOrCondition(negated));
+
+        return new SimpleAndCondition(conditions);
     }
 
     @NotNull
@@ -12,25 +12,59 @@ package com.yandex.yoctodb.query.simple;
 
 import com.yandex.yoctodb.immutable.FilterableIndexProvider;
 import com.yandex.yoctodb.query.Condition;
-import com.yandex.yoctodb.util.mutable.ArrayBitSet;
 import com.yandex.yoctodb.util.mutable.ArrayBitSetPool;
 import com.yandex.yoctodb.util.mutable.BitSet;
+import com.yandex.yoctodb.util.mutable.impl.AdaptiveBitSet;
+import com.yandex.yoctodb.util.mutable.impl.RestrictedBitSet;
 import net.jcip.annotations.Immutable;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * {@code AND} condition
  *
+ * Clauses are evaluated starting from the most selective one according to
+ * {@link Condition#estimate(FilterableIndexProvider)}, so that intersection
+ * becomes empty as early as possible. Nothing is evaluated at all if any
+ * clause estimate is zero.
+ *
+ * While the intersection is sparse, the remaining clauses are probed only
+ * at its documents through {@link RestrictedBitSet} instead of being built
+ * completely.
+ *
+ * Negated clauses are evaluated last and subtracted from the intersection
+ * of the other clauses with {@link BitSet#andNot(BitSet)}, so that their
+ * results are never inverted.
+ *
  * @author incubos
  */
 @Immutable
 public final class SimpleAndCondition implements Condition {
+    private static final Comparator<PlannedClause> BY_ESTIMATE =
+            new Comparator<PlannedClause>() {
+                @Override
+                public int compare(
+                        final PlannedClause o1,
+                        final PlannedClause o2) {
+                    return Long.compare(o1.estimate, o2.estimate);
+                }
+            };
+
+    @NotNull
+    private final List<Condition> clauses;
+    // Clauses intersected with each other
     @NotNull
-    private final Collection<Condition> clauses;
+    private final List<Condition> positive;
+    // Delegates of negated clauses subtracted from the intersection
+    @NotNull
+    private final List<Condition> negated;
 
     public SimpleAndCondition(
             @NotNull
@@ -39,6 +73,25 @@ public final class SimpleAndCondition implements Condition {
             throw new IllegalArgumentException("No conditions");
 
         this.clauses = new ArrayList<>(conditions);
+
+        final List<Condition> positive = new ArrayList<>(conditions.size());
+        final List<Condition> negated = new ArrayList<>();
+        for (Condition c : conditions) {
+            if (c instanceof SimpleNotCondition) {
+                negated.add(((SimpleNotCondition) c).getDelegate());
+            } else {
+                positive.add(c);
+            }
+        }
+
+        if (positive.isEmpty()) {
+            // Nothing to subtract from
+            this.positive = clauses;
+            this.negated = Collections.emptyList();
+        } else {
+            this.positive = positive;
+            this.negated = negated;
+        }
     }
 
     @Override
@@ -55,10 +108,15 @@ public final class SimpleAndCondition implements Condition {
         } else { // >= 2 clauses
             assert !clauses.isEmpty();
 
-            final Iterator<Condition> iter = clauses.iterator();
+            final List<Condition> plan = plan(indexProvider);
+            if (plan == null)
+                return false;
+
+            final Iterator<Condition> iter = plan.iterator();
 
             // Filling result with first clause
-            final ArrayBitSet result = bitSetPool.borrowSet(to.getSize());
+            final AdaptiveBitSet result =
+                    new AdaptiveBitSet(to.getSize(), bitSetPool);
             try {
                 if (!iter.next().set(
                         indexProvider,
@@ -66,13 +124,13 @@ public final class SimpleAndCondition implements Condition {
                         bitSetPool))
                     return false;
 
-                final ArrayBitSet clauseResult =
-                        bitSetPool.borrowSet(to.getSize());
+                final AdaptiveBitSet clauseResult =
+                        new AdaptiveBitSet(to.getSize(), bitSetPool);
                 try {
-                    do {
+                    while (iter.hasNext()) {
                         if (!iter.next().set(
                                 indexProvider,
-                                clauseResult,
+                                probe(result, clauseResult),
                                 bitSetPool))
                             return false;
 
@@ -80,17 +138,110 @@ public final class SimpleAndCondition implements Condition {
                             return false;
                         }
 
-                        if (iter.hasNext())
-                            clauseResult.clear();
-                    } while (iter.hasNext());
+                        clauseResult.clear();
+                    }
+
+                    // AND NOT instead of inverting negated clauses
+                    for (Condition c : negated) {
+                        if (!c.set(
+                                indexProvider,
+                                probe(result, clauseResult),
+                                bitSetPool))
+                            continue;
+
+                        if (!result.andNot(clauseResult)) {
+                            return false;
+                        }
+
+                        clauseResult.clear();
+                    }
 
                     return to.or(result);
                 } finally {
-                    bitSetPool.returnSet(clauseResult);
+                    clauseResult.release();
                 }
             } finally {
-                bitSetPool.returnSet(result);
+                result.release();
             }
         }
     }
+
+    /**
+     * Restricts clause evaluation to the current candidates while they are
+     * sparse, so that the clause is checked only at the candidates instead of
+     * being built completely
+     *
+     * @param candidates   intersection of the evaluated clauses
+     * @param clauseResult destination of the clause
+     * @return destination to evaluate the clause into
+     */
+    @NotNull
+    private static BitSet probe(
+            @NotNull
+            final AdaptiveBitSet candidates,
+            @NotNull
+            final AdaptiveBitSet clauseResult) {
+        return candidates.isSparse() ?
+                new RestrictedBitSet(candidates, clauseResult) :
+                clauseResult;
+    }
+
+    @Override
+    public long estimate(
+            @NotNull
+            final FilterableIndexProvider indexProvider) {
+        long result = Long.MAX_VALUE;
+        for (Condition clause : clauses) {
+            result = Math.min(result, clause.estimate(indexProvider));
+            if (result == 0L)
+                break;
+        }
+
+        return result;
+    }
+
+    /**
+     * Orders not negated clauses by their estimates (stable, so equally selective
+     * clauses keep the order given)
+     *
+     * @param indexProvider index provider
+     * @return clauses in evaluation order or {@code null} if some clause
+     *         can't be satisfied
+     */
+    @Nullable
+    private List<Condition> plan(
+            @NotNull
+            final FilterableIndexProvider indexProvider) {
+        final List<PlannedClause> planned = new ArrayList<>(positive.size());
+        for (Condition clause : positive) {
+            final long estimate = clause.estimate(indexProvider);
+            if (estimate == 0L)
+                return null;
+
+            planned.add(new PlannedClause(clause, estimate));
+        }
+
+        Collections.sort(planned, BY_ESTIMATE);
+
+        final List<Condition> result = new ArrayList<>(planned.size());
+        for (PlannedClause p : planned) {
+            result.add(p.clause);
+        }
+
+        return result;
+    }
+
+    private static final class PlannedClause {
+        @NotNull
+        private final Condition clause;
+        private final long estimate;
+
+        private PlannedClause(
+                @NotNull
+                final Condition clause,
+                final long estimate) {
+            this.clause = clause;
+            this.estimate = estimate;
+        }
+    }
 }
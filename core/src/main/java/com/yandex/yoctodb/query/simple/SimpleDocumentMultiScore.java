@@ -10,8 +10,9 @@
 
 package com.yandex.yoctodb.query.simple;
 
+import com.yandex.yoctodb.immutable.SortableIndex;
 import com.yandex.yoctodb.util.buf.Buffer;
-import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
 import org.jetbrains.annotations.NotNull;
 import com.yandex.yoctodb.query.DocumentScore;
 import com.yandex.yoctodb.query.Order;
@@ -22,25 +23,53 @@ import java.util.Arrays;
 /**
  * Document score based on sort fields {@link Buffer}s
  *
+ * Keeps only sort value indexes (negated for descending orders) of the
+ * document. Scores of the same database are compared by the indexes, sort
+ * value {@link Buffer}s are materialized only to compare scores of different
+ * databases.
+ *
  * @author incubos
  */
-@Immutable
+@ThreadSafe
 final class SimpleDocumentMultiScore
         implements DocumentScore<SimpleDocumentMultiScore> {
     @NotNull
+    private final SortableIndex[] indexes;
+    @NotNull
     private final Order.SortOrder[] orders;
     @NotNull
-    private final Buffer[] values;
+    private final int[] sortValueIndexes;
+    private volatile Buffer[] values;
 
     SimpleDocumentMultiScore(
+            @NotNull
+            final SortableIndex[] indexes,
             @NotNull
             final Order.SortOrder[] orders,
             @NotNull
-            final Buffer[] values) {
-        assert values.length == orders.length;
+            final int[] sortValueIndexes) {
+        assert indexes.length == orders.length;
+        assert sortValueIndexes.length == orders.length;
 
+        this.indexes = indexes;
         this.orders = orders;
-        this.values = values;
+        this.sortValueIndexes = sortValueIndexes;
+    }
+
+    @NotNull
+    private Buffer[] values() {
+        Buffer[] result = values;
+        if (result == null) {
+            result = new Buffer[sortValueIndexes.length];
+            for (int i = 0; i < sortValueIndexes.length; i++) {
+                result[i] =
+                        indexes[i].getSortValue(
+                                Math.abs(sortValueIndexes[i]));
+            }
+            values = result;
+        }
+
+        return result;
     }
 
     @Override
@@ -48,13 +77,30 @@ final class SimpleDocumentMultiScore
             @NotNull
             final SimpleDocumentMultiScore o) {
         assert Arrays.equals(orders, o.orders);
-        assert values.length == o.values.length;
+        assert sortValueIndexes.length == o.sortValueIndexes.length;
+
+        // The same database
+        if (indexes == o.indexes) {
+            for (int i = 0; i < sortValueIndexes.length; i++) {
+                final int result =
+                        Integer.compare(
+                                sortValueIndexes[i],
+                                o.sortValueIndexes[i]);
+                if (result != 0) {
+                    return result;
+                }
+            }
+
+            return 0;
+        }
 
+        final Buffer[] values = values();
+        final Buffer[] otherValues = o.values();
         for (int i = 0; i < values.length; i++) {
             final int result =
                     UnsignedByteArrays.compare(
                             values[i],
-                            o.values[i]);
+                            otherValues[i]);
             if (result != 0) {
                 switch (orders[i]) {
                     case ASC:
@@ -53,4 +53,12 @@ public final class SimpleEqualityCondition extends AbstractTermCondition {
         final FilterableIndex index = indexProvider.getFilter(getFieldName());
         return index != null && index.eq(to, value);
     }
+
+    @Override
+    public long estimate(
+            @NotNull
+            final FilterableIndexProvider indexProvider) {
+        final FilterableIndex index = indexProvider.getFilter(getFieldName());
+        return index == null ? 0L : index.estimateEq(value);
+    }
 }
@@ -54,4 +54,12 @@ public final class SimpleGreaterThanOrEqualsCondition
         final FilterableIndex index = indexProvider.getFilter(getFieldName());
         return index != null && index.greaterThan(to, value, true);
     }
+
+    @Override
+    public long estimate(
+            @NotNull
+            final FilterableIndexProvider indexProvider) {
+        final FilterableIndex index = indexProvider.getFilter(getFieldName());
+        return index == null ? 0L : index.estimateGreaterThan(value, true);
+    }
 }
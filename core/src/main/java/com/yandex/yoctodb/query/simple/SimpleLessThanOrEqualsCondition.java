@@ -54,4 +54,12 @@ public final class SimpleLessThanOrEqualsCondition
         final FilterableIndex index = indexProvider.getFilter(getFieldName());
         return index != null && index.lessThan(to, value, true);
     }
+
+    @Override
+    public long estimate(
+            @NotNull
+            final FilterableIndexProvider indexProvider) {
+        final FilterableIndex index = indexProvider.getFilter(getFieldName());
+        return index == null ? 0L : index.estimateLessThan(value, true);
+    }
 }
@@ -65,4 +65,12 @@ public final class SimpleMultiEqualityCondition
         final FilterableIndex index = indexProvider.getFilter(getFieldName());
         return index != null && index.in(to, values);
     }
+
+    @Override
+    public long estimate(
+            @NotNull
+            final FilterableIndexProvider indexProvider) {
+        final FilterableIndex index = indexProvider.getFilter(getFieldName());
+        return index == null ? 0L : index.estimateIn(values);
+    }
 }
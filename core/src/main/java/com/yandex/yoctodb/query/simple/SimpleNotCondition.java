@@ -21,6 +21,9 @@ import org.jetbrains.annotations.NotNull;
 /**
  * Condition negation
  *
+ * Inside {@link SimpleAndCondition} with other clauses the delegate is
+ * subtracted from their intersection instead of being inverted.
+ *
  * @author incubos
  */
 @Immutable
@@ -34,6 +37,14 @@ public final class SimpleNotCondition implements Condition {
         this.delegate = delegate;
     }
 
+    /**
+     * @return negated condition
+     */
+    @NotNull
+    public Condition getDelegate() {
+        return delegate;
+    }
+
     @Override
     public boolean set(
             @NotNull
@@ -51,4 +62,12 @@ public final class SimpleNotCondition implements Condition {
             bitSetPool.returnSet(result);
         }
     }
+
+    @Override
+    public long estimate(
+            @NotNull
+            final FilterableIndexProvider indexProvider) {
+        // Documents count is unknown here
+        return Long.MAX_VALUE;
+    }
 }
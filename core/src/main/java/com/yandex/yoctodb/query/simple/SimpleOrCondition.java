@@ -54,4 +54,20 @@ public final class SimpleOrCondition implements Condition {
 
         return notEmpty;
     }
+
+    @Override
+    public long estimate(
+            @NotNull
+            final FilterableIndexProvider indexProvider) {
+        long result = 0L;
+        for (Condition clause : clauses) {
+            final long estimate = clause.estimate(indexProvider);
+            if (estimate >= Long.MAX_VALUE - result)
+                return Long.MAX_VALUE;
+
+            result += estimate;
+        }
+
+        return result;
+    }
 }
@@ -70,4 +70,14 @@ public final class SimpleRangeCondition extends AbstractTermCondition {
         return index != null &&
                index.between(dest, from, fromInclusive, to, toInclusive);
     }
+
+    @Override
+    public long estimate(
+            @NotNull
+            final FilterableIndexProvider indexProvider) {
+        final FilterableIndex index = indexProvider.getFilter(getFieldName());
+        return index == null ?
+                0L :
+                index.estimateBetween(from, fromInclusive, to, toInclusive);
+    }
 }
@@ -11,11 +11,13 @@
 package com.yandex.yoctodb.query.simple;
 
 import com.google.common.base.Joiner;
+import com.google.common.collect.Iterators;
+import com.yandex.yoctodb.immutable.FilterableIndexProvider;
 import com.yandex.yoctodb.immutable.IndexedDatabase;
 import com.yandex.yoctodb.query.*;
-import com.yandex.yoctodb.util.mutable.ArrayBitSet;
 import com.yandex.yoctodb.util.mutable.ArrayBitSetPool;
 import com.yandex.yoctodb.util.mutable.BitSet;
+import com.yandex.yoctodb.util.mutable.impl.AdaptiveBitSet;
 import com.yandex.yoctodb.util.mutable.impl.ReadOnlyOneBitSet;
 import net.jcip.annotations.NotThreadSafe;
 import org.jetbrains.annotations.NotNull;
@@ -119,18 +121,31 @@ public final class SimpleSelect implements Select {
             return new ReadOnlyOneBitSet(database.getDocumentCount());
         } else {
             final Condition where = new SimpleAndCondition(conditions);
-            final ArrayBitSet result =
-                    bitSetPool.borrowSet(
-                            database.getDocumentCount());
+            // Selective queries don't touch all the documents
+            final AdaptiveBitSet result =
+                    new AdaptiveBitSet(
+                            database.getDocumentCount(),
+                            bitSetPool);
             if (where.set(database, result, bitSetPool)) {
                 return result;
             } else {
-                bitSetPool.returnSet(result);
+                result.release();
                 return null;
             }
         }
     }
 
+    @Override
+    public long estimateUnlimited(
+            @NotNull
+            final FilterableIndexProvider indexProvider) {
+        if (conditions.isEmpty()) {
+            return Long.MAX_VALUE;
+        } else {
+            return new SimpleAndCondition(conditions).estimate(indexProvider);
+        }
+    }
+
     @NotNull
     @Override
     public Iterator<? extends ScoredDocument<?>> sortedUnlimited(
@@ -140,14 +155,200 @@ public final class SimpleSelect implements Select {
             final IndexedDatabase database,
             @NotNull
             final ArrayBitSetPool bitSetPool) {
+        return sortedTop(docs, database, bitSetPool, Integer.MAX_VALUE);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<? extends ScoredDocument<?>> sortedTop(
+            @NotNull
+            final BitSet docs,
+            @NotNull
+            final IndexedDatabase database,
+            @NotNull
+            final ArrayBitSetPool bitSetPool,
+            final int limit) {
+        assert !docs.isEmpty();
+
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Nonpositive limit");
+        }
+
+        // Shortcut if there is not sorting
+        if (sorts.isEmpty()) {
+            final Iterator<IdScoredDocument> unlimited =
+                    new IdScoredDocumentIterator(database, docs);
+            if (limit == Integer.MAX_VALUE) {
+                return unlimited;
+            } else {
+                return Iterators.limit(unlimited, limit);
+            }
+        } else {
+            return new SortingScoredDocumentIterator(
+                    database,
+                    docs,
+                    sorts,
+                    limit);
+        }
+    }
+
+    @Override
+    public int sortedTopIds(
+            @NotNull
+            final BitSet docs,
+            @NotNull
+            final IndexedDatabase database,
+            final int skip,
+            @NotNull
+            final int[] to,
+            final int offset,
+            final int length) {
         assert !docs.isEmpty();
 
+        if (skip < 0) {
+            throw new IllegalArgumentException("Negative skip");
+        }
+        if (length <= 0) {
+            throw new IllegalArgumentException("Nonpositive length");
+        }
+
+        int written = 0;
+
         // Shortcut if there is not sorting
         if (sorts.isEmpty()) {
-            return new IdScoredDocumentIterator(database, docs);
+            int skipped = 0;
+            for (int doc = docs.nextSetBit(0);
+                 doc >= 0 && written < length;
+                 doc = docs.nextSetBit(doc + 1)) {
+                if (skipped < skip) {
+                    skipped++;
+                } else {
+                    to[offset + written] = doc;
+                    written++;
+                }
+            }
         } else {
-            return new SortingScoredDocumentIterator(database, docs, sorts);
+            final SortingScoredDocumentIterator sorted =
+                    new SortingScoredDocumentIterator(
+                            database,
+                            docs,
+                            sorts,
+                            (int) Math.min(
+                                    (long) skip + length,
+                                    Integer.MAX_VALUE));
+            for (int i = 0; i < skip && sorted.hasNext(); i++) {
+                sorted.nextDocument();
+            }
+            while (written < length && sorted.hasNext()) {
+                to[offset + written] = sorted.nextDocument();
+                written++;
+            }
+        }
+
+        return written;
+    }
+
+    @Override
+    public int sortedTopIds(
+            @NotNull
+            final List<? extends BitSet> docs,
+            @NotNull
+            final List<? extends IndexedDatabase> databases,
+            @NotNull
+            final int[] documentOffsets,
+            final int skip,
+            @NotNull
+            final int[] to,
+            final int offset,
+            final int length) {
+        if (docs.size() != databases.size() ||
+            documentOffsets.length != databases.size()) {
+            throw new IllegalArgumentException("Databases mismatch");
+        }
+        if (skip < 0) {
+            throw new IllegalArgumentException("Negative skip");
+        }
+        if (length <= 0) {
+            throw new IllegalArgumentException("Nonpositive length");
+        }
+
+        int written = 0;
+
+        // Shortcut if there is not sorting
+        if (sorts.isEmpty()) {
+            int remainingSkip = skip;
+            for (int i = 0; i < databases.size() && written < length; i++) {
+                final BitSet current = docs.get(i);
+                if (current == null) {
+                    continue;
+                }
+
+                // Skipping the whole database
+                if (remainingSkip > 0) {
+                    final int count = current.cardinality();
+                    if (count <= remainingSkip) {
+                        remainingSkip -= count;
+                        continue;
+                    }
+                }
+
+                final int from = offset + written;
+                written +=
+                        sortedTopIds(
+                                current,
+                                databases.get(i),
+                                remainingSkip,
+                                to,
+                                from,
+                                length - written);
+                remainingSkip = 0;
+
+                for (int j = from; j < offset + written; j++) {
+                    to[j] += documentOffsets[i];
+                }
+            }
+
+            return written;
         }
+
+        final int limit =
+                (int) Math.min((long) skip + length, Integer.MAX_VALUE);
+        final SortingScoredDocumentIterator[] iterators =
+                new SortingScoredDocumentIterator[databases.size()];
+        for (int i = 0; i < iterators.length; i++) {
+            final BitSet current = docs.get(i);
+            if (current != null) {
+                assert !current.isEmpty();
+
+                iterators[i] =
+                        new SortingScoredDocumentIterator(
+                                databases.get(i),
+                                current,
+                                sorts,
+                                limit);
+            }
+        }
+
+        final Order.SortOrder[] orders = new Order.SortOrder[sorts.size()];
+        {
+            int i = 0;
+            for (Order sort : sorts) {
+                orders[i++] = sort.getOrder();
+            }
+        }
+
+        final SortedIdMerger merger = new SortedIdMerger(iterators, orders);
+        for (int i = 0; i < skip && merger.hasNext(); i++) {
+            merger.nextDocument();
+        }
+        while (written < length && merger.hasNext()) {
+            final int document = merger.nextDocument();
+            to[offset + written] =
+                    documentOffsets[merger.getSource()] + document;
+            written++;
+        }
+
+        return written;
     }
 
     @SuppressWarnings("CloneDoesntCallSuperClone")
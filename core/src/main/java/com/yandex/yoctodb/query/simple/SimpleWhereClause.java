@@ -10,6 +10,7 @@
 
 package com.yandex.yoctodb.query.simple;
 
+import com.yandex.yoctodb.immutable.FilterableIndexProvider;
 import com.yandex.yoctodb.immutable.IndexedDatabase;
 import com.yandex.yoctodb.query.*;
 import com.yandex.yoctodb.util.mutable.ArrayBitSetPool;
@@ -19,6 +20,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * Where clause
@@ -111,6 +113,63 @@ public final class SimpleWhereClause implements Where {
         return select.sortedUnlimited(docs, database, bitSetPool);
     }
 
+    @NotNull
+    @Override
+    public Iterator<? extends ScoredDocument<?>> sortedTop(
+            @NotNull
+            final BitSet docs,
+            @NotNull
+            final IndexedDatabase database,
+            @NotNull
+            final ArrayBitSetPool bitSetPool,
+            final int limit) {
+        return select.sortedTop(docs, database, bitSetPool, limit);
+    }
+
+    @Override
+    public int sortedTopIds(
+            @NotNull
+            final BitSet docs,
+            @NotNull
+            final IndexedDatabase database,
+            final int skip,
+            @NotNull
+            final int[] to,
+            final int offset,
+            final int length) {
+        return select.sortedTopIds(docs, database, skip, to, offset, length);
+    }
+
+    @Override
+    public int sortedTopIds(
+            @NotNull
+            final List<? extends BitSet> docs,
+            @NotNull
+            final List<? extends IndexedDatabase> databases,
+            @NotNull
+            final int[] documentOffsets,
+            final int skip,
+            @NotNull
+            final int[] to,
+            final int offset,
+            final int length) {
+        return select.sortedTopIds(
+                docs,
+                databases,
+                documentOffsets,
+                skip,
+                to,
+                offset,
+                length);
+    }
+
+    @Override
+    public long estimateUnlimited(
+            @NotNull
+            final FilterableIndexProvider indexProvider) {
+        return select.estimateUnlimited(indexProvider);
+    }
+
     @SuppressWarnings("CloneDoesntCallSuperClone")
     @NotNull
     @Override
@@ -0,0 +1,193 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.query.simple;
+
+import com.yandex.yoctodb.query.Order;
+import com.yandex.yoctodb.util.UnsignedByteArrays;
+import com.yandex.yoctodb.util.buf.Buffer;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Merges document ids of {@link SortingScoredDocumentIterator}s of
+ * different databases without building scores.
+ *
+ * Iterators are kept in a binary heap of their indexes. Heads are compared
+ * by sort value indexes if they share the sortable index, otherwise by sort
+ * values. Sort values of different databases can only be compared as
+ * {@link Buffer}s, so they are requested from the sortable index lazily and
+ * cached per iterator: one slice per distinct sort value of the heads and
+ * only for the sorts needed to break the ties. Equal documents are returned
+ * in iterator order.
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+final class SortedIdMerger {
+    private static final int NONE = Integer.MIN_VALUE;
+
+    @NotNull
+    private final SortingScoredDocumentIterator[] iterators;
+    @NotNull
+    private final Order.SortOrder[] orders;
+    // Head document ids
+    @NotNull
+    private final int[] heads;
+    // Cached sort values of the heads and their sort keys
+    @NotNull
+    private final Buffer[][] values;
+    @NotNull
+    private final int[][] valueKeys;
+    @NotNull
+    private final int[] heap;
+    private int size;
+    private int source = -1;
+
+    /**
+     * @param iterators iterators to merge or {@code null}s
+     * @param orders    sort orders
+     */
+    SortedIdMerger(
+            @NotNull
+            final SortingScoredDocumentIterator[] iterators,
+            @NotNull
+            final Order.SortOrder[] orders) {
+        this.iterators = iterators;
+        this.orders = orders;
+        this.heads = new int[iterators.length];
+        this.values = new Buffer[iterators.length][orders.length];
+        this.valueKeys = new int[iterators.length][orders.length];
+        this.heap = new int[iterators.length];
+
+        for (int i = 0; i < iterators.length; i++) {
+            Arrays.fill(valueKeys[i], NONE);
+            final SortingScoredDocumentIterator iterator = iterators[i];
+            if (iterator != null && iterator.hasNext()) {
+                heads[i] = iterator.nextDocument();
+                heap[size++] = i;
+            }
+        }
+
+        for (int i = (size >>> 1) - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    @NotNull
+    private Buffer value(
+            final int iterator,
+            final int sort,
+            final int key) {
+        if (valueKeys[iterator][sort] != key) {
+            values[iterator][sort] =
+                    iterators[iterator]
+                            .getSorter(sort)
+                            .getSortValue(Math.abs(key));
+            valueKeys[iterator][sort] = key;
+        }
+
+        return values[iterator][sort];
+    }
+
+    private int compare(
+            final int left,
+            final int right) {
+        final SortingScoredDocumentIterator l = iterators[left];
+        final SortingScoredDocumentIterator r = iterators[right];
+        for (int s = 0; s < orders.length; s++) {
+            final int leftKey = l.getSortKey(s);
+            final int rightKey = r.getSortKey(s);
+            final int result;
+            if (l.getSorter(s) == r.getSorter(s)) {
+                result = Integer.compare(leftKey, rightKey);
+            } else {
+                final int cmp =
+                        UnsignedByteArrays.compare(
+                                value(left, s, leftKey),
+                                value(right, s, rightKey));
+                result = orders[s].isAscending() ? cmp : -cmp;
+            }
+            if (result != 0) {
+                return result;
+            }
+        }
+
+        return 0;
+    }
+
+    private boolean less(
+            final int left,
+            final int right) {
+        final int cmp = compare(left, right);
+        return cmp < 0 || (cmp == 0 && left < right);
+    }
+
+    private void siftDown(int i) {
+        final int iterator = heap[i];
+        while (true) {
+            int child = (i << 1) + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && less(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!less(heap[child], iterator)) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = iterator;
+    }
+
+    boolean hasNext() {
+        return size > 0;
+    }
+
+    /**
+     * @return the next document id
+     */
+    int nextDocument() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        final int top = heap[0];
+        final int result = heads[top];
+        source = top;
+
+        final SortingScoredDocumentIterator iterator = iterators[top];
+        if (iterator.hasNext()) {
+            heads[top] = iterator.nextDocument();
+        } else {
+            size--;
+            heap[0] = heap[size];
+        }
+
+        if (size > 0) {
+            siftDown(0);
+        }
+
+        return result;
+    }
+
+    /**
+     * @return index of the iterator of the last returned document
+     */
+    int getSource() {
+        assert source >= 0;
+
+        return source;
+    }
+}
@@ -10,30 +10,41 @@
 
 package com.yandex.yoctodb.query.simple;
 
-import com.google.common.collect.Iterators;
 import com.yandex.yoctodb.immutable.Database;
 import com.yandex.yoctodb.immutable.IndexedDatabase;
 import com.yandex.yoctodb.immutable.SortableIndex;
 import com.yandex.yoctodb.query.Order;
-import com.yandex.yoctodb.util.buf.Buffer;
 import com.yandex.yoctodb.util.immutable.IntToIntArray;
 import com.yandex.yoctodb.util.mutable.BitSet;
+import com.yandex.yoctodb.util.mutable.impl.AdaptiveBitSet;
 import net.jcip.annotations.NotThreadSafe;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * {@link Iterator} implementation producing {@link SimpleScoredDocument}s
  *
+ * Produces at most {@code limit} documents, so only the needed prefix of
+ * each chunk of equal first sort values is selected and materialized.
+ *
+ * Chunks are sorted in place as positions into primitive arrays of document
+ * ids and packed secondary sort value indexes which are reused between
+ * chunks. Sort value {@link com.yandex.yoctodb.util.buf.Buffer}s are
+ * materialized only if {@link SimpleDocumentMultiScore} needs them.
+ *
  * @author incubos
  */
 @NotThreadSafe
 final class SortingScoredDocumentIterator
         implements Iterator<SimpleScoredDocument> {
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
     @NotNull
     private final Database ctx;
     @NotNull
@@ -42,8 +53,22 @@ final class SortingScoredDocumentIterator
     private final Order.SortOrder[] orders;
     @NotNull
     private final Iterator<IntToIntArray> baseIterator;
+    private int remaining;
+
+    // Current chunk
+    private int firstValueIndex;
+    @NotNull
+    private int[] ids = new int[0];
+    // Secondary sort value indexes, (sort count - 1) per document
     @NotNull
-    private Iterator<LocalScoredDocument> chunk;
+    private int[] keys = new int[0];
+    // Sorted positions of documents in ids
+    @NotNull
+    private int[] positions = new int[0];
+    private int chunkSize;
+    private int chunkNext;
+    // Position of the last returned document in ids
+    private int current = -1;
 
     SortingScoredDocumentIterator(
             @NotNull
@@ -52,10 +77,23 @@ final class SortingScoredDocumentIterator
             final BitSet docs,
             @NotNull
             final List<Order> sorts) {
+        this(ctx, docs, sorts, Integer.MAX_VALUE);
+    }
+
+    SortingScoredDocumentIterator(
+            @NotNull
+            final IndexedDatabase ctx,
+            @NotNull
+            final BitSet docs,
+            @NotNull
+            final List<Order> sorts,
+            final int limit) {
         assert !docs.isEmpty();
         assert !sorts.isEmpty();
+        assert limit > 0;
 
         this.ctx = ctx;
+        this.remaining = limit;
 
         // Preparing sorting structures
         indexes = new SortableIndex[sorts.size()];
@@ -70,154 +108,275 @@ final class SortingScoredDocumentIterator
         }
 
         // Building base iterator
-        if (orders[0].isAscending())
+        if (docs instanceof AdaptiveBitSet &&
+            ((AdaptiveBitSet) docs).isSparse())
+            baseIterator =
+                    byValue(indexes[0], docs, orders[0].isAscending());
+        else if (orders[0].isAscending())
             baseIterator = indexes[0].ascending(docs);
         else
             baseIterator = indexes[0].descending(docs);
 
         assert baseIterator.hasNext();
+    }
+
+    /**
+     * Groups a few documents by sort value index without scanning the
+     * sortable index
+     */
+    @NotNull
+    private static Iterator<IntToIntArray> byValue(
+            @NotNull
+            final SortableIndex index,
+            @NotNull
+            final BitSet docs,
+            final boolean ascending) {
+        // Sort value index in high bits
+        final long[] pairs = new long[docs.cardinality()];
+        int count = 0;
+        for (int doc = docs.nextSetBit(0);
+             doc >= 0;
+             doc = docs.nextSetBit(doc + 1)) {
+            final int value = index.getSortValueIndex(doc);
+            if (value >= 0) {
+                pairs[count++] = ((long) value << 32) | doc;
+            }
+        }
+        Arrays.sort(pairs, 0, count);
+
+        final List<IntToIntArray> groups = new ArrayList<>();
+        int from = 0;
+        while (from < count) {
+            final int value = (int) (pairs[from] >>> 32);
+            int to = from + 1;
+            while (to < count && (int) (pairs[to] >>> 32) == value) {
+                to++;
+            }
+
+            final int[] ids = new int[to - from];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = (int) pairs[from + i];
+            }
+            groups.add(new IntToIntArray(value, ids, ids.length));
 
-        this.chunk = Collections.emptyIterator();
+            from = to;
+        }
+
+        if (!ascending) {
+            Collections.reverse(groups);
+        }
+
+        return groups.iterator();
     }
 
     @Override
     public boolean hasNext() {
-        return chunk.hasNext() || baseIterator.hasNext();
+        return remaining > 0 &&
+               (chunkNext < chunkSize || baseIterator.hasNext());
     }
 
-    private int withOrder(
+    private static int withOrder(
             final Order.SortOrder order,
             final int value) {
         return order.isAscending() ? value : -value;
     }
 
     private void fillChunk() {
-        assert !chunk.hasNext();
+        assert chunkNext == chunkSize;
 
         final IntToIntArray taggedDocuments = baseIterator.next();
-        final int firstValueIndex = taggedDocuments.getKey();
-        final int[] ids = taggedDocuments.getValues();
         final int count = taggedDocuments.getCount();
 
         assert count > 0;
 
-        final LocalScoredDocument[] docs = new LocalScoredDocument[count];
+        firstValueIndex = withOrder(orders[0], taggedDocuments.getKey());
+        ids = taggedDocuments.getValues();
+        chunkSize = Math.min(count, remaining);
+        chunkNext = 0;
+
+        if (positions.length < count)
+            positions = new int[count];
+        for (int i = 0; i < count; i++)
+            positions[i] = i;
 
+        // Documents are already ordered by id within the chunk
+        final int width = indexes.length - 1;
+        if (width == 0)
+            return;
+
+        if (keys.length < count * width)
+            keys = new int[count * width];
         for (int i = 0; i < count; i++) {
             final int id = ids[i];
-            final int[] sortValueIndexes = new int[indexes.length];
-            sortValueIndexes[0] = firstValueIndex;
-            for (int s = 1; s < sortValueIndexes.length; s++)
-                sortValueIndexes[s] =
+            for (int s = 1; s <= width; s++)
+                keys[i * width + s - 1] =
                         withOrder(
                                 orders[s],
                                 indexes[s].getSortValueIndex(id));
-
-            docs[i] =
-                    new LocalScoredDocument(
-                            id,
-                            new LocalScore(sortValueIndexes));
         }
 
-        // Special case for good index selectivity
-        if (docs.length == 1) {
-            chunk = Iterators.singletonIterator(docs[0]);
-        } else {
-            Arrays.sort(docs);
-            chunk = Iterators.forArray(docs);
-        }
+        if (count > 1)
+            sort(0, count, chunkSize);
     }
 
-    @Override
-    public SimpleScoredDocument next() {
-        if (!chunk.hasNext())
-            fillChunk();
+    private int compare(
+            final int left,
+            final int right) {
+        final int width = indexes.length - 1;
+        for (int s = 0; s < width; s++) {
+            final int cmp =
+                    Integer.compare(
+                            keys[left * width + s],
+                            keys[right * width + s]);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
 
-        return chunk.next().toScoredDocument();
+        // Keeping document order for equal scores
+        return Integer.compare(ids[left], ids[right]);
     }
 
-    @Override
-    public void remove() {
-        throw new UnsupportedOperationException("Removal is not supported");
+    private void swap(
+            final int i,
+            final int j) {
+        final int tmp = positions[i];
+        positions[i] = positions[j];
+        positions[j] = tmp;
     }
 
     /**
-     * Score based on sort value indexes
+     * Sorts {@link #positions} in {@code [from, to)} so that at least
+     * the positions before {@code limit} are at their final places
      */
-    private final class LocalScore implements Comparable<LocalScore> {
-        @NotNull
-        private final int[] sortValueIndexes;
+    private void sort(
+            int from,
+            int to,
+            final int limit) {
+        assert from < limit;
+
+        while (to - from > INSERTION_SORT_THRESHOLD) {
+            // Median of three
+            final int mid = (from + to) >>> 1;
+            if (compare(positions[mid], positions[from]) < 0)
+                swap(mid, from);
+            if (compare(positions[to - 1], positions[from]) < 0)
+                swap(to - 1, from);
+            if (compare(positions[to - 1], positions[mid]) < 0)
+                swap(to - 1, mid);
+            final int pivot = positions[mid];
+
+            int i = from;
+            int j = to - 1;
+            while (i <= j) {
+                while (compare(positions[i], pivot) < 0)
+                    i++;
+                while (compare(positions[j], pivot) > 0)
+                    j--;
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
 
-        private LocalScore(
-                @NotNull
-                final int[] sortValueIndexes) {
-            assert sortValueIndexes.length > 0;
+            if (from < j)
+                sort(from, j + 1, limit);
 
-            this.sortValueIndexes = sortValueIndexes;
+            // Skipping the part we are not going to return
+            if (i >= limit)
+                return;
+
+            from = i;
         }
 
-        @Override
-        public int compareTo(
-                @NotNull
-                final LocalScore o) {
-            assert sortValueIndexes.length == o.sortValueIndexes.length;
-
-            for (int i = 0; i < sortValueIndexes.length; i++) {
-                final int cmp =
-                        Integer.compare(
-                                sortValueIndexes[i],
-                                o.sortValueIndexes[i]);
-                if (cmp != 0) {
-                    return cmp;
-                }
+        // Insertion sort for short ranges
+        for (int i = from + 1; i < to; i++) {
+            final int position = positions[i];
+            int j = i - 1;
+            while (j >= from && compare(positions[j], position) > 0) {
+                positions[j + 1] = positions[j];
+                j--;
             }
-
-            return 0;
+            positions[j + 1] = position;
         }
+    }
 
-        @NotNull
-        SimpleDocumentMultiScore toScore() {
-            final Buffer[] sortValues =
-                    new Buffer[sortValueIndexes.length];
-            for (int i = 0; i < sortValueIndexes.length; i++) {
-                sortValues[i] =
-                        indexes[i].getSortValue(
-                                Math.abs(sortValueIndexes[i]));
-            }
+    private int nextPosition() {
+        if (remaining <= 0)
+            throw new NoSuchElementException();
 
-            return new SimpleDocumentMultiScore(orders, sortValues);
-        }
+        if (chunkNext == chunkSize)
+            fillChunk();
+
+        remaining--;
+        current = positions[chunkNext++];
+
+        return current;
     }
 
     /**
-     * Document scored using {@link LocalScore}
+     * @param sort sort number
+     * @return sortable index of the sort
      */
-    private final class LocalScoredDocument
-            implements Comparable<LocalScoredDocument> {
-        @NotNull
-        private final LocalScore score;
-        private final int id;
-
-        private LocalScoredDocument(
-                final int id,
-                @NotNull
-                final LocalScore score) {
-            assert id >= 0;
-
-            this.id = id;
-            this.score = score;
-        }
+    @NotNull
+    SortableIndex getSorter(final int sort) {
+        return indexes[sort];
+    }
 
-        @Override
-        public int compareTo(
-                @NotNull
-                final LocalScoredDocument o) {
-            return score.compareTo(o.score);
+    /**
+     * @param sort sort number
+     * @return sort value index (negated for descending order) of the last
+     * returned document
+     */
+    int getSortKey(final int sort) {
+        assert current >= 0;
+
+        if (sort == 0)
+            return firstValueIndex;
+        else {
+            final int width = indexes.length - 1;
+            return keys[current * width + sort - 1];
         }
+    }
 
-        @NotNull
-        SimpleScoredDocument toScoredDocument() {
-            return new SimpleScoredDocument(ctx, score.toScore(), id);
-        }
+    /**
+     * The same as {@link #next()}, but returns only document id without
+     * building its score
+     *
+     * @return the next document id
+     */
+    int nextDocument() {
+        // Chunk may change
+        final int position = nextPosition();
+        return ids[position];
+    }
+
+    @Override
+    public SimpleScoredDocument next() {
+        final int position = nextPosition();
+        final int width = indexes.length - 1;
+        final int[] sortValueIndexes = new int[indexes.length];
+        sortValueIndexes[0] = firstValueIndex;
+        if (width > 0)
+            System.arraycopy(
+                    keys,
+                    position * width,
+                    sortValueIndexes,
+                    1,
+                    width);
+
+        return new SimpleScoredDocument(
+                ctx,
+                new SimpleDocumentMultiScore(
+                        indexes,
+                        orders,
+                        sortValueIndexes),
+                ids[position]);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Removal is not supported");
     }
 }
@@ -0,0 +1,81 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.util;
+
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Temporary files created in a directory and removed explicitly by
+ * {@link #delete(File)} or all at once by {@link #close()}
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+public final class TemporaryFiles implements Closeable {
+    @NotNull
+    private final File directory;
+    @NotNull
+    private final Set<File> files = new LinkedHashSet<>();
+
+    public TemporaryFiles(
+            @NotNull
+            final File directory) {
+        if (!directory.isDirectory())
+            throw new IllegalArgumentException(
+                    "Not a directory: <" + directory + ">");
+
+        this.directory = directory;
+    }
+
+    /**
+     * @return new empty file
+     */
+    @NotNull
+    public File newFile() throws IOException {
+        final File file = File.createTempFile("yoctodb", ".tmp", directory);
+        files.add(file);
+        return file;
+    }
+
+    /**
+     * Removes the file created by {@link #newFile()}
+     *
+     * @param file file to remove
+     */
+    public void delete(
+            @NotNull
+            final File file) {
+        if (!files.remove(file))
+            throw new IllegalArgumentException("Unknown file <" + file + ">");
+
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    /**
+     * Removes all the remaining files
+     */
+    @Override
+    public void close() {
+        for (File file : files) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+        files.clear();
+    }
+}
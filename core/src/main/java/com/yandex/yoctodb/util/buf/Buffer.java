@@ -50,6 +50,13 @@ public abstract class Buffer implements Comparable<Buffer> {
         return new FileChannelBuffer(file);
     }
 
+    @NotNull
+    public static Buffer from(
+            @NotNull
+            final FileChannelPageCache cache) {
+        return new PageCachedFileChannelBuffer(cache);
+    }
+
     @NotNull
     public static Buffer mmap(
             @NotNull
@@ -57,14 +64,20 @@ public abstract class Buffer implements Comparable<Buffer> {
             @SuppressWarnings("SameParameterValue")
             final boolean forceToMemory) throws IOException {
         assert f.exists() : "File doesn't exist: " + f;
-        assert f.length() <= Integer.MAX_VALUE :
-                "mmapping of files >2 GB is not supported yet";
 
         // Mapping the file
         final MappedByteBuffer buffer;
         try (RandomAccessFile raf = new RandomAccessFile(f, "r")) {
             try (FileChannel ch = raf.getChannel()) {
-                buffer = ch.map(FileChannel.MapMode.READ_ONLY, 0, f.length());
+                // Files >2 GB are mapped in several regions
+                if (ch.size() > Integer.MAX_VALUE) {
+                    return MultiByteBufferWrapper.mmap(
+                            ch,
+                            MultiByteBufferWrapper.DEFAULT_CHUNK_SHIFT,
+                            forceToMemory);
+                }
+
+                buffer = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
             }
         }
 
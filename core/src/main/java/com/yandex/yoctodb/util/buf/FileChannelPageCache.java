@@ -0,0 +1,148 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.util.buf;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import net.jcip.annotations.ThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Bounded cache of fixed size pages read from {@link FileChannel}.
+ *
+ * Pages are evicted in approximately LRU order. The cache is shared by all
+ * the {@link PageCachedFileChannelBuffer}s (and their slices) created from
+ * it.
+ *
+ * @author incubos
+ */
+@ThreadSafe
+public final class FileChannelPageCache {
+    @NotNull
+    private final FileChannel ch;
+    private final long size;
+    private final int pageShift;
+    @NotNull
+    private final LoadingCache<Long, ByteBuffer> pages;
+
+    /**
+     * @param ch        file channel to read pages from
+     * @param pageShift page size logarithm, e.g. 12 for 4 KB pages
+     * @param maxPages  maximum number of pages to keep in memory
+     */
+    public FileChannelPageCache(
+            @NotNull
+            final FileChannel ch,
+            final int pageShift,
+            final long maxPages) {
+        if (pageShift < 3 || pageShift > 30) {
+            throw new IllegalArgumentException(
+                    "Unsupported page shift: " + pageShift);
+        }
+        if (maxPages <= 0) {
+            throw new IllegalArgumentException("Nonpositive page count");
+        }
+
+        this.ch = ch;
+        try {
+            this.size = ch.size();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        this.pageShift = pageShift;
+        this.pages =
+                CacheBuilder.newBuilder()
+                        .maximumSize(maxPages)
+                        .recordStats()
+                        .build(
+                                new CacheLoader<Long, ByteBuffer>() {
+                                    @Override
+                                    public ByteBuffer load(
+                                            @NotNull
+                                            final Long page)
+                                            throws IOException {
+                                        return read(page);
+                                    }
+                                });
+    }
+
+    @NotNull
+    private ByteBuffer read(final long page) throws IOException {
+        final long from = page << pageShift;
+        final int length =
+                (int) Math.min(1L << pageShift, size - from);
+
+        assert length > 0;
+
+        final ByteBuffer result = ByteBuffer.allocate(length);
+        while (result.hasRemaining()) {
+            final int c = ch.read(result, from + result.position());
+            if (c < 0) {
+                throw new IOException(
+                        "Unexpected end of file at page <" + page + ">");
+            }
+        }
+
+        return result;
+    }
+
+    long size() {
+        return size;
+    }
+
+    int pageShift() {
+        return pageShift;
+    }
+
+    /**
+     * Returns the page, reading it if not cached
+     *
+     * @param page page index
+     * @return page contents (the last page might be shorter)
+     */
+    @NotNull
+    ByteBuffer page(final long page) {
+        assert 0 <= page && (page << pageShift) < size;
+
+        try {
+            return pages.get(page);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * @return the number of page requests served from the cache
+     */
+    public long getHitCount() {
+        return pages.stats().hitCount();
+    }
+
+    /**
+     * @return the number of page requests which caused a read
+     */
+    public long getMissCount() {
+        return pages.stats().missCount();
+    }
+
+    /**
+     * @return the number of pages currently cached
+     */
+    public long getCachedPageCount() {
+        return pages.size();
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.util.buf;
+
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Big-endian implementation of {@link Buffer} based on a sequence of
+ * {@link ByteBuffer} chunks of the same power of two size (the last one might
+ * be shorter).
+ *
+ * Supports data larger than 2 GB (e.g. mmapped in several regions). Reads
+ * within a single chunk are delegated directly, reads straddling chunk
+ * boundaries are assembled byte by byte. Slices share the chunks.
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+public final class MultiByteBufferWrapper extends Buffer {
+    /**
+     * Default mapped chunk size is 1 GB
+     */
+    static final int DEFAULT_CHUNK_SHIFT = 30;
+
+    @NotNull
+    private final ByteBuffer[] chunks;
+    private final int chunkShift;
+    private final int chunkMask;
+    private final long offset;
+    private final long limit;
+    private long position;
+
+    public MultiByteBufferWrapper(
+            @NotNull
+            final ByteBuffer[] chunks,
+            final int chunkShift) {
+        if (chunks.length == 0) {
+            throw new IllegalArgumentException("No chunks");
+        }
+        if (chunkShift < 3 || chunkShift > 30) {
+            throw new IllegalArgumentException(
+                    "Unsupported chunk shift: " + chunkShift);
+        }
+
+        final int chunkSize = 1 << chunkShift;
+        long size = 0L;
+        for (int i = 0; i < chunks.length; i++) {
+            final int remaining = chunks[i].remaining();
+            if (i < chunks.length - 1 ? remaining != chunkSize
+                                      : remaining > chunkSize) {
+                throw new IllegalArgumentException(
+                        "Wrong chunk <" + i + "> size: " + remaining);
+            }
+            if (chunks[i].order() != ByteOrder.BIG_ENDIAN) {
+                throw new IllegalArgumentException(
+                        "Chunk <" + i + "> is not big-endian");
+            }
+            size += remaining;
+        }
+
+        this.chunks = new ByteBuffer[chunks.length];
+        for (int i = 0; i < chunks.length; i++) {
+            this.chunks[i] = chunks[i].slice();
+        }
+        this.chunkShift = chunkShift;
+        this.chunkMask = chunkSize - 1;
+        this.offset = 0L;
+        this.limit = size;
+        this.position = 0L;
+    }
+
+    private MultiByteBufferWrapper(
+            @NotNull
+            final ByteBuffer[] chunks,
+            final int chunkShift,
+            final long offset,
+            final long limit) {
+        assert 0 <= offset;
+        assert 0 <= limit;
+
+        this.chunks = chunks;
+        this.chunkShift = chunkShift;
+        this.chunkMask = (1 << chunkShift) - 1;
+        this.offset = offset;
+        this.limit = limit;
+        this.position = 0L;
+    }
+
+    /**
+     * Maps the whole file in chunks of {@code 1 << chunkShift} bytes
+     *
+     * @param ch            file channel to map
+     * @param chunkShift    chunk size logarithm
+     * @param forceToMemory whether to load mapped data
+     * @return buffer of the whole file
+     * @throws IOException if mapping fails
+     */
+    @NotNull
+    static Buffer mmap(
+            @NotNull
+            final FileChannel ch,
+            final int chunkShift,
+            final boolean forceToMemory) throws IOException {
+        final long size = ch.size();
+        final long chunkSize = 1L << chunkShift;
+        final int count =
+                (int) Math.max(1L, (size + chunkSize - 1) >>> chunkShift);
+
+        final ByteBuffer[] chunks = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            final long from = ((long) i) << chunkShift;
+            final MappedByteBuffer chunk =
+                    ch.map(
+                            FileChannel.MapMode.READ_ONLY,
+                            from,
+                            Math.min(chunkSize, size - from));
+
+            // Forcing data loading
+            if (forceToMemory) {
+                chunk.load();
+            }
+
+            chunks[i] = chunk.order(ByteOrder.BIG_ENDIAN);
+        }
+
+        return new MultiByteBufferWrapper(chunks, chunkShift);
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public Buffer position(final long position) {
+        assert 0 <= position && position <= limit;
+
+        this.position = position;
+
+        return this;
+    }
+
+    @Override
+    public Buffer advance(final long bytes) {
+        assert position + bytes <= limit;
+
+        this.position += bytes;
+
+        return this;
+    }
+
+    @Override
+    public long limit() {
+        return limit;
+    }
+
+    @Override
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+
+    @Override
+    public long remaining() {
+        return limit - position;
+    }
+
+    private void copy(
+            final long index,
+            final byte[] dst,
+            int offset,
+            int length) {
+        long address = this.offset + index;
+        while (length > 0) {
+            final ByteBuffer chunk =
+                    chunks[(int) (address >>> chunkShift)].duplicate();
+            final int from = (int) (address & chunkMask);
+            final int count = Math.min(length, chunk.limit() - from);
+
+            chunk.position(from);
+            chunk.get(dst, offset, count);
+
+            address += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    @Override
+    public Buffer get(
+            final byte[] dst,
+            final int offset,
+            final int length) {
+        assert length <= remaining();
+
+        copy(position, dst, offset, length);
+        this.position += length;
+
+        return this;
+    }
+
+    @Override
+    public Buffer get(final byte[] dst) {
+        return get(dst, 0, dst.length);
+    }
+
+    @Override
+    public byte get() {
+        assert hasRemaining();
+
+        final byte result = get(position);
+        this.position++;
+
+        return result;
+    }
+
+    @Override
+    public byte get(final long index) {
+        assert 0 <= index && index < limit;
+
+        final long address = offset + index;
+
+        return chunks[(int) (address >>> chunkShift)]
+                .get((int) (address & chunkMask));
+    }
+
+    @Override
+    public int getInt() {
+        assert remaining() >= 4;
+
+        final int result = getInt(position);
+        this.position += 4;
+
+        return result;
+    }
+
+    @Override
+    public int getInt(final long index) {
+        assert 0 <= index && index + 4 <= limit;
+
+        final long address = offset + index;
+        final int from = (int) (address & chunkMask);
+        if (from <= chunkMask - 3) {
+            return chunks[(int) (address >>> chunkShift)].getInt(from);
+        }
+
+        // Straddling chunk boundary
+        int result = 0;
+        for (int i = 0; i < 4; i++) {
+            result = (result << 8) | (get(index + i) & 0xff);
+        }
+        return result;
+    }
+
+    @Override
+    public long getLong() {
+        assert remaining() >= 8;
+
+        final long result = getLong(position);
+        this.position += 8;
+
+        return result;
+    }
+
+    @Override
+    public long getLong(final long index) {
+        assert 0 <= index && index + 8 <= limit;
+
+        final long address = offset + index;
+        final int from = (int) (address & chunkMask);
+        if (from <= chunkMask - 7) {
+            return chunks[(int) (address >>> chunkShift)].getLong(from);
+        }
+
+        // Straddling chunk boundary
+        long result = 0L;
+        for (int i = 0; i < 8; i++) {
+            result = (result << 8) | (get(index + i) & 0xffL);
+        }
+        return result;
+    }
+
+    @Override
+    public Buffer slice(
+            final long from,
+            final long size) {
+        assert 0 <= from;
+        assert 0 <= size;
+        assert from + size <= limit;
+
+        return new MultiByteBufferWrapper(
+                chunks,
+                chunkShift,
+                this.offset + from,
+                size);
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.util.buf;
+
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Big-endian implementation of {@link Buffer} reading {@link
+ * java.nio.channels.FileChannel} by pages through a shared {@link
+ * FileChannelPageCache}.
+ *
+ * The last used page is remembered by the buffer, so sequential reads don't
+ * hit the shared cache.
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+public final class PageCachedFileChannelBuffer extends Buffer {
+    @NotNull
+    private final FileChannelPageCache cache;
+    private final int pageShift;
+    private final int pageMask;
+    private final long offset;
+    private final long limit;
+    private long position;
+
+    private long lastPageIndex = -1L;
+    @Nullable
+    private ByteBuffer lastPage = null;
+
+    public PageCachedFileChannelBuffer(
+            @NotNull
+            final FileChannelPageCache cache) {
+        this(cache, 0L, cache.size());
+    }
+
+    private PageCachedFileChannelBuffer(
+            @NotNull
+            final FileChannelPageCache cache,
+            final long offset,
+            final long limit) {
+        assert 0 <= offset;
+        assert 0 <= limit;
+        assert offset + limit <= cache.size();
+
+        this.cache = cache;
+        this.pageShift = cache.pageShift();
+        this.pageMask = (1 << pageShift) - 1;
+        this.offset = offset;
+        this.limit = limit;
+        this.position = 0L;
+    }
+
+    @NotNull
+    private ByteBuffer page(final long address) {
+        final long pageIndex = address >>> pageShift;
+        if (pageIndex != lastPageIndex) {
+            lastPage = cache.page(pageIndex);
+            lastPageIndex = pageIndex;
+        }
+
+        assert lastPage != null;
+
+        return lastPage;
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public Buffer position(final long position) {
+        assert 0 <= position && position <= limit;
+
+        this.position = position;
+
+        return this;
+    }
+
+    @Override
+    public Buffer advance(final long bytes) {
+        assert position + bytes <= limit;
+
+        this.position += bytes;
+
+        return this;
+    }
+
+    @Override
+    public long limit() {
+        return limit;
+    }
+
+    @Override
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+
+    @Override
+    public long remaining() {
+        return limit - position;
+    }
+
+    @Override
+    public Buffer get(
+            final byte[] dst,
+            int offset,
+            int length) {
+        assert length <= remaining();
+
+        long address = this.offset + this.position;
+        this.position += length;
+
+        while (length > 0) {
+            final ByteBuffer page = page(address).duplicate();
+            final int from = (int) (address & pageMask);
+            final int count = Math.min(length, page.limit() - from);
+
+            page.position(from);
+            page.get(dst, offset, count);
+
+            address += count;
+            offset += count;
+            length -= count;
+        }
+
+        return this;
+    }
+
+    @Override
+    public Buffer get(final byte[] dst) {
+        return get(dst, 0, dst.length);
+    }
+
+    @Override
+    public byte get() {
+        assert hasRemaining();
+
+        final byte result = get(position);
+        this.position++;
+
+        return result;
+    }
+
+    @Override
+    public byte get(final long index) {
+        assert 0 <= index && index < limit;
+
+        final long address = offset + index;
+
+        return page(address).get((int) (address & pageMask));
+    }
+
+    @Override
+    public int getInt() {
+        assert remaining() >= 4;
+
+        final int result = getInt(position);
+        this.position += 4;
+
+        return result;
+    }
+
+    @Override
+    public int getInt(final long index) {
+        assert 0 <= index && index + 4 <= limit;
+
+        final long address = offset + index;
+        final int from = (int) (address & pageMask);
+        if (from <= pageMask - 3) {
+            return page(address).getInt(from);
+        }
+
+        // Straddling page boundary
+        int result = 0;
+        for (int i = 0; i < 4; i++) {
+            result = (result << 8) | (get(index + i) & 0xff);
+        }
+        return result;
+    }
+
+    @Override
+    public long getLong() {
+        assert remaining() >= 8;
+
+        final long result = getLong(position);
+        this.position += 8;
+
+        return result;
+    }
+
+    @Override
+    public long getLong(final long index) {
+        assert 0 <= index && index + 8 <= limit;
+
+        final long address = offset + index;
+        final int from = (int) (address & pageMask);
+        if (from <= pageMask - 7) {
+            return page(address).getLong(from);
+        }
+
+        // Straddling page boundary
+        long result = 0L;
+        for (int i = 0; i < 8; i++) {
+            result = (result << 8) | (get(index + i) & 0xffL);
+        }
+        return result;
+    }
+
+    @Override
+    public Buffer slice(
+            final long from,
+            final long size) {
+        assert 0 <= from;
+        assert 0 <= size;
+        assert from + size <= limit;
+
+        return new PageCachedFileChannelBuffer(
+                cache,
+                this.offset + from,
+                size);
+    }
+}
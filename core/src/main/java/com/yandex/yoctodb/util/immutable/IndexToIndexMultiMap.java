@@ -42,6 +42,20 @@ public interface IndexToIndexMultiMap {
             int fromInclusive,
             int toExclusive);
 
+    /**
+     * Estimates the number of values in the sets for the keys in the range.
+     *
+     * The estimate is never less than the size of the union of the sets, so
+     * zero means that the sets are empty.
+     *
+     * @param fromInclusive the first key
+     * @param toExclusive   the key after the last one
+     * @return upper bound of the number of values
+     */
+    long estimateBetween(
+            int fromInclusive,
+            int toExclusive);
+
     @NotNull
     Iterator<IntToIntArray> ascending(
             @NotNull
@@ -75,19 +75,11 @@ public class BitSetIndexToIndexMultiMap implements IndexToIndexMultiMap {
             final int fromInclusive) {
         assert 0 <= fromInclusive && fromInclusive < keysCount;
 
-        boolean result = false;
-
-        long current = fromInclusive * bitSetSizeInBytes;
-        final long remaining = elements.remaining();
-
-        assert remaining <= Integer.MAX_VALUE;
-
-        while (current < remaining) {
-            result |= dest.or(elements, current, bitSetSizeInLongs);
-            current += bitSetSizeInBytes;
-        }
-
-        return result;
+        return dest.orRange(
+                elements,
+                fromInclusive * bitSetSizeInBytes,
+                bitSetSizeInLongs,
+                keysCount - fromInclusive);
     }
 
     @Override
@@ -97,18 +89,7 @@ public class BitSetIndexToIndexMultiMap implements IndexToIndexMultiMap {
             final int toExclusive) {
         assert 0 < toExclusive && toExclusive <= keysCount;
 
-        int remaining = toExclusive;
-
-        boolean result = false;
-
-        int current = 0;
-        while (remaining > 0) {
-            result |= dest.or(elements, current, bitSetSizeInLongs);
-            current += bitSetSizeInBytes;
-            remaining--;
-        }
-
-        return result;
+        return dest.orRange(elements, 0L, bitSetSizeInLongs, toExclusive);
     }
 
     @Override
@@ -121,17 +102,23 @@ public class BitSetIndexToIndexMultiMap implements IndexToIndexMultiMap {
                 fromInclusive < toExclusive &&
                 toExclusive <= keysCount;
 
-        int remaining = toExclusive - fromInclusive;
-        long current = fromInclusive * bitSetSizeInBytes;
-        boolean result = false;
+        return dest.orRange(
+                elements,
+                fromInclusive * bitSetSizeInBytes,
+                bitSetSizeInLongs,
+                toExclusive - fromInclusive);
+    }
 
-        while (remaining > 0) {
-            result |= dest.or(elements, current, bitSetSizeInLongs);
-            current += bitSetSizeInBytes;
-            remaining--;
-        }
+    @Override
+    public long estimateBetween(
+            final int fromInclusive,
+            final int toExclusive) {
+        assert 0 <= fromInclusive &&
+               fromInclusive < toExclusive &&
+               toExclusive <= keysCount;
 
-        return result;
+        // Cardinalities are not stored, so bit set size is the only bound
+        return ((long) bitSetSizeInLongs) << 6;
     }
 
     @Override
@@ -0,0 +1,363 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.util.immutable.impl;
+
+import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.util.immutable.IndexToIndexMultiMap;
+import com.yandex.yoctodb.util.immutable.IntToIntArray;
+import com.yandex.yoctodb.util.mutable.ArrayBitSet;
+import com.yandex.yoctodb.util.mutable.BitSet;
+import com.yandex.yoctodb.util.mutable.impl.AdaptiveBitSet;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import net.jcip.annotations.Immutable;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Iterator;
+
+/**
+ * {@link IndexToIndexMultiMap} implementation based on compressed bit sets
+ * (see {@link com.yandex.yoctodb.util.mutable.impl.CompressedBitSetIndexToIndexMultiMap}
+ * for the format).
+ *
+ * Containers are applied directly to the words of {@link ArrayBitSet}s
+ * without decoding to document indexes.
+ *
+ * @author incubos
+ */
+@Immutable
+public final class CompressedBitSetIndexToIndexMultiMap
+        implements IndexToIndexMultiMap {
+    private static final int CHUNK_SHIFT = 16;
+    private static final int CHUNK_WORDS = 1 << (CHUNK_SHIFT - 6);
+    private static final int ARRAY =
+            V1DatabaseFormat.ContainerType.ARRAY.getCode();
+    private static final int BITMAP =
+            V1DatabaseFormat.ContainerType.BITMAP.getCode();
+    private static final int RUN =
+            V1DatabaseFormat.ContainerType.RUN.getCode();
+
+    private final int keysCount;
+    private final int documentsCount;
+    private final int bitSetSizeInLongs;
+    @NotNull
+    private final Buffer offsets;
+    @NotNull
+    private final Buffer cardinalities;
+    @NotNull
+    private final Buffer elements;
+
+    @NotNull
+    public static IndexToIndexMultiMap from(
+            @NotNull
+            final Buffer buf) {
+        final int keysCount = buf.getInt();
+        final int documentsCount = buf.getInt();
+        final Buffer offsets = buf.slice(((long) keysCount) << 3);
+        final Buffer cardinalities =
+                buf.slice()
+                        .position(offsets.remaining())
+                        .slice(((long) keysCount + 1) << 3);
+        final Buffer elements =
+                buf.slice()
+                        .position(
+                                offsets.remaining() +
+                                cardinalities.remaining())
+                        .slice();
+
+        return new CompressedBitSetIndexToIndexMultiMap(
+                keysCount,
+                documentsCount,
+                offsets,
+                cardinalities,
+                elements);
+    }
+
+    private CompressedBitSetIndexToIndexMultiMap(
+            final int keysCount,
+            final int documentsCount,
+            @NotNull
+            final Buffer offsets,
+            @NotNull
+            final Buffer cardinalities,
+            @NotNull
+            final Buffer elements) {
+        assert keysCount >= 0 : "Negative keys count";
+        assert documentsCount >= 0 : "Negative documents count";
+
+        this.keysCount = keysCount;
+        this.documentsCount = documentsCount;
+        this.bitSetSizeInLongs = (documentsCount >>> 6) + 1;
+        this.offsets = offsets;
+        this.cardinalities = cardinalities;
+        this.elements = elements;
+    }
+
+    private char getChar(final long index) {
+        return (char) ((elements.get(index) & 0xff) << 8 |
+                       (elements.get(index + 1) & 0xff));
+    }
+
+    private static void setRange(
+            @NotNull
+            final long[] words,
+            final int fromInclusive,
+            final int toExclusive) {
+        assert fromInclusive < toExclusive;
+
+        final int first = fromInclusive >>> 6;
+        final int last = (toExclusive - 1) >>> 6;
+        final long firstMask = -1L << fromInclusive;
+        final long lastMask = -1L >>> -toExclusive;
+
+        if (first == last) {
+            words[first] |= firstMask & lastMask;
+        } else {
+            words[first] |= firstMask;
+            for (int i = first + 1; i < last; i++) {
+                words[i] = -1L;
+            }
+            words[last] |= lastMask;
+        }
+    }
+
+    /**
+     * ORs containers of the set starting at {@code position} into words
+     *
+     * @return position of the next set
+     */
+    private long or(
+            @NotNull
+            final long[] words,
+            final long position) {
+        long current = position;
+        final int containers = elements.getInt(current);
+        current += 4L;
+
+        for (int c = 0; c < containers; c++) {
+            final int header = elements.getInt(current);
+            current += 4L;
+            final int chunk = header >>> 2;
+            final int type = header & 0x3;
+            final int base = chunk << CHUNK_SHIFT;
+
+            if (type == ARRAY) {
+                final int size = elements.getInt(current);
+                current += 4L;
+                for (int i = 0; i < size; i++) {
+                    final int doc = base | getChar(current);
+                    current += 2L;
+                    words[doc >>> 6] |= 1L << doc;
+                }
+            } else if (type == BITMAP) {
+                final int firstWord = chunk * CHUNK_WORDS;
+                final int count =
+                        Math.min(CHUNK_WORDS, bitSetSizeInLongs - firstWord);
+                for (int i = 0; i < count; i++) {
+                    words[firstWord + i] |= elements.getLong(current);
+                    current += 8L;
+                }
+            } else if (type == RUN) {
+                final int runs = elements.getInt(current);
+                current += 4L;
+                for (int i = 0; i < runs; i++) {
+                    final int start = base | getChar(current);
+                    final int length = getChar(current + 2L) + 1;
+                    current += 4L;
+                    setRange(words, start, start + length);
+                }
+            } else {
+                throw new UnsupportedOperationException(
+                        "Unsupported container type: " + type);
+            }
+        }
+
+        return current;
+    }
+
+    /**
+     * Sets the documents of the set starting at {@code position} one by one
+     *
+     * @return position of the next set
+     */
+    private long set(
+            @NotNull
+            final BitSet dest,
+            final long position) {
+        long current = position;
+        final int containers = elements.getInt(current);
+        current += 4L;
+
+        for (int c = 0; c < containers; c++) {
+            final int header = elements.getInt(current);
+            current += 4L;
+            final int chunk = header >>> 2;
+            final int type = header & 0x3;
+            final int base = chunk << CHUNK_SHIFT;
+
+            if (type == ARRAY) {
+                final int size = elements.getInt(current);
+                current += 4L;
+                for (int i = 0; i < size; i++) {
+                    dest.set(base | getChar(current));
+                    current += 2L;
+                }
+            } else if (type == BITMAP) {
+                final int firstWord = chunk * CHUNK_WORDS;
+                final int count =
+                        Math.min(CHUNK_WORDS, bitSetSizeInLongs - firstWord);
+                for (int i = 0; i < count; i++) {
+                    long word = elements.getLong(current);
+                    current += 8L;
+                    while (word != 0L) {
+                        dest.set(
+                                (firstWord + i) << 6 |
+                                Long.numberOfTrailingZeros(word));
+                        word &= word - 1L;
+                    }
+                }
+            } else if (type == RUN) {
+                final int runs = elements.getInt(current);
+                current += 4L;
+                for (int i = 0; i < runs; i++) {
+                    final int start = base | getChar(current);
+                    final int length = getChar(current + 2L) + 1;
+                    current += 4L;
+                    for (int doc = start; doc < start + length; doc++) {
+                        dest.set(doc);
+                    }
+                }
+            } else {
+                throw new UnsupportedOperationException(
+                        "Unsupported container type: " + type);
+            }
+        }
+
+        return current;
+    }
+
+    private boolean fill(
+            @NotNull
+            final BitSet dest,
+            final int fromInclusive,
+            final int toExclusive) {
+        assert dest.getSize() == documentsCount;
+
+        long current = offsets.getLong(((long) fromInclusive) << 3);
+
+        final ArrayBitSet target;
+        if (dest instanceof ArrayBitSet) {
+            target = (ArrayBitSet) dest;
+        } else if (dest instanceof AdaptiveBitSet) {
+            target = ((AdaptiveBitSet) dest).toDense();
+        } else {
+            // E.g. restricted to candidates, so no dense bit set is built
+            for (int key = fromInclusive; key < toExclusive; key++) {
+                current = set(dest, current);
+            }
+
+            // Sets are never empty
+            return true;
+        }
+
+        final long[] words = target.toArray();
+        for (int key = fromInclusive; key < toExclusive; key++) {
+            current = or(words, current);
+        }
+
+        // Sets are never empty
+        return true;
+    }
+
+    @Override
+    public boolean get(
+            @NotNull
+            final BitSet dest,
+            final int key) {
+        assert 0 <= key && key < keysCount;
+
+        return fill(dest, key, key + 1);
+    }
+
+    @Override
+    public boolean getFrom(
+            @NotNull
+            final BitSet dest,
+            final int fromInclusive) {
+        assert 0 <= fromInclusive && fromInclusive < keysCount;
+
+        return fill(dest, fromInclusive, keysCount);
+    }
+
+    @Override
+    public boolean getTo(
+            @NotNull
+            final BitSet dest,
+            final int toExclusive) {
+        assert 0 < toExclusive && toExclusive <= keysCount;
+
+        return fill(dest, 0, toExclusive);
+    }
+
+    @Override
+    public boolean getBetween(
+            @NotNull
+            final BitSet dest,
+            final int fromInclusive,
+            final int toExclusive) {
+        assert 0 <= fromInclusive &&
+               fromInclusive < toExclusive &&
+               toExclusive <= keysCount;
+
+        return fill(dest, fromInclusive, toExclusive);
+    }
+
+    @Override
+    public long estimateBetween(
+            final int fromInclusive,
+            final int toExclusive) {
+        assert 0 <= fromInclusive &&
+               fromInclusive < toExclusive &&
+               toExclusive <= keysCount;
+
+        // Only the cardinalities are read, not the sets
+        return cardinalities.getLong(((long) toExclusive) << 3) -
+               cardinalities.getLong(((long) fromInclusive) << 3);
+    }
+
+    @Override
+    public int getKeysCount() {
+        return keysCount;
+    }
+
+    @NotNull
+    @Override
+    public Iterator<IntToIntArray> ascending(
+            @NotNull
+            final BitSet valueFilter) {
+        throw new UnsupportedOperationException();
+    }
+
+    @NotNull
+    @Override
+    public Iterator<IntToIntArray> descending(
+            @NotNull
+            final BitSet valueFilter) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public String toString() {
+        return "CompressedBitSetIndexToIndexMultiMap{" +
+               "keysCount=" + keysCount +
+               ", documentsCount=" + documentsCount +
+               '}';
+    }
+}
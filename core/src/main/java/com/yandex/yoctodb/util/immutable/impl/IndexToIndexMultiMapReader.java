@@ -35,6 +35,11 @@ public final class IndexToIndexMultiMapReader {
             return IntIndexToIndexMultiMap.from(byteBuffer.slice());
         } else if (type == V1DatabaseFormat.MultiMapType.LONG_ARRAY_BIT_SET_BASED.getCode()) {
             return BitSetIndexToIndexMultiMap.from(byteBuffer.slice());
+        } else if (type == V1DatabaseFormat.MultiMapType.COMPRESSED_BIT_SET_BASED.getCode()) {
+            return CompressedBitSetIndexToIndexMultiMap.from(
+                    byteBuffer.slice());
+        } else if (type == V1DatabaseFormat.MultiMapType.PACKED_LIST_BASED.getCode()) {
+            return PackedIntIndexToIndexMultiMap.from(byteBuffer.slice());
         } else {
             throw new UnsupportedOperationException(
                     "Unsupported IndexToIndexMultiMap type: " + type);
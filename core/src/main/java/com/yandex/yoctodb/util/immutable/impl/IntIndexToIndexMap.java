@@ -48,7 +48,12 @@ public class IntIndexToIndexMap implements IndexToIndexMap {
 
     @Override
     public int get(final int key) {
-        assert 0 <= key && key < elementCount;
+        assert 0 <= key;
+
+        // Trailing keys may be absent
+        if (key >= elementCount) {
+            return -1;
+        }
 
         return elements.getInt(((long) key) << 2);
     }
@@ -17,6 +17,7 @@ import org.jetbrains.annotations.Nullable;
 import com.yandex.yoctodb.util.immutable.IndexToIndexMultiMap;
 import com.yandex.yoctodb.util.immutable.IntToIntArray;
 import com.yandex.yoctodb.util.mutable.BitSet;
+import com.yandex.yoctodb.util.mutable.impl.RestrictedBitSet;
 
 import java.util.Iterator;
 import java.util.NoSuchElementException;
@@ -60,6 +61,76 @@ public final class IntIndexToIndexMultiMap implements IndexToIndexMultiMap {
         this.elements = elements;
     }
 
+    @Nullable
+    private static BitSet candidates(
+            @NotNull
+            final BitSet dest) {
+        return dest instanceof RestrictedBitSet ?
+                ((RestrictedBitSet) dest).getCandidates() :
+                null;
+    }
+
+    /**
+     * Sets the values of the set starting at {@code start}
+     *
+     * @param candidates      values to look up in the set or {@code null}
+     * @param candidatesCount number of candidates
+     * @return position of the next set
+     */
+    private long set(
+            @NotNull
+            final BitSet dest,
+            final long start,
+            @Nullable
+            final BitSet candidates,
+            final int candidatesCount) {
+        final int size = elements.getInt(start);
+        final long from = start + 4L;
+        final long to = from + (((long) size) << 2);
+
+        if (candidates != null &&
+            ((long) candidatesCount) *
+            (32 - Integer.numberOfLeadingZeros(size)) < size) {
+            // Looking up each candidate instead of traversing the set
+            long low = from;
+            for (int c = candidates.nextSetBit(0);
+                 c >= 0 && low < to;
+                 c = candidates.nextSetBit(c + 1)) {
+                low = lowerBound(low, to, c);
+                if (low < to && elements.getInt(low) == c) {
+                    dest.set(c);
+                    low += 4L;
+                }
+            }
+        } else {
+            for (long i = from; i < to; i += 4L)
+                dest.set(elements.getInt(i));
+        }
+
+        return to;
+    }
+
+    /**
+     * @return position of the first value not less than {@code value}
+     */
+    private long lowerBound(
+            final long from,
+            final long to,
+            final int value) {
+        long low = 0L;
+        long high = (to - from) >>> 2;
+        while (low < high) {
+            final long middle = (low + high) >>> 1;
+            if (elements.getInt(from + (middle << 2)) < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return from + (low << 2);
+    }
+
     @Override
     public boolean get(
             @NotNull
@@ -67,15 +138,7 @@ public final class IntIndexToIndexMultiMap implements IndexToIndexMultiMap {
             final int key) {
         assert 0 <= key && key < keysCount;
 
-        final long start = offsets.getLong(((long) key) << 3);
-
-        final int size = elements.getInt(start);
-        final long from = start + 4L;
-        final long to = from + (((long) size) << 2);
-        for (long i = from; i < to; i += 4L)
-            dest.set(elements.getInt(i));
-
-        return size > 0;
+        return fill(dest, offsets.getLong(((long) key) << 3), 1);
     }
 
     @Override
@@ -85,24 +148,10 @@ public final class IntIndexToIndexMultiMap implements IndexToIndexMultiMap {
             final int fromInclusive) {
         assert 0 <= fromInclusive && fromInclusive < keysCount;
 
-        boolean result = false;
-
-        long current = offsets.getLong(((long) fromInclusive) << 3);
-        final long remaining = elements.remaining();
-
-        assert remaining <= Integer.MAX_VALUE;
-
-        while (current < remaining) {
-            int size = elements.getInt(current);
-            current += 4L;
-            result |= size > 0;
-            for (; 0 < size; size--) {
-                dest.set(elements.getInt(current));
-                current += 4L;
-            }
-        }
-
-        return result;
+        return fill(
+                dest,
+                offsets.getLong(((long) fromInclusive) << 3),
+                keysCount - fromInclusive);
     }
 
     private boolean fill(
@@ -110,19 +159,15 @@ public final class IntIndexToIndexMultiMap implements IndexToIndexMultiMap {
             final BitSet dest,
             final long from,
             final int count) {
-        boolean result = false;
+        final BitSet candidates = candidates(dest);
+        final int candidatesCount =
+                candidates == null ? 0 : candidates.cardinality();
 
+        boolean result = false;
         long current = from;
-        int remaining = count;
-        while (remaining > 0) {
-            int size = elements.getInt(current);
-            current += 4L;
-            result |= size > 0;
-            for (; 0 < size; size--) {
-                dest.set(elements.getInt(current));
-                current += 4L;
-            }
-            remaining--;
+        for (int remaining = count; remaining > 0; remaining--) {
+            result |= elements.getInt(current) > 0;
+            current = set(dest, current, candidates, candidatesCount);
         }
 
         return result;
@@ -154,6 +199,24 @@ public final class IntIndexToIndexMultiMap implements IndexToIndexMultiMap {
         return fill(dest, start, count);
     }
 
+    @Override
+    public long estimateBetween(
+            final int fromInclusive,
+            final int toExclusive) {
+        assert 0 <= fromInclusive &&
+               fromInclusive < toExclusive &&
+               toExclusive <= keysCount;
+
+        final long from = offsets.getLong(((long) fromInclusive) << 3);
+        final long to =
+                toExclusive == keysCount ?
+                        elements.remaining() :
+                        offsets.getLong(((long) toExclusive) << 3);
+
+        // Each set is prefixed with its size
+        return ((to - from) >>> 2) - (toExclusive - fromInclusive);
+    }
+
     @Override
     public int getKeysCount() {
         return keysCount;
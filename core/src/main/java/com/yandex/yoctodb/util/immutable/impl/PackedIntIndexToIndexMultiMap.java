@@ -0,0 +1,425 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.util.immutable.impl;
+
+import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.util.immutable.IndexToIndexMultiMap;
+import com.yandex.yoctodb.util.immutable.IntToIntArray;
+import com.yandex.yoctodb.util.mutable.BitSet;
+import net.jcip.annotations.Immutable;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * {@link IndexToIndexMultiMap} implementation based on delta encoded sets
+ * packed in blocks (see
+ * {@link com.yandex.yoctodb.util.mutable.impl.PackedIntIndexToIndexMultiMap}
+ * for the format).
+ *
+ * Blocks are unpacked in batches into per-thread buffers and then applied to
+ * {@link BitSet}s, so lookups don't allocate.
+ *
+ * @author incubos
+ */
+@Immutable
+public final class PackedIntIndexToIndexMultiMap
+        implements IndexToIndexMultiMap {
+    private static final int BLOCK_SIZE = 128;
+
+    private static class Decoders extends ThreadLocal<Decoder> {
+        @Override
+        protected Decoder initialValue() {
+            return new Decoder();
+        }
+    }
+
+    @NotNull
+    private static final ThreadLocal<Decoder> DECODERS = new Decoders();
+
+    private final int keysCount;
+    @NotNull
+    private final Buffer offsets;
+    @NotNull
+    private final Buffer cardinalities;
+    @NotNull
+    private final Buffer elements;
+
+    @NotNull
+    public static IndexToIndexMultiMap from(
+            @NotNull
+            final Buffer buf) {
+        final int keysCount = buf.getInt();
+        final Buffer offsets = buf.slice(((long) keysCount) << 3);
+        final Buffer cardinalities =
+                buf.slice()
+                        .position(offsets.remaining())
+                        .slice(((long) keysCount + 1) << 3);
+        final Buffer elements =
+                buf.slice()
+                        .position(
+                                offsets.remaining() +
+                                cardinalities.remaining())
+                        .slice();
+
+        return new PackedIntIndexToIndexMultiMap(
+                keysCount,
+                offsets,
+                cardinalities,
+                elements);
+    }
+
+    private PackedIntIndexToIndexMultiMap(
+            final int keysCount,
+            @NotNull
+            final Buffer offsets,
+            @NotNull
+            final Buffer cardinalities,
+            @NotNull
+            final Buffer elements) {
+        assert keysCount >= 0 : "Negative keys count";
+
+        this.keysCount = keysCount;
+        this.offsets = offsets;
+        this.cardinalities = cardinalities;
+        this.elements = elements;
+    }
+
+    /**
+     * Set decoding state reused by the lookups of the current thread
+     */
+    private static final class Decoder {
+        private final int[] block = new int[BLOCK_SIZE];
+        private final long[] words = new long[BLOCK_SIZE / 2];
+        private long position;
+        private int remaining;
+        private int previous;
+
+        /**
+         * Starts decoding at {@code position}
+         *
+         * @return this decoder
+         */
+        @NotNull
+        private Decoder reset(final long position) {
+            this.position = position;
+            this.remaining = 0;
+
+            return this;
+        }
+
+        /**
+         * Starts decoding of the next set
+         *
+         * @return set size
+         */
+        private int nextSet(
+                @NotNull
+                final Buffer elements) {
+            assert remaining == 0;
+
+            remaining = elements.getInt(position);
+            position += 4L;
+            previous = -1;
+
+            return remaining;
+        }
+
+        /**
+         * Decodes the next block of the current set into {@link #block}
+         *
+         * @return number of decoded values
+         */
+        private int nextBlock(
+                @NotNull
+                final Buffer elements) {
+            assert remaining > 0;
+
+            final int count = Math.min(BLOCK_SIZE, remaining);
+            final int header = elements.getInt(position);
+            position += 4L;
+            final int width = header >>> 8;
+            final int exceptions = header & 0xff;
+
+            // Unpacking low bits
+            final int wordCount = (count * width + 63) >>> 6;
+            for (int i = 0; i < wordCount; i++) {
+                words[i] = elements.getLong(position);
+                position += 8L;
+            }
+
+            if (width == 0) {
+                for (int i = 0; i < count; i++) {
+                    block[i] = 0;
+                }
+            } else {
+                final long mask =
+                        width == 32 ? 0xffffffffL : (1L << width) - 1L;
+                int bit = 0;
+                for (int i = 0; i < count; i++) {
+                    final int word = bit >>> 6;
+                    final int shift = bit & 0x3f;
+                    long value = words[word] >>> shift;
+                    if (shift + width > 64) {
+                        value |= words[word + 1] << (64 - shift);
+                    }
+                    block[i] = (int) (value & mask);
+                    bit += width;
+                }
+            }
+
+            // Patching exceptions
+            for (int i = 0; i < exceptions; i++) {
+                final int index = elements.getInt(position);
+                final int high = elements.getInt(position + 4L);
+                position += 8L;
+                block[index] |= high << width;
+            }
+
+            // Restoring values from deltas
+            int value = previous;
+            for (int i = 0; i < count; i++) {
+                value += block[i] + 1;
+                block[i] = value;
+            }
+            previous = value;
+            remaining -= count;
+
+            return count;
+        }
+
+        /**
+         * Sets all the values of the next {@code sets} sets in {@code dest}
+         *
+         * @return whether there were any values
+         */
+        private boolean fill(
+                @NotNull
+                final Buffer elements,
+                @NotNull
+                final BitSet dest,
+                final int sets) {
+            boolean result = false;
+            for (int s = 0; s < sets; s++) {
+                result |= nextSet(elements) > 0;
+                while (remaining > 0) {
+                    final int count = nextBlock(elements);
+                    for (int i = 0; i < count; i++) {
+                        dest.set(block[i]);
+                    }
+                }
+            }
+
+            return result;
+        }
+    }
+
+    @NotNull
+    private Decoder decoder(final int key) {
+        return DECODERS.get().reset(offsets.getLong(((long) key) << 3));
+    }
+
+    @Override
+    public boolean get(
+            @NotNull
+            final BitSet dest,
+            final int key) {
+        assert 0 <= key && key < keysCount;
+
+        return decoder(key).fill(elements, dest, 1);
+    }
+
+    @Override
+    public boolean getFrom(
+            @NotNull
+            final BitSet dest,
+            final int fromInclusive) {
+        assert 0 <= fromInclusive && fromInclusive < keysCount;
+
+        return decoder(fromInclusive)
+                .fill(elements, dest, keysCount - fromInclusive);
+    }
+
+    @Override
+    public boolean getTo(
+            @NotNull
+            final BitSet dest,
+            final int toExclusive) {
+        assert 0 < toExclusive && toExclusive <= keysCount;
+
+        return decoder(0).fill(elements, dest, toExclusive);
+    }
+
+    @Override
+    public boolean getBetween(
+            @NotNull
+            final BitSet dest,
+            final int fromInclusive,
+            final int toExclusive) {
+        assert 0 <= fromInclusive &&
+               fromInclusive < toExclusive &&
+               toExclusive <= keysCount;
+
+        return decoder(fromInclusive)
+                .fill(elements, dest, toExclusive - fromInclusive);
+    }
+
+    @Override
+    public long estimateBetween(
+            final int fromInclusive,
+            final int toExclusive) {
+        assert 0 <= fromInclusive &&
+               fromInclusive < toExclusive &&
+               toExclusive <= keysCount;
+
+        // Only the cardinalities are read, not the sets
+        return cardinalities.getLong(((long) toExclusive) << 3) -
+               cardinalities.getLong(((long) fromInclusive) << 3);
+    }
+
+    @Override
+    public int getKeysCount() {
+        return keysCount;
+    }
+
+    @Override
+    public String toString() {
+        return "PackedIntIndexToIndexMultiMap{" +
+               "keysCount=" + keysCount +
+               '}';
+    }
+
+    private IntToIntArray getFilteredValues(
+            final int key,
+            @NotNull
+            final BitSet valueFilter) {
+        assert 0 <= key && key < keysCount;
+
+        final Decoder decoder = decoder(key);
+        final int size = decoder.nextSet(elements);
+
+        assert size > 0;
+
+        int[] values = null;
+        int count = 0;
+        int decoded = 0;
+        while (decoder.remaining > 0) {
+            final int blockCount = decoder.nextBlock(elements);
+            for (int i = 0; i < blockCount; i++) {
+                final int value = decoder.block[i];
+                if (valueFilter.get(value)) {
+                    // Lazy allocation
+                    if (values == null) {
+                        values = new int[size - decoded - i];
+                    }
+                    values[count] = value;
+                    count++;
+                }
+            }
+            decoded += blockCount;
+        }
+
+        if (values == null) {
+            return null;
+        } else {
+            return new IntToIntArray(key, values, count);
+        }
+    }
+
+    @NotNull
+    @Override
+    public Iterator<IntToIntArray> ascending(
+            @NotNull
+            final BitSet valueFilter) {
+        return new Iterator<IntToIntArray>() {
+            private int key = 0;
+            private IntToIntArray next = null;
+
+            private void advance() {
+                while (next == null && key < keysCount) {
+                    next = getFilteredValues(key++, valueFilter);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                if (next != null)
+                    return true;
+
+                advance();
+
+                return next != null;
+            }
+
+            @Override
+            public IntToIntArray next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                final IntToIntArray result = next;
+                next = null;
+
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException(
+                        "Removal not supported");
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public Iterator<IntToIntArray> descending(
+            @NotNull
+            final BitSet valueFilter) {
+        return new Iterator<IntToIntArray>() {
+            private int key = keysCount - 1;
+            private IntToIntArray next = null;
+
+            private void advance() {
+                while (next == null && key >= 0) {
+                    next = getFilteredValues(key--, valueFilter);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                if (next != null)
+                    return true;
+
+                advance();
+
+                return next != null;
+            }
+
+            @Override
+            public IntToIntArray next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+
+                final IntToIntArray result = next;
+                next = null;
+
+                return result;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException(
+                        "Removal not supported");
+            }
+        };
+    }
+}
@@ -85,6 +85,18 @@ public interface BitSet {
             @NotNull
             BitSet set);
 
+    /**
+     * Modify current bit set by clearing bits set in {@code set}, i.e. by
+     * applying bitwise {@code AND NOT} operation
+     *
+     * @param set source bit set
+     *
+     * @return whether there are nonzero bits
+     */
+    boolean andNot(
+            @NotNull
+            BitSet set);
+
     /**
      * Modify current bit set by applying bitwise {@code OR}
      *
@@ -111,6 +123,27 @@ public interface BitSet {
             long startPosition,
             int bitSetSizeInLongs);
 
+    /**
+     * Modify current bit set by applying bitwise {@code OR} with {@code count}
+     * bit sets stored one after another.
+     *
+     * Equivalent to calling {@link #or(Buffer, long, int)} for each of the
+     * source bit sets, but may traverse the current bit set once.
+     *
+     * @param longArrayBitSetsInByteBuffer source bit sets
+     * @param startPosition                position of the first bit set
+     * @param bitSetSizeInLongs            bit set size in {@code long}s
+     * @param count                        number of source bit sets
+     *
+     * @return whether there are nonzero bits
+     */
+    boolean orRange(
+            @NotNull
+            Buffer longArrayBitSetsInByteBuffer,
+            long startPosition,
+            int bitSetSizeInLongs,
+            int count);
+
     /**
      * Checks whether there are nonzero bits in current bit set
      *
@@ -10,6 +10,7 @@
 
 package com.yandex.yoctodb.util.mutable.impl;
 
+import com.google.common.collect.Ordering;
 import net.jcip.annotations.NotThreadSafe;
 import org.jetbrains.annotations.NotNull;
 import com.yandex.yoctodb.util.UnsignedByteArray;
@@ -25,10 +26,19 @@ import java.util.*;
 @NotThreadSafe
 abstract class AbstractByteArraySortedSet
         implements ByteArraySortedSet {
-    final SortedSet<UnsignedByteArray> elements;
+    // Ascending unique elements
+    final List<UnsignedByteArray> elements;
 
     AbstractByteArraySortedSet(
             final SortedSet<UnsignedByteArray> elements) {
+        this(new ArrayList<>(elements));
+    }
+
+    AbstractByteArraySortedSet(
+            final List<UnsignedByteArray> elements) {
+        assert Ordering.natural().isStrictlyOrdered(elements) :
+                "Unsorted elements";
+
         this.elements = elements;
     }
 
@@ -36,8 +46,10 @@ abstract class AbstractByteArraySortedSet
     public int indexOf(
             @NotNull
             final UnsignedByteArray e) {
-        assert elements.contains(e) : "No such element";
+        final int result = Collections.binarySearch(elements, e);
+
+        assert result >= 0 : "No such element";
 
-        return elements.headSet(e).size();
+        return result;
     }
 }
@@ -0,0 +1,353 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.util.mutable.impl;
+
+import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.util.mutable.ArrayBitSet;
+import com.yandex.yoctodb.util.mutable.ArrayBitSetPool;
+import com.yandex.yoctodb.util.mutable.BitSet;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * {@link BitSet} keeping set bits in a sorted {@code int} array while there
+ * are at most as many of them as {@code long} words in the dense
+ * representation and switching to {@link ArrayBitSet} borrowed from the pool
+ * afterwards.
+ *
+ * So operations on highly selective sets cost proportionally to the number
+ * of set bits instead of the size. Call {@link #release()} to return the
+ * dense representation to the pool.
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+public final class AdaptiveBitSet implements BitSet {
+    private static final int[] EMPTY = new int[0];
+
+    private final int size;
+    @NotNull
+    private final ArrayBitSetPool pool;
+    // Maximum number of sparse bits
+    private final int threshold;
+    @NotNull
+    private int[] elements = EMPTY;
+    private int count = 0;
+    @Nullable
+    private ArrayBitSet dense = null;
+
+    public AdaptiveBitSet(
+            final int size,
+            @NotNull
+            final ArrayBitSetPool pool) {
+        assert size > 0;
+
+        this.size = size;
+        this.pool = pool;
+        this.threshold = LongArrayBitSet.arraySize(size);
+    }
+
+    /**
+     * @return whether set bits are kept in the sorted array
+     */
+    public boolean isSparse() {
+        return dense == null;
+    }
+
+    /**
+     * Switches to the dense representation if needed
+     *
+     * @return dense representation backing this bit set
+     */
+    @NotNull
+    public ArrayBitSet toDense() {
+        if (dense == null) {
+            final ArrayBitSet result = pool.borrowSet(size);
+            for (int i = 0; i < count; i++) {
+                result.set(elements[i]);
+            }
+            dense = result;
+            elements = EMPTY;
+            count = 0;
+        }
+
+        return dense;
+    }
+
+    /**
+     * Clears the bit set returning the dense representation to the pool
+     */
+    public void release() {
+        if (dense != null) {
+            pool.returnSet(dense);
+            dense = null;
+        }
+        elements = EMPTY;
+        count = 0;
+    }
+
+    private void sparse(
+            @NotNull
+            final int[] elements,
+            final int count) {
+        release();
+        this.elements = elements;
+        this.count = count;
+        if (count > threshold) {
+            toDense();
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public int cardinality() {
+        return dense == null ? count : dense.cardinality();
+    }
+
+    @Override
+    public void set(final int i) {
+        assert 0 <= i && i < size;
+
+        if (dense != null) {
+            dense.set(i);
+            return;
+        }
+
+        // Bits are usually set in ascending order
+        final int position;
+        if (count == 0 || elements[count - 1] < i) {
+            position = count;
+        } else {
+            final int found = Arrays.binarySearch(elements, 0, count, i);
+            if (found >= 0) {
+                return;
+            }
+            position = -found - 1;
+        }
+
+        if (count == threshold) {
+            toDense().set(i);
+            return;
+        }
+
+        if (count == elements.length) {
+            elements =
+                    Arrays.copyOf(
+                            elements,
+                            Math.min(threshold, Math.max(16, count * 2)));
+        }
+        System.arraycopy(
+                elements,
+                position,
+                elements,
+                position + 1,
+                count - position);
+        elements[position] = i;
+        count++;
+    }
+
+    @Override
+    public void clear() {
+        release();
+    }
+
+    @Override
+    public boolean inverse() {
+        return toDense().inverse();
+    }
+
+    @Override
+    public void set() {
+        toDense().set();
+    }
+
+    @Override
+    public boolean get(final int i) {
+        assert 0 <= i && i < size;
+
+        if (dense != null) {
+            return dense.get(i);
+        }
+
+        return Arrays.binarySearch(elements, 0, count, i) >= 0;
+    }
+
+    @Override
+    public int nextSetBit(final int fromIndexInclusive) {
+        assert 0 <= fromIndexInclusive;
+
+        if (dense != null) {
+            return dense.nextSetBit(fromIndexInclusive);
+        }
+
+        int position =
+                Arrays.binarySearch(elements, 0, count, fromIndexInclusive);
+        if (position < 0) {
+            position = -position - 1;
+        }
+
+        return position < count ? elements[position] : -1;
+    }
+
+    @Override
+    public boolean and(
+            @NotNull
+            final BitSet set) {
+        assert size == set.getSize();
+
+        if (dense == null) {
+            int retained = 0;
+            for (int i = 0; i < count; i++) {
+                if (set.get(elements[i])) {
+                    elements[retained++] = elements[i];
+                }
+            }
+            count = retained;
+
+            return count > 0;
+        }
+
+        if (set instanceof AdaptiveBitSet && ((AdaptiveBitSet) set).isSparse()) {
+            // The result is not denser than the other set
+            final AdaptiveBitSet other = (AdaptiveBitSet) set;
+            final int[] result = new int[other.count];
+            int retained = 0;
+            for (int i = 0; i < other.count; i++) {
+                if (dense.get(other.elements[i])) {
+                    result[retained++] = other.elements[i];
+                }
+            }
+            sparse(result, retained);
+
+            return retained > 0;
+        }
+
+        return dense.and(set);
+    }
+
+    @Override
+    public boolean andNot(
+            @NotNull
+            final BitSet set) {
+        assert size == set.getSize();
+
+        if (dense == null) {
+            int retained = 0;
+            for (int i = 0; i < count; i++) {
+                if (!set.get(elements[i])) {
+                    elements[retained++] = elements[i];
+                }
+            }
+            count = retained;
+
+            return count > 0;
+        }
+
+        return dense.andNot(set);
+    }
+
+    @Override
+    public boolean or(
+            @NotNull
+            final BitSet set) {
+        assert size == set.getSize();
+
+        if (!(set instanceof AdaptiveBitSet) ||
+            !((AdaptiveBitSet) set).isSparse()) {
+            return toDense().or(set);
+        }
+
+        final AdaptiveBitSet other = (AdaptiveBitSet) set;
+        if (dense != null) {
+            for (int i = 0; i < other.count; i++) {
+                dense.set(other.elements[i]);
+            }
+
+            return !dense.isEmpty();
+        }
+
+        // Merging sorted arrays
+        final int[] result = new int[count + other.count];
+        int i = 0;
+        int j = 0;
+        int merged = 0;
+        while (i < count && j < other.count) {
+            final int left = elements[i];
+            final int right = other.elements[j];
+            if (left <= right) {
+                i++;
+                if (left == right) {
+                    j++;
+                }
+                result[merged++] = left;
+            } else {
+                j++;
+                result[merged++] = right;
+            }
+        }
+        while (i < count) {
+            result[merged++] = elements[i++];
+        }
+        while (j < other.count) {
+            result[merged++] = other.elements[j++];
+        }
+        sparse(result, merged);
+
+        return merged > 0;
+    }
+
+    @Override
+    public boolean or(
+            @NotNull
+            final Buffer longArrayBitSetInByteBuffer,
+            final long startPosition,
+            final int bitSetSizeInLongs) {
+        return toDense().or(
+                longArrayBitSetInByteBuffer,
+                startPosition,
+                bitSetSizeInLongs);
+    }
+
+    @Override
+    public boolean orRange(
+            @NotNull
+            final Buffer longArrayBitSetsInByteBuffer,
+            final long startPosition,
+            final int bitSetSizeInLongs,
+            final int count) {
+        return toDense().orRange(
+                longArrayBitSetsInByteBuffer,
+                startPosition,
+                bitSetSizeInLongs,
+                count);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return dense == null ? count == 0 : dense.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveBitSet{" +
+               "size=" + size +
+               ", sparse=" + isSparse() +
+               ", cardinality=" + cardinality() +
+               '}';
+    }
+}
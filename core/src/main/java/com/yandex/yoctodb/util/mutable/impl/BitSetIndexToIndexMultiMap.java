@@ -21,6 +21,7 @@ import org.jetbrains.annotations.NotNull;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * {@link IndexToIndexMultiMap} implementation based on {@link LongArrayBitSet}s
@@ -32,12 +33,23 @@ import java.util.Collection;
 public final class BitSetIndexToIndexMultiMap implements IndexToIndexMultiMap {
     private final int documentsCount;
     @NotNull
-    private final Collection<? extends Collection<Integer>> map;
+    private final List<int[]> map;
 
     public BitSetIndexToIndexMultiMap(
             @NotNull
             final Collection<? extends Collection<Integer>> map,
             final int documentsCount) {
+        this(IntArrayList.toSortedArrays(map), documentsCount);
+    }
+
+    /**
+     * @param map            ascending arrays of unique ids by key
+     * @param documentsCount documents count
+     */
+    public BitSetIndexToIndexMultiMap(
+            @NotNull
+            final List<int[]> map,
+            final int documentsCount) {
         if (documentsCount < 0)
             throw new IllegalArgumentException("Negative document count");
 
@@ -45,12 +57,23 @@ public final class BitSetIndexToIndexMultiMap implements IndexToIndexMultiMap {
         this.documentsCount = documentsCount;
     }
 
-    @Override
-    public long getSizeInBytes() {
+    /**
+     * @param keysCount      keys count
+     * @param documentsCount documents count
+     * @return the size of {@link BitSetIndexToIndexMultiMap} in bytes
+     */
+    static long sizeInBytes(
+            final int keysCount,
+            final int documentsCount) {
         return 4L + // Type
                4L + // Keys count
                4L + // Bit set size in longs
-               8L * map.size() * LongArrayBitSet.arraySize(documentsCount);
+               8L * keysCount * LongArrayBitSet.arraySize(documentsCount);
+    }
+
+    @Override
+    public long getSizeInBytes() {
+        return sizeInBytes(map.size(), documentsCount);
     }
 
     @Override
@@ -68,7 +91,7 @@ public final class BitSetIndexToIndexMultiMap implements IndexToIndexMultiMap {
 
         // Sets
         final ArrayBitSet docs = LongArrayBitSet.zero(documentsCount);
-        for (Collection<Integer> ids : map) {
+        for (int[] ids : map) {
             docs.clear();
             for (int docId : ids) {
                 assert 0 <= docId && docId < documentsCount;
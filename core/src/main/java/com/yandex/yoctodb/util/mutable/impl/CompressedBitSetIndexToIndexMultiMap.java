@@ -0,0 +1,354 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.util.mutable.impl;
+
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+import com.yandex.yoctodb.util.mutable.IndexToIndexMultiMap;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * {@link IndexToIndexMultiMap} implementation based on compressed bit sets.
+ *
+ * Documents of each key are split into chunks of 64K documents and each
+ * chunk is stored in the most compact container: sorted array of 16-bit
+ * values, bitmap or runs of consecutive values.
+ *
+ * Format:
+ *
+ * <pre>
+ * {@code
+ * type (int)
+ * keys count (int)
+ * documents count (int)
+ * offsets
+ *   offset1 (long)
+ *   offset2 (long)
+ *   ...
+ * cardinalities
+ *   documents before key 1 (long) = 0
+ *   documents before key 2 (long)
+ *   ...
+ *   documents in all the sets (long)
+ * sets
+ *   set1
+ *     containers count (int)
+ *     container1
+ *       chunk index << 2 | container type (int)
+ *       ARRAY:  size (int), values (char)...
+ *       BITMAP: words (long)... up to 1024 or the end of the bit set
+ *       RUN:    runs count (int), (start (char), length - 1 (char))...
+ *     container2
+ *     ...
+ *   set2
+ *   ...
+ * }
+ * </pre>
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+public final class CompressedBitSetIndexToIndexMultiMap
+        implements IndexToIndexMultiMap {
+    static final int CHUNK_SHIFT = 16;
+    private static final int CHUNK_WORDS = 1 << (CHUNK_SHIFT - 6);
+
+    private final int documentsCount;
+    @NotNull
+    private final List<byte[]> sets;
+    @NotNull
+    private final long[] cardinalities;
+    private final long sizeInBytes;
+
+    public CompressedBitSetIndexToIndexMultiMap(
+            @NotNull
+            final Collection<? extends Collection<Integer>> map,
+            final int documentsCount) {
+        this(IntArrayList.toSortedArrays(map), documentsCount);
+    }
+
+    /**
+     * @param map            ascending arrays of unique ids by key
+     * @param documentsCount documents count
+     */
+    public CompressedBitSetIndexToIndexMultiMap(
+            @NotNull
+            final List<int[]> map,
+            final int documentsCount) {
+        if (documentsCount < 0)
+            throw new IllegalArgumentException("Negative document count");
+
+        this.documentsCount = documentsCount;
+        this.sets = new ArrayList<>(map.size());
+        this.cardinalities = new long[map.size() + 1];
+
+        long size = headerSize(map.size());
+        try {
+            for (int[] ids : map) {
+                final byte[] set = encode(ids);
+                cardinalities[sets.size() + 1] =
+                        cardinalities[sets.size()] + ids.length;
+                sets.add(set);
+                size += set.length;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        this.sizeInBytes = size;
+    }
+
+    /**
+     * Calculates the size without encoding the sets
+     *
+     * @param map            ascending arrays of unique ids by key
+     * @param documentsCount documents count
+     * @return the size of {@link CompressedBitSetIndexToIndexMultiMap} in
+     *         bytes
+     */
+    static long sizeInBytes(
+            @NotNull
+            final List<int[]> map,
+            final int documentsCount) {
+        long size = headerSize(map.size());
+        for (int[] docs : map) {
+            size += 4L; // Containers count
+            int from = 0;
+            while (from < docs.length) {
+                final int chunk = docs[from] >>> CHUNK_SHIFT;
+                int to = from + 1;
+                int runs = 1;
+                while (to < docs.length &&
+                       (docs[to] >>> CHUNK_SHIFT) == chunk) {
+                    if (docs[to] != docs[to - 1] + 1) {
+                        runs++;
+                    }
+                    to++;
+                }
+
+                size += containerSize(documentsCount, chunk, to - from, runs);
+
+                from = to;
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * @param documentsCount documents count
+     * @param chunk          chunk index
+     * @param size           documents in the chunk
+     * @param runs           runs of consecutive documents in the chunk
+     * @return the size of the container of the chunk in bytes
+     */
+    static long containerSize(
+            final int documentsCount,
+            final int chunk,
+            final int size,
+            final int runs) {
+        return 4L + // Chunk index and container type
+               Math.min(
+                       arraySize(size),
+                       Math.min(
+                               bitmapSize(documentsCount, chunk),
+                               runSize(runs)));
+    }
+
+    static long headerSize(final int keysCount) {
+        return 4L + // Type
+               4L + // Keys count
+               4L + // Documents count
+               8L * keysCount + // Offsets
+               8L * (keysCount + 1); // Cardinalities
+    }
+
+    private static long arraySize(final int size) {
+        return 4L + 2L * size;
+    }
+
+    private static long bitmapSize(
+            final int documentsCount,
+            final int chunk) {
+        return 8L * words(documentsCount, chunk);
+    }
+
+    private static long runSize(final int runs) {
+        return 4L + 4L * runs;
+    }
+
+    private static int words(
+            final int documentsCount,
+            final int chunk) {
+        return Math.min(
+                CHUNK_WORDS,
+                LongArrayBitSet.arraySize(documentsCount) -
+                chunk * CHUNK_WORDS);
+    }
+
+    @NotNull
+    private byte[] encode(
+            @NotNull
+            final int[] docs) throws IOException {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream os = new DataOutputStream(bytes);
+
+        // Counting containers
+        int containers = 0;
+        for (int i = 0; i < docs.length; i++) {
+            assert 0 <= docs[i] && docs[i] < documentsCount;
+            assert i == 0 || docs[i - 1] < docs[i] : "Duplicate document";
+
+            if (i == 0 ||
+                (docs[i - 1] >>> CHUNK_SHIFT) != (docs[i] >>> CHUNK_SHIFT)) {
+                containers++;
+            }
+        }
+        os.writeInt(containers);
+
+        int from = 0;
+        while (from < docs.length) {
+            final int chunk = docs[from] >>> CHUNK_SHIFT;
+            int to = from + 1;
+            int runs = 1;
+            while (to < docs.length && (docs[to] >>> CHUNK_SHIFT) == chunk) {
+                if (docs[to] != docs[to - 1] + 1) {
+                    runs++;
+                }
+                to++;
+            }
+
+            writeContainer(os, documentsCount, docs, from, to, chunk, runs);
+
+            from = to;
+        }
+
+        os.flush();
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Writes the container of {@code docs} in {@code [from, to)} belonging
+     * to {@code chunk}
+     */
+    static void writeContainer(
+            @NotNull
+            final DataOutputStream os,
+            final int documentsCount,
+            @NotNull
+            final int[] docs,
+            final int from,
+            final int to,
+            final int chunk,
+            final int runs) throws IOException {
+        final int size = to - from;
+        final int firstWord = chunk * CHUNK_WORDS;
+        final int words = words(documentsCount, chunk);
+
+        final long arraySize = arraySize(size);
+        final long bitmapSize = bitmapSize(documentsCount, chunk);
+        final long runSize = runSize(runs);
+
+        if (runSize < arraySize && runSize < bitmapSize) {
+            os.writeInt(
+                    chunk << 2 |
+                    V1DatabaseFormat.ContainerType.RUN.getCode());
+            os.writeInt(runs);
+            int start = from;
+            for (int i = from + 1; i <= to; i++) {
+                if (i == to || docs[i] != docs[i - 1] + 1) {
+                    os.writeChar(docs[start]);
+                    os.writeChar(i - start - 1);
+                    start = i;
+                }
+            }
+        } else if (arraySize <= bitmapSize) {
+            os.writeInt(
+                    chunk << 2 |
+                    V1DatabaseFormat.ContainerType.ARRAY.getCode());
+            os.writeInt(size);
+            for (int i = from; i < to; i++) {
+                os.writeChar(docs[i]);
+            }
+        } else {
+            os.writeInt(
+                    chunk << 2 |
+                    V1DatabaseFormat.ContainerType.BITMAP.getCode());
+            final long[] bitmap = new long[words];
+            for (int i = from; i < to; i++) {
+                final int word = (docs[i] >>> 6) - firstWord;
+                bitmap[word] |= 1L << docs[i];
+            }
+            for (long word : bitmap) {
+                os.writeLong(word);
+            }
+        }
+    }
+
+    @Override
+    public long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    @Override
+    public void writeTo(
+            @NotNull
+            final OutputStream os) throws IOException {
+        // Type
+        os.write(
+                Ints.toByteArray(
+                        V1DatabaseFormat.MultiMapType.COMPRESSED_BIT_SET_BASED
+                                .getCode()));
+
+        // Keys count
+        os.write(Ints.toByteArray(sets.size()));
+
+        // Documents count
+        os.write(Ints.toByteArray(documentsCount));
+
+        // Offsets
+        long offset = 0L;
+        for (byte[] set : sets) {
+            os.write(Longs.toByteArray(offset));
+            offset += set.length;
+        }
+
+        // Cardinalities
+        for (long cardinality : cardinalities) {
+            os.write(Longs.toByteArray(cardinality));
+        }
+
+        // Sets
+        for (byte[] set : sets) {
+            os.write(set);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CompressedBitSetIndexToIndexMultiMap{" +
+               "values=" + sets.size() +
+               ", documentsCount=" + documentsCount +
+               '}';
+    }
+}
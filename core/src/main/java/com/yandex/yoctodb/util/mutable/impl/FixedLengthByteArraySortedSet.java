@@ -18,6 +18,8 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.SortedSet;
 
 /**
@@ -30,6 +32,14 @@ public final class FixedLengthByteArraySortedSet
         extends AbstractByteArraySortedSet {
     public FixedLengthByteArraySortedSet(
             final SortedSet<UnsignedByteArray> elements) {
+        this(new ArrayList<>(elements));
+    }
+
+    /**
+     * @param elements ascending unique elements
+     */
+    public FixedLengthByteArraySortedSet(
+            final List<UnsignedByteArray> elements) {
         super(elements);
 
         if (elements.isEmpty())
@@ -40,17 +50,17 @@ public final class FixedLengthByteArraySortedSet
     public long getSizeInBytes() {
         return 4L + // Element size
                4L + // Element count
-               elements.first().getSizeInBytes() * elements.size();
+               elements.get(0).getSizeInBytes() * elements.size();
     }
 
     @Override
     public void writeTo(
             @NotNull
             final OutputStream os) throws IOException {
-        assert elements.first().getSizeInBytes() <= Integer.MAX_VALUE;
+        assert elements.get(0).getSizeInBytes() <= Integer.MAX_VALUE;
 
         // Element size
-        os.write(Ints.toByteArray((int) elements.first().getSizeInBytes()));
+        os.write(Ints.toByteArray((int) elements.get(0).getSizeInBytes()));
 
         // Element count
         os.write(Ints.toByteArray(elements.size()));
@@ -71,7 +81,7 @@ public final class FixedLengthByteArraySortedSet
     public String toString() {
         return "FixedLengthByteArraySortedSet{" +
                "elementsCount=" + elements.size() +
-               ", elementSize=" + elements.first().getSizeInBytes() +
+               ", elementSize=" + elements.get(0).getSizeInBytes() +
                '}';
     }
 }
@@ -11,8 +11,11 @@
 package com.yandex.yoctodb.util.mutable.impl;
 
 import com.yandex.yoctodb.util.mutable.IndexToIndexMultiMap;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import org.jetbrains.annotations.NotNull;
 
 import java.util.Collection;
+import java.util.List;
 
 /**
  * Chooses the optimal {@link IndexToIndexMultiMap} implementation
@@ -34,20 +37,165 @@ public final class IndexToIndexMultiMapFactory {
     public static IndexToIndexMultiMap buildIndexToIndexMultiMap(
             final Collection<? extends Collection<Integer>> valueToDocuments,
             final int documentsCount) {
+        return buildIndexToIndexMultiMap(
+                IntArrayList.toSortedArrays(valueToDocuments),
+                documentsCount);
+    }
+
+    /**
+     * Builds the most compact {@link IndexToIndexMultiMap}
+     *
+     * @param valueToDocuments ascending arrays of unique documents by value
+     * @param documentsCount   documents count
+     * @return the most compact {@link IndexToIndexMultiMap}
+     */
+    public static IndexToIndexMultiMap buildIndexToIndexMultiMap(
+            final List<int[]> valueToDocuments,
+            final int documentsCount) {
         final int uniqueValuesCount = valueToDocuments.size();
         if (uniqueValuesCount == 0)
             throw new IllegalArgumentException("Nonpositive values count");
         if (documentsCount <= 0)
             throw new IllegalArgumentException("Nonpositive documents count");
 
-        if (((long) uniqueValuesCount) * documentsCount / 64L <
-            documentsCount * 4L) {
-            // BitSet might be more effective
-            return new BitSetIndexToIndexMultiMap(
-                    valueToDocuments,
-                    documentsCount);
+        // Sizes are calculated without encoding the sets, so only the chosen
+        // representation is built
+        final V1DatabaseFormat.MultiMapType type;
+        if (bitSet(uniqueValuesCount, documentsCount)) {
+            type =
+                    chooseType(
+                            BitSetIndexToIndexMultiMap.sizeInBytes(
+                                    uniqueValuesCount,
+                                    documentsCount),
+                            V1DatabaseFormat.MultiMapType
+                                    .LONG_ARRAY_BIT_SET_BASED,
+                            CompressedBitSetIndexToIndexMultiMap.sizeInBytes(
+                                    valueToDocuments,
+                                    documentsCount),
+                            PackedIntIndexToIndexMultiMap.sizeInBytes(
+                                    valueToDocuments));
+        } else {
+            type =
+                    chooseType(
+                            IntIndexToIndexMultiMap.sizeInBytes(
+                                    valueToDocuments),
+                            V1DatabaseFormat.MultiMapType.LIST_BASED,
+                            CompressedBitSetIndexToIndexMultiMap.sizeInBytes(
+                                    valueToDocuments,
+                                    documentsCount),
+                            PackedIntIndexToIndexMultiMap.sizeInBytes(
+                                    valueToDocuments));
+        }
+
+        switch (type) {
+            case LONG_ARRAY_BIT_SET_BASED:
+                return new BitSetIndexToIndexMultiMap(
+                        valueToDocuments,
+                        documentsCount);
+            case LIST_BASED:
+                return new IntIndexToIndexMultiMap(valueToDocuments);
+            case COMPRESSED_BIT_SET_BASED:
+                return new CompressedBitSetIndexToIndexMultiMap(
+                        valueToDocuments,
+                        documentsCount);
+            default:
+                return new PackedIntIndexToIndexMultiMap(valueToDocuments);
+        }
+    }
+
+    /**
+     * @return whether {@link BitSetIndexToIndexMultiMap} might be more
+     *         effective than {@link IntIndexToIndexMultiMap}
+     */
+    static boolean bitSet(
+            final int uniqueValuesCount,
+            final int documentsCount) {
+        return ((long) uniqueValuesCount) * documentsCount / 64L <
+               documentsCount * 4L;
+    }
+
+    /**
+     * Chooses the most compact representation by the sizes of the sets
+     *
+     * @param uncompressedSize size of the uncompressed representation
+     * @param uncompressedType type of the uncompressed representation
+     * @param compressedSize   size of
+     *                         {@link CompressedBitSetIndexToIndexMultiMap}
+     * @param packedSize       size of {@link PackedIntIndexToIndexMultiMap}
+     * @return the chosen type
+     */
+    @NotNull
+    static V1DatabaseFormat.MultiMapType chooseType(
+            final long uncompressedSize,
+            @NotNull
+            final V1DatabaseFormat.MultiMapType uncompressedType,
+            final long compressedSize,
+            final long packedSize) {
+        // Compressed representations are more expensive to read, so they are
+        // used only if they save at least a quarter of space
+        if (!smaller(Math.min(compressedSize, packedSize), uncompressedSize)) {
+            return uncompressedType;
+        } else if (compressedSize < packedSize) {
+            return V1DatabaseFormat.MultiMapType.COMPRESSED_BIT_SET_BASED;
+        } else {
+            return V1DatabaseFormat.MultiMapType.PACKED_LIST_BASED;
+        }
+    }
+
+    /**
+     * Builds {@link IndexToIndexMultiMap} supporting sorted iteration
+     *
+     * @param valueToDocuments documents by value
+     * @return the most compact sorted {@link IndexToIndexMultiMap}
+     */
+    public static IndexToIndexMultiMap buildSortedIndexToIndexMultiMap(
+            final Collection<? extends Collection<Integer>> valueToDocuments) {
+        return buildSortedIndexToIndexMultiMap(
+                IntArrayList.toSortedArrays(valueToDocuments));
+    }
+
+    /**
+     * Builds {@link IndexToIndexMultiMap} supporting sorted iteration
+     *
+     * @param valueToDocuments ascending arrays of unique documents by value
+     * @return the most compact sorted {@link IndexToIndexMultiMap}
+     */
+    public static IndexToIndexMultiMap buildSortedIndexToIndexMultiMap(
+            final List<int[]> valueToDocuments) {
+        if (chooseSortedType(
+                IntIndexToIndexMultiMap.sizeInBytes(valueToDocuments),
+                PackedIntIndexToIndexMultiMap.sizeInBytes(valueToDocuments)) ==
+            V1DatabaseFormat.MultiMapType.PACKED_LIST_BASED) {
+            return new PackedIntIndexToIndexMultiMap(valueToDocuments);
         } else {
             return new IntIndexToIndexMultiMap(valueToDocuments);
         }
     }
+
+    /**
+     * Chooses the most compact representation supporting sorted iteration
+     *
+     * @param listSize   size of {@link IntIndexToIndexMultiMap}
+     * @param packedSize size of {@link PackedIntIndexToIndexMultiMap}
+     * @return the chosen type
+     */
+    @NotNull
+    static V1DatabaseFormat.MultiMapType chooseSortedType(
+            final long listSize,
+            final long packedSize) {
+        if (smaller(packedSize, listSize)) {
+            return V1DatabaseFormat.MultiMapType.PACKED_LIST_BASED;
+        } else {
+            return V1DatabaseFormat.MultiMapType.LIST_BASED;
+        }
+    }
+
+    /**
+     * @return whether compressed representation saves at least a quarter
+     */
+    private static boolean smaller(
+            final long compressedSize,
+            final long uncompressedSize) {
+        return compressedSize * 4L <= uncompressedSize * 3L;
+    }
 }
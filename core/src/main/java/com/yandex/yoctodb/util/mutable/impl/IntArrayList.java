@@ -0,0 +1,115 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.util.mutable.impl;
+
+import com.google.common.primitives.Ints;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Growable list of {@code int}s used to accumulate postings without boxing
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+public final class IntArrayList {
+    private static final int INITIAL_CAPACITY = 4;
+
+    @NotNull
+    private int[] elements;
+    private int size;
+
+    public IntArrayList() {
+        this.elements = new int[INITIAL_CAPACITY];
+    }
+
+    public void add(final int element) {
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size + (size >>> 1) + 1);
+        }
+
+        elements[size++] = element;
+    }
+
+    public int get(final int index) {
+        assert 0 <= index && index < size;
+
+        return elements[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return ascending array of unique elements
+     */
+    @NotNull
+    public int[] toSortedArray() {
+        return sortedUnique(Arrays.copyOf(elements, size));
+    }
+
+    /**
+     * Converts boxed sets to ascending arrays of unique elements
+     *
+     * @param sets sets to convert
+     * @return sorted arrays in the order of the sets
+     */
+    @NotNull
+    public static List<int[]> toSortedArrays(
+            @NotNull
+            final Collection<? extends Collection<Integer>> sets) {
+        final List<int[]> result = new ArrayList<>(sets.size());
+        for (Collection<Integer> set : sets) {
+            result.add(sortedUnique(Ints.toArray(set)));
+        }
+
+        return result;
+    }
+
+    @NotNull
+    private static int[] sortedUnique(
+            @NotNull
+            final int[] elements) {
+        // Postings are usually accumulated in ascending order
+        boolean sorted = true;
+        for (int i = 1; i < elements.length && sorted; i++) {
+            sorted = elements[i - 1] < elements[i];
+        }
+        if (sorted) {
+            return elements;
+        }
+
+        Arrays.sort(elements);
+        int unique = 0;
+        for (int i = 0; i < elements.length; i++) {
+            if (i == 0 || elements[i] != elements[unique - 1]) {
+                elements[unique++] = elements[i];
+            }
+        }
+
+        return unique == elements.length ?
+               elements :
+               Arrays.copyOf(elements, unique);
+    }
+
+    @Override
+    public String toString() {
+        return "IntArrayList{" +
+               "size=" + size +
+               '}';
+    }
+}
@@ -17,18 +17,28 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Arrays;
 
 /**
- * {@link IndexToIndexMap} implementation based on {@link Integer}s
+ * {@link IndexToIndexMap} implementation based on {@code int[]}
  *
  * @author incubos
  */
 @NotThreadSafe
 public final class IntIndexToIndexMap implements IndexToIndexMap {
-    private final Map<Integer, Integer> elements =
-            new TreeMap<>();
+    private static final int INITIAL_CAPACITY = 16;
+
+    // -1 for absent keys
+    @NotNull
+    private int[] elements = newElements(INITIAL_CAPACITY);
+    private int size = 0;
+
+    @NotNull
+    private static int[] newElements(final int capacity) {
+        final int[] result = new int[capacity];
+        Arrays.fill(result, -1);
+        return result;
+    }
 
     @Override
     public void put(final int key, final int value) {
@@ -37,17 +47,31 @@ public final class IntIndexToIndexMap implements IndexToIndexMap {
         if (value < 0)
             throw new IllegalArgumentException("Negative value");
 
-        final Integer previous = elements.put(key, value);
+        if (key >= elements.length) {
+            final int[] grown =
+                    newElements(
+                            (int) Math.min(
+                                    Integer.MAX_VALUE,
+                                    Math.max(
+                                            key + 1L,
+                                            elements.length * 3L / 2L)));
+            System.arraycopy(elements, 0, grown, 0, elements.length);
+            elements = grown;
+        }
 
-        if (previous != null)
+        final int previous = elements[key];
+        if (previous >= 0)
             throw new IllegalArgumentException(
                     "Key <" + key + "> was already bound to <" + previous +
                     ">");
+
+        elements[key] = value;
+        size++;
     }
 
     @Override
     public long getSizeInBytes() {
-        return 4L + 4L * elements.size();
+        return 4L + 4L * size;
     }
 
     @Override
@@ -55,25 +79,22 @@ public final class IntIndexToIndexMap implements IndexToIndexMap {
             @NotNull
             final OutputStream os) throws IOException {
         // Elements count
-        os.write(Ints.toByteArray(elements.size()));
+        os.write(Ints.toByteArray(size));
 
         // Values
-        int index = 0;
-        for (Map.Entry<Integer, Integer> entry : elements.entrySet()) {
-            if (entry.getKey() != index) {
+        for (int index = 0; index < size; index++) {
+            if (elements[index] < 0) {
                 throw new IllegalStateException("Indexes are not continuous");
             }
 
-            os.write(Ints.toByteArray(entry.getValue()));
-
-            index++;
+            os.write(Ints.toByteArray(elements[index]));
         }
     }
 
     @Override
     public String toString() {
         return "IntIndexToIndexMap{" +
-               "elements=" + elements.size() +
+               "elements=" + size +
                '}';
     }
 }
@@ -20,6 +20,7 @@ import org.jetbrains.annotations.NotNull;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Collection;
+import java.util.List;
 
 /**
  * {@link IntIndexToIndexMultiMap} implementation based on {@link Integer}s
@@ -52,22 +53,41 @@ import java.util.Collection;
  */
 @NotThreadSafe
 public final class IntIndexToIndexMultiMap implements IndexToIndexMultiMap {
-    private final Collection<? extends Collection<Integer>> map;
+    @NotNull
+    private final List<int[]> map;
     private final long sizeInBytes;
 
     public IntIndexToIndexMultiMap(
             @NotNull
             final Collection<? extends Collection<Integer>> map) {
+        this(IntArrayList.toSortedArrays(map));
+    }
+
+    /**
+     * @param map ascending arrays of unique ids by key
+     */
+    public IntIndexToIndexMultiMap(
+            @NotNull
+            final List<int[]> map) {
         this.map = map;
+        this.sizeInBytes = sizeInBytes(map);
+    }
+
+    /**
+     * @param map ascending arrays of unique ids by key
+     * @return the size of {@link IntIndexToIndexMultiMap} in bytes
+     */
+    static long sizeInBytes(
+            @NotNull
+            final List<int[]> map) {
         long elements = 0;
-        for (Collection<Integer> ids : map) {
-            elements += ids.size();
+        for (int[] ids : map) {
+            elements += ids.length;
         }
-        this.sizeInBytes =
-                4L + // type
-                4L + // keys count
-                (8L + 4L) * map.size() + // offsets + sizes
-                4L * elements;    // set elements
+        return 4L + // type
+               4L + // keys count
+               (8L + 4L) * map.size() + // offsets + sizes
+               4L * elements;    // set elements
     }
 
     @Override
@@ -89,16 +109,16 @@ public final class IntIndexToIndexMultiMap implements IndexToIndexMultiMap {
 
         // Offsets
         long offset = 0L;
-        for (Collection<Integer> value : map) {
+        for (int[] value : map) {
             os.write(Longs.toByteArray(offset));
-            offset += 4L + 4L * value.size();
+            offset += 4L + 4L * value.length;
         }
 
         // Sets
-        for (Collection<Integer> value : map) {
-            os.write(Ints.toByteArray(value.size()));
+        for (int[] value : map) {
+            os.write(Ints.toByteArray(value.length));
 
-            for (Integer v : value) {
+            for (int v : value) {
                 assert v >= 0;
                 os.write(Ints.toByteArray(v));
             }
@@ -16,6 +16,7 @@ import com.yandex.yoctodb.util.mutable.ArrayBitSet;
 import com.yandex.yoctodb.util.mutable.BitSet;
 import net.jcip.annotations.NotThreadSafe;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.Arrays;
 
@@ -28,6 +29,9 @@ import java.util.Arrays;
  */
 @NotThreadSafe
 public final class LongArrayBitSet implements ArrayBitSet {
+    // 4 KB of the current bit set per pass over the source bit sets
+    private static final int OR_BLOCK_SIZE_IN_LONGS = 512;
+
     private final int size;
     private final int usedWords;
     @NotNull
@@ -127,26 +131,25 @@ public final class LongArrayBitSet implements ArrayBitSet {
 
     @Override
     public boolean inverse() {
-        boolean notEmpty = false;
+        // Loops without branches are vectorized by the JIT
+        long notEmpty = 0L;
 
         // Inverse all the words except last one
         final int last = usedWords - 1;
         for (int i = 0; i < last; i++) {
-            words[i] = ~words[i];
-            if (words[i] != 0)
-                notEmpty = true;
+            final long word = ~words[i];
+            words[i] = word;
+            notEmpty |= word;
         }
 
         // Fix bits in last word
         final int shift = size & 0x3f;
         if (shift != 0) {
             words[last] = ~words[last] & ~(-1L << shift);
-
-            if (words[last] != 0)
-                notEmpty = true;
+            notEmpty |= words[last];
         }
 
-        return notEmpty;
+        return notEmpty != 0L;
     }
 
     public void set() {
@@ -159,23 +162,88 @@ public final class LongArrayBitSet implements ArrayBitSet {
         }
     }
 
+    /**
+     * @return words of dense {@code set} or {@code null}
+     */
+    @Nullable
+    private static long[] wordsOf(
+            @NotNull
+            final BitSet set) {
+        if (set instanceof ArrayBitSet) {
+            return ((ArrayBitSet) set).toArray();
+        }
+        if (set instanceof AdaptiveBitSet &&
+            !((AdaptiveBitSet) set).isSparse()) {
+            return ((AdaptiveBitSet) set).toDense().toArray();
+        }
+
+        return null;
+    }
+
     @Override
     public boolean and(
             @NotNull
             final BitSet set) {
         assert size == set.getSize();
 
-        boolean notEmpty = false;
-        final long[] from = ((ArrayBitSet) set).toArray();
+        final long[] from = wordsOf(set);
+        if (from == null) {
+            // Checking each set bit
+            long notEmpty = 0L;
+            for (int i = 0; i < usedWords; i++) {
+                long word = words[i];
+                while (word != 0L) {
+                    final long bit = word & -word;
+                    if (!set.get((i << 6) | Long.numberOfTrailingZeros(bit))) {
+                        words[i] &= ~bit;
+                    }
+                    word ^= bit;
+                }
+                notEmpty |= words[i];
+            }
+
+            return notEmpty != 0L;
+        }
+
+        long notEmpty = 0L;
         for (int i = 0; i < usedWords; i++) {
             final long word = words[i] & from[i];
             words[i] = word;
-            if (word != 0) {
-                notEmpty = true;
+            notEmpty |= word;
+        }
+
+        return notEmpty != 0L;
+    }
+
+    @Override
+    public boolean andNot(
+            @NotNull
+            final BitSet set) {
+        assert size == set.getSize();
+
+        final long[] from = wordsOf(set);
+        if (from == null) {
+            for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+                words[i >> 6] &= ~(1L << (i & 0x3f));
             }
+
+            // Only the used words of pooled arrays are meaningful
+            long notEmpty = 0L;
+            for (int i = 0; i < usedWords; i++) {
+                notEmpty |= words[i];
+            }
+
+            return notEmpty != 0L;
         }
 
-        return notEmpty;
+        long notEmpty = 0L;
+        for (int i = 0; i < usedWords; i++) {
+            final long word = words[i] & ~from[i];
+            words[i] = word;
+            notEmpty |= word;
+        }
+
+        return notEmpty != 0L;
     }
 
     @Override
@@ -184,17 +252,23 @@ public final class LongArrayBitSet implements ArrayBitSet {
             final BitSet set) {
         assert size == set.getSize();
 
-        boolean notEmpty = false;
-        final long[] from = ((ArrayBitSet) set).toArray();
+        final long[] from = wordsOf(set);
+        if (from == null) {
+            for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+                set(i);
+            }
+
+            return !isEmpty();
+        }
+
+        long notEmpty = 0L;
         for (int i = 0; i < usedWords; i++) {
             final long word = words[i] | from[i];
             words[i] = word;
-            if (word != 0) {
-                notEmpty = true;
-            }
+            notEmpty |= word;
         }
 
-        return notEmpty;
+        return notEmpty != 0L;
     }
 
     @Override
@@ -203,30 +277,64 @@ public final class LongArrayBitSet implements ArrayBitSet {
             final Buffer longArrayBitSetInByteBuffer,
             final long startPosition,
             final int bitSetSizeInLongs) {
-        boolean notEmpty = false;
-        long currentPosition = startPosition;
-
         assert usedWords == bitSetSizeInLongs;
 
+        long notEmpty = 0L;
+        long currentPosition = startPosition;
         for (int i = 0; i < usedWords; i++) {
-            final long currentWord =
-                    longArrayBitSetInByteBuffer.getLong(
-                            currentPosition);
+            final long word =
+                    words[i] |
+                    longArrayBitSetInByteBuffer.getLong(currentPosition);
             currentPosition += Longs.BYTES;
-            final long word = words[i] | currentWord;
             words[i] = word;
-            if (word != 0) {
-                notEmpty = true;
+            notEmpty |= word;
+        }
+
+        return notEmpty != 0L;
+    }
+
+    @Override
+    public boolean orRange(
+            @NotNull
+            final Buffer longArrayBitSetsInByteBuffer,
+            final long startPosition,
+            final int bitSetSizeInLongs,
+            final int count) {
+        assert usedWords == bitSetSizeInLongs;
+        assert count >= 0;
+
+        final long bitSetSizeInBytes = ((long) bitSetSizeInLongs) << 3;
+
+        // Accumulating source words block by block, so that the block of the
+        // current bit set stays in cache while the sources are scanned
+        long notEmpty = 0L;
+        for (int from = 0; from < usedWords; from += OR_BLOCK_SIZE_IN_LONGS) {
+            final int to = Math.min(usedWords, from + OR_BLOCK_SIZE_IN_LONGS);
+            long bitSetPosition = startPosition + ((long) from << 3);
+            for (int j = 0; j < count; j++) {
+                long currentPosition = bitSetPosition;
+                for (int i = from; i < to; i++) {
+                    words[i] |=
+                            longArrayBitSetsInByteBuffer.getLong(
+                                    currentPosition);
+                    currentPosition += Longs.BYTES;
+                }
+                bitSetPosition += bitSetSizeInBytes;
+            }
+
+            for (int i = from; i < to; i++) {
+                notEmpty |= words[i];
             }
         }
 
-        return notEmpty;
+        return notEmpty != 0L;
     }
 
     @Override
     public boolean isEmpty() {
-        for (long w : words)
-            if (w != 0) {
+        // Pooled arrays may be longer than the bit set
+        for (int i = 0; i < usedWords; i++)
+            if (words[i] != 0) {
                 return false;
             }
 
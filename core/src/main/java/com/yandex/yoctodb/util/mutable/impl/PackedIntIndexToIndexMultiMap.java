@@ -0,0 +1,314 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.util.mutable.impl;
+
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+import com.yandex.yoctodb.util.mutable.IndexToIndexMultiMap;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * {@link IndexToIndexMultiMap} implementation storing sorted sets as deltas
+ * packed in blocks of {@value #BLOCK_SIZE} values (patched frame of
+ * reference).
+ *
+ * Each delta is {@code value - previous - 1} (the first previous is
+ * {@code -1}). Every block uses the bit width minimizing its size, deltas
+ * not fitting into the width are stored as exceptions.
+ *
+ * Format:
+ *
+ * <pre>
+ * {@code
+ * type (int)
+ * keys count (int)
+ * offsets
+ *   offset1 (long)
+ *   offset2 (long)
+ *   ...
+ * cardinalities
+ *   values before key 1 (long) = 0
+ *   values before key 2 (long)
+ *   ...
+ *   values in all the sets (long)
+ * sets
+ *   set1
+ *     size (int)
+ *     block1
+ *       bit width << 8 | exceptions count (int)
+ *       packed low bits (long)... ceil(block size * bit width / 64)
+ *       exceptions
+ *         index in block (int)
+ *         high bits (int)
+ *         ...
+ *     block2
+ *     ...
+ *   set2
+ *   ...
+ * }
+ * </pre>
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+public final class PackedIntIndexToIndexMultiMap
+        implements IndexToIndexMultiMap {
+    static final int BLOCK_SIZE = 128;
+
+    @NotNull
+    private final List<byte[]> sets;
+    @NotNull
+    private final long[] cardinalities;
+    private final long sizeInBytes;
+
+    public PackedIntIndexToIndexMultiMap(
+            @NotNull
+            final Collection<? extends Collection<Integer>> map) {
+        this(IntArrayList.toSortedArrays(map));
+    }
+
+    /**
+     * @param map ascending arrays of unique ids by key
+     */
+    public PackedIntIndexToIndexMultiMap(
+            @NotNull
+            final List<int[]> map) {
+        this.sets = new ArrayList<>(map.size());
+        this.cardinalities = new long[map.size() + 1];
+
+        long size = headerSize(map.size());
+        try {
+            for (int[] ids : map) {
+                final byte[] set = encode(ids);
+                cardinalities[sets.size() + 1] =
+                        cardinalities[sets.size()] + ids.length;
+                sets.add(set);
+                size += set.length;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        this.sizeInBytes = size;
+    }
+
+    /**
+     * Calculates the size without encoding the sets
+     *
+     * @param map ascending arrays of unique ids by key
+     * @return the size of {@link PackedIntIndexToIndexMultiMap} in bytes
+     */
+    static long sizeInBytes(
+            @NotNull
+            final List<int[]> map) {
+        final int[] deltas = new int[BLOCK_SIZE];
+        final int[] lengths = new int[33];
+
+        long size = headerSize(map.size());
+        for (int[] values : map) {
+            size += 4L; // Size
+            int previous = -1;
+            for (int from = 0; from < values.length; from += BLOCK_SIZE) {
+                final int count = Math.min(BLOCK_SIZE, values.length - from);
+                for (int i = 0; i < count; i++) {
+                    deltas[i] = values[from + i] - previous - 1;
+                    previous = values[from + i];
+                }
+
+                size += blockSize(count, header(deltas, count, lengths));
+            }
+        }
+
+        return size;
+    }
+
+    static long headerSize(final int keysCount) {
+        return 4L + // Type
+               4L + // Keys count
+               8L * keysCount + // Offsets
+               8L * (keysCount + 1); // Cardinalities
+    }
+
+    @NotNull
+    private static byte[] encode(
+            @NotNull
+            final int[] values) throws IOException {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream os = new DataOutputStream(bytes);
+
+        os.writeInt(values.length);
+
+        final int[] deltas = new int[BLOCK_SIZE];
+        final int[] lengths = new int[33];
+        int previous = -1;
+        for (int from = 0; from < values.length; from += BLOCK_SIZE) {
+            final int count = Math.min(BLOCK_SIZE, values.length - from);
+            for (int i = 0; i < count; i++) {
+                final int value = values[from + i];
+                assert value > previous : "Negative or duplicate value";
+                deltas[i] = value - previous - 1;
+                previous = value;
+            }
+
+            writeBlock(os, deltas, count, header(deltas, count, lengths));
+        }
+
+        os.flush();
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Chooses the bit width minimizing the block size
+     *
+     * @param lengths scratch array of 33 counters
+     * @return bit width << 8 | exceptions count
+     */
+    static int header(
+            @NotNull
+            final int[] deltas,
+            final int count,
+            @NotNull
+            final int[] lengths) {
+        // Counting deltas by bit length
+        Arrays.fill(lengths, 0);
+        for (int i = 0; i < count; i++) {
+            lengths[32 - Integer.numberOfLeadingZeros(deltas[i])]++;
+        }
+
+        int width = 32;
+        int exceptions = 0;
+        long size = words(count, 32) * 8L;
+        int e = 0;
+        for (int w = 31; w >= 0; w--) {
+            e += lengths[w + 1];
+            final long s = words(count, w) * 8L + e * 8L;
+            if (s < size) {
+                size = s;
+                width = w;
+                exceptions = e;
+            }
+        }
+
+        assert exceptions < 256;
+
+        return width << 8 | exceptions;
+    }
+
+    static long blockSize(
+            final int count,
+            final int header) {
+        return 4L + // Header
+               words(count, header >>> 8) * 8L + // Low bits
+               (header & 0xff) * 8L; // Exceptions
+    }
+
+    static void writeBlock(
+            @NotNull
+            final DataOutputStream os,
+            @NotNull
+            final int[] deltas,
+            final int count,
+            final int header) throws IOException {
+        final int width = header >>> 8;
+        final int exceptions = header & 0xff;
+
+        os.writeInt(header);
+
+        // Low bits
+        final long mask = width == 32 ? 0xffffffffL : (1L << width) - 1L;
+        final long[] words = new long[words(count, width)];
+        for (int i = 0; width > 0 && i < count; i++) {
+            final long value = deltas[i] & mask;
+            final int position = i * width;
+            final int word = position >>> 6;
+            final int shift = position & 0x3f;
+            words[word] |= value << shift;
+            if (shift + width > 64) {
+                words[word + 1] |= value >>> (64 - shift);
+            }
+        }
+        for (long word : words) {
+            os.writeLong(word);
+        }
+
+        // Exceptions
+        if (exceptions > 0) {
+            for (int i = 0; i < count; i++) {
+                if ((deltas[i] >>> width) != 0) {
+                    os.writeInt(i);
+                    os.writeInt(deltas[i] >>> width);
+                }
+            }
+        }
+    }
+
+    private static int words(
+            final int count,
+            final int width) {
+        return (count * width + 63) >>> 6;
+    }
+
+    @Override
+    public long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    @Override
+    public void writeTo(
+            @NotNull
+            final OutputStream os) throws IOException {
+        // Type
+        os.write(
+                Ints.toByteArray(
+                        V1DatabaseFormat.MultiMapType.PACKED_LIST_BASED
+                                .getCode()));
+
+        // Keys count
+        os.write(Ints.toByteArray(sets.size()));
+
+        // Offsets
+        long offset = 0L;
+        for (byte[] set : sets) {
+            os.write(Longs.toByteArray(offset));
+            offset += set.length;
+        }
+
+        // Cardinalities
+        for (long cardinality : cardinalities) {
+            os.write(Longs.toByteArray(cardinality));
+        }
+
+        // Sets
+        for (byte[] set : sets) {
+            os.write(set);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PackedIntIndexToIndexMultiMap{" +
+               "keys=" + sets.size() +
+               '}';
+    }
+}
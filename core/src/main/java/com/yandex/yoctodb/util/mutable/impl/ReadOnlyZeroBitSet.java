@@ -70,6 +70,13 @@ public final class ReadOnlyZeroBitSet implements BitSet {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public boolean andNot(
+            @NotNull
+            final BitSet set) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public boolean or(
             @NotNull
@@ -86,6 +93,16 @@ public final class ReadOnlyZeroBitSet implements BitSet {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public boolean orRange(
+            @NotNull
+            final Buffer longArrayBitSetsInByteBuffer,
+            final long startPosition,
+            final int bitSetSizeInLongs,
+            final int count) {
+        throw new UnsupportedOperationException();
+    }
+
     @Override
     public boolean isEmpty() {
         return true;
@@ -0,0 +1,200 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.util.mutable.impl;
+
+import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.util.mutable.BitSet;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * {@link BitSet} view setting only the bits of the candidate documents in
+ * the destination bit set.
+ *
+ * Used to probe a condition against a small set of candidates: stored bit
+ * sets are checked only at the candidate positions and postings supporting
+ * random access may look up each candidate instead of being traversed (see
+ * {@link #getCandidates()}). Operations other than setting and
+ * {@code OR}ing bits are not supported.
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+public final class RestrictedBitSet implements BitSet {
+    @NotNull
+    private final BitSet candidates;
+    @NotNull
+    private final BitSet dest;
+
+    public RestrictedBitSet(
+            @NotNull
+            final BitSet candidates,
+            @NotNull
+            final BitSet dest) {
+        if (candidates.getSize() != dest.getSize())
+            throw new IllegalArgumentException("Size mismatch");
+
+        this.candidates = candidates;
+        this.dest = dest;
+    }
+
+    /**
+     * @return documents which may be set
+     */
+    @NotNull
+    public BitSet getCandidates() {
+        return candidates;
+    }
+
+    @Override
+    public int getSize() {
+        return dest.getSize();
+    }
+
+    @Override
+    public int cardinality() {
+        return dest.cardinality();
+    }
+
+    @Override
+    public void set(final int i) {
+        if (candidates.get(i)) {
+            dest.set(i);
+        }
+    }
+
+    @Override
+    public void clear() {
+        dest.clear();
+    }
+
+    @Override
+    public boolean inverse() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void set() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean get(final int i) {
+        return dest.get(i);
+    }
+
+    @Override
+    public int nextSetBit(final int fromIndexInclusive) {
+        return dest.nextSetBit(fromIndexInclusive);
+    }
+
+    @Override
+    public boolean and(
+            @NotNull
+            final BitSet set) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean andNot(
+            @NotNull
+            final BitSet set) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean or(
+            @NotNull
+            final BitSet set) {
+        assert getSize() == set.getSize();
+
+        for (int i = candidates.nextSetBit(0);
+             i >= 0;
+             i = candidates.nextSetBit(i + 1)) {
+            if (set.get(i)) {
+                dest.set(i);
+            }
+        }
+
+        return !dest.isEmpty();
+    }
+
+    private static boolean get(
+            @NotNull
+            final Buffer longArrayBitSetInByteBuffer,
+            final long startPosition,
+            final int i) {
+        final long word =
+                longArrayBitSetInByteBuffer.getLong(
+                        startPosition + ((long) (i >>> 6) << 3));
+        return (word & (1L << i)) != 0L;
+    }
+
+    @Override
+    public boolean or(
+            @NotNull
+            final Buffer longArrayBitSetInByteBuffer,
+            final long startPosition,
+            final int bitSetSizeInLongs) {
+        assert LongArrayBitSet.arraySize(getSize()) == bitSetSizeInLongs;
+
+        // Reading only the words of the candidates
+        for (int i = candidates.nextSetBit(0);
+             i >= 0;
+             i = candidates.nextSetBit(i + 1)) {
+            if (get(longArrayBitSetInByteBuffer, startPosition, i)) {
+                dest.set(i);
+            }
+        }
+
+        return !dest.isEmpty();
+    }
+
+    @Override
+    public boolean orRange(
+            @NotNull
+            final Buffer longArrayBitSetsInByteBuffer,
+            final long startPosition,
+            final int bitSetSizeInLongs,
+            final int count) {
+        assert LongArrayBitSet.arraySize(getSize()) == bitSetSizeInLongs;
+        assert count >= 0;
+
+        final long bitSetSizeInBytes = ((long) bitSetSizeInLongs) << 3;
+        for (int i = candidates.nextSetBit(0);
+             i >= 0;
+             i = candidates.nextSetBit(i + 1)) {
+            long position = startPosition;
+            for (int j = 0; j < count; j++) {
+                if (get(longArrayBitSetsInByteBuffer, position, i)) {
+                    dest.set(i);
+                    break;
+                }
+                position += bitSetSizeInBytes;
+            }
+        }
+
+        return !dest.isEmpty();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return dest.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "RestrictedBitSet{" +
+               "candidates=" + candidates +
+               ", dest=" + dest +
+               '}';
+    }
+}
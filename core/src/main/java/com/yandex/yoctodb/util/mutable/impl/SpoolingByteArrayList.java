@@ -0,0 +1,164 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.util.mutable.impl;
+
+import com.google.common.io.Files;
+import com.google.common.primitives.Ints;
+import com.yandex.yoctodb.util.OutputStreamWritable;
+import com.yandex.yoctodb.util.TemporaryFiles;
+import com.yandex.yoctodb.util.UnsignedByteArray;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * List of byte arrays appended to temporary files instead of the heap.
+ *
+ * Written in the layout of {@link VariableLengthByteArraySortedSet} and
+ * {@link VariableLengthByteArrayIndexedList} or, if fixed length, in the
+ * layout of {@link FixedLengthByteArraySortedSet}. Call {@link #finish()}
+ * after the last element.
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+public final class SpoolingByteArrayList implements OutputStreamWritable {
+    private final boolean fixedLength;
+    @Nullable
+    private final File offsets;
+    @NotNull
+    private final File elements;
+    @Nullable
+    private DataOutputStream offsetsOutput;
+    @Nullable
+    private OutputStream elementsOutput;
+    private int size = 0;
+    private long elementsSize = 0L;
+    private int elementLength = -1;
+
+    public SpoolingByteArrayList(
+            @NotNull
+            final TemporaryFiles files,
+            final boolean fixedLength) throws IOException {
+        this.fixedLength = fixedLength;
+        this.elements = files.newFile();
+        this.elementsOutput =
+                new BufferedOutputStream(new FileOutputStream(elements));
+        if (fixedLength) {
+            this.offsets = null;
+            this.offsetsOutput = null;
+        } else {
+            this.offsets = files.newFile();
+            this.offsetsOutput =
+                    new DataOutputStream(
+                            new BufferedOutputStream(
+                                    new FileOutputStream(offsets)));
+        }
+    }
+
+    /**
+     * Appends the next element
+     *
+     * @param e element
+     */
+    public void add(
+            @NotNull
+            final UnsignedByteArray e) throws IOException {
+        if (elementsOutput == null)
+            throw new IllegalStateException("Finished");
+
+        if (offsetsOutput == null) {
+            if (elementLength == -1)
+                elementLength = e.length();
+            else if (elementLength != e.length())
+                throw new IllegalArgumentException("Variable size");
+        } else {
+            offsetsOutput.writeLong(elementsSize);
+        }
+
+        e.writeTo(elementsOutput);
+        elementsSize += e.length();
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Completes the list
+     */
+    public void finish() throws IOException {
+        if (elementsOutput == null)
+            throw new IllegalStateException("Finished");
+        if (fixedLength && size == 0)
+            throw new IllegalArgumentException("Empty set");
+
+        elementsOutput.close();
+        elementsOutput = null;
+        if (offsetsOutput != null) {
+            offsetsOutput.writeLong(elementsSize);
+            offsetsOutput.close();
+            offsetsOutput = null;
+        }
+    }
+
+    @Override
+    public long getSizeInBytes() {
+        if (fixedLength) {
+            return 4L + // Element size
+                   4L + // Element count
+                   elementsSize;
+        } else {
+            return 4L + // Element count
+                   8L * (size + 1L) + // Element offsets
+                   elementsSize; // Element array size
+        }
+    }
+
+    @Override
+    public void writeTo(
+            @NotNull
+            final OutputStream os) throws IOException {
+        assert elementsOutput == null : "Not finished";
+
+        if (fixedLength) {
+            // Element size
+            os.write(Ints.toByteArray(elementLength));
+        }
+
+        // Element count
+        os.write(Ints.toByteArray(size));
+
+        // Element offsets
+        if (offsets != null) {
+            Files.copy(offsets, os);
+        }
+
+        // Elements
+        Files.copy(elements, os);
+    }
+
+    @Override
+    public String toString() {
+        return "SpoolingByteArrayList{" +
+               "elementsCount=" + size +
+               ", fixedLength=" + fixedLength +
+               '}';
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.util.mutable.impl;
+
+import com.google.common.primitives.Ints;
+import com.yandex.yoctodb.util.TemporaryFiles;
+import com.yandex.yoctodb.util.mutable.ArrayBitSet;
+import com.yandex.yoctodb.util.mutable.IndexToIndexMap;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link IndexToIndexMap} with keys less than {@code capacity} kept in a
+ * memory-mapped temporary file instead of the heap, so the values may be
+ * put in any order.
+ *
+ * Written in the layout of {@link IntIndexToIndexMap}.
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+public final class SpoolingIndexToIndexMap implements IndexToIndexMap {
+    // 2^27 values (512 MB) per mapping
+    private static final int WINDOW_SHIFT = 27;
+    private static final int WINDOW_MASK = (1 << WINDOW_SHIFT) - 1;
+
+    @NotNull
+    private final MappedByteBuffer[] windows;
+    // Keys put
+    @NotNull
+    private final ArrayBitSet keys;
+    private int size = 0;
+    private int count = 0;
+
+    /**
+     * @param files    temporary files
+     * @param capacity maximum key plus one
+     */
+    public SpoolingIndexToIndexMap(
+            @NotNull
+            final TemporaryFiles files,
+            final int capacity) throws IOException {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Nonpositive capacity");
+
+        this.keys = LongArrayBitSet.zero(capacity);
+        this.windows =
+                new MappedByteBuffer[((capacity - 1) >>> WINDOW_SHIFT) + 1];
+        try (RandomAccessFile raf =
+                     new RandomAccessFile(files.newFile(), "rw")) {
+            final long length = 4L * capacity;
+            raf.setLength(length);
+
+            final FileChannel ch = raf.getChannel();
+            for (int i = 0; i < windows.length; i++) {
+                final long from = ((long) i << WINDOW_SHIFT) << 2;
+                windows[i] =
+                        ch.map(
+                                FileChannel.MapMode.READ_WRITE,
+                                from,
+                                Math.min(length - from, 4L << WINDOW_SHIFT));
+            }
+        }
+    }
+
+    @Override
+    public void put(final int key, final int value) {
+        if (key < 0 || key >= keys.getSize())
+            throw new IllegalArgumentException("Wrong key <" + key + ">");
+        if (value < 0)
+            throw new IllegalArgumentException("Negative value");
+        if (keys.get(key))
+            throw new IllegalArgumentException(
+                    "Key <" + key + "> was already bound");
+
+        windows[key >>> WINDOW_SHIFT].putInt((key & WINDOW_MASK) << 2, value);
+        keys.set(key);
+        size = Math.max(size, key + 1);
+        count++;
+    }
+
+    /**
+     * @return whether all the keys less than the maximum one are bound
+     */
+    public boolean isContinuous() {
+        return count == size;
+    }
+
+    @Override
+    public long getSizeInBytes() {
+        return 4L + 4L * size;
+    }
+
+    @Override
+    public void writeTo(
+            @NotNull
+            final OutputStream os) throws IOException {
+        if (!isContinuous()) {
+            throw new IllegalStateException("Indexes are not continuous");
+        }
+
+        // Elements count
+        os.write(Ints.toByteArray(size));
+
+        // Values
+        final byte[] buffer = new byte[8192];
+        long remaining = 4L * size;
+        for (int i = 0; remaining > 0; i++) {
+            final ByteBuffer window = windows[i].duplicate();
+            window.clear();
+            while (remaining > 0 && window.hasRemaining()) {
+                final int length =
+                        (int) Math.min(
+                                remaining,
+                                Math.min(buffer.length, window.remaining()));
+                window.get(buffer, 0, length);
+                os.write(buffer, 0, length);
+                remaining -= length;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SpoolingIndexToIndexMap{" +
+               "elements=" + size +
+               '}';
+    }
+}
@@ -0,0 +1,512 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.util.mutable.impl;
+
+import com.yandex.yoctodb.util.TemporaryFiles;
+import com.yandex.yoctodb.util.mutable.IndexToIndexMultiMap;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@link IndexToIndexMultiMap} built from the sets appended one document at a
+ * time and kept in temporary files instead of the heap.
+ *
+ * Sizes of all the representations are calculated while the sets are
+ * appended, so after {@link #finish()} the same representation is chosen as
+ * by {@link IndexToIndexMultiMapFactory} and the sets are encoded while
+ * being written. Only the current container or block is kept in the heap.
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+public final class SpoolingIndexToIndexMultiMap
+        implements IndexToIndexMultiMap {
+    private static final int CHUNK_SIZE =
+            1 << CompressedBitSetIndexToIndexMultiMap.CHUNK_SHIFT;
+    private static final int BLOCK_SIZE =
+            PackedIntIndexToIndexMultiMap.BLOCK_SIZE;
+
+    private final int documentsCount;
+    private final boolean sorted;
+    // Documents of all the sets
+    @NotNull
+    private final File documents;
+    // Size, containers count, compressed and packed size of each set
+    @NotNull
+    private final File sets;
+    @Nullable
+    private DataOutputStream documentsOutput;
+    @Nullable
+    private DataOutputStream setsOutput;
+
+    // Current set
+    private int size = 0;
+    private int previous = -1;
+    private int chunk = -1;
+    private int chunkSize = 0;
+    private int chunkRuns = 0;
+    private int containers = 0;
+    private long compressedSize = 0L;
+    @NotNull
+    private final int[] deltas = new int[BLOCK_SIZE];
+    @NotNull
+    private final int[] lengths = new int[33];
+    private int blockSize = 0;
+    private long packedSize = 0L;
+
+    // All the sets
+    private int keysCount = 0;
+    private long elementsCount = 0L;
+    private long compressedSetsSize = 0L;
+    private long packedSetsSize = 0L;
+    @Nullable
+    private V1DatabaseFormat.MultiMapType type;
+
+    /**
+     * @param files          temporary files
+     * @param documentsCount documents count
+     * @param sorted         whether sorted iteration should be supported
+     */
+    public SpoolingIndexToIndexMultiMap(
+            @NotNull
+            final TemporaryFiles files,
+            final int documentsCount,
+            final boolean sorted) throws IOException {
+        if (documentsCount <= 0)
+            throw new IllegalArgumentException("Nonpositive documents count");
+
+        this.documentsCount = documentsCount;
+        this.sorted = sorted;
+        this.documents = files.newFile();
+        this.sets = files.newFile();
+        this.documentsOutput = output(documents);
+        this.setsOutput = output(sets);
+    }
+
+    @NotNull
+    private static DataOutputStream output(
+            @NotNull
+            final File file) throws IOException {
+        return new DataOutputStream(
+                new BufferedOutputStream(
+                        new FileOutputStream(file)));
+    }
+
+    @NotNull
+    private static DataInputStream input(
+            @NotNull
+            final File file) throws IOException {
+        return new DataInputStream(
+                new BufferedInputStream(
+                        new FileInputStream(file)));
+    }
+
+    /**
+     * Appends the next document to the current set
+     *
+     * @param document document greater than the previous one in the set
+     */
+    public void add(final int document) throws IOException {
+        if (documentsOutput == null)
+            throw new IllegalStateException("Finished");
+        if (document <= previous || document >= documentsCount)
+            throw new IllegalArgumentException(
+                    "Wrong document <" + document + ">");
+
+        documentsOutput.writeInt(document);
+
+        // Containers
+        final int documentChunk =
+                document >>> CompressedBitSetIndexToIndexMultiMap.CHUNK_SHIFT;
+        if (documentChunk != chunk) {
+            endChunk();
+            chunk = documentChunk;
+            chunkRuns = 1;
+        } else if (document != previous + 1) {
+            chunkRuns++;
+        }
+        chunkSize++;
+
+        // Blocks
+        deltas[blockSize++] = document - previous - 1;
+        if (blockSize == BLOCK_SIZE) {
+            endBlock();
+        }
+
+        previous = document;
+        size++;
+    }
+
+    private void endChunk() {
+        if (chunkSize > 0) {
+            compressedSize +=
+                    CompressedBitSetIndexToIndexMultiMap.containerSize(
+                            documentsCount,
+                            chunk,
+                            chunkSize,
+                            chunkRuns);
+            containers++;
+            chunkSize = 0;
+        }
+    }
+
+    private void endBlock() {
+        if (blockSize > 0) {
+            packedSize +=
+                    PackedIntIndexToIndexMultiMap.blockSize(
+                            blockSize,
+                            PackedIntIndexToIndexMultiMap.header(
+                                    deltas,
+                                    blockSize,
+                                    lengths));
+            blockSize = 0;
+        }
+    }
+
+    /**
+     * Completes the current set
+     */
+    public void endSet() throws IOException {
+        if (setsOutput == null)
+            throw new IllegalStateException("Finished");
+        if (size == 0)
+            throw new IllegalArgumentException("Empty set");
+
+        endChunk();
+        endBlock();
+        compressedSize += 4L; // Containers count
+        packedSize += 4L; // Size
+
+        setsOutput.writeInt(size);
+        setsOutput.writeInt(containers);
+        setsOutput.writeLong(compressedSize);
+        setsOutput.writeLong(packedSize);
+
+        keysCount++;
+        elementsCount += size;
+        compressedSetsSize += compressedSize;
+        packedSetsSize += packedSize;
+
+        size = 0;
+        previous = -1;
+        chunk = -1;
+        containers = 0;
+        compressedSize = 0L;
+        packedSize = 0L;
+    }
+
+    /**
+     * Completes the map choosing its representation
+     */
+    public void finish() throws IOException {
+        if (documentsOutput == null || setsOutput == null)
+            throw new IllegalStateException("Finished");
+        if (size != 0)
+            throw new IllegalStateException("The last set is not ended");
+        if (keysCount == 0)
+            throw new IllegalArgumentException("Nonpositive values count");
+
+        documentsOutput.close();
+        documentsOutput = null;
+        setsOutput.close();
+        setsOutput = null;
+
+        final long compressed =
+                CompressedBitSetIndexToIndexMultiMap.headerSize(keysCount) +
+                compressedSetsSize;
+        final long packed =
+                PackedIntIndexToIndexMultiMap.headerSize(keysCount) +
+                packedSetsSize;
+        if (sorted) {
+            type =
+                    IndexToIndexMultiMapFactory.chooseSortedType(
+                            listSize(),
+                            packed);
+        } else if (IndexToIndexMultiMapFactory.bitSet(
+                keysCount,
+                documentsCount)) {
+            type =
+                    IndexToIndexMultiMapFactory.chooseType(
+                            BitSetIndexToIndexMultiMap.sizeInBytes(
+                                    keysCount,
+                                    documentsCount),
+                            V1DatabaseFormat.MultiMapType
+                                    .LONG_ARRAY_BIT_SET_BASED,
+                            compressed,
+                            packed);
+        } else {
+            type =
+                    IndexToIndexMultiMapFactory.chooseType(
+                            listSize(),
+                            V1DatabaseFormat.MultiMapType.LIST_BASED,
+                            compressed,
+                            packed);
+        }
+    }
+
+    private long listSize() {
+        return 4L + // type
+               4L + // keys count
+               (8L + 4L) * keysCount + // offsets + sizes
+               4L * elementsCount;    // set elements
+    }
+
+    /**
+     * @return chosen representation
+     */
+    @NotNull
+    public V1DatabaseFormat.MultiMapType getType() {
+        if (type == null)
+            throw new IllegalStateException("Not finished");
+
+        return type;
+    }
+
+    @Override
+    public long getSizeInBytes() {
+        switch (getType()) {
+            case LIST_BASED:
+                return listSize();
+            case LONG_ARRAY_BIT_SET_BASED:
+                return BitSetIndexToIndexMultiMap.sizeInBytes(
+                        keysCount,
+                        documentsCount);
+            case COMPRESSED_BIT_SET_BASED:
+                return CompressedBitSetIndexToIndexMultiMap.headerSize(
+                        keysCount) +
+                       compressedSetsSize;
+            default:
+                return PackedIntIndexToIndexMultiMap.headerSize(keysCount) +
+                       packedSetsSize;
+        }
+    }
+
+    @Override
+    public void writeTo(
+            @NotNull
+            final OutputStream os) throws IOException {
+        final V1DatabaseFormat.MultiMapType type = getType();
+
+        final DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(os));
+
+        // Header
+        out.writeInt(type.getCode());
+        out.writeInt(keysCount);
+        if (type == V1DatabaseFormat.MultiMapType.LONG_ARRAY_BIT_SET_BASED) {
+            out.writeInt(LongArrayBitSet.arraySize(documentsCount));
+        } else if (type ==
+                   V1DatabaseFormat.MultiMapType.COMPRESSED_BIT_SET_BASED) {
+            out.writeInt(documentsCount);
+        }
+
+        if (type != V1DatabaseFormat.MultiMapType.LONG_ARRAY_BIT_SET_BASED) {
+            writeOffsets(out, type);
+        }
+        if (type == V1DatabaseFormat.MultiMapType.COMPRESSED_BIT_SET_BASED ||
+            type == V1DatabaseFormat.MultiMapType.PACKED_LIST_BASED) {
+            writeCardinalities(out);
+        }
+
+        // Sets
+        try (DataInputStream setsInput = input(sets);
+             DataInputStream documentsInput = input(documents)) {
+            for (int key = 0; key < keysCount; key++) {
+                final int setSize = setsInput.readInt();
+                final int setContainers = setsInput.readInt();
+                setsInput.readLong();
+                setsInput.readLong();
+
+                switch (type) {
+                    case LIST_BASED:
+                        out.writeInt(setSize);
+                        for (int i = 0; i < setSize; i++) {
+                            out.writeInt(documentsInput.readInt());
+                        }
+                        break;
+                    case LONG_ARRAY_BIT_SET_BASED:
+                        writeBitSet(out, documentsInput, setSize);
+                        break;
+                    case COMPRESSED_BIT_SET_BASED:
+                        out.writeInt(setContainers);
+                        writeContainers(out, documentsInput, setSize);
+                        break;
+                    default:
+                        out.writeInt(setSize);
+                        writeBlocks(out, documentsInput, setSize);
+                }
+            }
+        }
+
+        out.flush();
+    }
+
+    private void writeOffsets(
+            @NotNull
+            final DataOutputStream out,
+            @NotNull
+            final V1DatabaseFormat.MultiMapType type) throws IOException {
+        long offset = 0L;
+        try (DataInputStream setsInput = input(sets)) {
+            for (int key = 0; key < keysCount; key++) {
+                final int setSize = setsInput.readInt();
+                setsInput.readInt();
+                final long setCompressedSize = setsInput.readLong();
+                final long setPackedSize = setsInput.readLong();
+
+                out.writeLong(offset);
+                switch (type) {
+                    case LIST_BASED:
+                        offset += 4L + 4L * setSize;
+                        break;
+                    case COMPRESSED_BIT_SET_BASED:
+                        offset += setCompressedSize;
+                        break;
+                    default:
+                        offset += setPackedSize;
+                }
+            }
+        }
+    }
+
+    private void writeCardinalities(
+            @NotNull
+            final DataOutputStream out) throws IOException {
+        long cardinality = 0L;
+        out.writeLong(cardinality);
+        try (DataInputStream setsInput = input(sets)) {
+            for (int key = 0; key < keysCount; key++) {
+                cardinality += setsInput.readInt();
+                setsInput.readInt();
+                setsInput.readLong();
+                setsInput.readLong();
+
+                out.writeLong(cardinality);
+            }
+        }
+    }
+
+    private void writeBitSet(
+            @NotNull
+            final DataOutputStream out,
+            @NotNull
+            final DataInputStream documentsInput,
+            final int setSize) throws IOException {
+        final int words = LongArrayBitSet.arraySize(documentsCount);
+        int wordIndex = 0;
+        long word = 0L;
+        for (int i = 0; i < setSize; i++) {
+            final int document = documentsInput.readInt();
+            while (wordIndex < document >>> 6) {
+                out.writeLong(word);
+                word = 0L;
+                wordIndex++;
+            }
+            word |= 1L << document;
+        }
+        while (wordIndex < words) {
+            out.writeLong(word);
+            word = 0L;
+            wordIndex++;
+        }
+    }
+
+    private void writeContainers(
+            @NotNull
+            final DataOutputStream out,
+            @NotNull
+            final DataInputStream documentsInput,
+            final int setSize) throws IOException {
+        final int[] buffer = new int[Math.min(setSize, CHUNK_SIZE)];
+        int count = 0;
+        int runs = 0;
+        int currentChunk = -1;
+        for (int i = 0; i < setSize; i++) {
+            final int document = documentsInput.readInt();
+            final int documentChunk =
+                    document >>>
+                    CompressedBitSetIndexToIndexMultiMap.CHUNK_SHIFT;
+            if (documentChunk != currentChunk) {
+                if (count > 0) {
+                    CompressedBitSetIndexToIndexMultiMap.writeContainer(
+                            out,
+                            documentsCount,
+                            buffer,
+                            0,
+                            count,
+                            currentChunk,
+                            runs);
+                }
+                currentChunk = documentChunk;
+                count = 0;
+                runs = 1;
+            } else if (document != buffer[count - 1] + 1) {
+                runs++;
+            }
+            buffer[count++] = document;
+        }
+        CompressedBitSetIndexToIndexMultiMap.writeContainer(
+                out,
+                documentsCount,
+                buffer,
+                0,
+                count,
+                currentChunk,
+                runs);
+    }
+
+    private void writeBlocks(
+            @NotNull
+            final DataOutputStream out,
+            @NotNull
+            final DataInputStream documentsInput,
+            final int setSize) throws IOException {
+        int previousDocument = -1;
+        for (int from = 0; from < setSize; from += BLOCK_SIZE) {
+            final int count = Math.min(BLOCK_SIZE, setSize - from);
+            for (int i = 0; i < count; i++) {
+                final int document = documentsInput.readInt();
+                deltas[i] = document - previousDocument - 1;
+                previousDocument = document;
+            }
+
+            PackedIntIndexToIndexMultiMap.writeBlock(
+                    out,
+                    deltas,
+                    count,
+                    PackedIntIndexToIndexMultiMap.header(
+                            deltas,
+                            count,
+                            lengths));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SpoolingIndexToIndexMultiMap{" +
+               "keys=" + keysCount +
+               ", documentsCount=" + documentsCount +
+               ", type=" + type +
+               '}';
+    }
+}
@@ -20,6 +20,8 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.SortedSet;
 
 /**
@@ -35,6 +37,15 @@ public final class VariableLengthByteArraySortedSet
     public VariableLengthByteArraySortedSet(
             @NotNull
             final SortedSet<UnsignedByteArray> elements) {
+        this(new ArrayList<>(elements));
+    }
+
+    /**
+     * @param elements ascending unique elements
+     */
+    public VariableLengthByteArraySortedSet(
+            @NotNull
+            final List<UnsignedByteArray> elements) {
         super(elements);
 
         long elementSize = 0;
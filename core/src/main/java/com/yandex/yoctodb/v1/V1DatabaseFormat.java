@@ -10,6 +10,8 @@
 
 package com.yandex.yoctodb.v1;
 
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
 import net.jcip.annotations.ThreadSafe;
 import org.jetbrains.annotations.NotNull;
 import com.yandex.yoctodb.DatabaseFormat;
@@ -19,7 +21,11 @@ import com.yandex.yoctodb.mutable.DocumentBuilder;
 import com.yandex.yoctodb.v1.immutable.V1DatabaseReader;
 import com.yandex.yoctodb.v1.mutable.V1DatabaseBuilder;
 import com.yandex.yoctodb.v1.mutable.V1DocumentBuilder;
+import com.yandex.yoctodb.v1.mutable.V1SpillingDatabaseBuilder;
 
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -29,7 +35,19 @@ import java.util.concurrent.atomic.AtomicReference;
  */
 @ThreadSafe
 public final class V1DatabaseFormat extends DatabaseFormat {
-    public final static int FORMAT = 6;
+    public final static int FORMAT = 10;
+
+    /**
+     * The previous format with the segment directory, but without segment
+     * checksums still supported by the reader
+     */
+    public final static int FORMAT_WITHOUT_CHECKSUMS = 9;
+
+    /**
+     * The previous format without the segment directory still supported by
+     * the reader
+     */
+    public final static int FORMAT_WITHOUT_DIRECTORY = 8;
 
     private final static DatabaseReader DATABASE_READER = new V1DatabaseReader();
 
@@ -67,6 +85,53 @@ public final class V1DatabaseFormat extends DatabaseFormat {
         digestSize.set(size);
     }
 
+    private final static AtomicReference<ChecksumType> segmentChecksum =
+            new AtomicReference<>(ChecksumType.CRC32);
+
+    /**
+     * @return checksum of each segment and of the segment directory
+     *         written by newly built databases
+     */
+    @NotNull
+    public static ChecksumType getSegmentChecksum() {
+        return segmentChecksum.get();
+    }
+
+    public static void setSegmentChecksum(
+            @NotNull
+            final ChecksumType type) {
+        segmentChecksum.set(type);
+    }
+
+    private final static AtomicBoolean storedCompression =
+            new AtomicBoolean(false);
+
+    /**
+     * @return whether stored fields are written in compressed blocks by
+     *         newly built databases
+     */
+    public static boolean isStoredCompressionEnabled() {
+        return storedCompression.get();
+    }
+
+    public static void setStoredCompressionEnabled(final boolean enabled) {
+        storedCompression.set(enabled);
+    }
+
+    private final static AtomicBoolean statistics = new AtomicBoolean(false);
+
+    /**
+     * @return whether field statistics segments are written by newly
+     *         created database builders
+     */
+    public static boolean isStatisticsEnabled() {
+        return statistics.get();
+    }
+
+    public static void setStatisticsEnabled(final boolean enabled) {
+        statistics.set(enabled);
+    }
+
     // Segment types
     public enum SegmentType {
         // External segments should start from 10E6
@@ -76,7 +141,11 @@ public final class V1DatabaseFormat extends DatabaseFormat {
         VARIABLE_LENGTH_SORTABLE_INDEX(4000),
         FIXED_LENGTH_FULL_INDEX(5000),
         VARIABLE_LENGTH_FULL_INDEX(6000),
-        VARIABLE_LENGTH_STORED_INDEX(8000);
+        COMPRESSED_STORED_INDEX(7000),
+        VARIABLE_LENGTH_STORED_INDEX(8000),
+        FIELD_STATISTICS(9000),
+        FIXED_LENGTH_RANGE_FILTER(10000),
+        VARIABLE_LENGTH_RANGE_FILTER(11000);
 
         private final int code;
 
@@ -91,7 +160,9 @@ public final class V1DatabaseFormat extends DatabaseFormat {
 
     public enum MultiMapType {
         LIST_BASED(1000),
-        LONG_ARRAY_BIT_SET_BASED(2000);
+        LONG_ARRAY_BIT_SET_BASED(2000),
+        COMPRESSED_BIT_SET_BASED(3000),
+        PACKED_LIST_BASED(4000);
 
         private final int code;
 
@@ -104,6 +175,63 @@ public final class V1DatabaseFormat extends DatabaseFormat {
         }
     }
 
+    // Non-cryptographic checksums of segments
+    public enum ChecksumType {
+        // Hardware accelerated by the JDK
+        CRC32(1, Hashing.crc32()),
+        CRC32C(2, Hashing.crc32c());
+
+        private final int code;
+        @NotNull
+        private final HashFunction hashFunction;
+
+        ChecksumType(
+                final int code,
+                @NotNull
+                final HashFunction hashFunction) {
+            this.code = code;
+            this.hashFunction = hashFunction;
+        }
+
+        public int getCode() {
+            return code;
+        }
+
+        @NotNull
+        public HashFunction getHashFunction() {
+            return hashFunction;
+        }
+
+        @NotNull
+        public static ChecksumType fromCode(final int code) {
+            for (ChecksumType type : values()) {
+                if (type.code == code) {
+                    return type;
+                }
+            }
+
+            throw new IllegalArgumentException(
+                    "Unknown checksum type " + code);
+        }
+    }
+
+    // Containers of compressed bit sets (each covers 64K documents)
+    public enum ContainerType {
+        ARRAY(0),
+        BITMAP(1),
+        RUN(2);
+
+        private final int code;
+
+        ContainerType(final int code) {
+            this.code = code;
+        }
+
+        public int getCode() {
+            return code;
+        }
+    }
+
     @NotNull
     @Override
     public DocumentBuilder newDocumentBuilder() {
@@ -113,7 +241,27 @@ public final class V1DatabaseFormat extends DatabaseFormat {
     @NotNull
     @Override
     public DatabaseBuilder newDatabaseBuilder() {
-        return new V1DatabaseBuilder();
+        return new V1DatabaseBuilder(isStatisticsEnabled());
+    }
+
+    @NotNull
+    @Override
+    public DatabaseBuilder newDatabaseBuilder(
+            @NotNull
+            final ExecutorService executor) {
+        return new V1DatabaseBuilder(isStatisticsEnabled(), executor);
+    }
+
+    @NotNull
+    @Override
+    public DatabaseBuilder newDatabaseBuilder(
+            final long memoryBudget,
+            @NotNull
+            final File tempDirectory) {
+        return new V1SpillingDatabaseBuilder(
+                isStatisticsEnabled(),
+                memoryBudget,
+                tempDirectory);
     }
 
     @NotNull
@@ -0,0 +1,183 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.immutable;
+
+import com.yandex.yoctodb.immutable.FieldStatistics;
+import com.yandex.yoctodb.immutable.FilterableIndex;
+import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.util.mutable.BitSet;
+import net.jcip.annotations.Immutable;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * {@link FilterableIndex} tightening estimations of the delegate with
+ * {@link FieldStatistics} of the same field.
+ *
+ * Both estimations are upper bounds, so is the minimum. Useful for the
+ * indexes based on bit sets which know nothing about cardinalities.
+ *
+ * @author incubos
+ */
+@Immutable
+final class FilterableIndexWithStatistics implements FilterableIndex {
+    @NotNull
+    private final FilterableIndex delegate;
+    @NotNull
+    private final FieldStatistics statistics;
+
+    FilterableIndexWithStatistics(
+            @NotNull
+            final FilterableIndex delegate,
+            @NotNull
+            final FieldStatistics statistics) {
+        assert delegate.getFieldName().equals(statistics.getFieldName());
+
+        this.delegate = delegate;
+        this.statistics = statistics;
+    }
+
+    @NotNull
+    @Override
+    public String getFieldName() {
+        return delegate.getFieldName();
+    }
+
+    @Override
+    public boolean eq(
+            @NotNull
+            final BitSet dest,
+            @NotNull
+            final Buffer value) {
+        return delegate.eq(dest, value);
+    }
+
+    @Override
+    public boolean in(
+            @NotNull
+            final BitSet dest,
+            @NotNull
+            final Buffer... value) {
+        return delegate.in(dest, value);
+    }
+
+    @Override
+    public boolean lessThan(
+            @NotNull
+            final BitSet dest,
+            @NotNull
+            final Buffer value,
+            final boolean orEquals) {
+        return delegate.lessThan(dest, value, orEquals);
+    }
+
+    @Override
+    public boolean greaterThan(
+            @NotNull
+            final BitSet dest,
+            @NotNull
+            final Buffer value,
+            final boolean orEquals) {
+        return delegate.greaterThan(dest, value, orEquals);
+    }
+
+    @Override
+    public boolean between(
+            @NotNull
+            final BitSet dest,
+            @NotNull
+            final Buffer from,
+            final boolean fromInclusive,
+            @NotNull
+            final Buffer to,
+            final boolean toInclusive) {
+        return delegate.between(dest, from, fromInclusive, to, toInclusive);
+    }
+
+    @Override
+    public long estimateEq(
+            @NotNull
+            final Buffer value) {
+        final long estimate = delegate.estimateEq(value);
+        return estimate == 0L ?
+                0L :
+                Math.min(estimate, statistics.estimateEq(value));
+    }
+
+    @Override
+    public long estimateIn(
+            @NotNull
+            final Buffer... value) {
+        long result = 0L;
+        for (Buffer currentValue : value) {
+            result += estimateEq(currentValue);
+        }
+        return Math.min(result, delegate.estimateIn(value));
+    }
+
+    @Override
+    public long estimateLessThan(
+            @NotNull
+            final Buffer value,
+            final boolean orEquals) {
+        final long estimate = delegate.estimateLessThan(value, orEquals);
+        return estimate == 0L ?
+                0L :
+                Math.min(
+                        estimate,
+                        statistics.estimateBetween(
+                                null,
+                                false,
+                                value,
+                                orEquals));
+    }
+
+    @Override
+    public long estimateGreaterThan(
+            @NotNull
+            final Buffer value,
+            final boolean orEquals) {
+        final long estimate = delegate.estimateGreaterThan(value, orEquals);
+        return estimate == 0L ?
+                0L :
+                Math.min(
+                        estimate,
+                        statistics.estimateBetween(
+                                value,
+                                orEquals,
+                                null,
+                                false));
+    }
+
+    @Override
+    public long estimateBetween(
+            @NotNull
+            final Buffer from,
+            final boolean fromInclusive,
+            @NotNull
+            final Buffer to,
+            final boolean toInclusive) {
+        final long estimate =
+                delegate.estimateBetween(
+                        from,
+                        fromInclusive,
+                        to,
+                        toInclusive);
+        return estimate == 0L ?
+                0L :
+                Math.min(
+                        estimate,
+                        statistics.estimateBetween(
+                                from,
+                                fromInclusive,
+                                to,
+                                toInclusive));
+    }
+}
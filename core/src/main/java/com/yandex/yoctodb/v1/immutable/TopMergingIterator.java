@@ -0,0 +1,146 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.immutable;
+
+import com.yandex.yoctodb.query.Query;
+import com.yandex.yoctodb.query.ScoredDocument;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Merges sorted {@link ScoredDocument} iterators returning at most
+ * {@code limit} first documents.
+ *
+ * Iterators are kept in a binary heap of their indexes, so no per-element
+ * allocations are made. Equal documents are returned in iterator order.
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+final class TopMergingIterator implements Iterator<ScoredDocument<?>> {
+    @NotNull
+    private final List<Iterator<? extends ScoredDocument<?>>> iterators;
+    @NotNull
+    private final ScoredDocument<?>[] heads;
+    @NotNull
+    private final int[] heap;
+    private int size;
+    private int remaining;
+
+    TopMergingIterator(
+            @NotNull
+            final List<Iterator<? extends ScoredDocument<?>>> iterators,
+            final int limit) {
+        assert limit > 0;
+
+        this.iterators = new ArrayList<>(iterators);
+        this.heads = new ScoredDocument<?>[iterators.size()];
+        this.heap = new int[iterators.size()];
+        this.remaining = limit;
+
+        for (int i = 0; i < heads.length; i++) {
+            final Iterator<? extends ScoredDocument<?>> iterator =
+                    this.iterators.get(i);
+            if (iterator.hasNext()) {
+                heads[i] = iterator.next();
+                heap[size++] = i;
+            }
+        }
+
+        for (int i = (size >>> 1) - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    /**
+     * Calculates the number of the first sorted documents needed to serve the
+     * query
+     *
+     * @param query query
+     * @return skip + limit saturated to {@link Integer#MAX_VALUE}
+     */
+    static int bound(
+            @NotNull
+            final Query query) {
+        return (int) Math.min(
+                (long) query.getSkip() + query.getLimit(),
+                Integer.MAX_VALUE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean less(
+            final int left,
+            final int right) {
+        final int cmp =
+                ((ScoredDocument) heads[left]).compareTo(heads[right]);
+        return cmp < 0 || (cmp == 0 && left < right);
+    }
+
+    private void siftDown(int i) {
+        final int iterator = heap[i];
+        while (true) {
+            int child = (i << 1) + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && less(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!less(heap[child], iterator)) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = iterator;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return remaining > 0 && size > 0;
+    }
+
+    @Override
+    public ScoredDocument<?> next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+
+        final int top = heap[0];
+        final ScoredDocument<?> result = heads[top];
+        remaining--;
+
+        final Iterator<? extends ScoredDocument<?>> iterator =
+                iterators.get(top);
+        if (remaining > 0 && iterator.hasNext()) {
+            heads[top] = iterator.next();
+        } else {
+            heads[top] = null;
+            size--;
+            heap[0] = heap[size];
+        }
+
+        if (size > 0) {
+            siftDown(0);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Removal is not supported");
+    }
+}
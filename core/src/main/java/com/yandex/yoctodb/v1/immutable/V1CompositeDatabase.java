@@ -10,6 +10,7 @@
 
 package com.yandex.yoctodb.v1.immutable;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterators;
 import com.yandex.yoctodb.immutable.Database;
 import com.yandex.yoctodb.immutable.DocumentProvider;
@@ -23,25 +24,28 @@ import com.yandex.yoctodb.util.mutable.BitSet;
 import com.yandex.yoctodb.util.mutable.impl.ReadOnlyOneBitSet;
 import net.jcip.annotations.Immutable;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Composite database for a set of {@link V1Database}s
  *
+ * If {@link ExecutorService} is supplied, the databases are filtered
+ * concurrently, but the results are merged in the same order as in the serial
+ * mode.
+ *
+ * Sorted results of the databases are merged keeping only skip + limit first
+ * documents.
+ *
  * @author incubos
  */
 @Immutable
 public final class V1CompositeDatabase implements Database {
-    private static final Comparator<ScoredDocument> SCORED_DOCUMENT_COMPARATOR = new Comparator<ScoredDocument>() {
-        @SuppressWarnings("unchecked")
-        @Override
-        public int compare(
-                final ScoredDocument o1,
-                final ScoredDocument o2) {
-            return o1.compareTo(o2);
-        }
-    };
     @NotNull
     private final List<IndexedDatabase> databases;
     @NotNull
@@ -49,12 +53,24 @@ public final class V1CompositeDatabase implements Database {
     @NotNull
     private final int[] documentOffsets;
     private final int documentCount;
+    @Nullable
+    private final ExecutorService executor;
 
     public V1CompositeDatabase(
             @NotNull
             final Collection<? extends IndexedDatabase> databases,
             @NotNull
             final ArrayBitSetPool bitSetPool) {
+        this(databases, bitSetPool, null);
+    }
+
+    public V1CompositeDatabase(
+            @NotNull
+            final Collection<? extends IndexedDatabase> databases,
+            @NotNull
+            final ArrayBitSetPool bitSetPool,
+            @Nullable
+            final ExecutorService executor) {
         this.databases = new ArrayList<>(databases);
         this.documentOffsets = new int[databases.size()];
         int documentCount = 0;
@@ -66,6 +82,7 @@ public final class V1CompositeDatabase implements Database {
         }
         this.documentCount = documentCount;
         this.bitSetPool = bitSetPool;
+        this.executor = executor;
     }
 
     @Override
@@ -101,6 +118,132 @@ public final class V1CompositeDatabase implements Database {
                         fieldName);
     }
 
+    @Override
+    public void getFieldValues(
+            @NotNull
+            final int[] documents,
+            final int offset,
+            final int length,
+            @NotNull
+            final List<String> fieldNames,
+            @NotNull
+            final Buffer[] to) {
+        V1Database.checkFieldValuesArguments(
+                documents,
+                offset,
+                length,
+                fieldNames,
+                to);
+
+        final int fieldsCount = fieldNames.size();
+        final long[] order =
+                V1Database.sortByDocument(
+                        documents,
+                        offset,
+                        length,
+                        documentCount);
+
+        // Grouping the documents by database in ascending order
+        int dbIndex = 0;
+        int start = 0;
+        while (start < order.length) {
+            final int first = (int) (order[start] >>> 32);
+            while (dbIndex + 1 < documentOffsets.length &&
+                   documentOffsets[dbIndex + 1] <= first) {
+                dbIndex++;
+            }
+
+            final int dbStart = documentOffsets[dbIndex];
+            final int dbEnd =
+                    dbStart + databases.get(dbIndex).getDocumentCount();
+            int end = start + 1;
+            while (end < order.length &&
+                   (int) (order[end] >>> 32) < dbEnd) {
+                end++;
+            }
+
+            final int count = end - start;
+            final int[] local = new int[count];
+            for (int i = 0; i < count; i++) {
+                local[i] = (int) (order[start + i] >>> 32) - dbStart;
+            }
+
+            final Buffer[] values = new Buffer[count * fieldsCount];
+            databases.get(dbIndex).getFieldValues(
+                    local,
+                    0,
+                    count,
+                    fieldNames,
+                    values);
+
+            for (int i = 0; i < count; i++) {
+                final int position = (int) order[start + i];
+                System.arraycopy(
+                        values,
+                        i * fieldsCount,
+                        to,
+                        position * fieldsCount,
+                        fieldsCount);
+            }
+
+            start = end;
+        }
+    }
+
+    /**
+     * Filters every database not taking into account skip/limit
+     *
+     * @param query query to filter with
+     * @return filtering results (possibly {@code null}) in database order
+     */
+    @NotNull
+    private List<BitSet> filteredUnlimited(
+            @NotNull
+            final Query query) {
+        final List<BitSet> results = new ArrayList<>(databases.size());
+
+        if (executor == null) {
+            for (IndexedDatabase db : databases) {
+                results.add(query.filteredUnlimited(db, bitSetPool));
+            }
+
+            return results;
+        }
+
+        final List<Callable<BitSet>> tasks =
+                new ArrayList<>(databases.size());
+        for (final IndexedDatabase db : databases) {
+            tasks.add(
+                    new Callable<BitSet>() {
+                        @Override
+                        public BitSet call() {
+                            return query.filteredUnlimited(db, bitSetPool);
+                        }
+                    });
+        }
+
+        final List<Future<BitSet>> futures;
+        try {
+            futures = executor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+
+        for (Future<BitSet> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+
+        return results;
+    }
+
     @Override
     public void execute(
             @NotNull
@@ -114,8 +257,10 @@ public final class V1CompositeDatabase implements Database {
             final List<Iterator<? extends ScoredDocument<?>>> results =
                     new ArrayList<>(
                             databases.size());
-            for (IndexedDatabase db : databases) {
-                final BitSet docs = query.filteredUnlimited(db, bitSetPool);
+            final int bound = TopMergingIterator.bound(query);
+            final List<BitSet> filtered = filteredUnlimited(query);
+            for (int i = 0; i < databases.size(); i++) {
+                final BitSet docs = filtered.get(i);
 
                 if (docs == null) {
                     continue;
@@ -123,24 +268,46 @@ public final class V1CompositeDatabase implements Database {
 
                 assert !docs.isEmpty();
 
-                results.add(query.sortedUnlimited(docs, db, bitSetPool));
+                results.add(
+                        query.sortedTop(
+                                docs,
+                                databases.get(i),
+                                bitSetPool,
+                                bound));
             }
 
             if (results.isEmpty()) {
                 return;
             }
 
-            iterator =
-                    Iterators.mergeSorted(
-                            results,
-                            SCORED_DOCUMENT_COMPARATOR);
-        } else {
+            iterator = new TopMergingIterator(results, bound);
+        } else if (executor == null) {
             iterator =
                     Iterators.concat(
                             new FilterResultIterator(
                                     query,
                                     databases.iterator(),
                                     bitSetPool));
+        } else {
+            final List<QueryContext> results =
+                    new ArrayList<>(databases.size());
+            final List<BitSet> filtered = filteredUnlimited(query);
+            for (int i = 0; i < databases.size(); i++) {
+                final BitSet docs = filtered.get(i);
+                if (docs != null) {
+                    results.add(
+                            new QueryContext(
+                                    docs,
+                                    databases.get(i),
+                                    bitSetPool));
+                }
+            }
+
+            iterator =
+                    Iterators.concat(
+                            new SortResultIterator(
+                                    query,
+                                    results.iterator()));
         }
 
         // Skipping values
@@ -180,8 +347,11 @@ public final class V1CompositeDatabase implements Database {
             final List<Iterator<? extends ScoredDocument<?>>> results =
                     new ArrayList<>(
                             databases.size());
-            for (IndexedDatabase db : databases) {
-                final BitSet docs = query.filteredUnlimited(db, bitSetPool);
+            final int bound = TopMergingIterator.bound(query);
+            final List<BitSet> filtered = filteredUnlimited(query);
+            for (int i = 0; i < databases.size(); i++) {
+                final IndexedDatabase db = databases.get(i);
+                final BitSet docs = filtered.get(i);
                 if (docs != null) {
                     assert !docs.isEmpty();
 
@@ -194,10 +364,11 @@ public final class V1CompositeDatabase implements Database {
                         filter = docs;
                     }
                     results.add(
-                            query.sortedUnlimited(
+                            query.sortedTop(
                                     filter,
                                     db,
-                                    bitSetPool));
+                                    bitSetPool,
+                                    bound));
                     result += count;
                 }
             }
@@ -206,16 +377,14 @@ public final class V1CompositeDatabase implements Database {
                 return 0;
             }
 
-            iterator =
-                    Iterators.mergeSorted(
-                            results,
-                            SCORED_DOCUMENT_COMPARATOR
-                    );
+            iterator = new TopMergingIterator(results, bound);
         } else {
             final List<QueryContext> results =
                     new ArrayList<>(databases.size());
-            for (IndexedDatabase db : databases) {
-                final BitSet docs = query.filteredUnlimited(db, bitSetPool);
+            final List<BitSet> filtered = filteredUnlimited(query);
+            for (int i = 0; i < databases.size(); i++) {
+                final IndexedDatabase db = databases.get(i);
+                final BitSet docs = filtered.get(i);
                 if (docs != null) {
                     assert !docs.isEmpty();
 
@@ -268,13 +437,98 @@ public final class V1CompositeDatabase implements Database {
         return result;
     }
 
+    @Override
+    public int executeIds(
+            @NotNull
+            final Query query,
+            @NotNull
+            final int[] to,
+            final int offset,
+            final int length) {
+        if (offset < 0 || length < 0 || offset + length > to.length) {
+            throw new IllegalArgumentException("Wrong offset or length");
+        }
+
+        final int limit = Math.min(length, query.getLimit());
+        if (limit == 0) {
+            return 0;
+        }
+
+        // Merging needs sort values
+        if (query.hasSorting()) {
+            return executeSortedIds(query, to, offset, limit);
+        }
+
+        final List<BitSet> filtered =
+                executor == null ? null : filteredUnlimited(query);
+        int skip = query.getSkip();
+        int written = 0;
+        for (int i = 0; i < databases.size() && written < limit; i++) {
+            final IndexedDatabase db = databases.get(i);
+            final BitSet docs =
+                    filtered == null ?
+                    query.filteredUnlimited(db, bitSetPool) :
+                    filtered.get(i);
+            if (docs == null) {
+                continue;
+            }
+
+            assert !docs.isEmpty();
+
+            // Skipping the whole database
+            if (skip > 0) {
+                final int count = docs.cardinality();
+                if (count <= skip) {
+                    skip -= count;
+                    continue;
+                }
+            }
+
+            final int from = offset + written;
+            written +=
+                    query.sortedTopIds(
+                            docs,
+                            db,
+                            skip,
+                            to,
+                            from,
+                            limit - written);
+            skip = 0;
+
+            // Global ids
+            final int documentOffset = documentOffsets[i];
+            for (int j = from; j < offset + written; j++) {
+                to[j] += documentOffset;
+            }
+        }
+
+        return written;
+    }
+
+    private int executeSortedIds(
+            @NotNull
+            final Query query,
+            @NotNull
+            final int[] to,
+            final int offset,
+            final int limit) {
+        // Merged by document ids, so no scores are built
+        return query.sortedTopIds(
+                filteredUnlimited(query),
+                databases,
+                documentOffsets,
+                query.getSkip(),
+                to,
+                offset,
+                limit);
+    }
+
     @Override
     public int count(
             @NotNull
             final Query query) {
         int count = 0;
-        for (IndexedDatabase db : databases) {
-            final BitSet docs = query.filteredUnlimited(db, bitSetPool);
+        for (BitSet docs : filteredUnlimited(query)) {
             if (docs != null) {
                 count += docs.cardinality();
             }
@@ -284,4 +538,21 @@ public final class V1CompositeDatabase implements Database {
                 Math.max(count - query.getSkip(), 0),
                 query.getLimit());
     }
+
+    @Override
+    public int estimateCount(
+            @NotNull
+            final Query query) {
+        long estimate = 0L;
+        for (IndexedDatabase database : databases) {
+            estimate +=
+                    Math.min(
+                            database.getDocumentCount(),
+                            query.estimateUnlimited(database));
+        }
+
+        return (int) Math.min(
+                Math.max(estimate - query.getSkip(), 0L),
+                query.getLimit());
+    }
 }
@@ -24,8 +24,11 @@ import net.jcip.annotations.Immutable;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 
@@ -46,6 +49,8 @@ public final class V1Database implements IndexedDatabase {
     @NotNull
     private final Map<String, StoredIndex> storers;
     @NotNull
+    private final Map<String, FieldStatistics> statistics;
+    @NotNull
     private final ArrayBitSetPool bitSetPool;
 
     public V1Database(
@@ -58,12 +63,48 @@ public final class V1Database implements IndexedDatabase {
             final Map<String, StoredIndex> storers,
             @NotNull
             final ArrayBitSetPool bitSetPool) {
+        this(
+                size,
+                filters,
+                sorters,
+                storers,
+                Collections.<String, FieldStatistics>emptyMap(),
+                bitSetPool);
+    }
+
+    public V1Database(
+            final int size,
+            @NotNull
+            final Map<String, FilterableIndex> filters,
+            @NotNull
+            final Map<String, SortableIndex> sorters,
+            @NotNull
+            final Map<String, StoredIndex> storers,
+            @NotNull
+            final Map<String, FieldStatistics> statistics,
+            @NotNull
+            final ArrayBitSetPool bitSetPool) {
         assert size >= 0;
 
         this.size = size;
-        this.filters = unmodifiableMap(new HashMap<>(filters));
+        // Tightening filter estimations with statistics
+        final Map<String, FilterableIndex> estimatingFilters =
+                new HashMap<>(filters);
+        for (Map.Entry<String, FieldStatistics> e : statistics.entrySet()) {
+            final FilterableIndex filter = filters.get(e.getKey());
+            if (filter != null) {
+                estimatingFilters.put(
+                        e.getKey(),
+                        new FilterableIndexWithStatistics(
+                                filter,
+                                e.getValue()));
+            }
+        }
+
+        this.filters = unmodifiableMap(estimatingFilters);
         this.sorters = unmodifiableMap(new HashMap<>(sorters));
         this.storers = unmodifiableMap(new HashMap<>(storers));
+        this.statistics = unmodifiableMap(new HashMap<>(statistics));
         this.bitSetPool = bitSetPool;
     }
 
@@ -92,6 +133,14 @@ public final class V1Database implements IndexedDatabase {
         return filters.get(fieldName);
     }
 
+    @Nullable
+    @Override
+    public FieldStatistics getStatistics(
+            @NotNull
+            final String fieldName) {
+        return statistics.get(fieldName);
+    }
+
     @NotNull
     @Override
     public SortableIndex getSorter(
@@ -113,6 +162,89 @@ public final class V1Database implements IndexedDatabase {
         return storers.get(fieldName).getStoredValue(document);
     }
 
+    /**
+     * Validates {@link #getFieldValues} arguments
+     */
+    static void checkFieldValuesArguments(
+            @NotNull
+            final int[] documents,
+            final int offset,
+            final int length,
+            @NotNull
+            final List<String> fieldNames,
+            @NotNull
+            final Buffer[] to) {
+        if (offset < 0 || length < 0 || offset + length > documents.length)
+            throw new IllegalArgumentException("Wrong offset or length");
+        if ((long) length * fieldNames.size() > to.length)
+            throw new IllegalArgumentException("Too small destination");
+    }
+
+    /**
+     * Sorts document positions by document
+     *
+     * @param documentsCount documents count of the database
+     * @return document in the high and its position in the low 32 bits
+     *         in ascending document order
+     */
+    @NotNull
+    static long[] sortByDocument(
+            @NotNull
+            final int[] documents,
+            final int offset,
+            final int length,
+            final int documentsCount) {
+        final long[] result = new long[length];
+        for (int i = 0; i < length; i++) {
+            final int document = documents[offset + i];
+            if (document < 0 || document >= documentsCount)
+                throw new IllegalArgumentException(
+                        "Wrong document " + document);
+
+            result[i] = ((long) document << 32) | i;
+        }
+        Arrays.sort(result);
+
+        return result;
+    }
+
+    @Override
+    public void getFieldValues(
+            @NotNull
+            final int[] documents,
+            final int offset,
+            final int length,
+            @NotNull
+            final List<String> fieldNames,
+            @NotNull
+            final Buffer[] to) {
+        checkFieldValuesArguments(documents, offset, length, fieldNames, to);
+
+        // Resolving the fields once
+        final int fieldsCount = fieldNames.size();
+        final StoredIndex[] indexes = new StoredIndex[fieldsCount];
+        for (int f = 0; f < fieldsCount; f++) {
+            final String fieldName = fieldNames.get(f);
+            indexes[f] = storers.get(fieldName);
+            if (indexes[f] == null)
+                throw new NoSuchElementException(
+                        "There is no stored index for <" + fieldName + ">");
+        }
+
+        final long[] order =
+                sortByDocument(documents, offset, length, size);
+        for (int f = 0; f < fieldsCount; f++) {
+            final StoredIndex index = indexes[f];
+            for (long entry : order) {
+                final int document = (int) (entry >>> 32);
+                final int position = (int) entry;
+
+                to[position * fieldsCount + f] =
+                        index.getStoredValue(document);
+            }
+        }
+    }
+
     @Override
     public void execute(
             @NotNull
@@ -125,7 +257,11 @@ public final class V1Database implements IndexedDatabase {
         }
 
         final Iterator<? extends ScoredDocument<?>> unlimited =
-                query.sortedUnlimited(docs, this, bitSetPool);
+                query.sortedTop(
+                        docs,
+                        this,
+                        bitSetPool,
+                        TopMergingIterator.bound(query));
 
         if (query.getSkip() != 0) {
             Iterators.advance(unlimited, query.getSkip());
@@ -162,12 +298,18 @@ public final class V1Database implements IndexedDatabase {
         final Iterator<? extends ScoredDocument<?>> unlimited;
         if (result == getDocumentCount()) {
             unlimited =
-                    query.sortedUnlimited(
+                    query.sortedTop(
                             new ReadOnlyOneBitSet(getDocumentCount()),
                             this,
-                            bitSetPool);
+                            bitSetPool,
+                            TopMergingIterator.bound(query));
         } else {
-            unlimited = query.sortedUnlimited(docs, this, bitSetPool);
+            unlimited =
+                    query.sortedTop(
+                            docs,
+                            this,
+                            bitSetPool,
+                            TopMergingIterator.bound(query));
         }
 
         if (query.getSkip() != 0) {
@@ -190,6 +332,37 @@ public final class V1Database implements IndexedDatabase {
         return result;
     }
 
+    @Override
+    public int executeIds(
+            @NotNull
+            final Query query,
+            @NotNull
+            final int[] to,
+            final int offset,
+            final int length) {
+        if (offset < 0 || length < 0 || offset + length > to.length) {
+            throw new IllegalArgumentException("Wrong offset or length");
+        }
+
+        final int limit = Math.min(length, query.getLimit());
+        if (limit == 0) {
+            return 0;
+        }
+
+        final BitSet docs = query.filteredUnlimited(this, bitSetPool);
+        if (docs == null) {
+            return 0;
+        }
+
+        return query.sortedTopIds(
+                docs,
+                this,
+                query.getSkip(),
+                to,
+                offset,
+                limit);
+    }
+
     @Override
     public int count(
             @NotNull
@@ -206,4 +379,16 @@ public final class V1Database implements IndexedDatabase {
             );
         }
     }
+
+    @Override
+    public int estimateCount(
+            @NotNull
+            final Query query) {
+        final long estimate =
+                Math.min(size, query.estimateUnlimited(this));
+
+        return Math.min(
+                Math.max((int) estimate - query.getSkip(), 0),
+                query.getLimit());
+    }
 }
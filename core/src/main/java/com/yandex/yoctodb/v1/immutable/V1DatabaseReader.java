@@ -10,20 +10,32 @@
 
 package com.yandex.yoctodb.v1.immutable;
 
+import com.google.common.base.Throwables;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
 import com.yandex.yoctodb.immutable.*;
 import com.yandex.yoctodb.util.buf.Buffer;
 import com.yandex.yoctodb.util.mutable.ArrayBitSetPool;
 import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import com.yandex.yoctodb.v1.immutable.segment.LazySegment;
 import com.yandex.yoctodb.v1.immutable.segment.Segment;
+import com.yandex.yoctodb.v1.immutable.segment.SegmentChecksum;
 import com.yandex.yoctodb.v1.immutable.segment.SegmentRegistry;
 import net.jcip.annotations.ThreadSafe;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * Builds immutable {@link Database}s from bytes in V1 format
@@ -62,6 +74,75 @@ public class V1DatabaseReader extends DatabaseReader {
         return Buffer.from(md.digest());
     }
 
+    private static <T extends Index> void put(
+            @NotNull
+            final Map<String, T> indexes,
+            @Nullable
+            final T index) {
+        if (index == null) {
+            return;
+        }
+
+        final String name = index.getFieldName();
+
+        assert !indexes.containsKey(name) :
+                "Duplicate " + index.getClass().getSimpleName() +
+                " for field <" + name + ">";
+
+        indexes.put(name, index);
+    }
+
+    /**
+     * Reads the segment and registers its indexes
+     */
+    private static void readSegment(
+            @NotNull
+            final SegmentEntry entry,
+            final boolean lazy,
+            final boolean verifyOnFirstUse,
+            @NotNull
+            final Map<String, FilterableIndex> filters,
+            @NotNull
+            final Map<String, SortableIndex> sorters,
+            @NotNull
+            final Map<String, StoredIndex> storers,
+            @NotNull
+            final Map<String, FieldStatistics> statistics) {
+        if (lazy && LazySegment.isSupported(entry.type)) {
+            final LazySegment segment =
+                    entry.fieldName == null ?
+                    new LazySegment(entry.type, entry.payload) :
+                    new LazySegment(
+                            entry.type,
+                            entry.fieldName,
+                            entry.payload,
+                            verifyOnFirstUse ? entry.checksum : null);
+            put(filters, segment.asFilterableIndex());
+            put(sorters, segment.asSortableIndex());
+            put(storers, segment.asStoredIndex());
+            put(statistics, segment.asFieldStatistics());
+        } else {
+            if (verifyOnFirstUse) {
+                entry.verify();
+            }
+
+            final Segment segment =
+                    SegmentRegistry.read(entry.type, entry.payload);
+            if (segment instanceof FilterableIndex) {
+                put(filters, (FilterableIndex) segment);
+            }
+            if (segment instanceof SortableIndex) {
+                put(sorters, (SortableIndex) segment);
+            }
+            if (segment instanceof StoredIndex) {
+                put(storers, (StoredIndex) segment);
+            }
+            if (segment instanceof FieldStatistics) {
+                put(statistics, (FieldStatistics) segment);
+            }
+        }
+    }
+
     @NotNull
     @Override
     public IndexedDatabase from(
@@ -70,6 +151,207 @@ public class V1DatabaseReader extends DatabaseReader {
             @NotNull
             final ArrayBitSetPool bitSetPool,
             final boolean checksum) {
+        return from(buffer, bitSetPool, checksum, false);
+    }
+
+    @NotNull
+    @Override
+    public IndexedDatabase from(
+            @NotNull
+            final Buffer buffer,
+            @NotNull
+            final ArrayBitSetPool bitSetPool,
+            final boolean checksum,
+            final boolean lazy) {
+        return from(buffer, bitSetPool, checksum, lazy, null);
+    }
+
+    @NotNull
+    @Override
+    public IndexedDatabase from(
+            @NotNull
+            final Buffer buffer,
+            @NotNull
+            final ArrayBitSetPool bitSetPool,
+            final boolean lazy,
+            @NotNull
+            final ExecutorService verifier) {
+        return from(buffer, bitSetPool, true, lazy, verifier);
+    }
+
+    /**
+     * Segment location from the segment directory or the sequential scan
+     */
+    private static final class SegmentEntry {
+        private final int type;
+        @Nullable
+        private final String fieldName;
+        @NotNull
+        private final Buffer payload;
+        @Nullable
+        private final SegmentChecksum checksum;
+
+        SegmentEntry(
+                final int type,
+                @Nullable
+                final String fieldName,
+                @NotNull
+                final Buffer payload,
+                @Nullable
+                final SegmentChecksum checksum) {
+            this.type = type;
+            this.fieldName = fieldName;
+            this.payload = payload;
+            this.checksum = checksum;
+        }
+
+        void verify() {
+            assert fieldName != null && checksum != null;
+
+            checksum.verify(fieldName, payload);
+        }
+    }
+
+    @NotNull
+    private static List<SegmentEntry> scanSegments(
+            @NotNull
+            final Buffer body) {
+        final List<SegmentEntry> result = new ArrayList<>();
+        while (body.hasRemaining()) {
+            final long size = body.getLong();
+            final int type = body.getInt();
+
+            result.add(new SegmentEntry(type, null, body.slice(size), null));
+
+            // Skipping read index
+            body.position(body.position() + size);
+        }
+
+        return result;
+    }
+
+    @NotNull
+    private static List<SegmentEntry> readDirectory(
+            final int format,
+            @NotNull
+            final Buffer body,
+            final boolean checksum) {
+        final boolean withChecksums = format == V1DatabaseFormat.FORMAT;
+        final long trailer =
+                body.limit() - Longs.BYTES - Ints.BYTES -
+                (withChecksums ? 2 * Ints.BYTES : 0);
+        if (trailer < 0) {
+            throw new IllegalArgumentException("Too small buffer");
+        }
+        final long directoryOffset = body.getLong(trailer);
+        final int entries = body.getInt(trailer + Longs.BYTES);
+        if (directoryOffset < 0 || directoryOffset > trailer ||
+            entries < 0) {
+            throw new IllegalArgumentException(
+                    "Corrupted segment directory");
+        }
+
+        final Buffer directory =
+                body.slice(directoryOffset, trailer - directoryOffset);
+
+        V1DatabaseFormat.ChecksumType checksumType = null;
+        if (withChecksums) {
+            checksumType =
+                    V1DatabaseFormat.ChecksumType.fromCode(
+                            body.getInt(trailer + Longs.BYTES + Ints.BYTES));
+            final int directoryChecksum =
+                    body.getInt(trailer + Longs.BYTES + 2 * Ints.BYTES);
+            if (checksum &&
+                SegmentChecksum.calculate(checksumType, directory) !=
+                directoryChecksum) {
+                throw new IllegalArgumentException(
+                        "The segment directory is corrupted");
+            }
+        }
+
+        final List<SegmentEntry> result = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            final long offset = directory.getLong();
+            final long size = directory.getLong();
+            final SegmentChecksum segmentChecksum =
+                    withChecksums ?
+                    new SegmentChecksum(checksumType, directory.getInt()) :
+                    null;
+            final int type = directory.getInt();
+            final byte[] fieldName = new byte[directory.getInt()];
+            directory.get(fieldName);
+
+            if (offset < 0 || size < 0 ||
+                offset + size > directoryOffset) {
+                throw new IllegalArgumentException(
+                        "Corrupted segment directory");
+            }
+
+            result.add(
+                    new SegmentEntry(
+                            type,
+                            new String(fieldName),
+                            body.slice(offset, size),
+                            segmentChecksum));
+        }
+
+        return result;
+    }
+
+    private static void verifyConcurrently(
+            @NotNull
+            final List<SegmentEntry> segments,
+            @NotNull
+            final ExecutorService executor) {
+        final List<Callable<Void>> tasks = new ArrayList<>(segments.size());
+        for (final SegmentEntry segment : segments) {
+            tasks.add(
+                    new Callable<Void>() {
+                        @Override
+                        public Void call() {
+                            segment.verify();
+                            return null;
+                        }
+                    });
+        }
+
+        final List<Future<Void>> futures;
+        try {
+            futures = executor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * @param checksum whether to verify the database
+     * @param lazy     whether to build the segments on first use
+     * @param verifier executor to verify segment checksums concurrently on
+     *                 or {@code null} to verify them on first use in lazy
+     *                 mode and the digest of the whole body otherwise
+     */
+    @NotNull
+    private IndexedDatabase from(
+            @NotNull
+            final Buffer buffer,
+            @NotNull
+            final ArrayBitSetPool bitSetPool,
+            final boolean checksum,
+            final boolean lazy,
+            @Nullable
+            final ExecutorService verifier) {
         // Checking the magic
         for (int i = 0; i < V1DatabaseFormat.MAGIC.length; i++)
             if (buffer.get() != V1DatabaseFormat.MAGIC[i]) {
@@ -78,10 +360,14 @@ public class V1DatabaseReader extends DatabaseReader {
 
         // Checking the format version
         final int format = buffer.getInt();
-        if (format != V1DatabaseFormat.FORMAT) {
+        if (format != V1DatabaseFormat.FORMAT &&
+            format != V1DatabaseFormat.FORMAT_WITHOUT_CHECKSUMS &&
+            format != V1DatabaseFormat.FORMAT_WITHOUT_DIRECTORY) {
             throw new IllegalArgumentException(
-                    "Wrong format " + format + ". Supported format is " +
-                    V1DatabaseFormat.FORMAT + ".");
+                    "Wrong format " + format + ". Supported formats are " +
+                    V1DatabaseFormat.FORMAT + ", " +
+                    V1DatabaseFormat.FORMAT_WITHOUT_CHECKSUMS + " and " +
+                    V1DatabaseFormat.FORMAT_WITHOUT_DIRECTORY + ".");
         }
 
         // Checking the format version
@@ -99,7 +385,14 @@ public class V1DatabaseReader extends DatabaseReader {
                         buffer.remaining() -
                         V1DatabaseFormat.getDigestSizeInBytes());
 
-        if (checksum) {
+        // Segment checksums are verified only concurrently or on first use,
+        // otherwise single pass over the whole body is as cheap and covers
+        // segment headers too
+        final boolean segmentChecksums =
+                format == V1DatabaseFormat.FORMAT &&
+                (verifier != null || lazy);
+
+        if (checksum && !segmentChecksums) {
             final Buffer originalDigest =
                     buffer.slice(
                             buffer.position() + body.remaining(),
@@ -111,53 +404,43 @@ public class V1DatabaseReader extends DatabaseReader {
             }
         }
 
+        final List<SegmentEntry> segments =
+                format == V1DatabaseFormat.FORMAT_WITHOUT_DIRECTORY ?
+                scanSegments(body) :
+                readDirectory(format, body, checksum);
+
+        boolean verifyOnFirstUse = false;
+        if (checksum && segmentChecksums) {
+            if (verifier != null) {
+                verifyConcurrently(segments, verifier);
+            } else {
+                verifyOnFirstUse = true;
+            }
+        }
+
         // Reading the segments
         final Map<String, FilterableIndex> filters = new HashMap<>();
         final Map<String, SortableIndex> sorters = new HashMap<>();
         final Map<String, StoredIndex> storers = new HashMap<>();
-        while (body.hasRemaining()) {
-            final long size = body.getLong();
-            final int type = body.getInt();
-
-            final Buffer segmentBuffer = body.slice(size);
-
-            final Segment segment = SegmentRegistry.read(type, segmentBuffer);
-
-            if (segment instanceof FilterableIndex) {
-                final FilterableIndex index = (FilterableIndex) segment;
-                final String name = index.getFieldName();
-
-                assert !filters.containsKey(name) :
-                        "Duplicate filterable index for field <" + name + ">";
-
-                filters.put(name, index);
-            }
-
-            if (segment instanceof SortableIndex) {
-                final SortableIndex index = (SortableIndex) segment;
-                final String name = index.getFieldName();
-
-                assert !sorters.containsKey(name) :
-                        "Duplicate sortable index for field <" + name + ">";
-
-                sorters.put(name, index);
-            }
-
-            if (segment instanceof StoredIndex) {
-                final StoredIndex index = (StoredIndex) segment;
-                final String name = index.getFieldName();
-
-                assert !storers.containsKey(name) :
-                        "Duplicate stored index for field <" + name + ">";
-
-                storers.put(name, index);
-            }
-
-            // Skipping read index
-            body.position(body.position() + size);
+        final Map<String, FieldStatistics> statistics = new HashMap<>();
+        for (SegmentEntry segment : segments) {
+            readSegment(
+                    segment,
+                    lazy,
+                    verifyOnFirstUse,
+                    filters,
+                    sorters,
+                    storers,
+                    statistics);
         }
 
-        return new V1Database(documentCount, filters, sorters, storers, bitSetPool);
+        return new V1Database(
+                documentCount,
+                filters,
+                sorters,
+                storers,
+                statistics,
+                bitSetPool);
     }
 
     @NotNull
@@ -169,4 +452,16 @@ public class V1DatabaseReader extends DatabaseReader {
             final ArrayBitSetPool bitSetPool) {
         return new V1CompositeDatabase(databases, bitSetPool);
     }
+
+    @NotNull
+    @Override
+    public Database composite(
+            @NotNull
+            final Collection<? extends IndexedDatabase> databases,
+            @NotNull
+            final ArrayBitSetPool bitSetPool,
+            @NotNull
+            final ExecutorService executor) {
+        return new V1CompositeDatabase(databases, bitSetPool, executor);
+    }
 }
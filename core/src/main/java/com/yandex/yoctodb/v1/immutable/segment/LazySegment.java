@@ -0,0 +1,472 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.immutable.segment;
+
+import com.yandex.yoctodb.immutable.FieldStatistics;
+import com.yandex.yoctodb.immutable.FilterableIndex;
+import com.yandex.yoctodb.immutable.SortableIndex;
+import com.yandex.yoctodb.immutable.StoredIndex;
+import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.util.immutable.IntToIntArray;
+import com.yandex.yoctodb.util.mutable.BitSet;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+
+/**
+ * Segment of a known type read from the buffer on first use.
+ *
+ * Only the field name is read on construction. The roles of the segment are
+ * derived from its type, so the indexes returned by {@code as*()} methods
+ * delegate to the same segment built at most once.
+ *
+ * @author incubos
+ */
+@ThreadSafe
+public final class LazySegment {
+    private final int type;
+    @NotNull
+    private final String fieldName;
+    @GuardedBy("this")
+    @Nullable
+    private Buffer buffer;
+    @Nullable
+    private final SegmentChecksum checksum;
+    @Nullable
+    private volatile Segment segment;
+
+    public LazySegment(
+            final int type,
+            @NotNull
+            final Buffer buffer) {
+        if (!isSupported(type))
+            throw new IllegalArgumentException(
+                    "Unsupported segment type " + type);
+
+        this.type = type;
+        this.fieldName = Segments.extractString(buffer.slice());
+        this.buffer = buffer;
+        this.checksum = null;
+    }
+
+    /**
+     * Constructs the segment with the field name known in advance, e.g.
+     * from the segment directory, without touching the buffer
+     *
+     * @param checksum checksum to verify the segment with before building
+     *                 or {@code null} to skip verification
+     */
+    public LazySegment(
+            final int type,
+            @NotNull
+            final String fieldName,
+            @NotNull
+            final Buffer buffer,
+            @Nullable
+            final SegmentChecksum checksum) {
+        if (!isSupported(type))
+            throw new IllegalArgumentException(
+                    "Unsupported segment type " + type);
+
+        this.type = type;
+        this.fieldName = fieldName;
+        this.buffer = buffer;
+        this.checksum = checksum;
+    }
+
+    public static boolean isSupported(final int type) {
+        return isFilterable(type) ||
+               isSortable(type) ||
+               isStored(type) ||
+               isStatistics(type);
+    }
+
+    private static boolean isFilterable(final int type) {
+        return type == V1DatabaseFormat.SegmentType.FIXED_LENGTH_FILTER.getCode() ||
+               type == V1DatabaseFormat.SegmentType.VARIABLE_LENGTH_FILTER.getCode() ||
+               type == V1DatabaseFormat.SegmentType.FIXED_LENGTH_RANGE_FILTER.getCode() ||
+               type == V1DatabaseFormat.SegmentType.VARIABLE_LENGTH_RANGE_FILTER.getCode() ||
+               type == V1DatabaseFormat.SegmentType.FIXED_LENGTH_FULL_INDEX.getCode() ||
+               type == V1DatabaseFormat.SegmentType.VARIABLE_LENGTH_FULL_INDEX.getCode();
+    }
+
+    private static boolean isSortable(final int type) {
+        return type == V1DatabaseFormat.SegmentType.FIXED_LENGTH_SORTABLE_INDEX.getCode() ||
+               type == V1DatabaseFormat.SegmentType.VARIABLE_LENGTH_SORTABLE_INDEX.getCode() ||
+               type == V1DatabaseFormat.SegmentType.FIXED_LENGTH_FULL_INDEX.getCode() ||
+               type == V1DatabaseFormat.SegmentType.VARIABLE_LENGTH_FULL_INDEX.getCode();
+    }
+
+    private static boolean isStored(final int type) {
+        // Sortable indexes are stored indexes too
+        return type == V1DatabaseFormat.SegmentType.VARIABLE_LENGTH_STORED_INDEX.getCode() ||
+               type == V1DatabaseFormat.SegmentType.COMPRESSED_STORED_INDEX.getCode() ||
+               isSortable(type);
+    }
+
+    private static boolean isStatistics(final int type) {
+        return type == V1DatabaseFormat.SegmentType.FIELD_STATISTICS.getCode();
+    }
+
+    @NotNull
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /**
+     * @return whether the segment has been built
+     */
+    public boolean isLoaded() {
+        return segment != null;
+    }
+
+    @NotNull
+    Segment get() {
+        Segment result = segment;
+        if (result == null) {
+            synchronized (this) {
+                result = segment;
+                if (result == null) {
+                    assert buffer != null;
+                    if (checksum != null) {
+                        checksum.verify(fieldName, buffer);
+                    }
+                    result = SegmentRegistry.read(type, buffer);
+                    segment = result;
+                    // Free the buffer
+                    buffer = null;
+                }
+            }
+        }
+
+        return result;
+    }
+
+    @Nullable
+    public FilterableIndex asFilterableIndex() {
+        return isFilterable(type) ? new LazyFilterableIndex(this) : null;
+    }
+
+    @Nullable
+    public SortableIndex asSortableIndex() {
+        return isSortable(type) ? new LazySortableIndex(this) : null;
+    }
+
+    @Nullable
+    public StoredIndex asStoredIndex() {
+        if (isSortable(type)) {
+            return asSortableIndex();
+        }
+
+        return isStored(type) ? new LazyStoredIndex(this) : null;
+    }
+
+    @Nullable
+    public FieldStatistics asFieldStatistics() {
+        return isStatistics(type) ? new LazyFieldStatistics(this) : null;
+    }
+
+    @Override
+    public String toString() {
+        return "LazySegment{" +
+               "type=" + type +
+               ", fieldName='" + fieldName + '\'' +
+               ", loaded=" + isLoaded() +
+               '}';
+    }
+
+    @ThreadSafe
+    private static final class LazyFilterableIndex implements FilterableIndex {
+        @NotNull
+        private final LazySegment segment;
+
+        LazyFilterableIndex(
+                @NotNull
+                final LazySegment segment) {
+            this.segment = segment;
+        }
+
+        @NotNull
+        private FilterableIndex delegate() {
+            return (FilterableIndex) segment.get();
+        }
+
+        @NotNull
+        @Override
+        public String getFieldName() {
+            return segment.getFieldName();
+        }
+
+        @Override
+        public boolean eq(
+                @NotNull
+                final BitSet dest,
+                @NotNull
+                final Buffer value) {
+            return delegate().eq(dest, value);
+        }
+
+        @Override
+        public boolean in(
+                @NotNull
+                final BitSet dest,
+                @NotNull
+                final Buffer... value) {
+            return delegate().in(dest, value);
+        }
+
+        @Override
+        public boolean lessThan(
+                @NotNull
+                final BitSet dest,
+                @NotNull
+                final Buffer value,
+                final boolean orEquals) {
+            return delegate().lessThan(dest, value, orEquals);
+        }
+
+        @Override
+        public boolean greaterThan(
+                @NotNull
+                final BitSet dest,
+                @NotNull
+                final Buffer value,
+                final boolean orEquals) {
+            return delegate().greaterThan(dest, value, orEquals);
+        }
+
+        @Override
+        public boolean between(
+                @NotNull
+                final BitSet dest,
+                @NotNull
+                final Buffer from,
+                final boolean fromInclusive,
+                @NotNull
+                final Buffer to,
+                final boolean toInclusive) {
+            return delegate().between(
+                    dest,
+                    from,
+                    fromInclusive,
+                    to,
+                    toInclusive);
+        }
+
+        @Override
+        public long estimateEq(
+                @NotNull
+                final Buffer value) {
+            return delegate().estimateEq(value);
+        }
+
+        @Override
+        public long estimateIn(
+                @NotNull
+                final Buffer... value) {
+            return delegate().estimateIn(value);
+        }
+
+        @Override
+        public long estimateLessThan(
+                @NotNull
+                final Buffer value,
+                final boolean orEquals) {
+            return delegate().estimateLessThan(value, orEquals);
+        }
+
+        @Override
+        public long estimateGreaterThan(
+                @NotNull
+                final Buffer value,
+                final boolean orEquals) {
+            return delegate().estimateGreaterThan(value, orEquals);
+        }
+
+        @Override
+        public long estimateBetween(
+                @NotNull
+                final Buffer from,
+                final boolean fromInclusive,
+                @NotNull
+                final Buffer to,
+                final boolean toInclusive) {
+            return delegate().estimateBetween(
+                    from,
+                    fromInclusive,
+                    to,
+                    toInclusive);
+        }
+    }
+
+    @ThreadSafe
+    private static class LazyStoredIndex implements StoredIndex {
+        @NotNull
+        final LazySegment segment;
+
+        LazyStoredIndex(
+                @NotNull
+                final LazySegment segment) {
+            this.segment = segment;
+        }
+
+        @NotNull
+        @Override
+        public String getFieldName() {
+            return segment.getFieldName();
+        }
+
+        @NotNull
+        @Override
+        public Buffer getStoredValue(final int document) {
+            return ((StoredIndex) segment.get()).getStoredValue(document);
+        }
+    }
+
+    @ThreadSafe
+    private static final class LazySortableIndex
+            extends LazyStoredIndex
+            implements SortableIndex {
+        LazySortableIndex(
+                @NotNull
+                final LazySegment segment) {
+            super(segment);
+        }
+
+        @NotNull
+        private SortableIndex delegate() {
+            return (SortableIndex) segment.get();
+        }
+
+        @Override
+        public int getSortValueIndex(final int document) {
+            return delegate().getSortValueIndex(document);
+        }
+
+        @NotNull
+        @Override
+        public Buffer getSortValue(final int index) {
+            return delegate().getSortValue(index);
+        }
+
+        @NotNull
+        @Override
+        public Iterator<IntToIntArray> ascending(
+                @NotNull
+                final BitSet docs) {
+            return delegate().ascending(docs);
+        }
+
+        @NotNull
+        @Override
+        public Iterator<IntToIntArray> descending(
+                @NotNull
+                final BitSet docs) {
+            return delegate().descending(docs);
+        }
+    }
+
+    @ThreadSafe
+    private static final class LazyFieldStatistics implements FieldStatistics {
+        @NotNull
+        private final LazySegment segment;
+
+        LazyFieldStatistics(
+                @NotNull
+                final LazySegment segment) {
+            this.segment = segment;
+        }
+
+        @NotNull
+        private FieldStatistics delegate() {
+            return (FieldStatistics) segment.get();
+        }
+
+        @NotNull
+        @Override
+        public String getFieldName() {
+            return segment.getFieldName();
+        }
+
+        @Override
+        public int getDistinctValuesCount() {
+            return delegate().getDistinctValuesCount();
+        }
+
+        @Override
+        public long getPostingsCount() {
+            return delegate().getPostingsCount();
+        }
+
+        @Override
+        public int getHeavyHittersCount() {
+            return delegate().getHeavyHittersCount();
+        }
+
+        @NotNull
+        @Override
+        public Buffer getHeavyHitter(final int i) {
+            return delegate().getHeavyHitter(i);
+        }
+
+        @Override
+        public int getHeavyHitterPostings(final int i) {
+            return delegate().getHeavyHitterPostings(i);
+        }
+
+        @Override
+        public int getBucketsCount() {
+            return delegate().getBucketsCount();
+        }
+
+        @NotNull
+        @Override
+        public Buffer getBucketUpperBound(final int i) {
+            return delegate().getBucketUpperBound(i);
+        }
+
+        @Override
+        public long getBucketPostings(final int i) {
+            return delegate().getBucketPostings(i);
+        }
+
+        @Override
+        public int getBucketDistinctValues(final int i) {
+            return delegate().getBucketDistinctValues(i);
+        }
+
+        @Override
+        public long estimateEq(
+                @NotNull
+                final Buffer value) {
+            return delegate().estimateEq(value);
+        }
+
+        @Override
+        public long estimateBetween(
+                @Nullable
+                final Buffer from,
+                final boolean fromInclusive,
+                @Nullable
+                final Buffer to,
+                final boolean toInclusive) {
+            return delegate().estimateBetween(
+                    from,
+                    fromInclusive,
+                    to,
+                    toInclusive);
+        }
+    }
+}
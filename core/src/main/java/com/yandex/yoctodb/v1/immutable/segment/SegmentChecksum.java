@@ -0,0 +1,83 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.immutable.segment;
+
+import com.google.common.hash.Hasher;
+import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import net.jcip.annotations.Immutable;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Expected checksum of a segment payload from the segment directory
+ *
+ * @author incubos
+ */
+@Immutable
+public final class SegmentChecksum {
+    private static final int BUF_SIZE = 4096;
+
+    @NotNull
+    private final V1DatabaseFormat.ChecksumType type;
+    private final int expected;
+
+    public SegmentChecksum(
+            @NotNull
+            final V1DatabaseFormat.ChecksumType type,
+            final int expected) {
+        this.type = type;
+        this.expected = expected;
+    }
+
+    /**
+     * Calculates the checksum of the remaining bytes without changing the
+     * position of {@code buffer}
+     */
+    public static int calculate(
+            @NotNull
+            final V1DatabaseFormat.ChecksumType type,
+            @NotNull
+            final Buffer buffer) {
+        final Buffer data = buffer.slice();
+        final Hasher hasher = type.getHashFunction().newHasher();
+        final byte[] buf = new byte[(int) Math.min(BUF_SIZE, data.remaining())];
+
+        while (data.hasRemaining()) {
+            final int length = (int) Math.min(buf.length, data.remaining());
+            data.get(buf, 0, length);
+            hasher.putBytes(buf, 0, length);
+        }
+
+        return hasher.hash().asInt();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the checksum doesn't match
+     */
+    public void verify(
+            @NotNull
+            final String fieldName,
+            @NotNull
+            final Buffer payload) {
+        if (calculate(type, payload) != expected) {
+            throw new IllegalArgumentException(
+                    "The segment of field <" + fieldName + "> is corrupted");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SegmentChecksum{" +
+               "type=" + type +
+               ", expected=" + expected +
+               '}';
+    }
+}
@@ -66,8 +66,11 @@ public final class SegmentRegistry {
     static {
         // Register readers for default segments
         V1FilterableIndex.registerReader();
+        V1RangeFilterableIndex.registerReader();
         V1SortableIndex.registerReader();
         V1FullIndex.registerReader();
         V1StoredIndex.registerReader();
+        V1CompressedStoredIndex.registerReader();
+        V1FieldStatistics.registerReader();
     }
 }
@@ -0,0 +1,186 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.immutable.segment;
+
+import com.google.common.primitives.Ints;
+import com.yandex.yoctodb.immutable.StoredIndex;
+import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.util.immutable.ByteArrayIndexedList;
+import com.yandex.yoctodb.util.immutable.impl.VariableLengthByteArrayIndexedList;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import net.jcip.annotations.Immutable;
+import net.jcip.annotations.ThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Immutable {@link StoredIndex} implementation over blocks of values
+ * compressed with {@link java.util.zip.Deflater}.
+ *
+ * Recently decompressed blocks are kept in a small direct-mapped cache, so
+ * that accessing nearby documents decompresses each block once.
+ *
+ * @author incubos
+ */
+@ThreadSafe
+public final class V1CompressedStoredIndex implements StoredIndex, Segment {
+    // Power of two
+    private static final int CACHE_SIZE = 16;
+
+    private static final ThreadLocal<Inflater> INFLATERS =
+            new ThreadLocal<Inflater>() {
+                @Override
+                protected Inflater initialValue() {
+                    return new Inflater();
+                }
+            };
+
+    @NotNull
+    private final String fieldName;
+    private final int documentsCount;
+    private final int documentsPerBlock;
+    @NotNull
+    private final ByteArrayIndexedList blocks;
+    @NotNull
+    private final AtomicReferenceArray<Block> cache =
+            new AtomicReferenceArray<>(CACHE_SIZE);
+
+    @Immutable
+    private static final class Block {
+        private final int index;
+        @NotNull
+        private final Buffer data;
+
+        Block(
+                final int index,
+                @NotNull
+                final Buffer data) {
+            this.index = index;
+            this.data = data;
+        }
+    }
+
+    private V1CompressedStoredIndex(
+            @NotNull
+            final String fieldName,
+            final int documentsCount,
+            final int documentsPerBlock,
+            @NotNull
+            final ByteArrayIndexedList blocks) {
+        assert documentsPerBlock > 0;
+
+        this.fieldName = fieldName;
+        this.documentsCount = documentsCount;
+        this.documentsPerBlock = documentsPerBlock;
+        this.blocks = blocks;
+    }
+
+    @NotNull
+    @Override
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    @NotNull
+    private Buffer decompress(final int index) {
+        final Buffer compressed = blocks.get(index);
+        final byte[] input = compressed.toByteArray();
+        final byte[] output = new byte[Ints.fromByteArray(input)];
+
+        final Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(input, Ints.BYTES, input.length - Ints.BYTES);
+        try {
+            if (inflater.inflate(output) != output.length)
+                throw new IllegalStateException(
+                        "Truncated block " + index + " of field <" +
+                        fieldName + ">");
+        } catch (DataFormatException e) {
+            throw new IllegalStateException(
+                    "Corrupted block " + index + " of field <" +
+                    fieldName + ">",
+                    e);
+        }
+
+        return Buffer.from(output);
+    }
+
+    @NotNull
+    private Buffer block(final int index) {
+        final int slot = index & (CACHE_SIZE - 1);
+        final Block cached = cache.get(slot);
+        if (cached != null && cached.index == index) {
+            return cached.data;
+        }
+
+        // Concurrent decompression of the same block is harmless
+        final Block block = new Block(index, decompress(index));
+        cache.set(slot, block);
+
+        return block.data;
+    }
+
+    @NotNull
+    @Override
+    public Buffer getStoredValue(final int document) {
+        assert 0 <= document && document < documentsCount;
+
+        final Buffer block = block(document / documentsPerBlock);
+        final int i = document % documentsPerBlock;
+        assert i < block.getInt(0);
+
+        final long dataStart = Ints.BYTES * (block.getInt(0) + 2L);
+        final int from = block.getInt(Ints.BYTES * (i + 1L));
+        final int to = block.getInt(Ints.BYTES * (i + 2L));
+
+        return block.slice(dataStart + from, to - from);
+    }
+
+    @Override
+    public String toString() {
+        return "V1CompressedStoredIndex{" +
+               "fieldName='" + fieldName + '\'' +
+               ", documentsCount=" + documentsCount +
+               ", documentsPerBlock=" + documentsPerBlock +
+               ", blocks=" + blocks.size() +
+               '}';
+    }
+
+    static void registerReader() {
+        SegmentRegistry.register(
+                V1DatabaseFormat.SegmentType.COMPRESSED_STORED_INDEX.getCode(),
+                new SegmentReader() {
+                    @NotNull
+                    @Override
+                    public Segment read(
+                            @NotNull
+                            final Buffer buffer) {
+                        final String fieldName = Segments.extractString(buffer);
+
+                        final int documentsCount = buffer.getInt();
+                        final int documentsPerBlock = buffer.getInt();
+
+                        final ByteArrayIndexedList blocks =
+                                VariableLengthByteArrayIndexedList.from(
+                                        Segments.extract(buffer));
+
+                        return new V1CompressedStoredIndex(
+                                fieldName,
+                                documentsCount,
+                                documentsPerBlock,
+                                blocks);
+                    }
+                });
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.immutable.segment;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.yandex.yoctodb.immutable.FieldStatistics;
+import com.yandex.yoctodb.util.UnsignedByteArrays;
+import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import net.jcip.annotations.Immutable;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Immutable {@link FieldStatistics} implementation (see
+ * {@link com.yandex.yoctodb.v1.mutable.segment.V1FieldStatistics} for the
+ * format).
+ *
+ * Only the field name is read eagerly, the rest of the segment is parsed on
+ * first access.
+ *
+ * @author incubos
+ */
+@Immutable
+public final class V1FieldStatistics implements FieldStatistics, Segment {
+    @NotNull
+    private final String fieldName;
+    @NotNull
+    private final Supplier<Parsed> parsed;
+
+    V1FieldStatistics(
+            @NotNull
+            final String fieldName,
+            @NotNull
+            final Buffer buffer) {
+        // May be constructed only from SegmentReader
+        this.fieldName = fieldName;
+        this.parsed =
+                Suppliers.memoize(
+                        new Supplier<Parsed>() {
+                            @Override
+                            public Parsed get() {
+                                return new Parsed(buffer.slice());
+                            }
+                        });
+    }
+
+    private static final class Parsed {
+        private final int distinctValuesCount;
+        private final long postingsCount;
+        @NotNull
+        private final Buffer[] heavyHitters;
+        @NotNull
+        private final int[] heavyHitterPostings;
+        @NotNull
+        private final Buffer[] bucketUpperBounds;
+        @NotNull
+        private final long[] bucketPostings;
+        @NotNull
+        private final int[] bucketDistinctValues;
+
+        private Parsed(
+                @NotNull
+                final Buffer buffer) {
+            this.distinctValuesCount = buffer.getInt();
+            this.postingsCount = buffer.getLong();
+
+            final int heavyHittersCount = buffer.getInt();
+            this.heavyHitters = new Buffer[heavyHittersCount];
+            this.heavyHitterPostings = new int[heavyHittersCount];
+            for (int i = 0; i < heavyHittersCount; i++) {
+                heavyHitters[i] = extractValue(buffer);
+                heavyHitterPostings[i] = buffer.getInt();
+            }
+
+            final int bucketsCount = buffer.getInt();
+            this.bucketUpperBounds = new Buffer[bucketsCount];
+            this.bucketPostings = new long[bucketsCount];
+            this.bucketDistinctValues = new int[bucketsCount];
+            for (int i = 0; i < bucketsCount; i++) {
+                bucketUpperBounds[i] = extractValue(buffer);
+                bucketPostings[i] = buffer.getLong();
+                bucketDistinctValues[i] = buffer.getInt();
+            }
+        }
+
+        @NotNull
+        private static Buffer extractValue(
+                @NotNull
+                final Buffer buffer) {
+            final int length = buffer.getInt();
+            final Buffer result = buffer.slice(length);
+            buffer.advance(length);
+            return result;
+        }
+    }
+
+    @NotNull
+    @Override
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    @Override
+    public int getDistinctValuesCount() {
+        return parsed.get().distinctValuesCount;
+    }
+
+    @Override
+    public long getPostingsCount() {
+        return parsed.get().postingsCount;
+    }
+
+    @Override
+    public int getHeavyHittersCount() {
+        return parsed.get().heavyHitters.length;
+    }
+
+    @NotNull
+    @Override
+    public Buffer getHeavyHitter(final int i) {
+        return parsed.get().heavyHitters[i].slice();
+    }
+
+    @Override
+    public int getHeavyHitterPostings(final int i) {
+        return parsed.get().heavyHitterPostings[i];
+    }
+
+    @Override
+    public int getBucketsCount() {
+        return parsed.get().bucketUpperBounds.length;
+    }
+
+    @NotNull
+    @Override
+    public Buffer getBucketUpperBound(final int i) {
+        return parsed.get().bucketUpperBounds[i].slice();
+    }
+
+    @Override
+    public long getBucketPostings(final int i) {
+        return parsed.get().bucketPostings[i];
+    }
+
+    @Override
+    public int getBucketDistinctValues(final int i) {
+        return parsed.get().bucketDistinctValues[i];
+    }
+
+    @Override
+    public long estimateEq(
+            @NotNull
+            final Buffer value) {
+        final Parsed p = parsed.get();
+
+        long bound = Long.MAX_VALUE;
+        for (int i = 0; i < p.heavyHitters.length; i++) {
+            if (UnsignedByteArrays.compare(p.heavyHitters[i], value) == 0) {
+                return p.heavyHitterPostings[i];
+            }
+            bound = Math.min(bound, p.heavyHitterPostings[i]);
+        }
+
+        // All the values are heavy hitters
+        if (p.heavyHitters.length == p.distinctValuesCount) {
+            return 0L;
+        }
+
+        final int bucket = bucketOf(p, value);
+        if (bucket == -1) {
+            return 0L;
+        }
+
+        // Not more frequent than any heavy hitter
+        return Math.min(bound, p.bucketPostings[bucket]);
+    }
+
+    @Override
+    public long estimateBetween(
+            @Nullable
+            final Buffer from,
+            final boolean fromInclusive,
+            @Nullable
+            final Buffer to,
+            final boolean toInclusive) {
+        final Parsed p = parsed.get();
+        final int bucketsCount = p.bucketUpperBounds.length;
+
+        int first = from == null ? 0 : bucketOf(p, from);
+        if (first == -1) {
+            return 0L;
+        }
+        if (from != null &&
+            !fromInclusive &&
+            UnsignedByteArrays.compare(from, p.bucketUpperBounds[first]) == 0) {
+            // Nothing greater in the bucket
+            first++;
+        }
+
+        int last = to == null ? -1 : bucketOf(p, to);
+        if (last == -1) {
+            last = bucketsCount - 1;
+        }
+
+        long result = 0L;
+        for (int i = first; i <= last; i++) {
+            result += p.bucketPostings[i];
+        }
+
+        return result;
+    }
+
+    /**
+     * @return index of the bucket which may contain {@code value} or
+     *         {@code -1} if {@code value} is greater than all the values
+     */
+    private static int bucketOf(
+            @NotNull
+            final Parsed p,
+            @NotNull
+            final Buffer value) {
+        int low = 0;
+        int high = p.bucketUpperBounds.length - 1;
+        int result = -1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            if (UnsignedByteArrays.compare(
+                    p.bucketUpperBounds[mid],
+                    value) >= 0) {
+                result = mid;
+                high = mid - 1;
+            } else {
+                low = mid + 1;
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "V1FieldStatistics{" +
+               "fieldName='" + fieldName + '\'' +
+               '}';
+    }
+
+    static void registerReader() {
+        SegmentRegistry.register(
+                V1DatabaseFormat.SegmentType.FIELD_STATISTICS.getCode(),
+                new SegmentReader() {
+                    @NotNull
+                    @Override
+                    public Segment read(
+                            @NotNull
+                            final Buffer buffer) {
+                        final String fieldName = Segments.extractString(buffer);
+
+                        return new V1FieldStatistics(
+                                fieldName,
+                                buffer.slice());
+                    }
+                });
+    }
+}
@@ -143,6 +143,88 @@ public final class V1FilterableIndex implements FilterableIndex, Segment {
                         toValueIndex + 1);
     }
 
+    @Override
+    public long estimateEq(
+            @NotNull
+            final Buffer value) {
+        final int valueIndex = values.indexOf(value);
+        return valueIndex == -1 ?
+                0L :
+                valueToDocuments.estimateBetween(valueIndex, valueIndex + 1);
+    }
+
+    @Override
+    public long estimateIn(
+            @NotNull
+            final Buffer... value) {
+        long result = 0L;
+        for (Buffer currentValue : value) {
+            result += estimateEq(currentValue);
+        }
+        return result;
+    }
+
+    @Override
+    public long estimateLessThan(
+            @NotNull
+            final Buffer value,
+            final boolean orEquals) {
+        final int greatestValueIndex = values.indexOfLessThan(
+                value,
+                orEquals,
+                0);
+        return greatestValueIndex == -1 ?
+                0L :
+                valueToDocuments.estimateBetween(0, greatestValueIndex + 1);
+    }
+
+    @Override
+    public long estimateGreaterThan(
+            @NotNull
+            final Buffer value,
+            final boolean orEquals) {
+        final int greatestValueIndex = values.indexOfGreaterThan(
+                value,
+                orEquals,
+                values.size() - 1);
+        return greatestValueIndex == -1 ?
+                0L :
+                valueToDocuments.estimateBetween(
+                        greatestValueIndex,
+                        values.size());
+    }
+
+    @Override
+    public long estimateBetween(
+            @NotNull
+            final Buffer from,
+            final boolean fromInclusive,
+            @NotNull
+            final Buffer to,
+            final boolean toInclusive) {
+        final int fromValueIndex =
+                values.indexOfGreaterThan(
+                        from,
+                        fromInclusive,
+                        values.size() - 1);
+
+        if (fromValueIndex == -1) {
+            return 0L;
+        }
+
+        final int toValueIndex =
+                values.indexOfLessThan(
+                        to,
+                        toInclusive,
+                        fromValueIndex);
+
+        return toValueIndex == -1 ?
+                0L :
+                valueToDocuments.estimateBetween(
+                        fromValueIndex,
+                        toValueIndex + 1);
+    }
+
     static void registerReader() {
         SegmentRegistry.register(
                 V1DatabaseFormat.SegmentType.FIXED_LENGTH_FILTER.getCode(),
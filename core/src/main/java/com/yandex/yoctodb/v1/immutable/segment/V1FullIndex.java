@@ -130,6 +130,51 @@ public final class V1FullIndex
                 toInclusive);
     }
 
+    @Override
+    public long estimateEq(
+            @NotNull
+            final Buffer value) {
+        return filterableDelegate.estimateEq(value);
+    }
+
+    @Override
+    public long estimateIn(
+            @NotNull
+            final Buffer... value) {
+        return filterableDelegate.estimateIn(value);
+    }
+
+    @Override
+    public long estimateLessThan(
+            @NotNull
+            final Buffer value,
+            final boolean orEquals) {
+        return filterableDelegate.estimateLessThan(value, orEquals);
+    }
+
+    @Override
+    public long estimateGreaterThan(
+            @NotNull
+            final Buffer value,
+            final boolean orEquals) {
+        return filterableDelegate.estimateGreaterThan(value, orEquals);
+    }
+
+    @Override
+    public long estimateBetween(
+            @NotNull
+            final Buffer from,
+            final boolean fromInclusive,
+            @NotNull
+            final Buffer to,
+            final boolean toInclusive) {
+        return filterableDelegate.estimateBetween(
+                from,
+                fromInclusive,
+                to,
+                toInclusive);
+    }
+
     @Override
     public int getSortValueIndex(final int document) {
         return sortableDelegate.getSortValueIndex(document);
@@ -0,0 +1,377 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.immutable.segment;
+
+import com.yandex.yoctodb.immutable.FilterableIndex;
+import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.util.immutable.ByteArraySortedSet;
+import com.yandex.yoctodb.util.immutable.IndexToIndexMultiMap;
+import com.yandex.yoctodb.util.immutable.impl.FixedLengthByteArraySortedSet;
+import com.yandex.yoctodb.util.immutable.impl.IndexToIndexMultiMapReader;
+import com.yandex.yoctodb.util.immutable.impl.VariableLengthByteArraySortedSet;
+import com.yandex.yoctodb.util.mutable.BitSet;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import net.jcip.annotations.Immutable;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Immutable {@link FilterableIndex} implementation over multiple levels of
+ * value buckets.
+ *
+ * A range of value indexes is split into whole buckets of the highest
+ * possible level and at most {@code fanout - 1} remaining postings on each
+ * side of every level, so the number of bit set operations doesn't depend
+ * on the number of values in the range.
+ *
+ * @author incubos
+ */
+@Immutable
+public final class V1RangeFilterableIndex implements FilterableIndex, Segment {
+    @NotNull
+    private final String fieldName;
+    @NotNull
+    private final ByteArraySortedSet values;
+    private final int fanout;
+    // Documents by value followed by documents by buckets of each level
+    @NotNull
+    private final IndexToIndexMultiMap[] levels;
+
+    private V1RangeFilterableIndex(
+            @NotNull
+            final String fieldName,
+            @NotNull
+            final ByteArraySortedSet values,
+            final int fanout,
+            @NotNull
+            final IndexToIndexMultiMap[] levels) {
+        assert fanout >= 2;
+        assert levels.length > 0;
+
+        this.fieldName = fieldName;
+        this.values = values;
+        this.fanout = fanout;
+        this.levels = levels;
+    }
+
+    @NotNull
+    @Override
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /**
+     * @return exclusive upper bucket bound on the next level
+     */
+    private int nextTo(
+            final int level,
+            final int toExclusive) {
+        // The last bucket may be incomplete
+        return toExclusive == levels[level].getKeysCount() ?
+                levels[level + 1].getKeysCount() :
+                toExclusive / fanout;
+    }
+
+    private boolean getBetween(
+            @NotNull
+            final BitSet dest,
+            final int fromInclusive,
+            final int toExclusive) {
+        boolean result = false;
+        int from = fromInclusive;
+        int to = toExclusive;
+        for (int level = 0; from < to; level++) {
+            final IndexToIndexMultiMap postings = levels[level];
+            if (level == levels.length - 1) {
+                return postings.getBetween(dest, from, to) | result;
+            }
+
+            final int nextFrom = (from + fanout - 1) / fanout;
+            final int nextTo = nextTo(level, to);
+            if (nextFrom >= nextTo) {
+                // No whole buckets
+                return postings.getBetween(dest, from, to) | result;
+            }
+
+            final int alignedFrom = nextFrom * fanout;
+            final int alignedTo = Math.min(to, nextTo * fanout);
+            if (from < alignedFrom) {
+                result |= postings.getBetween(dest, from, alignedFrom);
+            }
+            if (alignedTo < to) {
+                result |= postings.getBetween(dest, alignedTo, to);
+            }
+
+            from = nextFrom;
+            to = nextTo;
+        }
+
+        return result;
+    }
+
+    private long estimateBetween(
+            final int fromInclusive,
+            final int toExclusive) {
+        long result = 0L;
+        int from = fromInclusive;
+        int to = toExclusive;
+        for (int level = 0; from < to; level++) {
+            final IndexToIndexMultiMap postings = levels[level];
+            if (level == levels.length - 1) {
+                return result + postings.estimateBetween(from, to);
+            }
+
+            final int nextFrom = (from + fanout - 1) / fanout;
+            final int nextTo = nextTo(level, to);
+            if (nextFrom >= nextTo) {
+                // No whole buckets
+                return result + postings.estimateBetween(from, to);
+            }
+
+            final int alignedFrom = nextFrom * fanout;
+            final int alignedTo = Math.min(to, nextTo * fanout);
+            if (from < alignedFrom) {
+                result += postings.estimateBetween(from, alignedFrom);
+            }
+            if (alignedTo < to) {
+                result += postings.estimateBetween(alignedTo, to);
+            }
+
+            from = nextFrom;
+            to = nextTo;
+        }
+
+        return result;
+    }
+
+    @Override
+    public boolean eq(
+            @NotNull
+            final BitSet dest,
+            @NotNull
+            final Buffer value) {
+        final int valueIndex = values.indexOf(value);
+        return valueIndex != -1 && levels[0].get(dest, valueIndex);
+    }
+
+    @Override
+    public boolean in(
+            @NotNull
+            final BitSet dest,
+            @NotNull
+            final Buffer... value) {
+        boolean result = false;
+        for (Buffer currentValue : value) {
+            final int valueIndex = values.indexOf(currentValue);
+            result |= valueIndex != -1 && levels[0].get(dest, valueIndex);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean lessThan(
+            @NotNull
+            final BitSet dest,
+            @NotNull
+            final Buffer value,
+            final boolean orEquals) {
+        final int greatestValueIndex = values.indexOfLessThan(
+                value,
+                orEquals,
+                0);
+        return greatestValueIndex != -1 &&
+                getBetween(dest, 0, greatestValueIndex + 1);
+    }
+
+    @Override
+    public boolean greaterThan(
+            @NotNull
+            final BitSet dest,
+            @NotNull
+            final Buffer value,
+            final boolean orEquals) {
+        final int leastValueIndex = values.indexOfGreaterThan(
+                value,
+                orEquals,
+                values.size() - 1);
+        return leastValueIndex != -1 &&
+                getBetween(dest, leastValueIndex, values.size());
+    }
+
+    @Override
+    public boolean between(
+            @NotNull
+            final BitSet dest,
+            @NotNull
+            final Buffer from,
+            final boolean fromInclusive,
+            @NotNull
+            final Buffer to,
+            final boolean toInclusive) {
+        final int fromValueIndex =
+                values.indexOfGreaterThan(
+                        from,
+                        fromInclusive,
+                        values.size() - 1);
+
+        if (fromValueIndex == -1) {
+            return false;
+        }
+
+        final int toValueIndex =
+                values.indexOfLessThan(
+                        to,
+                        toInclusive,
+                        fromValueIndex);
+
+        return toValueIndex != -1 &&
+                getBetween(dest, fromValueIndex, toValueIndex + 1);
+    }
+
+    @Override
+    public long estimateEq(
+            @NotNull
+            final Buffer value) {
+        final int valueIndex = values.indexOf(value);
+        return valueIndex == -1 ?
+                0L :
+                levels[0].estimateBetween(valueIndex, valueIndex + 1);
+    }
+
+    @Override
+    public long estimateIn(
+            @NotNull
+            final Buffer... value) {
+        long result = 0L;
+        for (Buffer currentValue : value) {
+            result += estimateEq(currentValue);
+        }
+        return result;
+    }
+
+    @Override
+    public long estimateLessThan(
+            @NotNull
+            final Buffer value,
+            final boolean orEquals) {
+        final int greatestValueIndex = values.indexOfLessThan(
+                value,
+                orEquals,
+                0);
+        return greatestValueIndex == -1 ?
+                0L :
+                estimateBetween(0, greatestValueIndex + 1);
+    }
+
+    @Override
+    public long estimateGreaterThan(
+            @NotNull
+            final Buffer value,
+            final boolean orEquals) {
+        final int leastValueIndex = values.indexOfGreaterThan(
+                value,
+                orEquals,
+                values.size() - 1);
+        return leastValueIndex == -1 ?
+                0L :
+                estimateBetween(leastValueIndex, values.size());
+    }
+
+    @Override
+    public long estimateBetween(
+            @NotNull
+            final Buffer from,
+            final boolean fromInclusive,
+            @NotNull
+            final Buffer to,
+            final boolean toInclusive) {
+        final int fromValueIndex =
+                values.indexOfGreaterThan(
+                        from,
+                        fromInclusive,
+                        values.size() - 1);
+
+        if (fromValueIndex == -1) {
+            return 0L;
+        }
+
+        final int toValueIndex =
+                values.indexOfLessThan(
+                        to,
+                        toInclusive,
+                        fromValueIndex);
+
+        return toValueIndex == -1 ?
+                0L :
+                estimateBetween(fromValueIndex, toValueIndex + 1);
+    }
+
+    @Override
+    public String toString() {
+        return "V1RangeFilterableIndex{" +
+               "fieldName='" + fieldName + '\'' +
+               ", values=" + values.size() +
+               ", fanout=" + fanout +
+               ", levels=" + levels.length +
+               '}';
+    }
+
+    @NotNull
+    private static Segment read(
+            @NotNull
+            final Buffer buffer,
+            final boolean fixedLength) {
+        final String fieldName = Segments.extractString(buffer);
+
+        final Buffer valuesBuffer = Segments.extract(buffer);
+        final ByteArraySortedSet values =
+                fixedLength ?
+                        FixedLengthByteArraySortedSet.from(valuesBuffer) :
+                        VariableLengthByteArraySortedSet.from(valuesBuffer);
+
+        final int fanout = buffer.getInt();
+        final IndexToIndexMultiMap[] levels =
+                new IndexToIndexMultiMap[buffer.getInt()];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = IndexToIndexMultiMapReader.from(
+                    Segments.extract(buffer));
+        }
+
+        return new V1RangeFilterableIndex(fieldName, values, fanout, levels);
+    }
+
+    static void registerReader() {
+        SegmentRegistry.register(
+                V1DatabaseFormat.SegmentType.FIXED_LENGTH_RANGE_FILTER.getCode(),
+                new SegmentReader() {
+                    @NotNull
+                    @Override
+                    public Segment read(
+                            @NotNull
+                            final Buffer buffer) {
+                        return V1RangeFilterableIndex.read(buffer, true);
+                    }
+                }
+        );
+
+        SegmentRegistry.register(
+                V1DatabaseFormat.SegmentType.VARIABLE_LENGTH_RANGE_FILTER.getCode(),
+                new SegmentReader() {
+                    @NotNull
+                    @Override
+                    public Segment read(
+                            @NotNull
+                            final Buffer buffer) {
+                        return V1RangeFilterableIndex.read(buffer, false);
+                    }
+                }
+        );
+    }
+}
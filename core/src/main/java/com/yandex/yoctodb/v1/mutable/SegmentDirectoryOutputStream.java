@@ -0,0 +1,195 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.mutable;
+
+import com.google.common.hash.Hasher;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Passes segments through collecting the segment directory.
+ *
+ * Each segment starts with {@code long} payload size and {@code int} segment
+ * type followed by the payload (see
+ * {@link com.yandex.yoctodb.v1.mutable.segment.SegmentWritable}). Segment
+ * type, field name and payload size are supplied explicitly by
+ * {@link #beginSegment(int, byte[], long)}. Directory entries contain
+ * {@code long} payload offset relative to the beginning of the stream,
+ * {@code long} payload size, {@code int} payload checksum, {@code int}
+ * segment type and the field name prefixed with {@code int} length. The
+ * directory is followed by {@code long} directory offset, {@code int}
+ * entries count, {@code int} checksum type and {@code int} directory
+ * checksum.
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+final class SegmentDirectoryOutputStream extends OutputStream {
+    // Payload size and segment type preceding the payload
+    static final int SEGMENT_HEADER_SIZE = Longs.BYTES + Ints.BYTES;
+    // Offset, size, checksum, type and field name length
+    static final int ENTRY_HEADER_SIZE = 2 * Longs.BYTES + 3 * Ints.BYTES;
+    // Directory offset, entries count, checksum type and directory checksum
+    static final int TRAILER_SIZE = Longs.BYTES + 3 * Ints.BYTES;
+
+    @NotNull
+    private final OutputStream delegate;
+    @NotNull
+    private final V1DatabaseFormat.ChecksumType checksumType;
+    @NotNull
+    private final ByteArrayOutputStream directory =
+            new ByteArrayOutputStream();
+    private long position = 0;
+    private long payloadStart = -1;
+    private long payloadSize;
+    private int type;
+    @Nullable
+    private byte[] fieldName;
+    private int entries = 0;
+    @Nullable
+    private Hasher payloadHasher;
+
+    SegmentDirectoryOutputStream(
+            @NotNull
+            final OutputStream delegate,
+            @NotNull
+            final V1DatabaseFormat.ChecksumType checksumType) {
+        this.delegate = delegate;
+        this.checksumType = checksumType;
+    }
+
+    /**
+     * @param fieldName field name bytes
+     * @return size of the directory entry of the segment
+     */
+    static long entrySizeInBytes(
+            @NotNull
+            final byte[] fieldName) {
+        return ENTRY_HEADER_SIZE + fieldName.length;
+    }
+
+    /**
+     * Starts the segment to be written next
+     *
+     * @param type      segment type code
+     * @param fieldName field name bytes
+     * @param size      payload size
+     */
+    void beginSegment(
+            final int type,
+            @NotNull
+            final byte[] fieldName,
+            final long size) {
+        assert payloadStart < 0 : "Segment is not finished";
+
+        if (size < 0)
+            throw new IllegalArgumentException("Negative segment size");
+
+        this.payloadStart = position + SEGMENT_HEADER_SIZE;
+        this.payloadSize = size;
+        this.type = type;
+        this.fieldName = fieldName;
+        this.payloadHasher = checksumType.getHashFunction().newHasher();
+    }
+
+    void endSegment() throws IOException {
+        assert payloadStart >= 0 : "Segment is not started";
+
+        if (payloadStart + payloadSize != position)
+            throw new IllegalStateException(
+                    "Segment size " + payloadSize + " doesn't match written " +
+                    (position - payloadStart) + " bytes");
+
+        assert fieldName != null && payloadHasher != null;
+
+        // Offset, size and checksum
+        directory.write(Longs.toByteArray(payloadStart));
+        directory.write(Longs.toByteArray(payloadSize));
+        directory.write(Ints.toByteArray(payloadHasher.hash().asInt()));
+        // Type and field name
+        directory.write(Ints.toByteArray(type));
+        directory.write(Ints.toByteArray(fieldName.length));
+        directory.write(fieldName);
+        entries++;
+
+        payloadStart = -1;
+        fieldName = null;
+        payloadHasher = null;
+    }
+
+    /**
+     * Writes the collected directory
+     */
+    void writeDirectory() throws IOException {
+        assert payloadStart < 0 : "Segment is not finished";
+
+        final long offset = position;
+        final byte[] bytes = directory.toByteArray();
+        write(bytes);
+        write(Longs.toByteArray(offset));
+        write(Ints.toByteArray(entries));
+        write(Ints.toByteArray(checksumType.getCode()));
+        write(
+                Ints.toByteArray(
+                        checksumType.getHashFunction().hashBytes(bytes).asInt()));
+    }
+
+    private void hash(
+            @NotNull
+            final byte[] b,
+            final int off,
+            final int len) {
+        if (payloadStart < 0) {
+            return;
+        }
+
+        assert payloadHasher != null;
+
+        // Skipping size and type
+        final int skip =
+                (int) Math.max(0L, Math.min(len, payloadStart - position));
+        if (skip < len) {
+            payloadHasher.putBytes(b, off + skip, len - skip);
+        }
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        final byte[] bytes = {(byte) b};
+        hash(bytes, 0, 1);
+        delegate.write(b);
+        position++;
+    }
+
+    @Override
+    public void write(
+            @NotNull
+            final byte[] b,
+            final int off,
+            final int len) throws IOException {
+        hash(b, off, len);
+        delegate.write(b, off, len);
+        position += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        delegate.flush();
+    }
+}
@@ -10,6 +10,7 @@
 
 package com.yandex.yoctodb.v1.mutable;
 
+import com.google.common.base.Throwables;
 import com.google.common.primitives.Ints;
 import com.yandex.yoctodb.DatabaseFormat;
 import com.yandex.yoctodb.mutable.DatabaseBuilder;
@@ -21,12 +22,17 @@ import com.yandex.yoctodb.v1.V1DatabaseFormat;
 import com.yandex.yoctodb.v1.mutable.segment.*;
 import net.jcip.annotations.NotThreadSafe;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * {@link DatabaseBuilder} implementation in V1 format
@@ -41,6 +47,37 @@ public final class V1DatabaseBuilder
 
     private final Map<String, IndexSegment> indexes =
             new HashMap<>();
+    private final Map<String, V1FieldStatistics> statistics =
+            new HashMap<>();
+    private final boolean collectStatistics;
+    @Nullable
+    private final ExecutorService executor;
+
+    public V1DatabaseBuilder() {
+        this(false);
+    }
+
+    /**
+     * @param collectStatistics whether to write {@link V1FieldStatistics}
+     *                          segments for filterable and sortable fields
+     */
+    public V1DatabaseBuilder(final boolean collectStatistics) {
+        this(collectStatistics, null);
+    }
+
+    /**
+     * @param collectStatistics whether to write {@link V1FieldStatistics}
+     *                          segments for filterable and sortable fields
+     * @param executor          executor to build segments concurrently on or
+     *                          {@code null} to build them serially
+     */
+    public V1DatabaseBuilder(
+            final boolean collectStatistics,
+            @Nullable
+            final ExecutorService executor) {
+        this.collectStatistics = collectStatistics;
+        this.executor = executor;
+    }
 
     @NotNull
     @Override
@@ -68,40 +105,24 @@ public final class V1DatabaseBuilder
 
             final IndexSegment existingIndex = indexes.get(fieldName);
             if (existingIndex == null) {
-                final IndexSegment index;
                 @NotNull
                 final DocumentBuilder.IndexOption indexOption =
                         builder.index.get(fieldName);
-                @NotNull
-                final DocumentBuilder.LengthOption lengthOption =
-                        builder.length.get(fieldName);
+                final V1FieldStatistics fieldStatistics;
+                if (collectStatistics &&
+                    indexOption != DocumentBuilder.IndexOption.STORED) {
+                    fieldStatistics = new V1FieldStatistics(fieldName);
+                    statistics.put(fieldName, fieldStatistics);
+                } else {
+                    fieldStatistics = null;
+                }
 
-                switch (indexOption) {
-                    case FILTERABLE:
-                        index = new V1FilterableIndex(
-                                fieldName,
-                                lengthOption == DocumentBuilder.LengthOption.FIXED
-                        );
-                        break;
-                    case SORTABLE:
-                        index = new V1SortableIndex(
-                                fieldName,
-                                lengthOption == DocumentBuilder.LengthOption.FIXED
-                        );
-                        break;
-                    case FULL:
-                        index = new V1FullIndex(
+                final IndexSegment index =
+                        newIndexSegment(
                                 fieldName,
-                                lengthOption == DocumentBuilder.LengthOption.FIXED
-                        );
-                        break;
-                    case STORED:
-                        index = new V1StoredIndex(fieldName);
-                        break;
-                    default:
-                        throw new UnsupportedOperationException(
-                                "Unsupported index option: " + indexOption);
-                }
+                                indexOption,
+                                builder.length.get(fieldName),
+                                fieldStatistics);
 
                 indexes.put(fieldName, index);
                 index.addDocument(currentDocumentId, values);
@@ -124,17 +145,141 @@ public final class V1DatabaseBuilder
 
         // Build writables
 
-        final List<OutputStreamWritable> writables =
-                new ArrayList<>(indexes.size() + 1);
+        final List<IndexSegment> segments = new ArrayList<>(indexes.size());
         final Iterator<IndexSegment> indexSegmentIterator =
                 indexes.values().iterator();
         while (indexSegmentIterator.hasNext()) {
             final IndexSegment segment = indexSegmentIterator.next();
             segment.setDatabaseDocumentsCount(currentDocumentId);
-            writables.add(segment.buildWritable());
+            segments.add(segment);
             indexSegmentIterator.remove();
         }
 
+        final List<SegmentWritable> writables =
+                new ArrayList<>(segments.size() + statistics.size());
+        if (executor == null) {
+            for (IndexSegment segment : segments) {
+                writables.add(segment.buildWritable());
+            }
+        } else {
+            writables.addAll(buildConcurrently(segments, executor));
+        }
+
+        // Statistics are fed by the built index segments
+        final Iterator<V1FieldStatistics> statisticsIterator =
+                statistics.values().iterator();
+        while (statisticsIterator.hasNext()) {
+            writables.add(statisticsIterator.next().buildWritable());
+            statisticsIterator.remove();
+        }
+
+        return databaseWritable(currentDocumentId, writables);
+    }
+
+    /**
+     * Builds segments on {@code executor} keeping their order
+     *
+     * @param segments segments to build
+     * @param executor executor to build the segments on
+     * @return writables in the order of the segments
+     */
+    @NotNull
+    private static List<SegmentWritable> buildConcurrently(
+            @NotNull
+            final List<IndexSegment> segments,
+            @NotNull
+            final ExecutorService executor) {
+        final List<Callable<SegmentWritable>> tasks =
+                new ArrayList<>(segments.size());
+        for (final IndexSegment segment : segments) {
+            tasks.add(
+                    new Callable<SegmentWritable>() {
+                        @Override
+                        public SegmentWritable call() {
+                            return segment.buildWritable();
+                        }
+                    });
+        }
+
+        final List<Future<SegmentWritable>> futures;
+        try {
+            futures = executor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+
+        final List<SegmentWritable> results =
+                new ArrayList<>(futures.size());
+        for (Future<SegmentWritable> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw Throwables.propagate(e.getCause());
+            }
+        }
+
+        return results;
+    }
+
+    @NotNull
+    static IndexSegment newIndexSegment(
+            @NotNull
+            final String fieldName,
+            @NotNull
+            final DocumentBuilder.IndexOption indexOption,
+            @NotNull
+            final DocumentBuilder.LengthOption lengthOption,
+            @Nullable
+            final V1FieldStatistics statistics) {
+        switch (indexOption) {
+            case FILTERABLE:
+                return new V1FilterableIndex(
+                        fieldName,
+                        lengthOption == DocumentBuilder.LengthOption.FIXED,
+                        statistics);
+            case RANGE_FILTERABLE:
+                return new V1RangeFilterableIndex(
+                        fieldName,
+                        lengthOption == DocumentBuilder.LengthOption.FIXED,
+                        V1RangeFilterableIndex.DEFAULT_FANOUT,
+                        statistics);
+            case SORTABLE:
+                return new V1SortableIndex(
+                        fieldName,
+                        lengthOption == DocumentBuilder.LengthOption.FIXED,
+                        statistics);
+            case FULL:
+                return new V1FullIndex(
+                        fieldName,
+                        lengthOption == DocumentBuilder.LengthOption.FIXED,
+                        statistics);
+            case STORED:
+                if (V1DatabaseFormat.isStoredCompressionEnabled()) {
+                    return new V1CompressedStoredIndex(fieldName);
+                }
+                return new V1StoredIndex(fieldName);
+            default:
+                throw new UnsupportedOperationException(
+                        "Unsupported index option: " + indexOption);
+        }
+    }
+
+    /**
+     * Builds database from the segments followed by the segment directory
+     *
+     * @param documentsCount documents count
+     * @param writables      segments
+     * @return database writable
+     */
+    @NotNull
+    static OutputStreamWritable databaseWritable(
+            final int documentsCount,
+            @NotNull
+            final List<? extends SegmentWritable> writables) {
         return new OutputStreamWritable() {
             @Override
             public long getSizeInBytes() {
@@ -142,10 +287,14 @@ public final class V1DatabaseBuilder
                         V1DatabaseFormat.MAGIC.length +
                         Ints.BYTES + // Format length
                         Ints.BYTES + // Document count
+                        SegmentDirectoryOutputStream.TRAILER_SIZE +
                         V1DatabaseFormat.getDigestSizeInBytes();
 
-                for (OutputStreamWritable writable : writables) {
-                    size += writable.getSizeInBytes();
+                for (SegmentWritable writable : writables) {
+                    size += SegmentDirectoryOutputStream.SEGMENT_HEADER_SIZE +
+                            writable.getSizeInBytes() +
+                            SegmentDirectoryOutputStream.entrySizeInBytes(
+                                    writable.getFieldName());
                 }
 
                 return size;
@@ -158,7 +307,7 @@ public final class V1DatabaseBuilder
                 // Header
                 os.write(DatabaseFormat.MAGIC);
                 os.write(Ints.toByteArray(V1DatabaseFormat.FORMAT));
-                os.write(Ints.toByteArray(currentDocumentId));
+                os.write(Ints.toByteArray(documentsCount));
 
                 final MessageDigest md;
                 try {
@@ -174,11 +323,24 @@ public final class V1DatabaseBuilder
                 final MessageDigestOutputStreamWrapper mdos =
                         new MessageDigestOutputStreamWrapper(os, md);
 
+                final SegmentDirectoryOutputStream sdos =
+                        new SegmentDirectoryOutputStream(
+                                mdos,
+                                V1DatabaseFormat.getSegmentChecksum());
+
                 // Segments
-                for (OutputStreamWritable writable : writables) {
-                    writable.writeTo(mdos);
+                for (SegmentWritable writable : writables) {
+                    sdos.beginSegment(
+                            writable.getType(),
+                            writable.getFieldName(),
+                            writable.getSizeInBytes());
+                    writable.writeTo(sdos);
+                    sdos.endSegment();
                 }
 
+                // Segment directory
+                sdos.writeDirectory();
+
                 // Writing checksum
                 if (V1DatabaseFormat.getDigestSizeInBytes() !=
                     md.getDigestLength()) {
@@ -0,0 +1,552 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.mutable;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.yandex.yoctodb.mutable.DatabaseBuilder;
+import com.yandex.yoctodb.mutable.DocumentBuilder;
+import com.yandex.yoctodb.util.OutputStreamWritable;
+import com.yandex.yoctodb.util.TemporaryFiles;
+import com.yandex.yoctodb.util.UnsignedByteArray;
+import com.yandex.yoctodb.util.UnsignedByteArrays;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import com.yandex.yoctodb.v1.mutable.segment.Freezable;
+import com.yandex.yoctodb.v1.mutable.segment.SegmentWritable;
+import com.yandex.yoctodb.v1.mutable.segment.StreamingIndexSegment;
+import com.yandex.yoctodb.v1.mutable.segment.V1FieldStatistics;
+import com.yandex.yoctodb.v1.mutable.segment.V1RangeFilterableIndex;
+import com.yandex.yoctodb.v1.mutable.segment.V1StreamingCompressedStoredIndex;
+import com.yandex.yoctodb.v1.mutable.segment.V1StreamingFilterableIndex;
+import com.yandex.yoctodb.v1.mutable.segment.V1StreamingFullIndex;
+import com.yandex.yoctodb.v1.mutable.segment.V1StreamingRangeFilterableIndex;
+import com.yandex.yoctodb.v1.mutable.segment.V1StreamingStoredIndex;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link DatabaseBuilder} implementation in V1 format keeping heap usage
+ * bounded by the memory budget instead of the dataset size.
+ *
+ * (value, document) pairs of merged documents are buffered per field. When
+ * buffered pairs exceed the budget, they are sorted and spilled to temporary
+ * files as runs. Segments are built one field at a time by merging the runs
+ * of the field, at most {@link #MAX_FAN_IN} runs at once, and streaming the
+ * merged pairs to {@link StreamingIndexSegment}s appending the postings of
+ * each value to temporary files. Besides the budget, the heap holds only a
+ * bit set of documents per upper level of range filterable fields and the
+ * current block of postings or stored values.
+ *
+ * Index fields are merged in (value, document) order, stored fields are
+ * merged in document order.
+ *
+ * The resulting database is the same as built by {@link V1DatabaseBuilder}.
+ * The {@link OutputStreamWritable} built may be written only once, temporary
+ * files are removed afterwards or if spilling or the build fails, after
+ * which the builder can't be used.
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+public final class V1SpillingDatabaseBuilder
+        extends Freezable
+        implements DatabaseBuilder {
+    // Estimated heap overhead of a buffered pair
+    private static final int PAIR_OVERHEAD = 48;
+    // Maximum runs merged at once
+    static final int MAX_FAN_IN = 64;
+
+    private static final Comparator<Pair> BY_VALUE =
+            new Comparator<Pair>() {
+                @Override
+                public int compare(
+                        final Pair left,
+                        final Pair right) {
+                    final int result = left.value.compareTo(right.value);
+                    if (result != 0) {
+                        return result;
+                    }
+
+                    return Integer.compare(left.document, right.document);
+                }
+            };
+
+    private static final Comparator<Pair> BY_DOCUMENT =
+            new Comparator<Pair>() {
+                @Override
+                public int compare(
+                        final Pair left,
+                        final Pair right) {
+                    final int result =
+                            Integer.compare(left.document, right.document);
+                    if (result != 0) {
+                        return result;
+                    }
+
+                    return left.value.compareTo(right.value);
+                }
+            };
+
+    private final long memoryBudget;
+    @NotNull
+    private final TemporaryFiles files;
+    private final boolean collectStatistics;
+    private final Map<String, Field> fields = new HashMap<>();
+    private long bufferedBytes = 0L;
+    private int currentDocumentId = 0;
+
+    /**
+     * @param collectStatistics whether to write {@link V1FieldStatistics}
+     *                          segments for filterable and sortable fields
+     * @param memoryBudget      maximum size of buffered field values in bytes
+     * @param tempDirectory     directory to keep temporary files in
+     */
+    public V1SpillingDatabaseBuilder(
+            final boolean collectStatistics,
+            final long memoryBudget,
+            @NotNull
+            final File tempDirectory) {
+        if (memoryBudget <= 0)
+            throw new IllegalArgumentException("Nonpositive memory budget");
+        this.collectStatistics = collectStatistics;
+        this.memoryBudget = memoryBudget;
+        this.files = new TemporaryFiles(tempDirectory);
+    }
+
+    @NotNull
+    @Override
+    public DatabaseBuilder merge(
+            @NotNull
+            final DocumentBuilder document) {
+        checkNotFrozen();
+
+        assert document instanceof V1DocumentBuilder :
+                "Wrong document builder implementation supplied";
+
+        final V1DocumentBuilder builder = (V1DocumentBuilder) document;
+
+        // Marking document as built
+        builder.freeze();
+
+        for (Map.Entry<String, Collection<UnsignedByteArray>> e :
+                builder.fields.asMap().entrySet()) {
+            final String fieldName = e.getKey();
+
+            Field field = fields.get(fieldName);
+            if (field == null) {
+                field =
+                        new Field(
+                                fieldName,
+                                builder.index.get(fieldName),
+                                builder.length.get(fieldName));
+                fields.put(fieldName, field);
+            }
+
+            for (UnsignedByteArray value : e.getValue()) {
+                field.add(new Pair(value, currentDocumentId));
+                bufferedBytes += value.length() + PAIR_OVERHEAD;
+            }
+        }
+
+        currentDocumentId++;
+
+        if (bufferedBytes > memoryBudget) {
+            boolean spilled = false;
+            try {
+                for (Field field : fields.values()) {
+                    field.spill();
+                }
+                spilled = true;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                if (!spilled) {
+                    // The runs are incomplete
+                    freeze();
+                    files.close();
+                }
+            }
+
+            bufferedBytes = 0L;
+        }
+
+        return this;
+    }
+
+    @NotNull
+    @Override
+    public OutputStreamWritable buildWritable() {
+        checkNotFrozen();
+
+        freeze();
+
+        final List<SegmentWritable> indexes = new ArrayList<>();
+        final List<SegmentWritable> statistics = new ArrayList<>();
+        boolean built = false;
+        try {
+            final Iterator<Field> fieldIterator = fields.values().iterator();
+            while (fieldIterator.hasNext()) {
+                final Field field = fieldIterator.next();
+
+                final V1FieldStatistics fieldStatistics;
+                if (collectStatistics &&
+                    field.indexOption != DocumentBuilder.IndexOption.STORED) {
+                    fieldStatistics =
+                            new V1FieldStatistics(field.name, field.count);
+                } else {
+                    fieldStatistics = null;
+                }
+                final StreamingIndexSegment index =
+                        newStreamingSegment(field, fieldStatistics);
+
+                final Iterator<Pair> pairs = field.merged();
+                while (pairs.hasNext()) {
+                    final Pair pair = pairs.next();
+                    index.add(pair.value, pair.document);
+                }
+                field.delete();
+
+                indexes.add(index.buildWritable());
+                if (fieldStatistics != null) {
+                    statistics.add(fieldStatistics.buildWritable());
+                }
+
+                fieldIterator.remove();
+            }
+            built = true;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            // Runs are also read by iterators wrapping IOExceptions
+            if (!built) {
+                files.close();
+            }
+        }
+
+        final List<SegmentWritable> writables =
+                new ArrayList<>(indexes.size() + statistics.size());
+        writables.addAll(indexes);
+        writables.addAll(statistics);
+
+        final OutputStreamWritable database =
+                V1DatabaseBuilder.databaseWritable(
+                        currentDocumentId,
+                        writables);
+
+        return new OutputStreamWritable() {
+            private boolean written = false;
+
+            @Override
+            public long getSizeInBytes() {
+                return database.getSizeInBytes();
+            }
+
+            @Override
+            public void writeTo(
+                    @NotNull
+                    final OutputStream os) throws IOException {
+                if (written)
+                    throw new IllegalStateException(
+                            "The database has already been written");
+
+                written = true;
+                try {
+                    database.writeTo(os);
+                } finally {
+                    files.close();
+                }
+            }
+        };
+    }
+
+    @NotNull
+    private StreamingIndexSegment newStreamingSegment(
+            @NotNull
+            final Field field,
+            @Nullable
+            final V1FieldStatistics statistics) throws IOException {
+        final boolean fixedLength =
+                field.lengthOption == DocumentBuilder.LengthOption.FIXED;
+        switch (field.indexOption) {
+            case FILTERABLE:
+                return new V1StreamingFilterableIndex(
+                        files,
+                        field.name,
+                        fixedLength,
+                        currentDocumentId,
+                        statistics);
+            case RANGE_FILTERABLE:
+                return new V1StreamingRangeFilterableIndex(
+                        files,
+                        field.name,
+                        fixedLength,
+                        currentDocumentId,
+                        V1RangeFilterableIndex.DEFAULT_FANOUT,
+                        statistics);
+            case SORTABLE:
+                return new V1StreamingFullIndex(
+                        files,
+                        field.name,
+                        fixedLength,
+                        currentDocumentId,
+                        false,
+                        statistics);
+            case FULL:
+                return new V1StreamingFullIndex(
+                        files,
+                        field.name,
+                        fixedLength,
+                        currentDocumentId,
+                        true,
+                        statistics);
+            case STORED:
+                if (V1DatabaseFormat.isStoredCompressionEnabled()) {
+                    return new V1StreamingCompressedStoredIndex(
+                            files,
+                            field.name,
+                            currentDocumentId);
+                }
+                return new V1StreamingStoredIndex(
+                        files,
+                        field.name,
+                        currentDocumentId);
+            default:
+                throw new UnsupportedOperationException(
+                        "Unsupported index option: " + field.indexOption);
+        }
+    }
+
+    /**
+     * Field value of a document
+     */
+    private static final class Pair {
+        @NotNull
+        private final UnsignedByteArray value;
+        private final int document;
+
+        private Pair(
+                @NotNull
+                final UnsignedByteArray value,
+                final int document) {
+            this.value = value;
+            this.document = document;
+        }
+    }
+
+    /**
+     * Buffered and spilled pairs of a field
+     */
+    private final class Field {
+        @NotNull
+        private final String name;
+        @NotNull
+        private final DocumentBuilder.IndexOption indexOption;
+        @NotNull
+        private final DocumentBuilder.LengthOption lengthOption;
+        @NotNull
+        private final Comparator<Pair> order;
+        @NotNull
+        private List<Pair> pairs = new ArrayList<>();
+        private final List<File> runs = new ArrayList<>();
+        // Pairs added
+        private long count = 0L;
+
+        private Field(
+                @NotNull
+                final String name,
+                @NotNull
+                final DocumentBuilder.IndexOption indexOption,
+                @NotNull
+                final DocumentBuilder.LengthOption lengthOption) {
+            switch (indexOption) {
+                case FILTERABLE:
+                case RANGE_FILTERABLE:
+                case SORTABLE:
+                case FULL:
+                    this.order = BY_VALUE;
+                    break;
+                case STORED:
+                    this.order = BY_DOCUMENT;
+                    break;
+                default:
+                    throw new UnsupportedOperationException(
+                            "Unsupported index option: " + indexOption);
+            }
+
+            this.name = name;
+            this.indexOption = indexOption;
+            this.lengthOption = lengthOption;
+        }
+
+        private void add(
+                @NotNull
+                final Pair pair) {
+            pairs.add(pair);
+            count++;
+        }
+
+        private void spill() throws IOException {
+            if (pairs.isEmpty()) {
+                return;
+            }
+
+            Collections.sort(pairs, order);
+            runs.add(write(pairs.size(), pairs.iterator()));
+
+            // Releasing the buffer
+            pairs = new ArrayList<>();
+        }
+
+        @NotNull
+        private File write(
+                final long size,
+                @NotNull
+                final Iterator<Pair> pairs) throws IOException {
+            final File run = files.newFile();
+            try (DataOutputStream os =
+                         new DataOutputStream(
+                                 new BufferedOutputStream(
+                                         new FileOutputStream(run)))) {
+                os.writeLong(size);
+                while (pairs.hasNext()) {
+                    final Pair pair = pairs.next();
+                    os.writeInt(pair.document);
+                    os.writeInt(pair.value.length());
+                    pair.value.writeTo(os);
+                }
+            }
+
+            return run;
+        }
+
+        @NotNull
+        private Iterator<Pair> merged(
+                @NotNull
+                final List<File> runs) throws IOException {
+            final List<Iterator<Pair>> sources = new ArrayList<>(runs.size());
+            for (File run : runs) {
+                sources.add(new RunIterator(run));
+            }
+
+            return Iterators.mergeSorted(sources, order);
+        }
+
+        /**
+         * Merges the runs in passes of at most {@link #MAX_FAN_IN} runs, so
+         * only that many files are open at once
+         */
+        @NotNull
+        private Iterator<Pair> merged() throws IOException {
+            while (runs.size() > MAX_FAN_IN) {
+                final List<File> pass = runs.subList(0, MAX_FAN_IN);
+                long size = 0L;
+                for (File run : pass) {
+                    size += RunIterator.size(run);
+                }
+
+                final File merged = write(size, merged(pass));
+                for (File run : pass) {
+                    files.delete(run);
+                }
+                pass.clear();
+                runs.add(merged);
+            }
+
+            Collections.sort(pairs, order);
+
+            return Iterators.mergeSorted(
+                    Arrays.asList(merged(runs), pairs.iterator()),
+                    order);
+        }
+
+        private void delete() {
+            pairs = Collections.emptyList();
+            for (File run : runs) {
+                files.delete(run);
+            }
+            runs.clear();
+        }
+    }
+
+    /**
+     * Reads pairs spilled to a run file
+     */
+    private static final class RunIterator extends AbstractIterator<Pair> {
+        @Nullable
+        private DataInputStream is;
+        private long remaining;
+
+        private RunIterator(
+                @NotNull
+                final File run) throws IOException {
+            this.is =
+                    new DataInputStream(
+                            new BufferedInputStream(
+                                    new FileInputStream(run)));
+            this.remaining = is.readLong();
+        }
+
+        /**
+         * @return pairs count of the run
+         */
+        private static long size(
+                @NotNull
+                final File run) throws IOException {
+            try (DataInputStream is =
+                         new DataInputStream(new FileInputStream(run))) {
+                return is.readLong();
+            }
+        }
+
+        @Override
+        protected Pair computeNext() {
+            assert is != null;
+
+            try {
+                if (remaining == 0) {
+                    is.close();
+                    is = null;
+                    return endOfData();
+                }
+
+                remaining--;
+
+                final int document = is.readInt();
+                final byte[] value = new byte[is.readInt()];
+                is.readFully(value);
+
+                return new Pair(UnsignedByteArrays.from(value), document);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+}
@@ -10,27 +10,25 @@
 
 package com.yandex.yoctodb.v1.mutable.segment;
 
-import com.google.common.collect.TreeMultimap;
 import com.google.common.primitives.Ints;
 import com.google.common.primitives.Longs;
-import com.yandex.yoctodb.util.OutputStreamWritable;
 import com.yandex.yoctodb.util.UnsignedByteArray;
 import com.yandex.yoctodb.util.mutable.ByteArraySortedSet;
 import com.yandex.yoctodb.util.mutable.IndexToIndexMap;
 import com.yandex.yoctodb.util.mutable.IndexToIndexMultiMap;
 import com.yandex.yoctodb.util.mutable.impl.FixedLengthByteArraySortedSet;
+import com.yandex.yoctodb.util.mutable.impl.IntArrayList;
 import com.yandex.yoctodb.util.mutable.impl.IntIndexToIndexMap;
-import com.yandex.yoctodb.util.mutable.impl.IntIndexToIndexMultiMap;
+import com.yandex.yoctodb.util.mutable.impl.IndexToIndexMultiMapFactory;
 import com.yandex.yoctodb.util.mutable.impl.VariableLengthByteArraySortedSet;
 import com.yandex.yoctodb.v1.V1DatabaseFormat;
 import net.jcip.annotations.NotThreadSafe;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Index supporting filtering and sorting by specific field
@@ -44,21 +42,26 @@ abstract class AbstractV1FullIndex
     @NotNull
     private final byte[] fieldName;
     private final boolean fixedLength;
-    private TreeMultimap<UnsignedByteArray, Integer> valueToDocuments =
-            TreeMultimap.create();
-    private Map<Integer, UnsignedByteArray> documentToValue = new HashMap<>();
+    private ValuePostings valueToDocuments = new ValuePostings();
+    // Value ordinal by document
+    private IntArrayList documentToValue = new IntArrayList();
     private int currentDocumentId = 0;
     private final V1DatabaseFormat.SegmentType segmentType;
+    @Nullable
+    private final V1FieldStatistics statistics;
 
     AbstractV1FullIndex(
             @NotNull
             final String fieldName,
             final boolean fixedLength,
             @NotNull
-            final V1DatabaseFormat.SegmentType segmentType) {
+            final V1DatabaseFormat.SegmentType segmentType,
+            @Nullable
+            final V1FieldStatistics statistics) {
         this.fieldName = fieldName.getBytes();
         this.fixedLength = fixedLength;
         this.segmentType = segmentType;
+        this.statistics = statistics;
     }
 
     @NotNull
@@ -77,8 +80,7 @@ abstract class AbstractV1FullIndex
         checkNotFrozen();
 
         final UnsignedByteArray value = values.iterator().next();
-        valueToDocuments.put(value, documentId);
-        documentToValue.put(documentId, value);
+        documentToValue.add(valueToDocuments.add(value, documentId));
         currentDocumentId++;
 
         return this;
@@ -91,40 +93,55 @@ abstract class AbstractV1FullIndex
 
     @NotNull
     @Override
-    public OutputStreamWritable buildWritable() {
+    public SegmentWritable buildWritable() {
         checkNotFrozen();
 
         freeze();
 
+        final ValuePostings.Sorted sorted = valueToDocuments.sort();
+        if (statistics != null) {
+            statistics.add(sorted);
+        }
+
         // Building index
 
         final IndexToIndexMultiMap valueToDocumentsIndex =
-                new IntIndexToIndexMultiMap(valueToDocuments.asMap().values());
+                IndexToIndexMultiMapFactory.buildSortedIndexToIndexMultiMap(
+                        sorted.postings);
 
         final ByteArraySortedSet values;
         if (fixedLength) {
-            values =
-                    new FixedLengthByteArraySortedSet(
-                            valueToDocuments.keySet());
+            values = new FixedLengthByteArraySortedSet(sorted.values);
         } else {
-            values =
-                    new VariableLengthByteArraySortedSet(
-                            valueToDocuments.keySet());
+            values = new VariableLengthByteArraySortedSet(sorted.values);
         }
 
+        // Documents are added sequentially
         final IndexToIndexMap documentToValueIndex = new IntIndexToIndexMap();
-        for (Map.Entry<Integer, UnsignedByteArray> entry :
-                documentToValue.entrySet()) {
+        for (int document = 0;
+             document < documentToValue.size();
+             document++) {
             documentToValueIndex.put(
-                    entry.getKey(),
-                    values.indexOf(entry.getValue()));
+                    document,
+                    sorted.ranks[documentToValue.get(document)]);
         }
 
         // Free memory
         valueToDocuments = null;
         documentToValue = null;
 
-        return new OutputStreamWritable() {
+        return new SegmentWritable() {
+            @Override
+            public int getType() {
+                return segmentType.getCode();
+            }
+
+            @NotNull
+            @Override
+            public byte[] getFieldName() {
+                return fieldName;
+            }
+
             @Override
             public long getSizeInBytes() {
                 return 4L + // Field name
@@ -144,7 +161,7 @@ abstract class AbstractV1FullIndex
                 os.write(Longs.toByteArray(getSizeInBytes()));
 
                 // Payload segment type
-                os.write(Ints.toByteArray(segmentType.getCode()));
+                os.write(Ints.toByteArray(getType()));
 
                 // Field name
                 os.write(Ints.toByteArray(fieldName.length));
@@ -0,0 +1,139 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.mutable.segment;
+
+import com.yandex.yoctodb.util.TemporaryFiles;
+import com.yandex.yoctodb.util.UnsignedByteArray;
+import com.yandex.yoctodb.util.mutable.impl.SpoolingByteArrayList;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+
+/**
+ * Streaming index appending the postings of each value as they come in
+ * (value, document) order
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+abstract class AbstractV1StreamingIndex
+        extends Freezable
+        implements StreamingIndexSegment {
+    @NotNull
+    final byte[] fieldName;
+    final boolean fixedLength;
+    final int documentsCount;
+    @NotNull
+    private final SpoolingByteArrayList values;
+    @Nullable
+    private final V1FieldStatistics statistics;
+
+    // Current value
+    @Nullable
+    private UnsignedByteArray value = null;
+    private int postings = 0;
+
+    AbstractV1StreamingIndex(
+            @NotNull
+            final TemporaryFiles files,
+            @NotNull
+            final String fieldName,
+            final boolean fixedLength,
+            final int documentsCount,
+            @Nullable
+            final V1FieldStatistics statistics) throws IOException {
+        if (documentsCount <= 0)
+            throw new IllegalArgumentException("Nonpositive documents count");
+
+        this.fieldName = fieldName.getBytes();
+        this.fixedLength = fixedLength;
+        this.documentsCount = documentsCount;
+        this.values = new SpoolingByteArrayList(files, fixedLength);
+        this.statistics = statistics;
+    }
+
+    @Override
+    public final void add(
+            @NotNull
+            final UnsignedByteArray value,
+            final int document) throws IOException {
+        checkNotFrozen();
+
+        if (this.value == null || this.value.compareTo(value) != 0) {
+            if (this.value != null) {
+                if (this.value.compareTo(value) > 0)
+                    throw new IllegalArgumentException(
+                            "Values are not ascending");
+
+                endValue();
+            }
+
+            values.add(value);
+            this.value = value;
+        }
+
+        addPosting(values.size() - 1, document);
+        postings++;
+    }
+
+    private void endValue() throws IOException {
+        assert value != null;
+
+        endPostings();
+        if (statistics != null) {
+            statistics.add(value, postings);
+        }
+        postings = 0;
+    }
+
+    @NotNull
+    @Override
+    public final SegmentWritable buildWritable() throws IOException {
+        checkNotFrozen();
+
+        freeze();
+
+        if (value == null)
+            throw new IllegalStateException("No values");
+
+        endValue();
+        value = null;
+        values.finish();
+
+        return build(values);
+    }
+
+    /**
+     * Appends the document to the postings of the current value
+     *
+     * @param rank     rank of the current value
+     * @param document document greater than the previous one of the value
+     */
+    abstract void addPosting(
+            int rank,
+            int document) throws IOException;
+
+    /**
+     * Completes the postings of the current value
+     */
+    abstract void endPostings() throws IOException;
+
+    /**
+     * @param values sorted values
+     * @return the segment
+     */
+    @NotNull
+    abstract SegmentWritable build(
+            @NotNull
+            SpoolingByteArrayList values) throws IOException;
+}
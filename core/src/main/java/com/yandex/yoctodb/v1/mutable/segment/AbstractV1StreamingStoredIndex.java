@@ -0,0 +1,93 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.mutable.segment;
+
+import com.yandex.yoctodb.util.UnsignedByteArray;
+import com.yandex.yoctodb.util.UnsignedByteArrays;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * Streaming stored index appending the values as they come in document
+ * order padded with empty values for the documents without the field
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+abstract class AbstractV1StreamingStoredIndex
+        extends Freezable
+        implements StreamingIndexSegment {
+    private static final UnsignedByteArray EMPTY =
+            UnsignedByteArrays.from(new byte[]{});
+
+    @NotNull
+    final byte[] fieldName;
+    final int documentsCount;
+    private int expectedDocument = 0;
+
+    AbstractV1StreamingStoredIndex(
+            @NotNull
+            final String fieldName,
+            final int documentsCount) {
+        if (documentsCount <= 0)
+            throw new IllegalArgumentException("Nonpositive documents count");
+
+        this.fieldName = fieldName.getBytes();
+        this.documentsCount = documentsCount;
+    }
+
+    @Override
+    public final void add(
+            @NotNull
+            final UnsignedByteArray value,
+            final int document) throws IOException {
+        if (document < expectedDocument || document >= documentsCount)
+            throw new IllegalArgumentException(
+                    "Wrong document ID <" + document + ">");
+
+        checkNotFrozen();
+
+        pad(document);
+        addValue(value);
+        expectedDocument++;
+    }
+
+    private void pad(final int document) throws IOException {
+        while (expectedDocument < document) {
+            addValue(EMPTY);
+            expectedDocument++;
+        }
+    }
+
+    @NotNull
+    @Override
+    public final SegmentWritable buildWritable() throws IOException {
+        checkNotFrozen();
+
+        freeze();
+
+        pad(documentsCount);
+
+        return build();
+    }
+
+    /**
+     * Appends the value of the next document
+     */
+    abstract void addValue(
+            @NotNull
+            UnsignedByteArray value) throws IOException;
+
+    @NotNull
+    abstract SegmentWritable build() throws IOException;
+}
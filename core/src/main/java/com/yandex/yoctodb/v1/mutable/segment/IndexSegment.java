@@ -31,4 +31,8 @@ public interface IndexSegment extends OutputStreamWritableBuilder {
             Collection<UnsignedByteArray> values);
 
     void setDatabaseDocumentsCount(int documentsCount);
+
+    @NotNull
+    @Override
+    SegmentWritable buildWritable();
 }
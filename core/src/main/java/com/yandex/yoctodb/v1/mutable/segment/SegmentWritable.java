@@ -0,0 +1,36 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.mutable.segment;
+
+import com.yandex.yoctodb.util.OutputStreamWritable;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Built segment of the database.
+ *
+ * Writes {@code long} payload size, {@code int} segment type and the payload
+ * of {@link #getSizeInBytes()} bytes. Type and field name are exposed to
+ * describe the segment in the segment directory.
+ *
+ * @author incubos
+ */
+public interface SegmentWritable extends OutputStreamWritable {
+    /**
+     * @return segment type code
+     */
+    int getType();
+
+    /**
+     * @return field name bytes
+     */
+    @NotNull
+    byte[] getFieldName();
+}
@@ -0,0 +1,42 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.mutable.segment;
+
+import com.yandex.yoctodb.util.UnsignedByteArray;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * Mutable index segment built from the (value, document) pairs of a field
+ * appended in the order of the segment and kept in temporary files
+ * instead of the heap
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+public interface StreamingIndexSegment {
+    /**
+     * Appends the next pair: indexes expect (value, document) order, stored
+     * indexes expect document order
+     *
+     * @param value    field value
+     * @param document document ID
+     */
+    void add(
+            @NotNull
+            UnsignedByteArray value,
+            int document) throws IOException;
+
+    @NotNull
+    SegmentWritable buildWritable() throws IOException;
+}
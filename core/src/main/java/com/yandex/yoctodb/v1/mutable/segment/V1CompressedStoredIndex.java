@@ -0,0 +1,224 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.mutable.segment;
+
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+import com.yandex.yoctodb.util.OutputStreamWritable;
+import com.yandex.yoctodb.util.UnsignedByteArray;
+import com.yandex.yoctodb.util.UnsignedByteArrays;
+import com.yandex.yoctodb.util.mutable.impl.VariableLengthByteArrayIndexedList;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.zip.Deflater;
+
+/**
+ * Index supporting extracting stored field value by document ID with the
+ * values grouped into blocks of consecutive documents compressed with
+ * {@link Deflater}.
+ *
+ * Each uncompressed block contains {@code int} documents count, {@code int}
+ * offsets of the values (one more than the documents) and the values.
+ * Each compressed block is prefixed with {@code int} uncompressed size.
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+public final class V1CompressedStoredIndex
+        extends Freezable
+        implements IndexSegment {
+    public static final int DEFAULT_DOCUMENTS_PER_BLOCK = 32;
+
+    @NotNull
+    private final byte[] fieldName;
+    private final int documentsPerBlock;
+    private SortedMap<Integer, UnsignedByteArray> values = new TreeMap<>();
+    private int databaseDocumentsCount = -1;
+
+    public V1CompressedStoredIndex(
+            @NotNull
+            final String fieldName) {
+        this(fieldName, DEFAULT_DOCUMENTS_PER_BLOCK);
+    }
+
+    public V1CompressedStoredIndex(
+            @NotNull
+            final String fieldName,
+            final int documentsPerBlock) {
+        if (documentsPerBlock <= 0)
+            throw new IllegalArgumentException(
+                    "Non-positive documents per block");
+
+        this.fieldName = fieldName.getBytes();
+        this.documentsPerBlock = documentsPerBlock;
+    }
+
+    @NotNull
+    @Override
+    public IndexSegment addDocument(
+            final int documentId,
+            @NotNull
+            final Collection<UnsignedByteArray> values) {
+        if (documentId < 0)
+            throw new IllegalArgumentException("Negative document ID");
+        if (values.size() != 1)
+            throw new IllegalArgumentException("A single value expected");
+
+        checkNotFrozen();
+
+        this.values.put(documentId, values.iterator().next());
+
+        return this;
+    }
+
+    @Override
+    public void setDatabaseDocumentsCount(final int documentsCount) {
+        assert documentsCount > 0;
+
+        this.databaseDocumentsCount = documentsCount;
+    }
+
+    @NotNull
+    static UnsignedByteArray compress(
+            @NotNull
+            final List<UnsignedByteArray> block,
+            @NotNull
+            final Deflater deflater) throws IOException {
+        final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        raw.write(Ints.toByteArray(block.size()));
+        int offset = 0;
+        for (UnsignedByteArray value : block) {
+            raw.write(Ints.toByteArray(offset));
+            offset += value.length();
+        }
+        raw.write(Ints.toByteArray(offset));
+        for (UnsignedByteArray value : block) {
+            value.writeTo(raw);
+        }
+
+        final byte[] input = raw.toByteArray();
+        deflater.reset();
+        deflater.setInput(input);
+        deflater.finish();
+
+        final ByteArrayOutputStream compressed =
+                new ByteArrayOutputStream(input.length / 2 + Ints.BYTES);
+        compressed.write(Ints.toByteArray(input.length));
+        final byte[] buf = new byte[4096];
+        while (!deflater.finished()) {
+            compressed.write(buf, 0, deflater.deflate(buf));
+        }
+
+        return UnsignedByteArrays.from(compressed.toByteArray());
+    }
+
+    @NotNull
+    @Override
+    public SegmentWritable buildWritable() {
+        checkNotFrozen();
+
+        freeze();
+
+        assert databaseDocumentsCount > 0;
+
+        final UnsignedByteArray empty = UnsignedByteArrays.from(new byte[]{});
+        final List<UnsignedByteArray> blocks = new ArrayList<>();
+        final List<UnsignedByteArray> block =
+                new ArrayList<>(documentsPerBlock);
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            final Iterator<Map.Entry<Integer, UnsignedByteArray>> entries =
+                    values.entrySet().iterator();
+            Map.Entry<Integer, UnsignedByteArray> next =
+                    entries.hasNext() ? entries.next() : null;
+            for (int document = 0;
+                 document < databaseDocumentsCount;
+                 document++) {
+                // Padding
+                if (next != null && next.getKey() == document) {
+                    block.add(next.getValue());
+                    next = entries.hasNext() ? entries.next() : null;
+                } else {
+                    block.add(empty);
+                }
+
+                if (block.size() == documentsPerBlock ||
+                    document == databaseDocumentsCount - 1) {
+                    blocks.add(compress(block, deflater));
+                    block.clear();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            deflater.end();
+        }
+
+        // Building the index
+        final OutputStreamWritable blockIndex =
+                new VariableLengthByteArrayIndexedList(blocks);
+
+        // Free memory
+        values = null;
+
+        return new SegmentWritable() {
+            @Override
+            public int getType() {
+                return V1DatabaseFormat.SegmentType
+                        .COMPRESSED_STORED_INDEX
+                        .getCode();
+            }
+
+            @NotNull
+            @Override
+            public byte[] getFieldName() {
+                return fieldName;
+            }
+
+            @Override
+            public long getSizeInBytes() {
+                return 4L + // Field name
+                       fieldName.length +
+                       4 + // Documents count
+                       4 + // Documents per block
+                       8 + // Blocks
+                       blockIndex.getSizeInBytes();
+            }
+
+            @Override
+            public void writeTo(
+                    @NotNull
+                    final OutputStream os) throws IOException {
+                os.write(Longs.toByteArray(getSizeInBytes()));
+
+                // Payload segment type
+                os.write(Ints.toByteArray(getType()));
+
+                // Field name
+                os.write(Ints.toByteArray(fieldName.length));
+                os.write(fieldName);
+
+                os.write(Ints.toByteArray(databaseDocumentsCount));
+                os.write(Ints.toByteArray(documentsPerBlock));
+
+                // Blocks
+                os.write(Longs.toByteArray(blockIndex.getSizeInBytes()));
+                blockIndex.writeTo(os);
+            }
+        };
+    }
+}
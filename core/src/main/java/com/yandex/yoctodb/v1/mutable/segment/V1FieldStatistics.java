@@ -0,0 +1,290 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.mutable.segment;
+
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+import com.yandex.yoctodb.util.OutputStreamWritableBuilder;
+import com.yandex.yoctodb.util.UnsignedByteArray;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Value distribution statistics of an indexed field.
+ *
+ * Doesn't collect anything by itself: the index segment of the field feeds
+ * it with posting counts of the values in ascending order while building
+ * its sorted postings (see {@link #add(ValuePostings.Sorted)}). Writes the
+ * most frequent values and equi-depth histogram over the sorted values.
+ *
+ * Only the heavy hitters and the histogram are kept, so the values may be
+ * streamed if the total postings count is known in advance.
+ *
+ * Format:
+ *
+ * <pre>
+ * {@code
+ * size (long)
+ * type (int)
+ * field name length (int)
+ * field name
+ * distinct values count (int)
+ * postings count (long)
+ * heavy hitters count (int)
+ *   value length (int)
+ *   value
+ *   postings (int)
+ *   ...
+ * buckets count (int)
+ *   upper bound length (int)
+ *   upper bound
+ *   postings (long)
+ *   distinct values (int)
+ *   ...
+ * }
+ * </pre>
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+public final class V1FieldStatistics
+        extends Freezable
+        implements OutputStreamWritableBuilder {
+    private static final int HEAVY_HITTERS = 16;
+    private static final int BUCKETS = 64;
+
+    @NotNull
+    private final byte[] fieldName;
+    private long postingsCount;
+    private long depth;
+
+    // Added values
+    private int distinctValuesCount = 0;
+    private long addedPostings = 0L;
+    @Nullable
+    private UnsignedByteArray last = null;
+
+    // Heavy hitters in descending order of postings
+    @NotNull
+    private final UnsignedByteArray[] heavyHitterValues =
+            new UnsignedByteArray[HEAVY_HITTERS];
+    @NotNull
+    private final int[] heavyHitterPostings = new int[HEAVY_HITTERS];
+    private int heavyHittersCount = 0;
+
+    // Equi-depth histogram
+    @NotNull
+    private final List<UnsignedByteArray> bucketBounds = new ArrayList<>();
+    @NotNull
+    private final List<Long> bucketPostings = new ArrayList<>();
+    @NotNull
+    private final List<Integer> bucketDistinctValues = new ArrayList<>();
+    private long postings = 0L;
+    private int distinct = 0;
+
+    public V1FieldStatistics(
+            @NotNull
+            final String fieldName) {
+        this(fieldName, -1L);
+    }
+
+    /**
+     * @param fieldName     field name
+     * @param postingsCount total postings of the values to be added or
+     *                      {@code -1} if they are added at once by
+     *                      {@link #add(ValuePostings.Sorted)}
+     */
+    public V1FieldStatistics(
+            @NotNull
+            final String fieldName,
+            final long postingsCount) {
+        this.fieldName = fieldName.getBytes();
+        if (postingsCount >= 0L) {
+            start(postingsCount);
+        }
+    }
+
+    private void start(final long postingsCount) {
+        assert this.depth == 0L : "Already started";
+
+        this.postingsCount = postingsCount;
+        this.depth = Math.max(1L, (postingsCount + BUCKETS - 1) / BUCKETS);
+    }
+
+    /**
+     * Adds the next value greater than the previously added ones
+     *
+     * @param value    value
+     * @param postings documents count of the value
+     */
+    void add(
+            @NotNull
+            final UnsignedByteArray value,
+            final int postings) {
+        assert postings > 0;
+        assert depth > 0L : "Postings count is unknown";
+        assert last == null || last.compareTo(value) < 0 :
+                "Values are not ascending";
+
+        checkNotFrozen();
+
+        last = value;
+        distinctValuesCount++;
+        addedPostings += postings;
+
+        // Insertion keeping the earlier values first among equals
+        if (heavyHittersCount < HEAVY_HITTERS ||
+            heavyHitterPostings[HEAVY_HITTERS - 1] < postings) {
+            int position = Math.min(heavyHittersCount, HEAVY_HITTERS - 1);
+            while (position > 0 &&
+                   heavyHitterPostings[position - 1] < postings) {
+                heavyHitterValues[position] = heavyHitterValues[position - 1];
+                heavyHitterPostings[position] =
+                        heavyHitterPostings[position - 1];
+                position--;
+            }
+            heavyHitterValues[position] = value;
+            heavyHitterPostings[position] = postings;
+            if (heavyHittersCount < HEAVY_HITTERS) {
+                heavyHittersCount++;
+            }
+        }
+
+        this.postings += postings;
+        distinct++;
+        if (this.postings >= depth) {
+            endBucket();
+        }
+    }
+
+    private void endBucket() {
+        assert last != null;
+
+        bucketBounds.add(last);
+        bucketPostings.add(postings);
+        bucketDistinctValues.add(distinct);
+        postings = 0L;
+        distinct = 0;
+    }
+
+    /**
+     * Adds all the sorted values of an index segment
+     */
+    void add(
+            @NotNull
+            final ValuePostings.Sorted sorted) {
+        long total = 0L;
+        for (int[] documents : sorted.postings) {
+            total += documents.length;
+        }
+        start(total);
+
+        for (int i = 0; i < sorted.values.size(); i++) {
+            add(sorted.values.get(i), sorted.postings.get(i).length);
+        }
+    }
+
+    @NotNull
+    @Override
+    public SegmentWritable buildWritable() {
+        checkNotFrozen();
+
+        freeze();
+
+        assert addedPostings == postingsCount : "Wrong postings count";
+
+        if (distinct > 0) {
+            endBucket();
+        }
+
+        final int distinctValuesCount = this.distinctValuesCount;
+        final long totalPostings = addedPostings;
+        final int heavyHittersCount = this.heavyHittersCount;
+
+        return new SegmentWritable() {
+            @Override
+            public int getType() {
+                return V1DatabaseFormat.SegmentType
+                        .FIELD_STATISTICS
+                        .getCode();
+            }
+
+            @NotNull
+            @Override
+            public byte[] getFieldName() {
+                return fieldName;
+            }
+
+            @Override
+            public long getSizeInBytes() {
+                long size = 4L + // Field name
+                            fieldName.length +
+                            4L + // Distinct values count
+                            8L + // Postings count
+                            4L; // Heavy hitters count
+                for (int i = 0; i < heavyHittersCount; i++) {
+                    size += 4L + heavyHitterValues[i].length() + 4L;
+                }
+
+                size += 4L; // Buckets count
+                for (UnsignedByteArray bound : bucketBounds) {
+                    size += 4L + bound.length() + 8L + 4L;
+                }
+
+                return size;
+            }
+
+            @Override
+            public void writeTo(
+                    @NotNull
+                    final OutputStream os) throws IOException {
+                os.write(Longs.toByteArray(getSizeInBytes()));
+
+                // Payload segment type
+                os.write(Ints.toByteArray(getType()));
+
+                // Field name
+                os.write(Ints.toByteArray(fieldName.length));
+                os.write(fieldName);
+
+                // Totals
+                os.write(Ints.toByteArray(distinctValuesCount));
+                os.write(Longs.toByteArray(totalPostings));
+
+                // Heavy hitters
+                os.write(Ints.toByteArray(heavyHittersCount));
+                for (int i = 0; i < heavyHittersCount; i++) {
+                    final UnsignedByteArray value = heavyHitterValues[i];
+                    os.write(Ints.toByteArray(value.length()));
+                    value.writeTo(os);
+                    os.write(Ints.toByteArray(heavyHitterPostings[i]));
+                }
+
+                // Histogram
+                os.write(Ints.toByteArray(bucketBounds.size()));
+                for (int i = 0; i < bucketBounds.size(); i++) {
+                    final UnsignedByteArray bound = bucketBounds.get(i);
+                    os.write(Ints.toByteArray(bound.length()));
+                    bound.writeTo(os);
+                    os.write(Longs.toByteArray(bucketPostings.get(i)));
+                    os.write(Ints.toByteArray(bucketDistinctValues.get(i)));
+                }
+            }
+        };
+    }
+}
@@ -10,7 +10,6 @@
 
 package com.yandex.yoctodb.v1.mutable.segment;
 
-import com.google.common.collect.TreeMultimap;
 import com.google.common.primitives.Ints;
 import com.google.common.primitives.Longs;
 import com.yandex.yoctodb.util.OutputStreamWritable;
@@ -22,6 +21,7 @@ import com.yandex.yoctodb.util.mutable.impl.VariableLengthByteArraySortedSet;
 import com.yandex.yoctodb.v1.V1DatabaseFormat;
 import net.jcip.annotations.NotThreadSafe;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.io.OutputStream;
@@ -38,17 +38,32 @@ public final class V1FilterableIndex
         implements IndexSegment {
     @NotNull
     private final byte[] fieldName;
-    private TreeMultimap<UnsignedByteArray, Integer> valueToDocuments =
-            TreeMultimap.create();
+    private ValuePostings valueToDocuments = new ValuePostings();
     private final boolean fixedLength;
     private int databaseDocumentsCount = -1;
+    @Nullable
+    private final V1FieldStatistics statistics;
 
     public V1FilterableIndex(
             @NotNull
             final String fieldName,
             final boolean fixedLength) {
+        this(fieldName, fixedLength, null);
+    }
+
+    /**
+     * @param statistics statistics to feed with the sorted values or
+     *                   {@code null}
+     */
+    public V1FilterableIndex(
+            @NotNull
+            final String fieldName,
+            final boolean fixedLength,
+            @Nullable
+            final V1FieldStatistics statistics) {
         this.fieldName = fieldName.getBytes();
         this.fixedLength = fixedLength;
+        this.statistics = statistics;
     }
 
     @NotNull
@@ -65,7 +80,7 @@ public final class V1FilterableIndex
         checkNotFrozen();
 
         for (UnsignedByteArray value : values) {
-            valueToDocuments.put(value, documentId);
+            valueToDocuments.add(value, documentId);
         }
 
         return this;
@@ -80,32 +95,50 @@ public final class V1FilterableIndex
 
     @NotNull
     @Override
-    public OutputStreamWritable buildWritable() {
+    public SegmentWritable buildWritable() {
         checkNotFrozen();
 
         freeze();
 
+        final ValuePostings.Sorted sorted = valueToDocuments.sort();
+        if (statistics != null) {
+            statistics.add(sorted);
+        }
+
         // Building the index
         final IndexToIndexMultiMap valueToDocumentsIndex =
                 IndexToIndexMultiMapFactory.buildIndexToIndexMultiMap(
-                        valueToDocuments.asMap().values(),
+                        sorted.postings,
                         databaseDocumentsCount);
 
         final OutputStreamWritable values;
         if (fixedLength) {
-            values =
-                    new FixedLengthByteArraySortedSet(
-                            valueToDocuments.keySet());
+            values = new FixedLengthByteArraySortedSet(sorted.values);
         } else {
-            values =
-                    new VariableLengthByteArraySortedSet(
-                            valueToDocuments.keySet());
+            values = new VariableLengthByteArraySortedSet(sorted.values);
         }
 
         // Free memory
         valueToDocuments = null;
 
-        return new OutputStreamWritable() {
+        return new SegmentWritable() {
+            @Override
+            public int getType() {
+                return fixedLength ?
+                        V1DatabaseFormat.SegmentType
+                                .FIXED_LENGTH_FILTER
+                                .getCode() :
+                        V1DatabaseFormat.SegmentType
+                                .VARIABLE_LENGTH_FILTER
+                                .getCode();
+            }
+
+            @NotNull
+            @Override
+            public byte[] getFieldName() {
+                return fieldName;
+            }
+
             @Override
             public long getSizeInBytes() {
                 return 4L + // Field name
@@ -123,17 +156,7 @@ public final class V1FilterableIndex
                 os.write(Longs.toByteArray(getSizeInBytes()));
 
                 // Payload segment type
-                os.write(
-                        Ints.toByteArray(
-                                fixedLength ?
-                                        V1DatabaseFormat.SegmentType
-                                                .FIXED_LENGTH_FILTER
-                                                .getCode() :
-                                        V1DatabaseFormat.SegmentType
-                                                .VARIABLE_LENGTH_FILTER
-                                                .getCode()
-                        )
-                );
+                os.write(Ints.toByteArray(getType()));
 
                 // Field name
                 os.write(Ints.toByteArray(fieldName.length));
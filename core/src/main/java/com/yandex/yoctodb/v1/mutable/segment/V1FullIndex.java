@@ -13,6 +13,7 @@ package com.yandex.yoctodb.v1.mutable.segment;
 import com.yandex.yoctodb.v1.V1DatabaseFormat;
 import net.jcip.annotations.NotThreadSafe;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Index supporting filtering and sorting by specific field
@@ -25,12 +26,25 @@ public final class V1FullIndex extends AbstractV1FullIndex {
             @NotNull
             final String fieldName,
             final boolean fixedLength) {
+        this(fieldName, fixedLength, null);
+    }
+
+    /**
+     * @param statistics statistics to feed with the sorted values or
+     *                   {@code null}
+     */
+    public V1FullIndex(
+            @NotNull
+            final String fieldName,
+            final boolean fixedLength,
+            @Nullable
+            final V1FieldStatistics statistics) {
         super(
                 fieldName,
                 fixedLength,
                 fixedLength ?
                         V1DatabaseFormat.SegmentType.FIXED_LENGTH_FULL_INDEX :
-                        V1DatabaseFormat.SegmentType.VARIABLE_LENGTH_FULL_INDEX);
-
+                        V1DatabaseFormat.SegmentType.VARIABLE_LENGTH_FULL_INDEX,
+                statistics);
     }
 }
@@ -0,0 +1,243 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.mutable.segment;
+
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+import com.yandex.yoctodb.util.OutputStreamWritable;
+import com.yandex.yoctodb.util.UnsignedByteArray;
+import com.yandex.yoctodb.util.mutable.IndexToIndexMultiMap;
+import com.yandex.yoctodb.util.mutable.impl.FixedLengthByteArraySortedSet;
+import com.yandex.yoctodb.util.mutable.impl.IndexToIndexMultiMapFactory;
+import com.yandex.yoctodb.util.mutable.impl.IntArrayList;
+import com.yandex.yoctodb.util.mutable.impl.VariableLengthByteArraySortedSet;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Index supporting filtering by specific field optimized for range
+ * conditions.
+ *
+ * Besides the documents of each value, the documents of buckets of
+ * {@code fanout} consecutive values are stored, then the documents of
+ * buckets of {@code fanout} consecutive buckets and so on until a level
+ * contains at most {@code fanout} buckets. So any range of values is
+ * covered by at most {@code 2 * fanout} postings from each level.
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+public final class V1RangeFilterableIndex
+        extends Freezable
+        implements IndexSegment {
+    public static final int DEFAULT_FANOUT = 16;
+
+    @NotNull
+    private final byte[] fieldName;
+    private ValuePostings valueToDocuments = new ValuePostings();
+    private final boolean fixedLength;
+    private final int fanout;
+    private int databaseDocumentsCount = -1;
+    @Nullable
+    private final V1FieldStatistics statistics;
+
+    public V1RangeFilterableIndex(
+            @NotNull
+            final String fieldName,
+            final boolean fixedLength) {
+        this(fieldName, fixedLength, DEFAULT_FANOUT);
+    }
+
+    public V1RangeFilterableIndex(
+            @NotNull
+            final String fieldName,
+            final boolean fixedLength,
+            final int fanout) {
+        this(fieldName, fixedLength, fanout, null);
+    }
+
+    /**
+     * @param statistics statistics to feed with the sorted values or
+     *                   {@code null}
+     */
+    public V1RangeFilterableIndex(
+            @NotNull
+            final String fieldName,
+            final boolean fixedLength,
+            final int fanout,
+            @Nullable
+            final V1FieldStatistics statistics) {
+        if (fanout < 2)
+            throw new IllegalArgumentException("Fanout is less than 2");
+
+        this.fieldName = fieldName.getBytes();
+        this.fixedLength = fixedLength;
+        this.fanout = fanout;
+        this.statistics = statistics;
+    }
+
+    @NotNull
+    @Override
+    public IndexSegment addDocument(
+            final int documentId,
+            @NotNull
+            final Collection<UnsignedByteArray> values) {
+        if (documentId < 0)
+            throw new IllegalArgumentException("Negative document ID");
+        if (values.isEmpty())
+            throw new IllegalArgumentException("No values");
+
+        checkNotFrozen();
+
+        for (UnsignedByteArray value : values) {
+            valueToDocuments.add(value, documentId);
+        }
+
+        return this;
+    }
+
+    @Override
+    public void setDatabaseDocumentsCount(final int documentsCount) {
+        assert documentsCount > 0;
+
+        this.databaseDocumentsCount = documentsCount;
+    }
+
+    /**
+     * Merges each {@code fanout} consecutive postings
+     */
+    @NotNull
+    private List<int[]> buckets(
+            @NotNull
+            final List<int[]> postings) {
+        final List<int[]> result =
+                new ArrayList<>((postings.size() + fanout - 1) / fanout);
+        for (int from = 0; from < postings.size(); from += fanout) {
+            final int to = Math.min(postings.size(), from + fanout);
+            final IntArrayList bucket = new IntArrayList();
+            for (int i = from; i < to; i++) {
+                for (int document : postings.get(i)) {
+                    bucket.add(document);
+                }
+            }
+            result.add(bucket.toSortedArray());
+        }
+
+        return result;
+    }
+
+    @NotNull
+    @Override
+    public SegmentWritable buildWritable() {
+        checkNotFrozen();
+
+        freeze();
+
+        assert databaseDocumentsCount > 0;
+
+        final ValuePostings.Sorted sorted = valueToDocuments.sort();
+        if (statistics != null) {
+            statistics.add(sorted);
+        }
+
+        // Building the levels from values to the top buckets
+        final List<IndexToIndexMultiMap> levels = new ArrayList<>();
+        List<int[]> postings = sorted.postings;
+        while (true) {
+            levels.add(
+                    IndexToIndexMultiMapFactory.buildIndexToIndexMultiMap(
+                            postings,
+                            databaseDocumentsCount));
+            if (postings.size() <= fanout) {
+                break;
+            }
+            postings = buckets(postings);
+        }
+
+        final OutputStreamWritable values;
+        if (fixedLength) {
+            values = new FixedLengthByteArraySortedSet(sorted.values);
+        } else {
+            values = new VariableLengthByteArraySortedSet(sorted.values);
+        }
+
+        // Free memory
+        valueToDocuments = null;
+
+        return new SegmentWritable() {
+            @Override
+            public int getType() {
+                return fixedLength ?
+                        V1DatabaseFormat.SegmentType
+                                .FIXED_LENGTH_RANGE_FILTER
+                                .getCode() :
+                        V1DatabaseFormat.SegmentType
+                                .VARIABLE_LENGTH_RANGE_FILTER
+                                .getCode();
+            }
+
+            @NotNull
+            @Override
+            public byte[] getFieldName() {
+                return fieldName;
+            }
+
+            @Override
+            public long getSizeInBytes() {
+                long size = 4L + // Field name
+                            fieldName.length +
+                            8 + // Values
+                            values.getSizeInBytes() +
+                            4 + // Fanout
+                            4; // Levels count
+                for (IndexToIndexMultiMap level : levels) {
+                    size += 8 + level.getSizeInBytes();
+                }
+
+                return size;
+            }
+
+            @Override
+            public void writeTo(
+                    @NotNull
+                    final OutputStream os) throws IOException {
+                os.write(Longs.toByteArray(getSizeInBytes()));
+
+                // Payload segment type
+                os.write(Ints.toByteArray(getType()));
+
+                // Field name
+                os.write(Ints.toByteArray(fieldName.length));
+                os.write(fieldName);
+
+                // Values
+                os.write(Longs.toByteArray(values.getSizeInBytes()));
+                values.writeTo(os);
+
+                // Levels
+                os.write(Ints.toByteArray(fanout));
+                os.write(Ints.toByteArray(levels.size()));
+                for (IndexToIndexMultiMap level : levels) {
+                    os.write(Longs.toByteArray(level.getSizeInBytes()));
+                    level.writeTo(os);
+                }
+            }
+        };
+    }
+}
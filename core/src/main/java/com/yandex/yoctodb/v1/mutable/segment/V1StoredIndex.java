@@ -59,7 +59,7 @@ public class V1StoredIndex
 
     @NotNull
     @Override
-    public OutputStreamWritable buildWritable() {
+    public SegmentWritable buildWritable() {
         checkNotFrozen();
 
         freeze();
@@ -95,7 +95,20 @@ public class V1StoredIndex
         // Free memory
         values = null;
 
-        return new OutputStreamWritable() {
+        return new SegmentWritable() {
+            @Override
+            public int getType() {
+                return V1DatabaseFormat.SegmentType
+                        .VARIABLE_LENGTH_STORED_INDEX
+                        .getCode();
+            }
+
+            @NotNull
+            @Override
+            public byte[] getFieldName() {
+                return fieldName;
+            }
+
             @Override
             public long getSizeInBytes() {
                 return 4L + // Field name
@@ -111,11 +124,7 @@ public class V1StoredIndex
                 os.write(Longs.toByteArray(getSizeInBytes()));
 
                 // Payload segment type
-                os.write(
-                        Ints.toByteArray(
-                                V1DatabaseFormat.SegmentType
-                                        .VARIABLE_LENGTH_STORED_INDEX
-                                        .getCode()));
+                os.write(Ints.toByteArray(getType()));
 
                 // Field name
                 os.write(Ints.toByteArray(fieldName.length));
@@ -0,0 +1,149 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.mutable.segment;
+
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+import com.yandex.yoctodb.util.TemporaryFiles;
+import com.yandex.yoctodb.util.UnsignedByteArray;
+import com.yandex.yoctodb.util.mutable.impl.SpoolingByteArrayList;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Streaming counterpart of {@link V1CompressedStoredIndex} keeping only the
+ * current block in the heap
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+public final class V1StreamingCompressedStoredIndex
+        extends AbstractV1StreamingStoredIndex {
+    private final int documentsPerBlock;
+    @NotNull
+    private final SpoolingByteArrayList blocks;
+    @NotNull
+    private final List<UnsignedByteArray> block;
+    @NotNull
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+    public V1StreamingCompressedStoredIndex(
+            @NotNull
+            final TemporaryFiles files,
+            @NotNull
+            final String fieldName,
+            final int documentsCount) throws IOException {
+        this(
+                files,
+                fieldName,
+                documentsCount,
+                V1CompressedStoredIndex.DEFAULT_DOCUMENTS_PER_BLOCK);
+    }
+
+    public V1StreamingCompressedStoredIndex(
+            @NotNull
+            final TemporaryFiles files,
+            @NotNull
+            final String fieldName,
+            final int documentsCount,
+            final int documentsPerBlock) throws IOException {
+        super(fieldName, documentsCount);
+
+        if (documentsPerBlock <= 0)
+            throw new IllegalArgumentException(
+                    "Non-positive documents per block");
+
+        this.documentsPerBlock = documentsPerBlock;
+        this.blocks = new SpoolingByteArrayList(files, false);
+        this.block = new ArrayList<>(documentsPerBlock);
+    }
+
+    @Override
+    void addValue(
+            @NotNull
+            final UnsignedByteArray value) throws IOException {
+        block.add(value);
+        if (block.size() == documentsPerBlock) {
+            endBlock();
+        }
+    }
+
+    private void endBlock() throws IOException {
+        blocks.add(V1CompressedStoredIndex.compress(block, deflater));
+        block.clear();
+    }
+
+    @NotNull
+    @Override
+    SegmentWritable build() throws IOException {
+        try {
+            if (!block.isEmpty()) {
+                endBlock();
+            }
+        } finally {
+            deflater.end();
+        }
+        blocks.finish();
+
+        return new SegmentWritable() {
+            @Override
+            public int getType() {
+                return V1DatabaseFormat.SegmentType
+                        .COMPRESSED_STORED_INDEX
+                        .getCode();
+            }
+
+            @NotNull
+            @Override
+            public byte[] getFieldName() {
+                return fieldName;
+            }
+
+            @Override
+            public long getSizeInBytes() {
+                return 4L + // Field name
+                       fieldName.length +
+                       4 + // Documents count
+                       4 + // Documents per block
+                       8 + // Blocks
+                       blocks.getSizeInBytes();
+            }
+
+            @Override
+            public void writeTo(
+                    @NotNull
+                    final OutputStream os) throws IOException {
+                os.write(Longs.toByteArray(getSizeInBytes()));
+
+                // Payload segment type
+                os.write(Ints.toByteArray(getType()));
+
+                // Field name
+                os.write(Ints.toByteArray(fieldName.length));
+                os.write(fieldName);
+
+                os.write(Ints.toByteArray(documentsCount));
+                os.write(Ints.toByteArray(documentsPerBlock));
+
+                // Blocks
+                os.write(Longs.toByteArray(blocks.getSizeInBytes()));
+                blocks.writeTo(os);
+            }
+        };
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.mutable.segment;
+
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+import com.yandex.yoctodb.util.TemporaryFiles;
+import com.yandex.yoctodb.util.mutable.impl.SpoolingByteArrayList;
+import com.yandex.yoctodb.util.mutable.impl.SpoolingIndexToIndexMultiMap;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streaming counterpart of {@link V1FilterableIndex}
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+public final class V1StreamingFilterableIndex
+        extends AbstractV1StreamingIndex {
+    @NotNull
+    private final SpoolingIndexToIndexMultiMap valueToDocuments;
+
+    /**
+     * @param statistics statistics to feed with the values or {@code null}
+     */
+    public V1StreamingFilterableIndex(
+            @NotNull
+            final TemporaryFiles files,
+            @NotNull
+            final String fieldName,
+            final boolean fixedLength,
+            final int documentsCount,
+            @Nullable
+            final V1FieldStatistics statistics) throws IOException {
+        super(files, fieldName, fixedLength, documentsCount, statistics);
+
+        this.valueToDocuments =
+                new SpoolingIndexToIndexMultiMap(files, documentsCount, false);
+    }
+
+    @Override
+    void addPosting(
+            final int rank,
+            final int document) throws IOException {
+        valueToDocuments.add(document);
+    }
+
+    @Override
+    void endPostings() throws IOException {
+        valueToDocuments.endSet();
+    }
+
+    @NotNull
+    @Override
+    SegmentWritable build(
+            @NotNull
+            final SpoolingByteArrayList values) throws IOException {
+        valueToDocuments.finish();
+
+        return new SegmentWritable() {
+            @Override
+            public int getType() {
+                return fixedLength ?
+                        V1DatabaseFormat.SegmentType
+                                .FIXED_LENGTH_FILTER
+                                .getCode() :
+                        V1DatabaseFormat.SegmentType
+                                .VARIABLE_LENGTH_FILTER
+                                .getCode();
+            }
+
+            @NotNull
+            @Override
+            public byte[] getFieldName() {
+                return fieldName;
+            }
+
+            @Override
+            public long getSizeInBytes() {
+                return 4L + // Field name
+                       fieldName.length +
+                       8 + // Values
+                       values.getSizeInBytes() +
+                       8 + // Value to documents
+                       valueToDocuments.getSizeInBytes();
+            }
+
+            @Override
+            public void writeTo(
+                    @NotNull
+                    final OutputStream os) throws IOException {
+                os.write(Longs.toByteArray(getSizeInBytes()));
+
+                // Payload segment type
+                os.write(Ints.toByteArray(getType()));
+
+                // Field name
+                os.write(Ints.toByteArray(fieldName.length));
+                os.write(fieldName);
+
+                // Values
+                os.write(Longs.toByteArray(values.getSizeInBytes()));
+                values.writeTo(os);
+
+                // Documents
+                os.write(
+                        Longs.toByteArray(
+                                valueToDocuments.getSizeInBytes()));
+                valueToDocuments.writeTo(os);
+            }
+        };
+    }
+}
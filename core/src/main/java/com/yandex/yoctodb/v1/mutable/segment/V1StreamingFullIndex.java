@@ -0,0 +1,160 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.mutable.segment;
+
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+import com.yandex.yoctodb.util.TemporaryFiles;
+import com.yandex.yoctodb.util.mutable.impl.SpoolingByteArrayList;
+import com.yandex.yoctodb.util.mutable.impl.SpoolingIndexToIndexMap;
+import com.yandex.yoctodb.util.mutable.impl.SpoolingIndexToIndexMultiMap;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streaming counterpart of {@link V1FullIndex} and {@link V1SortableIndex}.
+ *
+ * Value ranks of the documents are put to a memory-mapped temporary file as
+ * the values come.
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+public final class V1StreamingFullIndex extends AbstractV1StreamingIndex {
+    @NotNull
+    private final V1DatabaseFormat.SegmentType segmentType;
+    @NotNull
+    private final SpoolingIndexToIndexMultiMap valueToDocuments;
+    @NotNull
+    private final SpoolingIndexToIndexMap documentToValue;
+
+    /**
+     * @param full       whether the field is filterable besides sortable
+     * @param statistics statistics to feed with the values or {@code null}
+     */
+    public V1StreamingFullIndex(
+            @NotNull
+            final TemporaryFiles files,
+            @NotNull
+            final String fieldName,
+            final boolean fixedLength,
+            final int documentsCount,
+            final boolean full,
+            @Nullable
+            final V1FieldStatistics statistics) throws IOException {
+        super(files, fieldName, fixedLength, documentsCount, statistics);
+
+        if (full) {
+            this.segmentType =
+                    fixedLength ?
+                            V1DatabaseFormat.SegmentType
+                                    .FIXED_LENGTH_FULL_INDEX :
+                            V1DatabaseFormat.SegmentType
+                                    .VARIABLE_LENGTH_FULL_INDEX;
+        } else {
+            this.segmentType =
+                    fixedLength ?
+                            V1DatabaseFormat.SegmentType
+                                    .FIXED_LENGTH_SORTABLE_INDEX :
+                            V1DatabaseFormat.SegmentType
+                                    .VARIABLE_LENGTH_SORTABLE_INDEX;
+        }
+        this.valueToDocuments =
+                new SpoolingIndexToIndexMultiMap(files, documentsCount, true);
+        this.documentToValue =
+                new SpoolingIndexToIndexMap(files, documentsCount);
+    }
+
+    @Override
+    void addPosting(
+            final int rank,
+            final int document) throws IOException {
+        valueToDocuments.add(document);
+        documentToValue.put(document, rank);
+    }
+
+    @Override
+    void endPostings() throws IOException {
+        valueToDocuments.endSet();
+    }
+
+    @NotNull
+    @Override
+    SegmentWritable build(
+            @NotNull
+            final SpoolingByteArrayList values) throws IOException {
+        if (!documentToValue.isContinuous())
+            throw new IllegalArgumentException(
+                    "Not every document has a value");
+
+        valueToDocuments.finish();
+
+        return new SegmentWritable() {
+            @Override
+            public int getType() {
+                return segmentType.getCode();
+            }
+
+            @NotNull
+            @Override
+            public byte[] getFieldName() {
+                return fieldName;
+            }
+
+            @Override
+            public long getSizeInBytes() {
+                return 4L + // Field name
+                       fieldName.length +
+                       8 + // Values
+                       values.getSizeInBytes() +
+                       8 + // Value to documents
+                       valueToDocuments.getSizeInBytes() +
+                       8 + // Document to value
+                       documentToValue.getSizeInBytes();
+            }
+
+            @Override
+            public void writeTo(
+                    @NotNull
+                    final OutputStream os) throws IOException {
+                os.write(Longs.toByteArray(getSizeInBytes()));
+
+                // Payload segment type
+                os.write(Ints.toByteArray(getType()));
+
+                // Field name
+                os.write(Ints.toByteArray(fieldName.length));
+                os.write(fieldName);
+
+                // Values
+                os.write(Longs.toByteArray(values.getSizeInBytes()));
+                values.writeTo(os);
+
+                // Value to documents
+                os.write(
+                        Longs.toByteArray(
+                                valueToDocuments.getSizeInBytes()));
+                valueToDocuments.writeTo(os);
+
+                // Document to value
+                os.write(
+                        Longs.toByteArray(
+                                documentToValue.getSizeInBytes()));
+                documentToValue.writeTo(os);
+            }
+        };
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.mutable.segment;
+
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+import com.yandex.yoctodb.util.TemporaryFiles;
+import com.yandex.yoctodb.util.mutable.ArrayBitSet;
+import com.yandex.yoctodb.util.mutable.impl.LongArrayBitSet;
+import com.yandex.yoctodb.util.mutable.impl.SpoolingByteArrayList;
+import com.yandex.yoctodb.util.mutable.impl.SpoolingIndexToIndexMultiMap;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Streaming counterpart of {@link V1RangeFilterableIndex}.
+ *
+ * The postings of each value are appended to the first level. The current
+ * bucket of each upper level is accumulated in a bit set and appended to
+ * its level after {@code fanout} postings of the lower level, so the heap
+ * holds a bit set of {@code documentsCount} bits per upper level.
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+public final class V1StreamingRangeFilterableIndex
+        extends AbstractV1StreamingIndex {
+    // Enough for 2^31 values and fanout 2
+    private static final int MAX_LEVELS = 33;
+
+    @NotNull
+    private final TemporaryFiles files;
+    private final int fanout;
+    @NotNull
+    private final SpoolingIndexToIndexMultiMap[] levels =
+            new SpoolingIndexToIndexMultiMap[MAX_LEVELS];
+    // Postings count of each level
+    @NotNull
+    private final int[] counts = new int[MAX_LEVELS];
+    // Current bucket of each level besides the first one
+    @NotNull
+    private final ArrayBitSet[] buckets = new ArrayBitSet[MAX_LEVELS];
+    // Lower level postings merged into the current bucket of each level
+    @NotNull
+    private final int[] pending = new int[MAX_LEVELS];
+
+    /**
+     * @param statistics statistics to feed with the values or {@code null}
+     */
+    public V1StreamingRangeFilterableIndex(
+            @NotNull
+            final TemporaryFiles files,
+            @NotNull
+            final String fieldName,
+            final boolean fixedLength,
+            final int documentsCount,
+            final int fanout,
+            @Nullable
+            final V1FieldStatistics statistics) throws IOException {
+        super(files, fieldName, fixedLength, documentsCount, statistics);
+
+        if (fanout < 2)
+            throw new IllegalArgumentException("Fanout is less than 2");
+
+        this.files = files;
+        this.fanout = fanout;
+        this.levels[0] =
+                new SpoolingIndexToIndexMultiMap(files, documentsCount, false);
+    }
+
+    @NotNull
+    private ArrayBitSet bucket(final int level) {
+        if (buckets[level] == null) {
+            buckets[level] = LongArrayBitSet.zero(documentsCount);
+        }
+
+        return buckets[level];
+    }
+
+    @Override
+    void addPosting(
+            final int rank,
+            final int document) throws IOException {
+        levels[0].add(document);
+        bucket(1).set(document);
+    }
+
+    @Override
+    void endPostings() throws IOException {
+        levels[0].endSet();
+        ended(0);
+    }
+
+    /**
+     * Counts the completed postings of {@code level} and flushes the
+     * current bucket of the upper level if it is full
+     */
+    private void ended(final int level) throws IOException {
+        counts[level]++;
+
+        if (++pending[level + 1] == fanout) {
+            flush(level + 1);
+        }
+    }
+
+    /**
+     * Appends the current bucket of {@code level} to the level and merges it
+     * into the current bucket of the upper level
+     */
+    private void flush(final int level) throws IOException {
+        if (levels[level] == null) {
+            levels[level] =
+                    new SpoolingIndexToIndexMultiMap(
+                            files,
+                            documentsCount,
+                            false);
+        }
+
+        final SpoolingIndexToIndexMultiMap postings = levels[level];
+        final ArrayBitSet bucket = buckets[level];
+        final ArrayBitSet upper = bucket(level + 1);
+        for (int document = bucket.nextSetBit(0);
+             document >= 0;
+             document = bucket.nextSetBit(document + 1)) {
+            postings.add(document);
+            upper.set(document);
+        }
+        postings.endSet();
+        bucket.clear();
+        pending[level] = 0;
+
+        ended(level);
+    }
+
+    @NotNull
+    @Override
+    SegmentWritable build(
+            @NotNull
+            final SpoolingByteArrayList values) throws IOException {
+        // Flushing the partial buckets of the levels in use
+        int levelsCount = 1;
+        while (counts[levelsCount - 1] > fanout) {
+            if (pending[levelsCount] > 0) {
+                flush(levelsCount);
+            }
+            levelsCount++;
+        }
+
+        for (SpoolingIndexToIndexMultiMap level : this.levels) {
+            if (level != null) {
+                level.finish();
+            }
+        }
+
+        // Free memory
+        Arrays.fill(buckets, null);
+
+        final List<SpoolingIndexToIndexMultiMap> levels =
+                Arrays.asList(this.levels).subList(0, levelsCount);
+
+        return new SegmentWritable() {
+            @Override
+            public int getType() {
+                return fixedLength ?
+                        V1DatabaseFormat.SegmentType
+                                .FIXED_LENGTH_RANGE_FILTER
+                                .getCode() :
+                        V1DatabaseFormat.SegmentType
+                                .VARIABLE_LENGTH_RANGE_FILTER
+                                .getCode();
+            }
+
+            @NotNull
+            @Override
+            public byte[] getFieldName() {
+                return fieldName;
+            }
+
+            @Override
+            public long getSizeInBytes() {
+                long size = 4L + // Field name
+                            fieldName.length +
+                            8 + // Values
+                            values.getSizeInBytes() +
+                            4 + // Fanout
+                            4; // Levels count
+                for (SpoolingIndexToIndexMultiMap level : levels) {
+                    size += 8 + level.getSizeInBytes();
+                }
+
+                return size;
+            }
+
+            @Override
+            public void writeTo(
+                    @NotNull
+                    final OutputStream os) throws IOException {
+                os.write(Longs.toByteArray(getSizeInBytes()));
+
+                // Payload segment type
+                os.write(Ints.toByteArray(getType()));
+
+                // Field name
+                os.write(Ints.toByteArray(fieldName.length));
+                os.write(fieldName);
+
+                // Values
+                os.write(Longs.toByteArray(values.getSizeInBytes()));
+                values.writeTo(os);
+
+                // Levels
+                os.write(Ints.toByteArray(fanout));
+                os.write(Ints.toByteArray(levels.size()));
+                for (SpoolingIndexToIndexMultiMap level : levels) {
+                    os.write(Longs.toByteArray(level.getSizeInBytes()));
+                    level.writeTo(os);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.mutable.segment;
+
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+import com.yandex.yoctodb.util.TemporaryFiles;
+import com.yandex.yoctodb.util.UnsignedByteArray;
+import com.yandex.yoctodb.util.mutable.impl.SpoolingByteArrayList;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streaming counterpart of {@link V1StoredIndex}
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+public final class V1StreamingStoredIndex
+        extends AbstractV1StreamingStoredIndex {
+    @NotNull
+    private final SpoolingByteArrayList values;
+
+    public V1StreamingStoredIndex(
+            @NotNull
+            final TemporaryFiles files,
+            @NotNull
+            final String fieldName,
+            final int documentsCount) throws IOException {
+        super(fieldName, documentsCount);
+
+        this.values = new SpoolingByteArrayList(files, false);
+    }
+
+    @Override
+    void addValue(
+            @NotNull
+            final UnsignedByteArray value) throws IOException {
+        values.add(value);
+    }
+
+    @NotNull
+    @Override
+    SegmentWritable build() throws IOException {
+        values.finish();
+
+        return new SegmentWritable() {
+            @Override
+            public int getType() {
+                return V1DatabaseFormat.SegmentType
+                        .VARIABLE_LENGTH_STORED_INDEX
+                        .getCode();
+            }
+
+            @NotNull
+            @Override
+            public byte[] getFieldName() {
+                return fieldName;
+            }
+
+            @Override
+            public long getSizeInBytes() {
+                return 4L + // Field name
+                       fieldName.length +
+                       8 + // Values
+                       values.getSizeInBytes();
+            }
+
+            @Override
+            public void writeTo(
+                    @NotNull
+                    final OutputStream os) throws IOException {
+                os.write(Longs.toByteArray(getSizeInBytes()));
+
+                // Payload segment type
+                os.write(Ints.toByteArray(getType()));
+
+                // Field name
+                os.write(Ints.toByteArray(fieldName.length));
+                os.write(fieldName);
+
+                // Values
+                os.write(Longs.toByteArray(values.getSizeInBytes()));
+                values.writeTo(os);
+            }
+        };
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.mutable.segment;
+
+import com.yandex.yoctodb.util.UnsignedByteArray;
+import com.yandex.yoctodb.util.mutable.impl.IntArrayList;
+import net.jcip.annotations.NotThreadSafe;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Documents by field value accumulated in primitive postings.
+ *
+ * Values get ordinals in the order of appearance and are sorted only once
+ * by {@link #sort()}.
+ *
+ * @author incubos
+ */
+@NotThreadSafe
+final class ValuePostings {
+    @NotNull
+    private final Map<UnsignedByteArray, Integer> ordinals = new HashMap<>();
+    @NotNull
+    private final List<UnsignedByteArray> values = new ArrayList<>();
+    @NotNull
+    private final List<IntArrayList> postings = new ArrayList<>();
+
+    /**
+     * @return value ordinal
+     */
+    int add(
+            @NotNull
+            final UnsignedByteArray value,
+            final int document) {
+        Integer ordinal = ordinals.get(value);
+        if (ordinal == null) {
+            ordinal = values.size();
+            ordinals.put(value, ordinal);
+            values.add(value);
+            postings.add(new IntArrayList());
+        }
+
+        postings.get(ordinal).add(document);
+
+        return ordinal;
+    }
+
+    /**
+     * Sorts the values releasing the accumulated state
+     *
+     * @return sorted values with postings
+     */
+    @NotNull
+    Sorted sort() {
+        final int count = values.size();
+
+        final Integer[] byValue = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            byValue[i] = i;
+        }
+        Arrays.sort(
+                byValue,
+                new Comparator<Integer>() {
+                    @Override
+                    public int compare(
+                            final Integer left,
+                            final Integer right) {
+                        return values.get(left).compareTo(values.get(right));
+                    }
+                });
+
+        final List<UnsignedByteArray> sortedValues = new ArrayList<>(count);
+        final List<int[]> sortedPostings = new ArrayList<>(count);
+        final int[] ranks = new int[count];
+        for (int rank = 0; rank < count; rank++) {
+            final int ordinal = byValue[rank];
+            sortedValues.add(values.get(ordinal));
+            sortedPostings.add(postings.get(ordinal).toSortedArray());
+            postings.set(ordinal, null);
+            ranks[ordinal] = rank;
+        }
+
+        ordinals.clear();
+        values.clear();
+        postings.clear();
+
+        return new Sorted(sortedValues, sortedPostings, ranks);
+    }
+
+    /**
+     * Values in ascending order with their postings
+     */
+    static final class Sorted {
+        @NotNull
+        final List<UnsignedByteArray> values;
+        @NotNull
+        final List<int[]> postings;
+        // Value index by ordinal
+        @NotNull
+        final int[] ranks;
+
+        private Sorted(
+                @NotNull
+                final List<UnsignedByteArray> values,
+                @NotNull
+                final List<int[]> postings,
+                @NotNull
+                final int[] ranks) {
+            this.values = Collections.unmodifiableList(values);
+            this.postings = postings;
+            this.ranks = ranks;
+        }
+    }
+}
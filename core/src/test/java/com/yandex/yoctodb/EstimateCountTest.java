@@ -0,0 +1,152 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb;
+
+import com.yandex.yoctodb.immutable.Database;
+import com.yandex.yoctodb.immutable.IndexedDatabase;
+import com.yandex.yoctodb.mutable.DatabaseBuilder;
+import com.yandex.yoctodb.query.Query;
+import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.util.mutable.impl.AllocatingArrayBitSetPool;
+import com.yandex.yoctodb.v1.mutable.V1DatabaseBuilder;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static com.yandex.yoctodb.mutable.DocumentBuilder.IndexOption.FILTERABLE;
+import static com.yandex.yoctodb.mutable.DocumentBuilder.IndexOption.FULL;
+import static com.yandex.yoctodb.query.QueryBuilder.*;
+import static com.yandex.yoctodb.util.UnsignedByteArrays.from;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link Database#estimateCount(Query)}
+ *
+ * @author incubos
+ */
+public class EstimateCountTest {
+    private static final int DOCS = 1024;
+    private static final int CATEGORIES = 4;
+
+    private static IndexedDatabase build(
+            final boolean statistics) throws IOException {
+        final DatabaseBuilder builder = new V1DatabaseBuilder(statistics);
+        for (int i = 0; i < DOCS; i++) {
+            builder.merge(
+                    DatabaseFormat.getCurrent().newDocumentBuilder()
+                            .withField("id", i, FULL)
+                            .withField("category", i % CATEGORIES, FILTERABLE)
+                            .withPayload(new byte[]{(byte) i}));
+        }
+
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        builder.buildWritable().writeTo(os);
+
+        return DatabaseFormat.getCurrent().getDatabaseReader().from(
+                Buffer.from(os.toByteArray()));
+    }
+
+    private static void assertBound(
+            final Database db,
+            final Query query) {
+        final int count = db.count(query);
+        final int estimate = db.estimateCount(query);
+        assertTrue(count + " > " + estimate, count <= estimate);
+    }
+
+    @Test
+    public void all() throws IOException {
+        final Database db = build(true);
+        assertEquals(DOCS, db.estimateCount(select()));
+        assertEquals(DOCS - 24, db.estimateCount(select().skip(24)));
+        assertEquals(10, db.estimateCount(select().limit(10)));
+    }
+
+    @Test
+    public void exactForPostingLists() throws IOException {
+        final Database db = build(false);
+        assertEquals(1, db.estimateCount(select().where(eq("id", from(7)))));
+        assertEquals(
+                100,
+                db.estimateCount(select().where(lt("id", from(100)))));
+        // Bounded by the most selective clause
+        assertEquals(
+                150,
+                db.estimateCount(
+                        select().where(
+                                and(
+                                        gte("id", from(100)),
+                                        lt("id", from(150))))));
+        assertEquals(
+                0,
+                db.estimateCount(select().where(eq("id", from(DOCS)))));
+        assertEquals(
+                0,
+                db.estimateCount(select().where(eq("missing", from(1)))));
+    }
+
+    @Test
+    public void tightenedByStatistics() throws IOException {
+        final Query query = select().where(eq("category", from(1)));
+
+        final Database withStatistics = build(true);
+        assertEquals(DOCS / CATEGORIES, withStatistics.count(query));
+        assertEquals(DOCS / CATEGORIES, withStatistics.estimateCount(query));
+
+        assertBound(build(false), query);
+    }
+
+    @Test
+    public void bounds() throws IOException {
+        for (boolean statistics : new boolean[]{false, true}) {
+            final Database db = build(statistics);
+            assertBound(
+                    db,
+                    select().where(
+                            and(
+                                    eq("category", from(2)),
+                                    lt("id", from(100)))));
+            assertBound(
+                    db,
+                    select().where(
+                            or(
+                                    eq("category", from(2)),
+                                    gt("id", from(1000)))));
+            assertBound(
+                    db,
+                    select().where(not(eq("category", from(2)))));
+            assertBound(
+                    db,
+                    select().where(in("category", from(0), from(3))));
+        }
+    }
+
+    @Test
+    public void composite() throws IOException {
+        final Database db =
+                DatabaseFormat.getCurrent().getDatabaseReader().composite(
+                        asList(build(true), build(false)),
+                        AllocatingArrayBitSetPool.INSTANCE);
+
+        assertEquals(2 * DOCS, db.estimateCount(select()));
+        assertEquals(
+                2,
+                db.estimateCount(select().where(eq("id", from(7)))));
+        assertEquals(
+                2 * DOCS / CATEGORIES - 1,
+                db.estimateCount(
+                        select().where(lte("id", from(DOCS / CATEGORIES - 1)))
+                                .skip(1)));
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb;
+
+import com.yandex.yoctodb.immutable.Database;
+import com.yandex.yoctodb.immutable.DatabaseReader;
+import com.yandex.yoctodb.immutable.IndexedDatabase;
+import com.yandex.yoctodb.query.Query;
+import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.util.mutable.BitSet;
+import com.yandex.yoctodb.util.mutable.impl.AllocatingArrayBitSetPool;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.yandex.yoctodb.query.QueryBuilder.*;
+import static com.yandex.yoctodb.util.UnsignedByteArrays.from;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link Database#executeIds(Query, int[], int, int)} returns
+ * the same documents as {@link Database#execute}
+ *
+ * @author incubos
+ */
+public class ExecuteIdsTest {
+    private static final int PARTITIONS = 4;
+    private static final int DOCS = 50;
+    private static final DatabaseReader READER =
+            Partitions.FORMAT.getDatabaseReader();
+
+    private static ExecutorService executor;
+    private static List<Database> databases;
+
+    @BeforeClass
+    public static void beforeAll() throws IOException {
+        final List<IndexedDatabase> partitions =
+                Partitions.partitions(PARTITIONS, DOCS);
+
+        executor = Executors.newFixedThreadPool(2);
+        databases =
+                Arrays.asList(
+                        partitions.get(0),
+                        READER.composite(partitions),
+                        READER.composite(
+                                partitions,
+                                AllocatingArrayBitSetPool.INSTANCE,
+                                executor));
+    }
+
+    @AfterClass
+    public static void afterAll() {
+        executor.shutdown();
+    }
+
+    private static List<String> payloads(
+            final Database db,
+            final int[] ids,
+            final int from,
+            final int to) {
+        final List<String> results = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            final Buffer payload = db.getDocument(ids[i]);
+            final byte[] buf = new byte[(int) payload.remaining()];
+            payload.get(buf);
+            results.add(new String(buf));
+        }
+        return results;
+    }
+
+    private static void assertSame(final Query query) {
+        for (Database db : databases) {
+            final List<String> expected = new ArrayList<>();
+            db.execute(query, new StringProcessor(expected));
+
+            final int[] ids = new int[PARTITIONS * DOCS + 2];
+            final int count = db.executeIds(query, ids, 2, ids.length - 2);
+            assertEquals(expected, payloads(db, ids, 2, 2 + count));
+
+            // Limited by destination length
+            if (!expected.isEmpty()) {
+                final int length = (expected.size() + 1) / 2;
+                assertEquals(length, db.executeIds(query, ids, 0, length));
+                assertEquals(
+                        expected.subList(0, length),
+                        payloads(db, ids, 0, length));
+            }
+        }
+    }
+
+    @Test
+    public void all() {
+        assertSame(select());
+        assertSame(select().skip(DOCS + 1).limit(DOCS));
+    }
+
+    @Test
+    public void filter() {
+        assertSame(select().where(eq("mod", from(1))));
+        assertSame(select().where(eq("mod", from(42))));
+        assertSame(select().where(gte("id", from(DOCS / 2))).skip(7));
+        assertSame(select().where(eq("mod", from(2))).skip(10).limit(40));
+        assertSame(select().where(eq("mod", from(2))).skip(1000));
+    }
+
+    @Test
+    public void sort() {
+        assertSame(select().orderBy(asc("relevance")));
+        assertSame(
+                select().where(eq("mod", from(0)))
+                        .orderBy(desc("relevance"))
+                        .and(asc("id")));
+        assertSame(
+                select().orderBy(asc("relevance"))
+                        .and(desc("id"))
+                        .skip(5)
+                        .limit(20));
+
+        // Ties between partitions
+        assertSame(select().orderBy(desc("relevance")).limit(DOCS));
+        assertSame(
+                select().where(eq("mod", from(1)))
+                        .orderBy(desc("relevance"))
+                        .skip(DOCS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sortedIdsDatabasesMismatch() {
+        select().orderBy(asc("relevance"))
+                .sortedTopIds(
+                        Collections.<BitSet>emptyList(),
+                        Collections.<IndexedDatabase>emptyList(),
+                        new int[1],
+                        0,
+                        new int[1],
+                        0,
+                        1);
+    }
+
+    @Test
+    public void empty() {
+        for (Database db : databases) {
+            assertEquals(0, db.executeIds(select(), new int[0], 0, 0));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongLength() {
+        databases.get(0).executeIds(select(), new int[1], 0, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongCompositeOffset() {
+        databases.get(1).executeIds(select(), new int[1], -1, 1);
+    }
+}
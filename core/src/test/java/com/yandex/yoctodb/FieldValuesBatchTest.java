@@ -0,0 +1,153 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb;
+
+import com.yandex.yoctodb.immutable.Database;
+import com.yandex.yoctodb.immutable.DocumentProvider;
+import com.yandex.yoctodb.immutable.IndexedDatabase;
+import com.yandex.yoctodb.util.buf.Buffer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that {@link DocumentProvider#getFieldValues} returns the same
+ * values as {@link DocumentProvider#getFieldValue(int, String)}
+ *
+ * @author incubos
+ */
+public class FieldValuesBatchTest {
+    private static final int PARTITIONS = 3;
+    private static final int DOCS = 40;
+    private static final List<String> FIELDS =
+            Arrays.asList("name", "id", "relevance");
+
+    private static IndexedDatabase buildPartition() throws IOException {
+        return Partitions.partition(0, DOCS);
+    }
+
+    private static Database buildComposite() throws IOException {
+        return Partitions.FORMAT.getDatabaseReader().composite(
+                Partitions.partitions(PARTITIONS, DOCS));
+    }
+
+    private static int[] shuffledDocuments(final int count) {
+        final List<Integer> documents = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            documents.add(i);
+            // Duplicates
+            if (i % 5 == 0) {
+                documents.add(i);
+            }
+        }
+        Collections.shuffle(documents, new Random(42));
+
+        final int[] result = new int[documents.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = documents.get(i);
+        }
+        return result;
+    }
+
+    private static void assertBatch(
+            final DocumentProvider db,
+            final int[] documents,
+            final int offset,
+            final int length) {
+        final Buffer[] values = new Buffer[length * FIELDS.size()];
+        db.getFieldValues(documents, offset, length, FIELDS, values);
+
+        for (int i = 0; i < length; i++) {
+            for (int f = 0; f < FIELDS.size(); f++) {
+                assertEquals(
+                        db.getFieldValue(documents[offset + i], FIELDS.get(f)),
+                        values[i * FIELDS.size() + f]);
+            }
+        }
+    }
+
+    @Test
+    public void single() throws IOException {
+        final DocumentProvider db = buildPartition();
+        final int[] documents = shuffledDocuments(DOCS);
+
+        assertBatch(db, documents, 0, documents.length);
+        assertBatch(db, documents, 3, 10);
+        assertBatch(db, documents, 0, 0);
+    }
+
+    @Test
+    public void composite() throws IOException {
+        final Database db = buildComposite();
+        final int[] documents = shuffledDocuments(PARTITIONS * DOCS);
+
+        assertBatch(db, documents, 0, documents.length);
+        assertBatch(db, documents, 7, 20);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongLength() throws IOException {
+        buildPartition().getFieldValues(
+                new int[]{0, 1},
+                1,
+                2,
+                FIELDS,
+                new Buffer[6]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooSmallDestination() throws IOException {
+        buildComposite().getFieldValues(
+                new int[]{0, 1},
+                0,
+                2,
+                FIELDS,
+                new Buffer[5]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongDocument() throws IOException {
+        buildComposite().getFieldValues(
+                new int[]{PARTITIONS * DOCS},
+                0,
+                1,
+                FIELDS,
+                new Buffer[3]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongSingleDocument() throws IOException {
+        buildPartition().getFieldValues(
+                new int[]{0, DOCS},
+                0,
+                2,
+                FIELDS,
+                new Buffer[6]);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void notStored() throws IOException {
+        buildPartition().getFieldValues(
+                new int[]{0},
+                0,
+                1,
+                Collections.singletonList("unknown"),
+                new Buffer[1]);
+    }
+}
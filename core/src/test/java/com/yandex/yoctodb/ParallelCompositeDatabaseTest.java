@@ -0,0 +1,150 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb;
+
+import com.yandex.yoctodb.immutable.Database;
+import com.yandex.yoctodb.immutable.DatabaseReader;
+import com.yandex.yoctodb.immutable.IndexedDatabase;
+import com.yandex.yoctodb.query.DocumentProcessor;
+import com.yandex.yoctodb.query.Query;
+import com.yandex.yoctodb.util.mutable.impl.AllocatingArrayBitSetPool;
+import org.jetbrains.annotations.NotNull;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.yandex.yoctodb.query.QueryBuilder.*;
+import static com.yandex.yoctodb.util.UnsignedByteArrays.from;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that composite database filtering partitions concurrently returns
+ * the same results as the serial one
+ *
+ * @author incubos
+ */
+public class ParallelCompositeDatabaseTest {
+    private static final int PARTITIONS = 16;
+    private static final int DOCS = 64;
+    private static final DatabaseReader READER =
+            Partitions.FORMAT.getDatabaseReader();
+
+    private static ExecutorService executor;
+    private static Database serial;
+    private static Database parallel;
+
+    @BeforeClass
+    public static void beforeAll() throws IOException {
+        final List<IndexedDatabase> partitions =
+                Partitions.partitions(PARTITIONS, DOCS);
+
+        executor = Executors.newFixedThreadPool(4);
+        serial = READER.composite(partitions);
+        parallel =
+                READER.composite(
+                        partitions,
+                        AllocatingArrayBitSetPool.INSTANCE,
+                        executor);
+    }
+
+    @AfterClass
+    public static void afterAll() {
+        executor.shutdown();
+    }
+
+    private static List<String> execute(
+            final Database db,
+            final Query query) {
+        final List<String> results = new ArrayList<>();
+        db.execute(query, new StringProcessor(results));
+        return results;
+    }
+
+    private static void assertSame(final Query query) {
+        assertEquals(execute(serial, query), execute(parallel, query));
+        assertEquals(serial.count(query), parallel.count(query));
+
+        final List<String> serialResults = new ArrayList<>();
+        final List<String> parallelResults = new ArrayList<>();
+        assertEquals(
+                serial.executeAndUnlimitedCount(
+                        query,
+                        new StringProcessor(serialResults)),
+                parallel.executeAndUnlimitedCount(
+                        query,
+                        new StringProcessor(parallelResults)));
+        assertEquals(serialResults, parallelResults);
+    }
+
+    @Test
+    public void all() {
+        assertSame(select());
+        assertEquals(PARTITIONS * DOCS, parallel.count(select()));
+    }
+
+    @Test
+    public void filter() {
+        assertSame(select().where(eq("mod", from(3))));
+        assertSame(
+                select().where(
+                        or(
+                                eq("partition", from(1)),
+                                eq("partition", from(PARTITIONS - 1)))));
+        assertSame(select().where(eq("mod", from(42))));
+        assertSame(select().where(gte("id", from(PARTITIONS * DOCS / 2))));
+    }
+
+    @Test
+    public void filterSkipLimit() {
+        assertSame(select().where(eq("mod", from(3))).skip(10).limit(17));
+        assertSame(select().where(eq("mod", from(3))).skip(1000).limit(17));
+        assertSame(select().where(eq("mod", from(3))).limit(1));
+    }
+
+    @Test
+    public void sort() {
+        assertSame(select().orderBy(asc("relevance")));
+        assertSame(
+                select().where(eq("mod", from(5)))
+                        .orderBy(desc("relevance"))
+                        .and(asc("id")));
+        assertSame(
+                select().where(lt("id", from(PARTITIONS * DOCS / 3)))
+                        .orderBy(asc("relevance"))
+                        .and(desc("id"))
+                        .skip(5)
+                        .limit(20));
+    }
+
+    @Test
+    public void stop() {
+        final List<Integer> documents = new ArrayList<>();
+        parallel.execute(
+                select().where(eq("mod", from(1))),
+                new DocumentProcessor() {
+                    @Override
+                    public boolean process(
+                            final int document,
+                            @NotNull
+                            final Database database) {
+                        documents.add(document);
+                        return documents.size() < 3;
+                    }
+                });
+        assertEquals(3, documents.size());
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb;
+
+import com.yandex.yoctodb.immutable.IndexedDatabase;
+import com.yandex.yoctodb.mutable.DatabaseBuilder;
+import com.yandex.yoctodb.util.buf.Buffer;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.yandex.yoctodb.mutable.DocumentBuilder.IndexOption.*;
+
+/**
+ * Partitions of a composite database to be used in unit tests.
+ *
+ * Document {@code i} of partition {@code p} with {@code n} documents per
+ * partition gets {@code id = p * n + i} and the following fields:
+ * <ul>
+ * <li>{@code id} ({@code FULL})</li>
+ * <li>{@code mod} = {@code id % 7} ({@code FILTERABLE})</li>
+ * <li>{@code relevance} = {@code (id * 31) % 17} ({@code SORTABLE})</li>
+ * <li>{@code partition} = {@code p} ({@code FILTERABLE})</li>
+ * <li>{@code name} = {@code "document " + id} ({@code STORED})</li>
+ * </ul>
+ * and payload {@code "payload" + id}.
+ *
+ * @author incubos
+ */
+final class Partitions {
+    static final DatabaseFormat FORMAT = DatabaseFormat.getCurrent();
+
+    private Partitions() {
+    }
+
+    @NotNull
+    static IndexedDatabase partition(
+            final int partition,
+            final int documents) throws IOException {
+        final DatabaseBuilder builder = FORMAT.newDatabaseBuilder();
+
+        for (int i = 0; i < documents; i++) {
+            final int id = partition * documents + i;
+            builder.merge(
+                    FORMAT.newDocumentBuilder()
+                            .withField("id", id, FULL)
+                            .withField("mod", id % 7, FILTERABLE)
+                            .withField("relevance", (id * 31) % 17, SORTABLE)
+                            .withField("partition", partition, FILTERABLE)
+                            .withField("name", "document " + id, STORED)
+                            .withPayload(("payload" + id).getBytes()));
+        }
+
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        builder.buildWritable().writeTo(os);
+
+        return FORMAT.getDatabaseReader().from(
+                Buffer.from(os.toByteArray()));
+    }
+
+    @NotNull
+    static List<IndexedDatabase> partitions(
+            final int partitions,
+            final int documents) throws IOException {
+        final List<IndexedDatabase> result = new ArrayList<>(partitions);
+        for (int p = 0; p < partitions; p++) {
+            result.add(partition(p, documents));
+        }
+
+        return result;
+    }
+}
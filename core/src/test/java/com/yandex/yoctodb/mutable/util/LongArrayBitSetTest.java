@@ -10,10 +10,16 @@
 
 package com.yandex.yoctodb.mutable.util;
 
+import com.google.common.primitives.Longs;
+import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.util.mutable.ArrayBitSet;
 import com.yandex.yoctodb.util.mutable.BitSet;
 import com.yandex.yoctodb.util.mutable.impl.LongArrayBitSet;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
+import java.util.Random;
+
 import static org.junit.Assert.*;
 
 /**
@@ -44,6 +50,72 @@ public class LongArrayBitSetTest {
         }
     }
 
+    @Test
+    public void orRange() {
+        // Spanning several word blocks
+        final int size = 100_000;
+        final int count = 7;
+        final int longs = (size >>> 6) + 1;
+        final Random random = new Random(42);
+
+        final ArrayBitSet[] sources = new ArrayBitSet[count];
+        final ByteBuffer bytes =
+                ByteBuffer.allocate(Longs.BYTES * (1 + longs * count));
+        bytes.putLong(-1L);
+        for (int i = 0; i < count; i++) {
+            sources[i] = LongArrayBitSet.zero(size);
+            for (int j = 0; j < 100; j++) {
+                sources[i].set(random.nextInt(size));
+            }
+            for (long word : sources[i].toArray()) {
+                bytes.putLong(word);
+            }
+        }
+        bytes.flip();
+        final Buffer buffer = Buffer.from(bytes);
+
+        for (int from = 0; from < count; from++) {
+            for (int to = from; to <= count; to++) {
+                final BitSet expected = LongArrayBitSet.zero(size);
+                for (int i = from; i < to; i++) {
+                    expected.or(sources[i]);
+                }
+
+                final BitSet actual = LongArrayBitSet.zero(size);
+                assertEquals(
+                        !expected.isEmpty(),
+                        actual.orRange(
+                                buffer,
+                                Longs.BYTES * (1L + from * longs),
+                                longs,
+                                to - from));
+                assertEquals(expected.cardinality(), actual.cardinality());
+                for (int i = expected.nextSetBit(0);
+                     i >= 0;
+                     i = expected.nextSetBit(i + 1)) {
+                    assertTrue(actual.get(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void andNot() {
+        final Random random = new Random(42);
+        for (int i = 1; i < SIZE; i++) {
+            final ArrayBitSet bs1 = LongArrayBitSet.one(i);
+            final ArrayBitSet bs2 = LongArrayBitSet.zero(i);
+            final int bit = random.nextInt(i);
+            bs2.set(bit);
+            assertEquals(i > 1, bs1.andNot(bs2));
+            assertEquals(i - 1, bs1.cardinality());
+            assertFalse(bs1.get(bit));
+
+            assertFalse(bs1.andNot(LongArrayBitSet.one(i)));
+            assertTrue(bs1.isEmpty());
+        }
+    }
+
     @Test
     public void empty() {
         for (int i = 1; i < SIZE; i++) {
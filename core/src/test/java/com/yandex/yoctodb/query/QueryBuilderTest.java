@@ -10,11 +10,15 @@
 
 package com.yandex.yoctodb.query;
 
+import com.yandex.yoctodb.query.simple.SimpleAndCondition;
+import com.yandex.yoctodb.query.simple.SimpleNotCondition;
+import com.yandex.yoctodb.query.simple.SimpleOrCondition;
 import com.yandex.yoctodb.util.UnsignedByteArrays;
 import org.junit.Test;
 
 import static com.yandex.yoctodb.query.QueryBuilder.*;
 import static com.yandex.yoctodb.util.UnsignedByteArrays.from;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -106,6 +110,38 @@ public class QueryBuilderTest {
         assertTrue(stmt.toString().contains("age"));
     }
 
+    @Test
+    public void doubleNegation() {
+        final Condition c = eq("f", from(1));
+        assertTrue(not(c) instanceof SimpleNotCondition);
+        assertSame(c, not(not(c)));
+        assertTrue(not(not(not(c))) instanceof SimpleNotCondition);
+    }
+
+    @Test
+    public void deMorgan() {
+        final Condition x = eq("x", from(1));
+        final Condition y = eq("y", from(1));
+
+        final Condition nor = and(not(x), not(y));
+        assertTrue(nor instanceof SimpleNotCondition);
+        assertTrue(
+                ((SimpleNotCondition) nor).getDelegate()
+                        instanceof SimpleOrCondition);
+        assertTrue(not(nor) instanceof SimpleOrCondition);
+
+        final Condition nand = or(not(x), not(y));
+        assertTrue(nand instanceof SimpleNotCondition);
+        assertTrue(
+                ((SimpleNotCondition) nand).getDelegate()
+                        instanceof SimpleAndCondition);
+        assertTrue(not(nand) instanceof SimpleAndCondition);
+
+        // Mixed clauses are kept
+        assertTrue(and(x, not(y)) instanceof SimpleAndCondition);
+        assertTrue(or(x, not(y)) instanceof SimpleOrCondition);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void emptyValues() {
         in("f");
@@ -18,6 +18,7 @@ import com.yandex.yoctodb.util.mutable.impl.ReadOnlyZeroBitSet;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Test;
 
+import java.util.List;
 import java.util.NoSuchElementException;
 
 /**
@@ -49,6 +50,19 @@ public class IdScoredDocumentTest {
                     throw new IllegalStateException();
                 }
 
+                @Override
+                public void getFieldValues(
+                        @NotNull
+                        final int[] documents,
+                        final int offset,
+                        final int length,
+                        @NotNull
+                        final List<String> fieldNames,
+                        @NotNull
+                        final Buffer[] to) {
+                    throw new IllegalStateException();
+                }
+
                 @Override
                 public void execute(
                         @NotNull
@@ -67,12 +81,30 @@ public class IdScoredDocumentTest {
                     throw new IllegalStateException();
                 }
 
+                @Override
+                public int executeIds(
+                        @NotNull
+                        final Query query,
+                        @NotNull
+                        final int[] to,
+                        final int offset,
+                        final int length) {
+                    throw new IllegalStateException();
+                }
+
                 @Override
                 public int count(
                         @NotNull
                         final Query query) {
                     throw new IllegalStateException();
                 }
+
+                @Override
+                public int estimateCount(
+                        @NotNull
+                        final Query query) {
+                    throw new IllegalStateException();
+                }
             };
 
     @Test(expected = UnsupportedOperationException.class)
@@ -0,0 +1,295 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.query.simple;
+
+import com.yandex.yoctodb.immutable.FilterableIndex;
+import com.yandex.yoctodb.immutable.FilterableIndexProvider;
+import com.yandex.yoctodb.query.Condition;
+import com.yandex.yoctodb.util.UnsignedByteArrays;
+import com.yandex.yoctodb.util.mutable.ArrayBitSetPool;
+import com.yandex.yoctodb.util.mutable.BitSet;
+import com.yandex.yoctodb.util.mutable.impl.AllocatingArrayBitSetPool;
+import com.yandex.yoctodb.util.mutable.impl.LongArrayBitSet;
+import com.yandex.yoctodb.util.mutable.impl.RestrictedBitSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link SimpleAndCondition} clause planning
+ *
+ * @author incubos
+ */
+public class SimpleAndConditionTest {
+    private static final int DOCS = 16;
+
+    private static final FilterableIndexProvider NO_INDEXES =
+            new FilterableIndexProvider() {
+                @Nullable
+                @Override
+                public FilterableIndex getFilter(
+                        @NotNull
+                        final String fieldName) {
+                    return null;
+                }
+            };
+
+    private static class RecordingCondition implements Condition {
+        @NotNull
+        private final String name;
+        private final long estimate;
+        @NotNull
+        private final int[] documents;
+        @NotNull
+        private final List<String> log;
+
+        RecordingCondition(
+                @NotNull
+                final String name,
+                final long estimate,
+                @NotNull
+                final List<String> log,
+                @NotNull
+                final int... documents) {
+            this.name = name;
+            this.estimate = estimate;
+            this.documents = documents;
+            this.log = log;
+        }
+
+        @Override
+        public boolean set(
+                @NotNull
+                final FilterableIndexProvider indexProvider,
+                @NotNull
+                final BitSet to,
+                @NotNull
+                final ArrayBitSetPool bitSetPool) {
+            log.add(name);
+            for (int document : documents) {
+                to.set(document);
+            }
+            return documents.length > 0;
+        }
+
+        @Override
+        public long estimate(
+                @NotNull
+                final FilterableIndexProvider indexProvider) {
+            return estimate;
+        }
+    }
+
+    private static boolean set(
+            @NotNull
+            final Condition condition,
+            @NotNull
+            final BitSet to) {
+        return condition.set(
+                NO_INDEXES,
+                to,
+                AllocatingArrayBitSetPool.INSTANCE);
+    }
+
+    @Test
+    public void mostSelectiveFirst() {
+        final List<String> log = new ArrayList<>();
+        final Condition and =
+                new SimpleAndCondition(
+                        Arrays.<Condition>asList(
+                                new RecordingCondition("a", 10, log, 1, 2, 3),
+                                new RecordingCondition("b", 2, log, 2, 3),
+                                new RecordingCondition("c", 5, log, 3, 4, 5)));
+
+        final BitSet result = LongArrayBitSet.zero(DOCS);
+        assertTrue(set(and, result));
+        assertEquals(Arrays.asList("b", "c", "a"), log);
+        assertEquals(1, result.cardinality());
+        assertTrue(result.get(3));
+    }
+
+    @Test
+    public void stableOrder() {
+        final List<String> log = new ArrayList<>();
+        final Condition and =
+                new SimpleAndCondition(
+                        Arrays.<Condition>asList(
+                                new RecordingCondition("a", 3, log, 1),
+                                new RecordingCondition("b", 3, log, 1),
+                                new RecordingCondition("c", 3, log, 1)));
+
+        assertTrue(set(and, LongArrayBitSet.zero(DOCS)));
+        assertEquals(Arrays.asList("a", "b", "c"), log);
+    }
+
+    @Test
+    public void emptyIntersection() {
+        final List<String> log = new ArrayList<>();
+        final Condition and =
+                new SimpleAndCondition(
+                        Arrays.<Condition>asList(
+                                new RecordingCondition("a", 1, log, 1),
+                                new RecordingCondition("b", 2, log, 2),
+                                new RecordingCondition("c", 3, log, 3)));
+
+        final BitSet result = LongArrayBitSet.zero(DOCS);
+        assertFalse(set(and, result));
+        assertEquals(Arrays.asList("a", "b"), log);
+        assertEquals(0, result.cardinality());
+    }
+
+    @Test
+    public void zeroEstimate() {
+        final List<String> log = new ArrayList<>();
+        final Condition and =
+                new SimpleAndCondition(
+                        Arrays.<Condition>asList(
+                                new RecordingCondition("a", 10, log, 1),
+                                new RecordingCondition("b", 0, log)));
+
+        final BitSet result = LongArrayBitSet.zero(DOCS);
+        assertFalse(set(and, result));
+        assertEquals(Collections.<String>emptyList(), log);
+        assertEquals(0, result.cardinality());
+    }
+
+    @Test
+    public void negatedLast() {
+        final List<String> log = new ArrayList<>();
+        final Condition and =
+                new SimpleAndCondition(
+                        Arrays.<Condition>asList(
+                                new SimpleNotCondition(
+                                        new RecordingCondition("a", 1, log, 2)),
+                                new RecordingCondition("b", 10, log, 1, 2, 3),
+                                new SimpleNotCondition(
+                                        new RecordingCondition("c", 1, log)),
+                                new RecordingCondition("d", 5, log, 2, 3)));
+
+        final BitSet result = LongArrayBitSet.zero(DOCS);
+        assertTrue(set(and, result));
+        assertEquals(Arrays.asList("d", "b", "a", "c"), log);
+        assertEquals(1, result.cardinality());
+        assertTrue(result.get(3));
+    }
+
+    @Test
+    public void negatedEverything() {
+        final List<String> log = new ArrayList<>();
+        final Condition and =
+                new SimpleAndCondition(
+                        Arrays.<Condition>asList(
+                                new RecordingCondition("a", 3, log, 1, 2),
+                                new SimpleNotCondition(
+                                        new RecordingCondition("b", 1, log, 1)),
+                                new SimpleNotCondition(
+                                        new RecordingCondition("c", 1, log, 2))));
+
+        final BitSet result = LongArrayBitSet.zero(DOCS);
+        assertFalse(set(and, result));
+        assertEquals(Arrays.asList("a", "b", "c"), log);
+        assertTrue(result.isEmpty());
+    }
+
+    @Test
+    public void onlyNegated() {
+        final List<String> log = new ArrayList<>();
+        final Condition and =
+                new SimpleAndCondition(
+                        Arrays.<Condition>asList(
+                                new SimpleNotCondition(
+                                        new RecordingCondition("a", 1, log, 1)),
+                                new SimpleNotCondition(
+                                        new RecordingCondition("b", 1, log, 2))));
+
+        final BitSet result = LongArrayBitSet.zero(DOCS);
+        assertTrue(set(and, result));
+        assertEquals(Arrays.asList("a", "b"), log);
+        assertEquals(DOCS - 2, result.cardinality());
+        assertFalse(result.get(1));
+        assertFalse(result.get(2));
+    }
+
+    @Test
+    public void sparseCandidatesProbed() {
+        final List<String> log = new ArrayList<>();
+        final List<BitSet> destinations = new ArrayList<>();
+        final Condition everything =
+                new RecordingCondition(
+                        "everything",
+                        DOCS,
+                        log,
+                        0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15) {
+                    @Override
+                    public boolean set(
+                            @NotNull
+                            final FilterableIndexProvider indexProvider,
+                            @NotNull
+                            final BitSet to,
+                            @NotNull
+                            final ArrayBitSetPool bitSetPool) {
+                        destinations.add(to);
+                        return super.set(indexProvider, to, bitSetPool);
+                    }
+                };
+        final Condition and =
+                new SimpleAndCondition(
+                        Arrays.asList(
+                                everything,
+                                new RecordingCondition("single", 1, log, 7)));
+
+        final BitSet result = LongArrayBitSet.zero(DOCS);
+        assertTrue(set(and, result));
+        assertEquals(Arrays.asList("single", "everything"), log);
+        assertEquals(1, result.cardinality());
+        assertTrue(result.get(7));
+
+        // The broad clause is set only at the single candidate
+        assertEquals(1, destinations.size());
+        assertTrue(destinations.get(0) instanceof RestrictedBitSet);
+    }
+
+    @Test
+    public void estimate() {
+        final List<String> log = new ArrayList<>();
+        final Condition a = new RecordingCondition("a", 10, log, 1);
+        final Condition b = new RecordingCondition("b", 4, log, 1);
+        final Condition unknown = new SimpleNotCondition(a);
+
+        assertEquals(
+                4L,
+                new SimpleAndCondition(
+                        Arrays.asList(a, b, unknown)).estimate(NO_INDEXES));
+        assertEquals(
+                14L,
+                new SimpleOrCondition(
+                        Arrays.asList(a, b)).estimate(NO_INDEXES));
+        assertEquals(
+                Long.MAX_VALUE,
+                new SimpleOrCondition(
+                        Arrays.asList(a, unknown)).estimate(NO_INDEXES));
+        assertEquals(
+                0L,
+                new SimpleEqualityCondition(
+                        "missing",
+                        UnsignedByteArrays.from(1)).estimate(NO_INDEXES));
+        assertTrue(log.isEmpty());
+    }
+}
@@ -12,17 +12,31 @@ package com.yandex.yoctodb.query.simple;
 
 import com.yandex.yoctodb.DatabaseFormat;
 import com.yandex.yoctodb.mutable.DatabaseBuilder;
+import com.yandex.yoctodb.query.Order;
 import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.util.mutable.BitSet;
+import com.yandex.yoctodb.util.mutable.impl.AdaptiveBitSet;
+import com.yandex.yoctodb.util.mutable.impl.AllocatingArrayBitSetPool;
+import com.yandex.yoctodb.util.mutable.impl.LongArrayBitSet;
 import com.yandex.yoctodb.util.mutable.impl.ReadOnlyOneBitSet;
 import com.yandex.yoctodb.v1.immutable.V1Database;
 import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
 
 import static com.yandex.yoctodb.mutable.DocumentBuilder.IndexOption.FULL;
 import static com.yandex.yoctodb.query.QueryBuilder.asc;
+import static com.yandex.yoctodb.query.QueryBuilder.desc;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Unit tests for {@link com.yandex.yoctodb.query.simple.SortingScoredDocumentIterator}
@@ -65,4 +79,229 @@ public class SortingScoredDocumentIteratorTest {
 
         iterator.remove();
     }
+
+    @Test
+    public void limited() throws IOException {
+        final DatabaseBuilder dbBuilder = FORMAT.newDatabaseBuilder();
+
+        for (int i = 0; i < 100; i++) {
+            dbBuilder.merge(
+                    FORMAT.newDocumentBuilder()
+                            .withField("group", i % 3, FULL)
+                            .withField("score", (i * 7) % 10, FULL)
+                            .withPayload(("payload" + i).getBytes()));
+        }
+
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        dbBuilder.buildWritable().writeTo(os);
+
+        final V1Database db = (V1Database) DatabaseFormat.getCurrent()
+                .getDatabaseReader()
+                .from(Buffer.from(os.toByteArray()));
+
+        final List<Integer> unlimited = new ArrayList<>();
+        final SortingScoredDocumentIterator all =
+                new SortingScoredDocumentIterator(
+                        db,
+                        new ReadOnlyOneBitSet(db.getDocumentCount()),
+                        Arrays.asList(asc("group"), desc("score")));
+        while (all.hasNext()) {
+            unlimited.add(all.next().getDocument());
+        }
+        assertEquals(db.getDocumentCount(), unlimited.size());
+
+        for (int limit : new int[]{1, 5, 33, 34, 50, 100, 1000}) {
+            final List<Integer> limited = new ArrayList<>();
+            final SortingScoredDocumentIterator top =
+                    new SortingScoredDocumentIterator(
+                            db,
+                            new ReadOnlyOneBitSet(db.getDocumentCount()),
+                            Arrays.asList(asc("group"), desc("score")),
+                            limit);
+            while (top.hasNext()) {
+                limited.add(top.next().getDocument());
+            }
+            assertFalse(top.hasNext());
+
+            assertEquals(
+                    unlimited.subList(0, Math.min(limit, unlimited.size())),
+                    limited);
+        }
+    }
+
+    @Test
+    public void multipleKeys() throws IOException {
+        final int docs = 1000;
+        final Random random = new Random(42);
+        final int[][] fields = new int[docs][];
+        final DatabaseBuilder dbBuilder = FORMAT.newDatabaseBuilder();
+        for (int i = 0; i < docs; i++) {
+            fields[i] = new int[]{i % 2, random.nextInt(20), random.nextInt(5)};
+            dbBuilder.merge(
+                    FORMAT.newDocumentBuilder()
+                            .withField("a", fields[i][0], FULL)
+                            .withField("b", fields[i][1], FULL)
+                            .withField("c", fields[i][2], FULL)
+                            .withPayload(("payload" + i).getBytes()));
+        }
+
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        dbBuilder.buildWritable().writeTo(os);
+
+        final V1Database db = (V1Database) DatabaseFormat.getCurrent()
+                .getDatabaseReader()
+                .from(Buffer.from(os.toByteArray()));
+
+        // Reference order
+        final List<Integer> expected = new ArrayList<>(docs);
+        for (int i = 0; i < docs; i++) {
+            expected.add(i);
+        }
+        Collections.sort(
+                expected,
+                new Comparator<Integer>() {
+                    @Override
+                    public int compare(
+                            final Integer left,
+                            final Integer right) {
+                        final int[] l = fields[left];
+                        final int[] r = fields[right];
+                        if (l[0] != r[0]) {
+                            return Integer.compare(l[0], r[0]);
+                        }
+                        if (l[1] != r[1]) {
+                            return Integer.compare(r[1], l[1]);
+                        }
+                        if (l[2] != r[2]) {
+                            return Integer.compare(l[2], r[2]);
+                        }
+                        return Integer.compare(left, right);
+                    }
+                });
+
+        for (int limit : new int[]{1, 7, 100, 499, 500, 501, docs}) {
+            final List<Integer> actual = new ArrayList<>();
+            final SortingScoredDocumentIterator iterator =
+                    new SortingScoredDocumentIterator(
+                            db,
+                            new ReadOnlyOneBitSet(db.getDocumentCount()),
+                            Arrays.asList(asc("a"), desc("b"), asc("c")),
+                            limit);
+            while (iterator.hasNext()) {
+                actual.add(iterator.next().getDocument());
+            }
+
+            assertEquals(expected.subList(0, limit), actual);
+        }
+    }
+
+    @Test
+    public void scores() throws IOException {
+        final DatabaseBuilder dbBuilder = FORMAT.newDatabaseBuilder();
+        for (int i = 0; i < 10; i++) {
+            dbBuilder.merge(
+                    FORMAT.newDocumentBuilder()
+                            .withField("group", i % 2, FULL)
+                            .withField("score", i, FULL)
+                            .withPayload(("payload" + i).getBytes()));
+        }
+
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        dbBuilder.buildWritable().writeTo(os);
+
+        final V1Database db = (V1Database) DatabaseFormat.getCurrent()
+                .getDatabaseReader()
+                .from(Buffer.from(os.toByteArray()));
+
+        final List<Order> sorts = Arrays.asList(desc("group"), asc("score"));
+
+        // Scores of the same iterator are compared by sort value indexes
+        final List<SimpleScoredDocument> first = new ArrayList<>();
+        final SortingScoredDocumentIterator iterator =
+                new SortingScoredDocumentIterator(
+                        db,
+                        new ReadOnlyOneBitSet(db.getDocumentCount()),
+                        sorts);
+        while (iterator.hasNext()) {
+            first.add(iterator.next());
+        }
+
+        // Scores of different iterators are compared by sort values
+        final List<SimpleScoredDocument> second = new ArrayList<>();
+        final SortingScoredDocumentIterator other =
+                new SortingScoredDocumentIterator(
+                        db,
+                        new ReadOnlyOneBitSet(db.getDocumentCount()),
+                        sorts);
+        while (other.hasNext()) {
+            second.add(other.next());
+        }
+
+        for (int i = 0; i < first.size(); i++) {
+            for (int j = 0; j < first.size(); j++) {
+                final int expected = Integer.signum(Integer.compare(i, j));
+                assertEquals(
+                        expected,
+                        Integer.signum(first.get(i).compareTo(first.get(j))));
+                assertEquals(
+                        expected,
+                        Integer.signum(first.get(i).compareTo(second.get(j))));
+            }
+        }
+        assertTrue(first.get(0).getDocument() % 2 == 1);
+    }
+
+    private static List<Integer> sorted(
+            final V1Database db,
+            final BitSet docs,
+            final List<Order> sorts) {
+        final List<Integer> result = new ArrayList<>();
+        final SortingScoredDocumentIterator iterator =
+                new SortingScoredDocumentIterator(db, docs, sorts);
+        while (iterator.hasNext()) {
+            result.add(iterator.next().getDocument());
+        }
+        return result;
+    }
+
+    @Test
+    public void sparse() throws IOException {
+        final int docs = 1000;
+        final DatabaseBuilder dbBuilder = FORMAT.newDatabaseBuilder();
+        for (int i = 0; i < docs; i++) {
+            dbBuilder.merge(
+                    FORMAT.newDocumentBuilder()
+                            .withField("group", i % 3, FULL)
+                            .withField("score", (i * 7) % 10, FULL));
+        }
+
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        dbBuilder.buildWritable().writeTo(os);
+
+        final V1Database db = (V1Database) DatabaseFormat.getCurrent()
+                .getDatabaseReader()
+                .from(Buffer.from(os.toByteArray()));
+
+        final AdaptiveBitSet sparse =
+                new AdaptiveBitSet(
+                        docs,
+                        AllocatingArrayBitSetPool.INSTANCE);
+        final BitSet dense = LongArrayBitSet.zero(docs);
+        for (int i = 5; i < docs; i += 97) {
+            sparse.set(i);
+            dense.set(i);
+        }
+        assertTrue(sparse.isSparse());
+
+        for (List<Order> sorts :
+                Arrays.asList(
+                        Collections.singletonList(asc("score")),
+                        Collections.singletonList(desc("score")),
+                        Arrays.asList(asc("group"), desc("score")),
+                        Arrays.asList(desc("group"), asc("score")))) {
+            final List<Integer> expected = sorted(db, dense, sorts);
+            assertEquals(dense.cardinality(), expected.size());
+            assertEquals(expected, sorted(db, sparse, sorts));
+        }
+    }
 }
@@ -0,0 +1,141 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.util.buf;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link MultiByteBufferWrapper}
+ *
+ * @author incubos
+ */
+public class MultiByteBufferWrapperTest extends BufferTest {
+    private static final int CHUNK_SHIFT = 3;
+
+    @Override
+    protected Buffer bufferOf(final byte[] data) {
+        final int chunkSize = 1 << CHUNK_SHIFT;
+        final int count =
+                Math.max(1, (data.length + chunkSize - 1) / chunkSize);
+        final ByteBuffer[] chunks = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            final int from = i * chunkSize;
+            chunks[i] =
+                    ByteBuffer.wrap(
+                            data,
+                            from,
+                            Math.min(chunkSize, data.length - from));
+        }
+
+        return new MultiByteBufferWrapper(chunks, CHUNK_SHIFT);
+    }
+
+    private static byte[] sequence(final int size) {
+        final ByteBuffer result = ByteBuffer.allocate(size);
+        for (int i = 0; i < size; i++) {
+            result.put((byte) i);
+        }
+        return result.array();
+    }
+
+    @Test
+    public void straddlingReads() {
+        final byte[] data = sequence(64);
+        final ByteBuffer expected = ByteBuffer.wrap(data);
+        final Buffer buf = bufferOf(data);
+
+        for (int i = 0; i <= data.length - 8; i++) {
+            assertEquals(expected.getInt(i), buf.getInt(i));
+            assertEquals(expected.getLong(i), buf.getLong(i));
+        }
+
+        buf.position(5);
+        assertEquals(expected.getInt(5), buf.getInt());
+        assertEquals(expected.getLong(9), buf.getLong());
+        assertEquals(17, buf.position());
+    }
+
+    @Test
+    public void straddlingBulkRead() {
+        final byte[] data = sequence(64);
+        final Buffer buf = bufferOf(data).position(3);
+        final byte[] dst = new byte[30];
+
+        buf.get(dst, 5, 20);
+
+        final byte[] expected = new byte[30];
+        System.arraycopy(data, 3, expected, 5, 20);
+        assertArrayEquals(expected, dst);
+        assertEquals(23, buf.position());
+    }
+
+    @Test
+    public void slice() {
+        final byte[] data = sequence(64);
+        final Buffer slice = bufferOf(data).slice(6, 40).slice(3, 20);
+
+        assertEquals(20, slice.remaining());
+        assertEquals(data[9], slice.get(0));
+        assertEquals(ByteBuffer.wrap(data).getLong(13), slice.getLong(4));
+
+        final byte[] expected = new byte[20];
+        System.arraycopy(data, 9, expected, 0, 20);
+        assertArrayEquals(expected, slice.toByteArray());
+        assertEquals(Buffer.from(expected), slice.position(0));
+    }
+
+    @Test
+    public void mmap() throws IOException {
+        final byte[] data = sequence(1000);
+        final File file = File.createTempFile("multi", ".dat");
+        file.deleteOnExit();
+        try (FileOutputStream os = new FileOutputStream(file)) {
+            os.write(data);
+        }
+
+        final Buffer buf;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            try (FileChannel ch = raf.getChannel()) {
+                buf = MultiByteBufferWrapper.mmap(ch, CHUNK_SHIFT, true);
+            }
+        }
+
+        assertEquals(data.length, buf.remaining());
+        assertArrayEquals(data, buf.toByteArray());
+        assertEquals(
+                ByteBuffer.wrap(data).getLong(997 - 8),
+                buf.getLong(997 - 8));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongChunkSize() {
+        new MultiByteBufferWrapper(
+                new ByteBuffer[]{
+                        ByteBuffer.allocate(7),
+                        ByteBuffer.allocate(8)},
+                CHUNK_SHIFT);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noChunks() {
+        new MultiByteBufferWrapper(new ByteBuffer[0], CHUNK_SHIFT);
+    }
+}
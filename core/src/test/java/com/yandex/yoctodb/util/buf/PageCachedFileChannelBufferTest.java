@@ -0,0 +1,131 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.util.buf;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link PageCachedFileChannelBuffer}
+ *
+ * @author incubos
+ */
+public class PageCachedFileChannelBufferTest extends BufferTest {
+    private static final int PAGE_SHIFT = 3;
+
+    private static FileChannel channelOf(final byte[] data) {
+        try {
+            final File file =
+                    File.createTempFile("page_cached_buffer_test_", ".dat");
+            final Path path = file.toPath();
+            try (FileChannel channel = FileChannel.open(
+                    path,
+                    StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(data));
+            }
+
+            return FileChannel.open(
+                    path,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    protected Buffer bufferOf(final byte[] data) {
+        return Buffer.from(
+                new FileChannelPageCache(channelOf(data), PAGE_SHIFT, 4));
+    }
+
+    private static byte[] sequence(final int size) {
+        final byte[] result = new byte[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = (byte) i;
+        }
+        return result;
+    }
+
+    @Test
+    public void straddlingReads() {
+        final byte[] data = sequence(100);
+        final ByteBuffer expected = ByteBuffer.wrap(data);
+        final Buffer buf = bufferOf(data);
+
+        for (int i = 0; i <= data.length - 8; i++) {
+            assertEquals(expected.getInt(i), buf.getInt(i));
+            assertEquals(expected.getLong(i), buf.getLong(i));
+        }
+
+        final byte[] dst = new byte[50];
+        buf.position(3).get(dst, 10, 37);
+        final byte[] expectedDst = new byte[50];
+        System.arraycopy(data, 3, expectedDst, 10, 37);
+        assertArrayEquals(expectedDst, dst);
+        assertEquals(40, buf.position());
+    }
+
+    @Test
+    public void sharedSlices() {
+        final byte[] data = sequence(100);
+        final FileChannelPageCache cache =
+                new FileChannelPageCache(channelOf(data), PAGE_SHIFT, 4);
+        final Buffer buf = Buffer.from(cache);
+
+        final Buffer first = buf.slice(10, 20);
+        assertEquals(data[15], first.get(5));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        // The same page through another slice
+        final Buffer second = buf.slice(8, 50).slice(4, 10);
+        assertEquals(data[12], second.get(0));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        // Sequential reads use the last page
+        assertEquals(ByteBuffer.wrap(data).getInt(13), second.getInt(1));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void bounded() {
+        final byte[] data = sequence(1000);
+        final FileChannelPageCache cache =
+                new FileChannelPageCache(channelOf(data), PAGE_SHIFT, 4);
+        final Buffer buf = Buffer.from(cache);
+
+        assertArrayEquals(data, buf.toByteArray());
+        assertTrue(cache.getCachedPageCount() <= 4);
+        assertEquals((1000 + 7) / 8, cache.getMissCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongPageShift() {
+        new FileChannelPageCache(channelOf(new byte[1]), 2, 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongPageCount() {
+        new FileChannelPageCache(channelOf(new byte[1]), PAGE_SHIFT, 0);
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.util.immutable.impl;
+
+import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.util.immutable.IndexToIndexMultiMap;
+import com.yandex.yoctodb.util.mutable.BitSet;
+import com.yandex.yoctodb.util.mutable.impl.LongArrayBitSet;
+import com.yandex.yoctodb.util.mutable.impl.ReadOnlyOneBitSet;
+import com.yandex.yoctodb.util.mutable.impl.RestrictedBitSet;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link CompressedBitSetIndexToIndexMultiMap}
+ *
+ * @author incubos
+ */
+public class CompressedBitSetIndexToIndexMultiMapTest {
+    private static final int DOCS = 200000;
+
+    private static List<Collection<Integer>> sets() {
+        final List<Collection<Integer>> result = new ArrayList<>();
+
+        // Sparse set (array containers)
+        final List<Integer> sparse = new ArrayList<>();
+        for (int i = 0; i < DOCS; i += 997) {
+            sparse.add(i);
+        }
+        result.add(sparse);
+
+        // Dense set (bitmap containers)
+        final Random random = new Random(42);
+        final List<Integer> dense = new ArrayList<>();
+        for (int i = 0; i < DOCS; i++) {
+            if (random.nextBoolean()) {
+                dense.add(i);
+            }
+        }
+        result.add(dense);
+
+        // Ranges (run containers) crossing chunk boundaries
+        final List<Integer> runs = new ArrayList<>();
+        for (int i = 60000; i < 140000; i++) {
+            runs.add(i);
+        }
+        for (int i = DOCS - 100; i < DOCS; i++) {
+            runs.add(i);
+        }
+        result.add(runs);
+
+        // Single document
+        final List<Integer> single = new ArrayList<>();
+        single.add(DOCS - 1);
+        result.add(single);
+
+        return result;
+    }
+
+    private static IndexToIndexMultiMap build(
+            final List<Collection<Integer>> sets) throws IOException {
+        final com.yandex.yoctodb.util.mutable.IndexToIndexMultiMap mutable =
+                new com.yandex.yoctodb.util.mutable.impl.CompressedBitSetIndexToIndexMultiMap(
+                        sets,
+                        DOCS);
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        mutable.writeTo(baos);
+
+        assertEquals(mutable.getSizeInBytes(), baos.size());
+
+        final Buffer buf = Buffer.from(baos.toByteArray());
+
+        assertEquals(
+                V1DatabaseFormat.MultiMapType.COMPRESSED_BIT_SET_BASED.getCode(),
+                buf.getInt());
+
+        final IndexToIndexMultiMap result =
+                CompressedBitSetIndexToIndexMultiMap.from(buf);
+
+        assertEquals(sets.size(), result.getKeysCount());
+
+        return result;
+    }
+
+    private static void assertContains(
+            final BitSet dest,
+            final List<Collection<Integer>> sets,
+            final int fromInclusive,
+            final int toExclusive) {
+        final BitSet expected = LongArrayBitSet.zero(DOCS);
+        for (int i = fromInclusive; i < toExclusive; i++) {
+            for (int doc : sets.get(i)) {
+                expected.set(doc);
+            }
+        }
+
+        assertEquals(expected.cardinality(), dest.cardinality());
+        for (int i = expected.nextSetBit(0);
+             i >= 0;
+             i = expected.nextSetBit(i + 1)) {
+            assertTrue(dest.get(i));
+        }
+    }
+
+    @Test
+    public void get() throws IOException {
+        final List<Collection<Integer>> sets = sets();
+        final IndexToIndexMultiMap index = build(sets);
+
+        for (int key = 0; key < sets.size(); key++) {
+            final BitSet dest = LongArrayBitSet.zero(DOCS);
+            assertTrue(index.get(dest, key));
+            assertContains(dest, sets, key, key + 1);
+        }
+    }
+
+    @Test
+    public void getRanges() throws IOException {
+        final List<Collection<Integer>> sets = sets();
+        final IndexToIndexMultiMap index = build(sets);
+
+        final BitSet from = LongArrayBitSet.zero(DOCS);
+        assertTrue(index.getFrom(from, 2));
+        assertContains(from, sets, 2, sets.size());
+
+        final BitSet to = LongArrayBitSet.zero(DOCS);
+        assertTrue(index.getTo(to, 2));
+        assertContains(to, sets, 0, 2);
+
+        final BitSet between = LongArrayBitSet.zero(DOCS);
+        assertTrue(index.getBetween(between, 1, 3));
+        assertContains(between, sets, 1, 3);
+    }
+
+    @Test
+    public void compact() {
+        final List<Collection<Integer>> sets = sets();
+        final long compressed =
+                new com.yandex.yoctodb.util.mutable.impl.CompressedBitSetIndexToIndexMultiMap(
+                        sets,
+                        DOCS).getSizeInBytes();
+        final long bitSets =
+                new com.yandex.yoctodb.util.mutable.impl.BitSetIndexToIndexMultiMap(
+                        sets,
+                        DOCS).getSizeInBytes();
+
+        assertTrue(compressed < bitSets / 2);
+    }
+
+    @Test
+    public void string() throws IOException {
+        final IndexToIndexMultiMap index = build(sets());
+        assertTrue(index.toString().contains(Integer.toString(DOCS)));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void ascendingUnsupported() throws IOException {
+        build(sets()).ascending(new ReadOnlyOneBitSet(DOCS));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void descendingUnsupported() throws IOException {
+        build(sets()).descending(new ReadOnlyOneBitSet(DOCS));
+    }
+
+    @Test
+    public void estimate() throws IOException {
+        final List<Collection<Integer>> sets = sets();
+        final IndexToIndexMultiMap index = build(sets);
+
+        // Cardinalities are stored, so all the containers are exact
+        long total = 0L;
+        for (int key = 0; key < sets.size(); key++) {
+            assertEquals(
+                    sets.get(key).size(),
+                    index.estimateBetween(key, key + 1));
+            total += sets.get(key).size();
+        }
+        assertEquals(1L, index.estimateBetween(3, 4));
+        assertEquals(total, index.estimateBetween(0, sets.size()));
+        assertEquals(
+                sets.get(1).size() + sets.get(2).size(),
+                index.estimateBetween(1, 3));
+    }
+
+    @Test
+    public void restricted() throws IOException {
+        final List<Collection<Integer>> sets = sets();
+        final IndexToIndexMultiMap index = build(sets);
+
+        final BitSet candidates = LongArrayBitSet.zero(DOCS);
+        for (int i = 0; i < DOCS; i += 1001) {
+            candidates.set(i);
+        }
+
+        for (int key = 0; key < sets.size(); key++) {
+            final BitSet dest = LongArrayBitSet.zero(DOCS);
+            index.get(new RestrictedBitSet(candidates, dest), key);
+
+            int expected = 0;
+            for (int doc : sets.get(key)) {
+                if (candidates.get(doc)) {
+                    assertTrue(dest.get(doc));
+                    expected++;
+                }
+            }
+            assertEquals(expected, dest.cardinality());
+        }
+    }
+}
@@ -16,6 +16,7 @@ import com.yandex.yoctodb.util.immutable.IndexToIndexMultiMap;
 import com.yandex.yoctodb.util.immutable.IntToIntArray;
 import com.yandex.yoctodb.util.mutable.BitSet;
 import com.yandex.yoctodb.util.mutable.impl.LongArrayBitSet;
+import com.yandex.yoctodb.util.mutable.impl.RestrictedBitSet;
 import com.yandex.yoctodb.v1.V1DatabaseFormat;
 import org.junit.Test;
 
@@ -162,4 +163,45 @@ public class IntIndexToIndexMultiMapTest {
         assertTrue(iter.hasNext());
         iter.remove();
     }
+
+    @Test
+    public void estimate() throws IOException {
+        final IndexToIndexMultiMap index = build();
+        assertEquals(2L, index.estimateBetween(0, 1));
+        assertEquals(6L, index.estimateBetween(3, 6));
+        assertEquals(VALUES, index.estimateBetween(0, VALUES / 2));
+    }
+
+    @Test
+    public void restricted() throws IOException {
+        final IndexToIndexMultiMap index = build();
+
+        final BitSet candidates = LongArrayBitSet.zero(VALUES);
+        candidates.set(5);
+        candidates.set(40);
+        candidates.set(41);
+        candidates.set(100);
+
+        // Traversing short sets
+        final BitSet key = LongArrayBitSet.zero(VALUES);
+        assertTrue(index.get(new RestrictedBitSet(candidates, key), 20));
+        assertEquals(2, key.cardinality());
+        assertTrue(key.get(40));
+        assertTrue(key.get(41));
+
+        // Looking up the candidates in long sets
+        final BitSet from = LongArrayBitSet.zero(VALUES);
+        assertTrue(index.getFrom(new RestrictedBitSet(candidates, from), 30));
+        assertEquals(1, from.cardinality());
+        assertTrue(from.get(100));
+
+        final BitSet to = LongArrayBitSet.zero(VALUES);
+        assertTrue(index.getTo(new RestrictedBitSet(candidates, to), 40));
+        assertEquals(3, to.cardinality());
+        assertFalse(to.get(100));
+
+        final BitSet between = LongArrayBitSet.zero(VALUES);
+        index.getBetween(new RestrictedBitSet(candidates, between), 3, 20);
+        assertTrue(between.isEmpty());
+    }
 }
@@ -0,0 +1,254 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.util.immutable.impl;
+
+import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.util.immutable.IndexToIndexMultiMap;
+import com.yandex.yoctodb.util.immutable.IntToIntArray;
+import com.yandex.yoctodb.util.mutable.BitSet;
+import com.yandex.yoctodb.util.mutable.impl.LongArrayBitSet;
+import com.yandex.yoctodb.util.mutable.impl.ReadOnlyOneBitSet;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link PackedIntIndexToIndexMultiMap}
+ *
+ * @author incubos
+ */
+public class PackedIntIndexToIndexMultiMapTest {
+    private static final int DOCS = 100000;
+
+    private static List<Collection<Integer>> sets() {
+        final List<Collection<Integer>> result = new ArrayList<>();
+
+        // Consecutive documents (zero bit width)
+        final List<Integer> consecutive = new ArrayList<>();
+        for (int i = 1000; i < 1300; i++) {
+            consecutive.add(i);
+        }
+        result.add(consecutive);
+
+        // Random small gaps with rare huge ones (exceptions)
+        final Random random = new Random(42);
+        final List<Integer> gaps = new ArrayList<>();
+        int doc = 0;
+        while (true) {
+            doc += 1 + random.nextInt(8);
+            if (random.nextInt(50) == 0) {
+                doc += 5000;
+            }
+            if (doc >= DOCS) {
+                break;
+            }
+            gaps.add(doc);
+        }
+        result.add(gaps);
+
+        // The first and the last documents
+        result.add(Arrays.asList(0, DOCS - 1));
+
+        // Single document
+        result.add(Arrays.asList(DOCS / 2));
+
+        return result;
+    }
+
+    private static IndexToIndexMultiMap build(
+            final List<Collection<Integer>> sets) throws IOException {
+        final com.yandex.yoctodb.util.mutable.IndexToIndexMultiMap mutable =
+                new com.yandex.yoctodb.util.mutable.impl.PackedIntIndexToIndexMultiMap(
+                        sets);
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        mutable.writeTo(baos);
+
+        assertEquals(mutable.getSizeInBytes(), baos.size());
+
+        final Buffer buf = Buffer.from(baos.toByteArray());
+
+        assertEquals(
+                V1DatabaseFormat.MultiMapType.PACKED_LIST_BASED.getCode(),
+                buf.getInt());
+
+        final IndexToIndexMultiMap result =
+                PackedIntIndexToIndexMultiMap.from(buf);
+
+        assertEquals(sets.size(), result.getKeysCount());
+
+        return result;
+    }
+
+    private static void assertContains(
+            final BitSet dest,
+            final List<Collection<Integer>> sets,
+            final int fromInclusive,
+            final int toExclusive) {
+        int expected = 0;
+        for (int i = fromInclusive; i < toExclusive; i++) {
+            for (int doc : sets.get(i)) {
+                assertTrue(dest.get(doc));
+                expected++;
+            }
+        }
+
+        assertEquals(expected, dest.cardinality());
+    }
+
+    @Test
+    public void get() throws IOException {
+        final List<Collection<Integer>> sets = sets();
+        final IndexToIndexMultiMap index = build(sets);
+
+        for (int key = 0; key < sets.size(); key++) {
+            final BitSet dest = LongArrayBitSet.zero(DOCS);
+            assertTrue(index.get(dest, key));
+            assertContains(dest, sets, key, key + 1);
+        }
+    }
+
+    @Test
+    public void getRanges() throws IOException {
+        final List<Collection<Integer>> sets = sets();
+        final IndexToIndexMultiMap index = build(sets);
+
+        final BitSet from = LongArrayBitSet.zero(DOCS);
+        assertTrue(index.getFrom(from, 1));
+        assertContains(from, sets, 1, sets.size());
+
+        final BitSet to = LongArrayBitSet.zero(DOCS);
+        assertTrue(index.getTo(to, 3));
+        assertContains(to, sets, 0, 3);
+
+        final BitSet between = LongArrayBitSet.zero(DOCS);
+        assertTrue(index.getBetween(between, 1, 2));
+        assertContains(between, sets, 1, 2);
+    }
+
+    @Test
+    public void ascending() throws IOException {
+        final List<Collection<Integer>> sets = sets();
+        final IndexToIndexMultiMap index = build(sets);
+
+        final Iterator<IntToIntArray> iterator =
+                index.ascending(new ReadOnlyOneBitSet(DOCS));
+        for (int key = 0; key < sets.size(); key++) {
+            final IntToIntArray next = iterator.next();
+            assertEquals(key, next.getKey());
+            assertEquals(
+                    new ArrayList<>(sets.get(key)),
+                    toList(next));
+        }
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void interleaved() throws IOException {
+        final List<Collection<Integer>> sets = sets();
+        final IndexToIndexMultiMap index = build(sets);
+        final IndexToIndexMultiMap other = build(sets);
+
+        // Lookups between the steps share the decoder of the thread
+        final Iterator<IntToIntArray> iterator =
+                index.ascending(new ReadOnlyOneBitSet(DOCS));
+        for (int key = 0; key < sets.size(); key++) {
+            final BitSet dest = LongArrayBitSet.zero(DOCS);
+            assertTrue(other.getBetween(dest, 1, sets.size()));
+            assertContains(dest, sets, 1, sets.size());
+
+            final IntToIntArray next = iterator.next();
+            assertEquals(key, next.getKey());
+            assertEquals(
+                    new ArrayList<>(sets.get(key)),
+                    toList(next));
+        }
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void descendingFiltered() throws IOException {
+        final List<Collection<Integer>> sets = sets();
+        final IndexToIndexMultiMap index = build(sets);
+
+        // Only the documents of the second half
+        final BitSet filter = LongArrayBitSet.zero(DOCS);
+        for (int i = DOCS / 2; i < DOCS; i++) {
+            filter.set(i);
+        }
+
+        final List<Integer> keys = new ArrayList<>();
+        final Iterator<IntToIntArray> iterator = index.descending(filter);
+        while (iterator.hasNext()) {
+            final IntToIntArray next = iterator.next();
+            keys.add(next.getKey());
+            for (int doc : toList(next)) {
+                assertTrue(doc >= DOCS / 2);
+                assertTrue(sets.get(next.getKey()).contains(doc));
+            }
+        }
+
+        // The first set is filtered out completely
+        assertEquals(Arrays.asList(3, 2, 1), keys);
+    }
+
+    private static List<Integer> toList(final IntToIntArray array) {
+        final List<Integer> result = new ArrayList<>(array.getCount());
+        for (int i = 0; i < array.getCount(); i++) {
+            result.add(array.getValues()[i]);
+        }
+        return result;
+    }
+
+    @Test
+    public void compact() {
+        final List<Collection<Integer>> sets = sets();
+        final long packed =
+                new com.yandex.yoctodb.util.mutable.impl.PackedIntIndexToIndexMultiMap(
+                        sets).getSizeInBytes();
+        final long list =
+                new com.yandex.yoctodb.util.mutable.impl.IntIndexToIndexMultiMap(
+                        sets).getSizeInBytes();
+
+        assertTrue(packed < list / 4);
+    }
+
+    @Test
+    public void string() throws IOException {
+        final IndexToIndexMultiMap index = build(sets());
+        assertTrue(index.toString().contains(Integer.toString(4)));
+    }
+
+    @Test
+    public void estimate() throws IOException {
+        final List<Collection<Integer>> sets = sets();
+        final IndexToIndexMultiMap index = build(sets);
+
+        assertEquals(
+                sets.get(0).size(),
+                index.estimateBetween(0, 1));
+        assertEquals(
+                sets.get(1).size() + sets.get(2).size() + sets.get(3).size(),
+                index.estimateBetween(1, sets.size()));
+    }
+}
@@ -0,0 +1,296 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.util.mutable.impl;
+
+import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.util.mutable.ArrayBitSet;
+import com.yandex.yoctodb.util.mutable.ArrayBitSetPool;
+import com.yandex.yoctodb.util.mutable.BitSet;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link AdaptiveBitSet}
+ *
+ * @author incubos
+ */
+public class AdaptiveBitSetTest {
+    private static final int SIZE = 1000;
+    // Dense after 16 set bits
+    private static final int THRESHOLD = LongArrayBitSet.arraySize(SIZE);
+
+    private static final class CountingPool implements ArrayBitSetPool {
+        private int borrowed = 0;
+
+        @NotNull
+        @Override
+        public ArrayBitSet borrowSet(final int size) {
+            borrowed++;
+            return LongArrayBitSet.zero(size);
+        }
+
+        @Override
+        public void returnSet(
+                @NotNull
+                final ArrayBitSet set) {
+            borrowed--;
+        }
+    }
+
+    // Lends arrays longer than needed with garbage after the used words
+    private static final class StalePool implements ArrayBitSetPool {
+        @NotNull
+        @Override
+        public ArrayBitSet borrowSet(final int size) {
+            final long[] words = new long[LongArrayBitSet.arraySize(size) + 4];
+            Arrays.fill(words, ~0L);
+            return LongArrayBitSet.zero(size, words);
+        }
+
+        @Override
+        public void returnSet(
+                @NotNull
+                final ArrayBitSet set) {
+        }
+    }
+
+    private static AdaptiveBitSet adaptive(
+            final ArrayBitSetPool pool,
+            final java.util.BitSet bits) {
+        final AdaptiveBitSet result = new AdaptiveBitSet(SIZE, pool);
+        // In descending order to exercise insertion
+        for (int i = bits.length() - 1; i >= 0; i--) {
+            if (bits.get(i)) {
+                result.set(i);
+            }
+        }
+        return result;
+    }
+
+    private static java.util.BitSet random(
+            final Random random,
+            final int count) {
+        final java.util.BitSet result = new java.util.BitSet(SIZE);
+        for (int i = 0; i < count; i++) {
+            result.set(random.nextInt(SIZE));
+        }
+        return result;
+    }
+
+    private static void assertBits(
+            final java.util.BitSet expected,
+            final BitSet actual) {
+        assertEquals(SIZE, actual.getSize());
+        assertEquals(expected.cardinality(), actual.cardinality());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+        for (int i = 0; i < SIZE; i++) {
+            assertEquals(expected.get(i), actual.get(i));
+            assertEquals(expected.nextSetBit(i), actual.nextSetBit(i));
+        }
+        assertEquals(-1, actual.nextSetBit(SIZE));
+    }
+
+    @Test
+    public void sparse() {
+        final CountingPool pool = new CountingPool();
+        final java.util.BitSet expected = random(new Random(42), THRESHOLD);
+        final AdaptiveBitSet actual = adaptive(pool, expected);
+
+        assertTrue(actual.isSparse());
+        assertEquals(0, pool.borrowed);
+        assertBits(expected, actual);
+        assertTrue(actual.toString().contains("sparse=true"));
+
+        // Duplicate
+        actual.set(expected.nextSetBit(0));
+        assertTrue(actual.isSparse());
+        assertBits(expected, actual);
+    }
+
+    @Test
+    public void dense() {
+        final CountingPool pool = new CountingPool();
+        final java.util.BitSet expected = random(new Random(42), SIZE / 4);
+        final AdaptiveBitSet actual = adaptive(pool, expected);
+
+        assertFalse(actual.isSparse());
+        assertEquals(1, pool.borrowed);
+        assertBits(expected, actual);
+
+        actual.clear();
+        assertTrue(actual.isSparse());
+        assertEquals(0, pool.borrowed);
+        assertBits(new java.util.BitSet(), actual);
+    }
+
+    @Test
+    public void inverse() {
+        final CountingPool pool = new CountingPool();
+        final java.util.BitSet expected = random(new Random(42), 5);
+        final AdaptiveBitSet actual = adaptive(pool, expected);
+
+        expected.flip(0, SIZE);
+        assertTrue(actual.inverse());
+        assertFalse(actual.isSparse());
+        assertBits(expected, actual);
+
+        actual.release();
+        assertEquals(0, pool.borrowed);
+
+        actual.set();
+        expected.set(0, SIZE);
+        assertBits(expected, actual);
+        actual.release();
+    }
+
+    @Test
+    public void operations() {
+        final Random random = new Random(42);
+        final CountingPool pool = new CountingPool();
+        final int[] counts = {0, 3, THRESHOLD, SIZE / 2};
+        for (int left : counts) {
+            for (int right : counts) {
+                final java.util.BitSet l = random(random, left);
+                final java.util.BitSet r = random(random, right);
+
+                // Adaptive with adaptive
+                java.util.BitSet expected = (java.util.BitSet) l.clone();
+                expected.and(r);
+                AdaptiveBitSet actual = adaptive(pool, l);
+                AdaptiveBitSet other = adaptive(pool, r);
+                assertEquals(!expected.isEmpty(), actual.and(other));
+                assertBits(expected, actual);
+                actual.release();
+
+                expected = (java.util.BitSet) l.clone();
+                expected.or(r);
+                actual = adaptive(pool, l);
+                assertEquals(!expected.isEmpty(), actual.or(other));
+                assertBits(expected, actual);
+
+                // Dense with adaptive
+                final ArrayBitSet dense = LongArrayBitSet.zero(SIZE);
+                dense.or(actual);
+                assertBits(expected, dense);
+                dense.and(other);
+                assertBits(r, dense);
+                final AdaptiveBitSet difference = adaptive(pool, l);
+                dense.andNot(difference);
+                expected = (java.util.BitSet) r.clone();
+                expected.andNot(l);
+                assertBits(expected, dense);
+                dense.or(difference);
+                dense.and(other);
+                difference.release();
+                actual.release();
+
+                // Adaptive without adaptive
+                expected = (java.util.BitSet) l.clone();
+                expected.andNot(r);
+                actual = adaptive(pool, l);
+                assertEquals(!expected.isEmpty(), actual.andNot(other));
+                assertBits(expected, actual);
+                actual.release();
+                other.release();
+
+                // Adaptive with dense
+                expected = (java.util.BitSet) l.clone();
+                expected.and(r);
+                actual = adaptive(pool, l);
+                assertEquals(!expected.isEmpty(), actual.and(dense));
+                assertBits(expected, actual);
+                actual.release();
+
+                expected = (java.util.BitSet) l.clone();
+                expected.andNot(r);
+                actual = adaptive(pool, l);
+                assertEquals(!expected.isEmpty(), actual.andNot(dense));
+                assertBits(expected, actual);
+                actual.release();
+
+                assertEquals(0, pool.borrowed);
+            }
+        }
+    }
+
+    @Test
+    public void orBuffer() {
+        final CountingPool pool = new CountingPool();
+        final ArrayBitSet source = LongArrayBitSet.zero(SIZE);
+        source.set(7);
+        source.set(SIZE - 1);
+        final ByteBuffer bytes = ByteBuffer.allocate(16 * THRESHOLD);
+        for (int j = 0; j < 2; j++) {
+            for (long word : source.toArray()) {
+                bytes.putLong(word);
+            }
+        }
+        bytes.flip();
+
+        final java.util.BitSet expected = new java.util.BitSet(SIZE);
+        expected.set(3);
+        expected.set(7);
+        expected.set(SIZE - 1);
+
+        AdaptiveBitSet actual = new AdaptiveBitSet(SIZE, pool);
+        actual.set(3);
+        assertTrue(actual.or(Buffer.from(bytes), 0, THRESHOLD));
+        assertBits(expected, actual);
+        actual.release();
+
+        actual = new AdaptiveBitSet(SIZE, pool);
+        actual.set(3);
+        assertTrue(actual.orRange(Buffer.from(bytes), 0, THRESHOLD, 2));
+        assertBits(expected, actual);
+        actual.release();
+
+        assertEquals(0, pool.borrowed);
+    }
+
+    @Test
+    public void staleWords() {
+        final StalePool pool = new StalePool();
+
+        final ArrayBitSet array = pool.borrowSet(SIZE);
+        assertTrue(array.isEmpty());
+        assertFalse(array.or(new AdaptiveBitSet(SIZE, pool)));
+        assertTrue(array.isEmpty());
+
+        final java.util.BitSet expected = random(new Random(42), SIZE / 4);
+        final AdaptiveBitSet actual = adaptive(pool, expected);
+        assertFalse(actual.isSparse());
+        assertFalse(actual.andNot(adaptive(pool, expected)));
+        assertBits(new java.util.BitSet(), actual);
+        assertFalse(actual.or(new AdaptiveBitSet(SIZE, pool)));
+        assertBits(new java.util.BitSet(), actual);
+    }
+
+    @Test
+    public void andNotSparseStaleWords() {
+        final StalePool pool = new StalePool();
+
+        final ArrayBitSet array = pool.borrowSet(SIZE);
+        array.set(3);
+        final AdaptiveBitSet negated = new AdaptiveBitSet(SIZE, pool);
+        negated.set(3);
+        assertTrue(negated.isSparse());
+
+        // Everything is subtracted
+        assertFalse(array.andNot(negated));
+        assertBits(new java.util.BitSet(), array);
+    }
+}
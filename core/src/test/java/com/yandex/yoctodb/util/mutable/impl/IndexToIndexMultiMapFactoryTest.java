@@ -14,11 +14,17 @@ import com.google.common.collect.TreeMultimap;
 import com.yandex.yoctodb.util.mutable.IndexToIndexMultiMap;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -63,4 +69,71 @@ public class IndexToIndexMultiMapFactoryTest {
                         128);
         assertTrue(map instanceof BitSetIndexToIndexMultiMap);
     }
+
+    @Test
+    public void compressed() {
+        final int documents = 1 << 18;
+        final TreeMultimap<Integer, Integer> elements = TreeMultimap.create();
+        for (int i = 0; i < documents; i++) {
+            // Long runs of equal values
+            elements.put(i >>> 12, i);
+        }
+        final IndexToIndexMultiMap map =
+                IndexToIndexMultiMapFactory.buildIndexToIndexMultiMap(
+                        elements.asMap().values(),
+                        documents);
+        assertTrue(map instanceof CompressedBitSetIndexToIndexMultiMap);
+    }
+
+    private static long written(
+            final IndexToIndexMultiMap map) throws IOException {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        map.writeTo(os);
+        assertEquals(map.getSizeInBytes(), os.size());
+        return os.size();
+    }
+
+    @Test
+    public void sizesWithoutEncoding() throws IOException {
+        final Random random = new Random(42);
+        final int documents = 200_000;
+        // From sparse to dense with runs
+        for (int density : new int[]{1, 50, 2_000, 30_000, 190_000}) {
+            final List<int[]> map = new ArrayList<>();
+            for (int key = 0; key < 5; key++) {
+                final java.util.BitSet docs = new java.util.BitSet(documents);
+                for (int i = 0; i < density; i++) {
+                    final int start = random.nextInt(documents);
+                    docs.set(start, Math.min(documents, start + key + 1));
+                }
+                final int[] ids = new int[docs.cardinality()];
+                for (int i = 0, doc = docs.nextSetBit(0);
+                     doc >= 0;
+                     i++, doc = docs.nextSetBit(doc + 1)) {
+                    ids[i] = doc;
+                }
+                map.add(ids);
+            }
+
+            assertEquals(
+                    written(
+                            new CompressedBitSetIndexToIndexMultiMap(
+                                    map,
+                                    documents)),
+                    CompressedBitSetIndexToIndexMultiMap.sizeInBytes(
+                            map,
+                            documents));
+            assertEquals(
+                    written(new PackedIntIndexToIndexMultiMap(map)),
+                    PackedIntIndexToIndexMultiMap.sizeInBytes(map));
+            assertEquals(
+                    written(new IntIndexToIndexMultiMap(map)),
+                    IntIndexToIndexMultiMap.sizeInBytes(map));
+            assertEquals(
+                    written(new BitSetIndexToIndexMultiMap(map, documents)),
+                    BitSetIndexToIndexMultiMap.sizeInBytes(
+                            map.size(),
+                            documents));
+        }
+    }
 }
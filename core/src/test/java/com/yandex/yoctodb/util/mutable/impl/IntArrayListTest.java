@@ -0,0 +1,79 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.util.mutable.impl;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Unit tests for {@link IntArrayList}
+ *
+ * @author incubos
+ */
+public class IntArrayListTest {
+    @Test
+    public void grow() {
+        final IntArrayList list = new IntArrayList();
+        for (int i = 0; i < 1000; i++) {
+            list.add(i * 2);
+        }
+
+        assertEquals(1000, list.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i * 2, list.get(i));
+        }
+    }
+
+    @Test
+    public void sorted() {
+        final IntArrayList list = new IntArrayList();
+        list.add(1);
+        list.add(3);
+        list.add(5);
+
+        assertArrayEquals(new int[]{1, 3, 5}, list.toSortedArray());
+    }
+
+    @Test
+    public void unsortedWithDuplicates() {
+        final IntArrayList list = new IntArrayList();
+        for (int element : new int[]{5, 1, 3, 1, 5, 0}) {
+            list.add(element);
+        }
+
+        assertArrayEquals(new int[]{0, 1, 3, 5}, list.toSortedArray());
+        assertEquals(6, list.size());
+    }
+
+    @Test
+    public void empty() {
+        assertArrayEquals(new int[0], new IntArrayList().toSortedArray());
+    }
+
+    @Test
+    public void toSortedArrays() {
+        final List<int[]> arrays =
+                IntArrayList.toSortedArrays(
+                        Arrays.<Collection<Integer>>asList(
+                                Arrays.asList(2, 1, 2),
+                                Arrays.asList(7)));
+
+        assertEquals(2, arrays.size());
+        assertArrayEquals(new int[]{1, 2}, arrays.get(0));
+        assertArrayEquals(new int[]{7}, arrays.get(1));
+    }
+}
@@ -69,6 +69,11 @@ public class ReadOnlyOneBitSetTest {
         new ReadOnlyOneBitSet(1).and(LongArrayBitSet.one(1));
     }
 
+    @Test(expected = UnsupportedOperationException.class)
+    public void unsupportedAndNot() {
+        new ReadOnlyOneBitSet(1).andNot(LongArrayBitSet.zero(1));
+    }
+
     @Test(expected = UnsupportedOperationException.class)
     public void unsupportedOr() {
         new ReadOnlyOneBitSet(1).or(LongArrayBitSet.zero(1));
@@ -82,6 +87,15 @@ public class ReadOnlyOneBitSetTest {
                 1);
     }
 
+    @Test(expected = UnsupportedOperationException.class)
+    public void unsupportedOrRange() {
+        new ReadOnlyOneBitSet(1).orRange(
+                Buffer.from(new byte[]{0, 0, 0, 0, 0, 0, 0, 0}),
+                0,
+                1,
+                1);
+    }
+
     @Test
     public void nextSetBit() {
         final BitSet bs = new ReadOnlyOneBitSet(SIZE);
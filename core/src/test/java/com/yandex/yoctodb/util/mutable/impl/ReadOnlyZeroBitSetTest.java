@@ -77,6 +77,11 @@ public class ReadOnlyZeroBitSetTest {
         new ReadOnlyZeroBitSet(1).and(LongArrayBitSet.one(1));
     }
 
+    @Test(expected = UnsupportedOperationException.class)
+    public void unsupportedAndNot() {
+        new ReadOnlyZeroBitSet(1).andNot(LongArrayBitSet.zero(1));
+    }
+
     @Test(expected = UnsupportedOperationException.class)
     public void unsupportedOr() {
         new ReadOnlyZeroBitSet(1).or(LongArrayBitSet.zero(1));
@@ -90,6 +95,15 @@ public class ReadOnlyZeroBitSetTest {
                 1);
     }
 
+    @Test(expected = UnsupportedOperationException.class)
+    public void unsupportedOrRange() {
+        new ReadOnlyZeroBitSet(1).orRange(
+                Buffer.from(new byte[]{0, 0, 0, 0, 0, 0, 0, 0}),
+                0,
+                1,
+                1);
+    }
+
     @Test
     public void nextSetBit() {
         final BitSet bs = new ReadOnlyZeroBitSet(SIZE);
@@ -0,0 +1,192 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.util.mutable.impl;
+
+import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.util.mutable.BitSet;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link RestrictedBitSet}
+ *
+ * @author incubos
+ */
+public class RestrictedBitSetTest {
+    private static final int SIZE = 200;
+
+    private static BitSet candidates() {
+        final BitSet result = LongArrayBitSet.zero(SIZE);
+        result.set(1);
+        result.set(64);
+        result.set(130);
+        return result;
+    }
+
+    private static Buffer buffer(final BitSet... sets) {
+        final int words = LongArrayBitSet.arraySize(SIZE);
+        final ByteBuffer result = ByteBuffer.allocate(sets.length * words * 8);
+        for (BitSet set : sets) {
+            for (long word : ((LongArrayBitSet) set).toArray()) {
+                result.putLong(word);
+            }
+        }
+        result.flip();
+        return Buffer.from(result);
+    }
+
+    @Test
+    public void set() {
+        final BitSet dest = LongArrayBitSet.zero(SIZE);
+        final BitSet restricted = new RestrictedBitSet(candidates(), dest);
+
+        for (int i = 0; i < 100; i++) {
+            restricted.set(i);
+        }
+
+        assertEquals(2, restricted.cardinality());
+        assertTrue(restricted.get(1));
+        assertTrue(restricted.get(64));
+        assertFalse(restricted.get(2));
+        assertEquals(64, restricted.nextSetBit(2));
+        assertEquals(-1, restricted.nextSetBit(65));
+
+        restricted.clear();
+        assertTrue(dest.isEmpty());
+        assertTrue(restricted.isEmpty());
+    }
+
+    @Test
+    public void or() {
+        final BitSet dest = LongArrayBitSet.zero(SIZE);
+        final BitSet restricted = new RestrictedBitSet(candidates(), dest);
+
+        assertTrue(restricted.or(LongArrayBitSet.one(SIZE)));
+        assertEquals(3, dest.cardinality());
+
+        dest.clear();
+        final BitSet other = LongArrayBitSet.zero(SIZE);
+        other.set(2);
+        assertFalse(restricted.or(other));
+        assertTrue(dest.isEmpty());
+    }
+
+    @Test
+    public void orBuffer() {
+        final BitSet source = LongArrayBitSet.zero(SIZE);
+        source.set(0);
+        source.set(64);
+        source.set(199);
+
+        final BitSet dest = LongArrayBitSet.zero(SIZE);
+        final BitSet restricted = new RestrictedBitSet(candidates(), dest);
+        assertTrue(
+                restricted.or(
+                        buffer(source),
+                        0,
+                        LongArrayBitSet.arraySize(SIZE)));
+        assertEquals(1, dest.cardinality());
+        assertTrue(dest.get(64));
+    }
+
+    @Test
+    public void orRange() {
+        final BitSet first = LongArrayBitSet.zero(SIZE);
+        first.set(1);
+        first.set(2);
+        final BitSet second = LongArrayBitSet.zero(SIZE);
+        second.set(1);
+        second.set(130);
+        final BitSet third = LongArrayBitSet.zero(SIZE);
+        third.set(64);
+
+        final BitSet dest = LongArrayBitSet.zero(SIZE);
+        final BitSet restricted = new RestrictedBitSet(candidates(), dest);
+        final int words = LongArrayBitSet.arraySize(SIZE);
+
+        // Only the first two sets
+        assertTrue(
+                restricted.orRange(
+                        buffer(first, second, third),
+                        0,
+                        words,
+                        2));
+        assertEquals(2, dest.cardinality());
+        assertTrue(dest.get(1));
+        assertTrue(dest.get(130));
+
+        dest.clear();
+        assertFalse(
+                restricted.orRange(
+                        buffer(first, second, third),
+                        0,
+                        words,
+                        0));
+    }
+
+    @Test
+    public void adaptiveCandidates() {
+        final AdaptiveBitSet candidates =
+                new AdaptiveBitSet(SIZE, AllocatingArrayBitSetPool.INSTANCE);
+        candidates.set(5);
+        candidates.set(150);
+        final AdaptiveBitSet dest =
+                new AdaptiveBitSet(SIZE, AllocatingArrayBitSetPool.INSTANCE);
+
+        final BitSet restricted = new RestrictedBitSet(candidates, dest);
+        for (int i = 0; i < SIZE; i += 5) {
+            restricted.set(i);
+        }
+
+        assertTrue(dest.isSparse());
+        assertEquals(2, dest.cardinality());
+        assertTrue(candidates.and(dest));
+        assertEquals(2, candidates.cardinality());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sizeMismatch() {
+        new RestrictedBitSet(candidates(), LongArrayBitSet.zero(SIZE + 1));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void inverseUnsupported() {
+        new RestrictedBitSet(candidates(), LongArrayBitSet.zero(SIZE))
+                .inverse();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void setAllUnsupported() {
+        new RestrictedBitSet(candidates(), LongArrayBitSet.zero(SIZE)).set();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void andUnsupported() {
+        new RestrictedBitSet(candidates(), LongArrayBitSet.zero(SIZE))
+                .and(LongArrayBitSet.one(SIZE));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void andNotUnsupported() {
+        new RestrictedBitSet(candidates(), LongArrayBitSet.zero(SIZE))
+                .andNot(LongArrayBitSet.one(SIZE));
+    }
+
+    @Test
+    public void string() {
+        final BitSet restricted =
+                new RestrictedBitSet(candidates(), LongArrayBitSet.zero(SIZE));
+        assertTrue(restricted.toString().contains("RestrictedBitSet"));
+    }
+}
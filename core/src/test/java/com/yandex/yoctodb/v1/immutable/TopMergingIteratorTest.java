@@ -0,0 +1,158 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.immutable;
+
+import com.yandex.yoctodb.immutable.Database;
+import com.yandex.yoctodb.query.QueryBuilder;
+import com.yandex.yoctodb.query.ScoredDocument;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Unit tests for {@link TopMergingIterator}
+ *
+ * @author incubos
+ */
+public class TopMergingIteratorTest {
+    private static final class Document
+            implements ScoredDocument<Document> {
+        private final int score;
+        private final int document;
+
+        private Document(
+                final int score,
+                final int document) {
+            this.score = score;
+            this.document = document;
+        }
+
+        @NotNull
+        @Override
+        public Database getDatabase() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getDocument() {
+            return document;
+        }
+
+        @Override
+        public int compareTo(
+                @NotNull
+                final Document o) {
+            return Integer.compare(score, o.score);
+        }
+    }
+
+    private static Iterator<? extends ScoredDocument<?>> partition(
+            final int partition,
+            final int... scores) {
+        final List<Document> result = new ArrayList<>(scores.length);
+        for (int score : scores) {
+            result.add(new Document(score, partition));
+        }
+        return result.iterator();
+    }
+
+    private static List<Iterator<? extends ScoredDocument<?>>> partitions() {
+        final List<Iterator<? extends ScoredDocument<?>>> result =
+                new ArrayList<>();
+        result.add(partition(0, 1, 4, 4, 7));
+        result.add(partition(1));
+        result.add(partition(2, 0, 4, 9));
+        result.add(partition(3, 2, 3, 4));
+        return result;
+    }
+
+    private static List<Integer> scores(
+            final Iterator<ScoredDocument<?>> iterator) {
+        final List<Integer> result = new ArrayList<>();
+        while (iterator.hasNext()) {
+            result.add(((Document) iterator.next()).score);
+        }
+        return result;
+    }
+
+    @Test
+    public void merge() {
+        assertEquals(
+                Arrays.asList(0, 1, 2, 3, 4, 4, 4, 4, 7, 9),
+                scores(
+                        new TopMergingIterator(
+                                partitions(),
+                                Integer.MAX_VALUE)));
+    }
+
+    @Test
+    public void limit() {
+        assertEquals(
+                Arrays.asList(0, 1, 2, 3, 4),
+                scores(new TopMergingIterator(partitions(), 5)));
+    }
+
+    @Test
+    public void stableTies() {
+        final TopMergingIterator iterator =
+                new TopMergingIterator(partitions(), Integer.MAX_VALUE);
+        final List<Integer> partitions = new ArrayList<>();
+        while (iterator.hasNext()) {
+            final ScoredDocument<?> document = iterator.next();
+            if (((Document) document).score == 4) {
+                partitions.add(document.getDocument());
+            }
+        }
+
+        assertEquals(Arrays.asList(0, 0, 2, 3), partitions);
+    }
+
+    @Test
+    public void empty() {
+        assertFalse(
+                new TopMergingIterator(
+                        Collections.<Iterator<? extends ScoredDocument<?>>>emptyList(),
+                        1).hasNext());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void exhausted() {
+        final TopMergingIterator iterator =
+                new TopMergingIterator(partitions(), 1);
+        iterator.next();
+        iterator.next();
+    }
+
+    @Test
+    public void bound() {
+        assertEquals(
+                Integer.MAX_VALUE,
+                TopMergingIterator.bound(QueryBuilder.select().skip(10)));
+        assertEquals(
+                30,
+                TopMergingIterator.bound(
+                        QueryBuilder.select().skip(10).limit(20)));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void unsupportedRemove() {
+        new TopMergingIterator(partitions(), 1).remove();
+    }
+}
@@ -11,18 +11,31 @@
 package com.yandex.yoctodb.v1.immutable;
 
 import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
 import com.yandex.yoctodb.DatabaseFormat;
+import com.yandex.yoctodb.immutable.IndexedDatabase;
 import com.yandex.yoctodb.mutable.DatabaseBuilder;
 import com.yandex.yoctodb.mutable.DocumentBuilder;
+import com.yandex.yoctodb.query.Query;
 import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.util.mutable.impl.AllocatingArrayBitSetPool;
+import com.yandex.yoctodb.v1.immutable.segment.LazySegment;
 import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import static com.yandex.yoctodb.query.QueryBuilder.*;
+import static com.yandex.yoctodb.util.UnsignedByteArrays.from;
 import static com.yandex.yoctodb.v1.V1DatabaseFormat.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 /**
  * Unit tests for {@link V1DatabaseReader}
@@ -120,4 +133,248 @@ public class V1DatabaseReaderTest {
                         MAGIC.length + getDigestSizeInBytes() - 1);
         INSTANCE.from(Buffer.from(bytes));
     }
+
+    private static int[] ids(
+            final IndexedDatabase database,
+            final Query query) {
+        final int[] result = new int[database.getDocumentCount()];
+        return Arrays.copyOf(
+                result,
+                database.executeIds(query, result, 0, result.length));
+    }
+
+    @Test
+    public void lazy() throws IOException {
+        final byte[] bytes = buildDatabase();
+        final IndexedDatabase eager =
+                INSTANCE.from(
+                        Buffer.from(bytes),
+                        AllocatingArrayBitSetPool.INSTANCE,
+                        true,
+                        false);
+        final IndexedDatabase lazy =
+                INSTANCE.from(
+                        Buffer.from(bytes),
+                        AllocatingArrayBitSetPool.INSTANCE,
+                        true,
+                        true);
+
+        assertEquals(eager.getDocumentCount(), lazy.getDocumentCount());
+
+        final Query[] queries = {
+                select(),
+                select().where(eq("text", from("doc2"))),
+                select().where(gte("int", from(1))).orderBy(desc("int")),
+                select().orderBy(asc("text"))
+        };
+        for (Query query : queries) {
+            assertArrayEquals(ids(eager, query), ids(lazy, query));
+            assertEquals(eager.count(query), lazy.count(query));
+        }
+
+        for (int i = 0; i < eager.getDocumentCount(); i++) {
+            assertEquals(eager.getDocument(i), lazy.getDocument(i));
+            assertEquals(
+                    eager.getFieldValue(i, "int"),
+                    lazy.getFieldValue(i, "int"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unsupportedLazySegment() {
+        new LazySegment(-1, Buffer.from(new byte[0]));
+    }
+
+    private static final int TRAILER_SIZE = Longs.BYTES + 3 * Ints.BYTES;
+
+    private static int header() {
+        return MAGIC.length + 2 * Ints.BYTES;
+    }
+
+    private static int trailer(final byte[] bytes) {
+        return bytes.length - getDigestSizeInBytes() - TRAILER_SIZE;
+    }
+
+    private static int directoryOffset(final byte[] bytes) {
+        return (int) Buffer.from(bytes).getLong(trailer(bytes));
+    }
+
+    /**
+     * Converts the database to the format without the segment directory
+     */
+    private static byte[] withoutDirectory(final byte[] bytes)
+            throws NoSuchAlgorithmException {
+        final int header = header();
+        final int digest = getDigestSizeInBytes();
+        final int bodySize = directoryOffset(bytes);
+        final byte[] result = new byte[header + bodySize + digest];
+        System.arraycopy(bytes, 0, result, 0, header + bodySize);
+        final byte[] format = Ints.toByteArray(FORMAT_WITHOUT_DIRECTORY);
+        System.arraycopy(format, 0, result, MAGIC.length, format.length);
+
+        final MessageDigest md =
+                MessageDigest.getInstance(getMessageDigestAlgorithm());
+        md.update(result, header, bodySize);
+        System.arraycopy(md.digest(), 0, result, header + bodySize, digest);
+
+        return result;
+    }
+
+    @Test
+    public void formatWithoutDirectory() throws Exception {
+        final byte[] bytes = buildDatabase();
+        final IndexedDatabase current = INSTANCE.from(Buffer.from(bytes));
+        final byte[] previousBytes = withoutDirectory(bytes);
+        assertEquals(
+                FORMAT_WITHOUT_DIRECTORY,
+                Buffer.from(previousBytes).getInt(MAGIC.length));
+
+        for (boolean lazy : new boolean[]{false, true}) {
+            final IndexedDatabase previous =
+                    INSTANCE.from(
+                            Buffer.from(previousBytes),
+                            AllocatingArrayBitSetPool.INSTANCE,
+                            true,
+                            lazy);
+
+            final Query query =
+                    select().where(eq("text", from("doc2")))
+                            .orderBy(desc("int"));
+            assertArrayEquals(ids(current, query), ids(previous, query));
+            for (int i = 0; i < current.getDocumentCount(); i++) {
+                assertEquals(current.getDocument(i), previous.getDocument(i));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void corruptedDirectory() throws IOException {
+        final byte[] bytes = buildDatabase();
+        final byte[] offset = Longs.toByteArray(bytes.length);
+        System.arraycopy(offset, 0, bytes, trailer(bytes), offset.length);
+        INSTANCE.from(
+                Buffer.from(bytes),
+                AllocatingArrayBitSetPool.INSTANCE,
+                false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void corruptedDirectoryChecksum() throws IOException {
+        final byte[] bytes = buildDatabase();
+        // The first byte of the first directory entry
+        bytes[header() + directoryOffset(bytes)] ^= 1;
+        INSTANCE.from(Buffer.from(bytes));
+    }
+
+    /**
+     * @return the database with the last byte of the first segment flipped
+     */
+    private byte[] buildCorruptedDatabase() throws IOException {
+        final byte[] bytes = buildDatabase();
+        final Buffer entry =
+                Buffer.from(bytes).slice(
+                        header() + directoryOffset(bytes),
+                        2 * Longs.BYTES);
+        final long offset = entry.getLong();
+        final long size = entry.getLong();
+        bytes[(int) (header() + offset + size - 1)] ^= 1;
+        return bytes;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void corruptedSegment() throws IOException {
+        INSTANCE.from(Buffer.from(buildCorruptedDatabase()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void corruptedSegmentHeader() throws IOException {
+        final byte[] bytes = buildDatabase();
+        final long offset =
+                Buffer.from(bytes).getLong(header() + directoryOffset(bytes));
+        // The last byte of the type of the first segment isn't covered by
+        // segment checksums, but is covered by the digest
+        bytes[(int) (header() + offset - 1)] ^= 1;
+        INSTANCE.from(Buffer.from(bytes));
+    }
+
+    @Test
+    public void corruptedSegmentUnchecked() throws IOException {
+        INSTANCE.from(
+                Buffer.from(buildCorruptedDatabase()),
+                AllocatingArrayBitSetPool.INSTANCE,
+                false);
+    }
+
+    @Test
+    public void corruptedSegmentLazy() throws IOException {
+        final IndexedDatabase database =
+                INSTANCE.from(
+                        Buffer.from(buildCorruptedDatabase()),
+                        AllocatingArrayBitSetPool.INSTANCE,
+                        true,
+                        true);
+
+        // Verified on first use only
+        try {
+            for (int i = 0; i < database.getDocumentCount(); i++) {
+                database.getDocument(i);
+                database.getFieldValue(i, "int");
+                database.getFieldValue(i, "text");
+            }
+            database.count(select().where(eq("text", from("doc2"))));
+            database.count(select().where(eq("int", from(2))));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void concurrentVerification() throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final byte[] bytes = buildDatabase();
+            final Query query = select().orderBy(desc("text"));
+            assertArrayEquals(
+                    ids(INSTANCE.from(Buffer.from(bytes)), query),
+                    ids(
+                            INSTANCE.from(
+                                    Buffer.from(bytes),
+                                    AllocatingArrayBitSetPool.INSTANCE,
+                                    false,
+                                    executor),
+                            query));
+
+            try {
+                INSTANCE.from(
+                        Buffer.from(buildCorruptedDatabase()),
+                        AllocatingArrayBitSetPool.INSTANCE,
+                        true,
+                        executor);
+                fail();
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void crc32c() throws IOException {
+        final ChecksumType original = getSegmentChecksum();
+        final byte[] bytes;
+        try {
+            setSegmentChecksum(ChecksumType.CRC32C);
+            bytes = buildDatabase();
+        } finally {
+            setSegmentChecksum(original);
+        }
+
+        assertEquals(
+                ChecksumType.CRC32C.getCode(),
+                Buffer.from(bytes).getInt(
+                        trailer(bytes) + Longs.BYTES + Ints.BYTES));
+        assertEquals(2, INSTANCE.from(Buffer.from(bytes)).getDocumentCount());
+    }
 }
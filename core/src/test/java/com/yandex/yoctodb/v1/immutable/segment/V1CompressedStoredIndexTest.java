@@ -0,0 +1,170 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.immutable.segment;
+
+import com.yandex.yoctodb.DatabaseFormat;
+import com.yandex.yoctodb.immutable.IndexedDatabase;
+import com.yandex.yoctodb.immutable.StoredIndex;
+import com.yandex.yoctodb.mutable.DatabaseBuilder;
+import com.yandex.yoctodb.util.OutputStreamWritable;
+import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import com.yandex.yoctodb.v1.mutable.segment.IndexSegment;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+
+import static com.yandex.yoctodb.mutable.DocumentBuilder.IndexOption.FULL;
+import static com.yandex.yoctodb.mutable.DocumentBuilder.IndexOption.STORED;
+import static com.yandex.yoctodb.util.UnsignedByteArrays.from;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link V1CompressedStoredIndex}
+ *
+ * @author incubos
+ */
+public class V1CompressedStoredIndexTest {
+    private static final int DOCS = 100;
+
+    private static String value(final int document) {
+        return "value of document " + document;
+    }
+
+    private static byte[] write(
+            final OutputStreamWritable writable) throws IOException {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        writable.writeTo(os);
+        return os.toByteArray();
+    }
+
+    private static StoredIndex build(
+            final int documentsPerBlock) throws IOException {
+        final IndexSegment index =
+                new com.yandex.yoctodb.v1.mutable.segment.V1CompressedStoredIndex(
+                        "stored",
+                        documentsPerBlock);
+        // Every third document is missing
+        for (int i = 0; i < DOCS; i++) {
+            if (i % 3 != 0) {
+                index.addDocument(
+                        i,
+                        Collections.singletonList(from(value(i))));
+            }
+        }
+        index.setDatabaseDocumentsCount(DOCS);
+
+        final OutputStreamWritable writable = index.buildWritable();
+        final Buffer buffer = Buffer.from(write(writable));
+
+        // Payload size excludes size and type
+        assertEquals(writable.getSizeInBytes(), buffer.getLong());
+        final int type = buffer.getInt();
+        assertEquals(
+                V1DatabaseFormat.SegmentType.COMPRESSED_STORED_INDEX.getCode(),
+                type);
+
+        return (StoredIndex) SegmentRegistry.read(type, buffer.slice());
+    }
+
+    private static void assertValue(
+            final StoredIndex index,
+            final int document) {
+        final Buffer value = index.getStoredValue(document);
+        if (document % 3 == 0) {
+            // Padding
+            assertEquals(0L, value.remaining());
+        } else {
+            assertEquals(from(value(document)).toByteBuffer(), value);
+        }
+    }
+
+    private static void assertValues(final StoredIndex index) {
+        assertEquals("stored", index.getFieldName());
+        for (int i = 0; i < DOCS; i++) {
+            assertValue(index, i);
+        }
+    }
+
+    @Test
+    public void sequential() throws IOException {
+        final StoredIndex index = build(8);
+        assertValues(index);
+        // From cache
+        assertValues(index);
+        assertTrue(index.toString().contains("stored"));
+    }
+
+    @Test
+    public void random() throws IOException {
+        final StoredIndex index = build(3);
+        for (int i = 0; i < 10 * DOCS; i++) {
+            assertValue(index, (i * 37) % DOCS);
+        }
+    }
+
+    @Test
+    public void singleBlock() throws IOException {
+        assertValues(build(DOCS * 2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongBlockSize() {
+        new com.yandex.yoctodb.v1.mutable.segment.V1CompressedStoredIndex(
+                "stored",
+                0);
+    }
+
+    private static byte[] buildDatabase(
+            final boolean compressed) throws IOException {
+        final boolean original = V1DatabaseFormat.isStoredCompressionEnabled();
+        try {
+            V1DatabaseFormat.setStoredCompressionEnabled(compressed);
+            final DatabaseBuilder builder =
+                    DatabaseFormat.getCurrent().newDatabaseBuilder();
+            for (int i = 0; i < DOCS; i++) {
+                builder.merge(
+                        DatabaseFormat.getCurrent().newDocumentBuilder()
+                                .withField("id", i, FULL)
+                                .withField("stored", value(i), STORED));
+            }
+
+            return write(builder.buildWritable());
+        } finally {
+            V1DatabaseFormat.setStoredCompressionEnabled(original);
+        }
+    }
+
+    @Test
+    public void database() throws IOException {
+        final byte[] plain = buildDatabase(false);
+        final byte[] compressed = buildDatabase(true);
+        assertTrue(compressed.length < plain.length);
+
+        for (boolean lazy : new boolean[]{false, true}) {
+            final IndexedDatabase database =
+                    DatabaseFormat.getCurrent().getDatabaseReader().from(
+                            Buffer.from(compressed),
+                            com.yandex.yoctodb.util.mutable.impl
+                                    .AllocatingArrayBitSetPool.INSTANCE,
+                            true,
+                            lazy);
+            for (int i = 0; i < DOCS; i++) {
+                assertEquals(
+                        from(value(i)).toByteBuffer(),
+                        database.getFieldValue(i, "stored"));
+            }
+        }
+    }
+}
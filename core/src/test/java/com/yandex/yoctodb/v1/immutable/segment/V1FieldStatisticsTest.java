@@ -0,0 +1,169 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.immutable.segment;
+
+import com.yandex.yoctodb.DatabaseFormat;
+import com.yandex.yoctodb.immutable.FieldStatistics;
+import com.yandex.yoctodb.immutable.IndexedDatabase;
+import com.yandex.yoctodb.mutable.DatabaseBuilder;
+import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import com.yandex.yoctodb.v1.mutable.V1DatabaseBuilder;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static com.yandex.yoctodb.mutable.DocumentBuilder.IndexOption.FILTERABLE;
+import static com.yandex.yoctodb.mutable.DocumentBuilder.IndexOption.FULL;
+import static com.yandex.yoctodb.mutable.DocumentBuilder.IndexOption.STORED;
+import static com.yandex.yoctodb.util.UnsignedByteArrays.from;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link V1FieldStatistics}
+ *
+ * @author incubos
+ */
+public class V1FieldStatisticsTest {
+    private static final int DOCS = 1000;
+
+    private static IndexedDatabase build(
+            final boolean statistics) throws IOException {
+        final DatabaseBuilder builder = new V1DatabaseBuilder(statistics);
+        for (int i = 0; i < DOCS; i++) {
+            builder.merge(
+                    DatabaseFormat.getCurrent().newDocumentBuilder()
+                            .withField("uniform", i, FULL)
+                            .withField(
+                                    "skewed",
+                                    i % 2 == 0 ? 0 : i % 50,
+                                    FILTERABLE)
+                            .withField("stored", i, STORED)
+                            .withPayload(new byte[]{(byte) i}));
+        }
+
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        builder.buildWritable().writeTo(os);
+
+        return DatabaseFormat.getCurrent().getDatabaseReader().from(
+                Buffer.from(os.toByteArray()));
+    }
+
+    @Test
+    public void uniform() throws IOException {
+        final FieldStatistics stats = build(true).getStatistics("uniform");
+        assertNotNull(stats);
+        assertEquals("uniform", stats.getFieldName());
+        assertEquals(DOCS, stats.getDistinctValuesCount());
+        assertEquals(DOCS, stats.getPostingsCount());
+
+        long postings = 0L;
+        int distinct = 0;
+        for (int i = 0; i < stats.getBucketsCount(); i++) {
+            postings += stats.getBucketPostings(i);
+            distinct += stats.getBucketDistinctValues(i);
+        }
+        assertEquals(DOCS, postings);
+        assertEquals(DOCS, distinct);
+        assertEquals(
+                from(DOCS - 1).toByteBuffer(),
+                stats.getBucketUpperBound(stats.getBucketsCount() - 1));
+
+        assertEquals(1L, stats.estimateEq(from(5).toByteBuffer()));
+        assertEquals(0L, stats.estimateEq(from(DOCS).toByteBuffer()));
+
+        assertEquals(DOCS, stats.estimateBetween(null, false, null, false));
+        final long range =
+                stats.estimateBetween(
+                        from(100).toByteBuffer(),
+                        true,
+                        from(199).toByteBuffer(),
+                        true);
+        assertTrue(80 <= range && range <= 130);
+        assertEquals(
+                0L,
+                stats.estimateBetween(
+                        from(DOCS).toByteBuffer(),
+                        true,
+                        null,
+                        false));
+    }
+
+    @Test
+    public void skewed() throws IOException {
+        final FieldStatistics stats = build(true).getStatistics("skewed");
+        assertNotNull(stats);
+        assertEquals(26, stats.getDistinctValuesCount());
+        assertEquals(DOCS, stats.getPostingsCount());
+
+        assertEquals(16, stats.getHeavyHittersCount());
+        assertEquals(from(0).toByteBuffer(), stats.getHeavyHitter(0));
+        assertEquals(DOCS / 2, stats.getHeavyHitterPostings(0));
+        for (int i = 1; i < stats.getHeavyHittersCount(); i++) {
+            assertEquals(DOCS / 50, stats.getHeavyHitterPostings(i));
+        }
+
+        assertEquals(DOCS / 2, stats.estimateEq(from(0).toByteBuffer()));
+        assertEquals(DOCS / 50, stats.estimateEq(from(49).toByteBuffer()));
+        assertEquals(
+                DOCS / 2,
+                stats.estimateBetween(
+                        null,
+                        false,
+                        from(0).toByteBuffer(),
+                        true));
+    }
+
+    @Test
+    public void notIndexed() throws IOException {
+        final IndexedDatabase db = build(true);
+        assertNull(db.getStatistics("stored"));
+        assertNull(db.getStatistics("missing"));
+    }
+
+    @Test
+    public void disabled() throws IOException {
+        final IndexedDatabase db = build(false);
+        assertNull(db.getStatistics("uniform"));
+        assertNull(db.getStatistics("skewed"));
+        assertEquals(DOCS, db.getDocumentCount());
+    }
+
+    @Test
+    public void disabledByDefault() throws IOException {
+        assertFalse(V1DatabaseFormat.isStatisticsEnabled());
+
+        final DatabaseBuilder builder = new V1DatabaseBuilder();
+        builder.merge(
+                DatabaseFormat.getCurrent().newDocumentBuilder()
+                        .withField("uniform", 1, FULL)
+                        .withPayload(new byte[]{1}));
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        builder.buildWritable().writeTo(os);
+
+        assertNull(
+                DatabaseFormat.getCurrent().getDatabaseReader().from(
+                        Buffer.from(os.toByteArray()))
+                        .getStatistics("uniform"));
+    }
+
+    @Test
+    public void string() throws IOException {
+        final FieldStatistics stats = build(true).getStatistics("uniform");
+        assertNotNull(stats);
+        assertTrue(stats.toString().contains("uniform"));
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.immutable.segment;
+
+import com.yandex.yoctodb.DatabaseFormat;
+import com.yandex.yoctodb.immutable.Database;
+import com.yandex.yoctodb.immutable.FilterableIndex;
+import com.yandex.yoctodb.mutable.DatabaseBuilder;
+import com.yandex.yoctodb.util.OutputStreamWritable;
+import com.yandex.yoctodb.util.UnsignedByteArray;
+import com.yandex.yoctodb.util.buf.Buffer;
+import com.yandex.yoctodb.util.mutable.BitSet;
+import com.yandex.yoctodb.util.mutable.impl.LongArrayBitSet;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import com.yandex.yoctodb.v1.mutable.segment.IndexSegment;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.yandex.yoctodb.mutable.DocumentBuilder.IndexOption.FILTERABLE;
+import static com.yandex.yoctodb.mutable.DocumentBuilder.IndexOption.RANGE_FILTERABLE;
+import static com.yandex.yoctodb.query.QueryBuilder.*;
+import static com.yandex.yoctodb.util.UnsignedByteArrays.from;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for {@link V1RangeFilterableIndex}
+ *
+ * @author incubos
+ */
+public class V1RangeFilterableIndexTest {
+    private static final int VALUES = 50;
+    private static final int DOCS = 2 * VALUES + 7;
+
+    private static byte[] write(
+            final OutputStreamWritable writable) throws IOException {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        writable.writeTo(os);
+        return os.toByteArray();
+    }
+
+    private static Buffer value(final int value) {
+        return from(value).toByteBuffer();
+    }
+
+    // Documents have values i % VALUES and some of them i % VALUES + 1
+    private static boolean matches(
+            final int document,
+            final int fromInclusive,
+            final int toExclusive) {
+        final int value = document % VALUES;
+        if (fromInclusive <= value && value < toExclusive) {
+            return true;
+        }
+
+        return document % 3 == 0 &&
+               fromInclusive <= value + 1 &&
+               value + 1 < toExclusive;
+    }
+
+    private static FilterableIndex build(
+            final int fanout,
+            final boolean fixedLength) throws IOException {
+        final IndexSegment index =
+                new com.yandex.yoctodb.v1.mutable.segment.V1RangeFilterableIndex(
+                        "range",
+                        fixedLength,
+                        fanout);
+        for (int i = 0; i < DOCS; i++) {
+            final int value = i % VALUES;
+            if (i % 3 == 0) {
+                index.addDocument(
+                        i,
+                        Arrays.asList(from(value), from(value + 1)));
+            } else {
+                index.addDocument(
+                        i,
+                        Collections.<UnsignedByteArray>singletonList(
+                                from(value)));
+            }
+        }
+        index.setDatabaseDocumentsCount(DOCS);
+
+        final OutputStreamWritable writable = index.buildWritable();
+        final Buffer buffer = Buffer.from(write(writable));
+
+        // Payload size excludes size and type
+        assertEquals(writable.getSizeInBytes(), buffer.getLong());
+        final int type = buffer.getInt();
+        assertEquals(
+                fixedLength ?
+                        V1DatabaseFormat.SegmentType
+                                .FIXED_LENGTH_RANGE_FILTER.getCode() :
+                        V1DatabaseFormat.SegmentType
+                                .VARIABLE_LENGTH_RANGE_FILTER.getCode(),
+                type);
+
+        final FilterableIndex result =
+                (FilterableIndex) SegmentRegistry.read(type, buffer.slice());
+        assertEquals("range", result.getFieldName());
+        assertTrue(result.toString().contains("range"));
+
+        return result;
+    }
+
+    private static void assertRange(
+            final BitSet actual,
+            final boolean notEmpty,
+            final int fromInclusive,
+            final int toExclusive) {
+        boolean expectedNotEmpty = false;
+        for (int i = 0; i < DOCS; i++) {
+            final boolean expected = matches(i, fromInclusive, toExclusive);
+            assertEquals(
+                    "[" + fromInclusive + ", " + toExclusive + ") doc " + i,
+                    expected,
+                    actual.get(i));
+            expectedNotEmpty |= expected;
+        }
+        assertEquals(expectedNotEmpty, notEmpty);
+    }
+
+    private static void assertAllRanges(final FilterableIndex index) {
+        final int max = VALUES + 1;
+        for (int from = 0; from <= max; from++) {
+            BitSet bs = LongArrayBitSet.zero(DOCS);
+            assertRange(bs, index.lessThan(bs, value(from), false), 0, from);
+
+            bs = LongArrayBitSet.zero(DOCS);
+            assertRange(
+                    bs,
+                    index.greaterThan(bs, value(from), true),
+                    from,
+                    max + 1);
+
+            for (int to = from; to <= max; to++) {
+                bs = LongArrayBitSet.zero(DOCS);
+                assertRange(
+                        bs,
+                        index.between(bs, value(from), true, value(to), false),
+                        from,
+                        to);
+
+                if (from < to) {
+                    assertTrue(
+                            index.estimateBetween(
+                                    value(from),
+                                    true,
+                                    value(to),
+                                    false) > 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void ranges() throws IOException {
+        for (int fanout = 2; fanout <= VALUES + 2; fanout++) {
+            assertAllRanges(build(fanout, true));
+        }
+        assertAllRanges(build(3, false));
+    }
+
+    @Test
+    public void values() throws IOException {
+        final FilterableIndex index = build(4, true);
+
+        BitSet bs = LongArrayBitSet.zero(DOCS);
+        assertTrue(index.eq(bs, value(5)));
+        assertRange(bs, true, 5, 6);
+        assertEquals(
+                0L,
+                index.estimateEq(value(VALUES + 5)));
+        assertFalse(index.eq(bs, value(VALUES + 5)));
+
+        bs = LongArrayBitSet.zero(DOCS);
+        assertTrue(index.in(bs, value(5), value(VALUES + 5)));
+        assertRange(bs, true, 5, 6);
+        assertTrue(index.estimateIn(value(5), value(VALUES + 5)) > 0);
+
+        assertEquals(0L, index.estimateLessThan(value(0), false));
+        assertTrue(index.estimateLessThan(value(1), false) > 0);
+        assertEquals(0L, index.estimateGreaterThan(value(VALUES), false));
+        assertTrue(index.estimateGreaterThan(value(VALUES), true) > 0);
+        assertEquals(
+                0L,
+                index.estimateBetween(
+                        value(VALUES + 2),
+                        true,
+                        value(VALUES + 5),
+                        true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongFanout() {
+        new com.yandex.yoctodb.v1.mutable.segment.V1RangeFilterableIndex(
+                "range",
+                true,
+                1);
+    }
+
+    private static Database buildDatabase(
+            final boolean range) throws IOException {
+        final DatabaseBuilder builder =
+                DatabaseFormat.getCurrent().newDatabaseBuilder();
+        for (int i = 0; i < DOCS; i++) {
+            builder.merge(
+                    DatabaseFormat.getCurrent().newDocumentBuilder()
+                            .withField(
+                                    "price",
+                                    i * 7 % DOCS,
+                                    range ? RANGE_FILTERABLE : FILTERABLE));
+        }
+
+        return DatabaseFormat.getCurrent().getDatabaseReader().from(
+                Buffer.from(write(builder.buildWritable())));
+    }
+
+    @Test
+    public void database() throws IOException {
+        final Database plain = buildDatabase(false);
+        final Database range = buildDatabase(true);
+
+        for (int i = 0; i < DOCS; i += 5) {
+            assertEquals(
+                    plain.count(select().where(lt("price", from(i)))),
+                    range.count(select().where(lt("price", from(i)))));
+            assertEquals(
+                    i,
+                    range.count(select().where(lt("price", from(i)))));
+            assertEquals(
+                    plain.count(select().where(gte("price", from(i)))),
+                    range.count(select().where(gte("price", from(i)))));
+            assertEquals(
+                    1,
+                    range.count(select().where(eq("price", from(i)))));
+        }
+    }
+}
@@ -13,12 +13,19 @@ package com.yandex.yoctodb.v1.mutable;
 import com.yandex.yoctodb.DatabaseFormat;
 import com.yandex.yoctodb.mutable.DatabaseBuilder;
 import com.yandex.yoctodb.mutable.DocumentBuilder;
+import com.yandex.yoctodb.util.OutputStreamWritable;
 import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static com.yandex.yoctodb.v1.V1DatabaseFormat.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -127,6 +134,43 @@ public class V1DatabaseBuilderTest {
         assertTrue(size1 < size2);
     }
 
+    @Test
+    public void sizeMatchesWritten() throws IOException {
+        final DatabaseBuilder builder = new V1DatabaseBuilder(true);
+        for (int i = 0; i < 100; i++) {
+            builder.merge(
+                    DatabaseFormat.getCurrent().newDocumentBuilder()
+                            .withField(
+                                    "filterable",
+                                    i % 7,
+                                    DocumentBuilder.IndexOption.FILTERABLE)
+                            .withField(
+                                    "range",
+                                    "value" + i,
+                                    DocumentBuilder.IndexOption
+                                            .RANGE_FILTERABLE)
+                            .withField(
+                                    "sortable",
+                                    i,
+                                    DocumentBuilder.IndexOption.SORTABLE)
+                            .withField(
+                                    "full",
+                                    i % 3,
+                                    DocumentBuilder.IndexOption.FULL)
+                            .withField(
+                                    "stored",
+                                    "stored" + i,
+                                    DocumentBuilder.IndexOption.STORED)
+                            .withPayload(("payload" + i).getBytes()));
+        }
+
+        final OutputStreamWritable writable = builder.buildWritable();
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        writable.writeTo(os);
+
+        assertEquals(os.size(), writable.getSizeInBytes());
+    }
+
     @Test(expected = NoSuchAlgorithmException.class)
     public void wrongDigestAlgorithm() throws Throwable {
         final DocumentBuilder doc =
@@ -180,4 +224,50 @@ public class V1DatabaseBuilderTest {
             setDigestSizeInBytes(originalDigestSize);
         }
     }
+
+    private static byte[] buildWithManyFields(final DatabaseBuilder builder)
+            throws IOException {
+        final Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            final DocumentBuilder doc =
+                    DatabaseFormat
+                            .getCurrent()
+                            .newDocumentBuilder()
+                            .withField(
+                                    "id",
+                                    i,
+                                    DocumentBuilder.IndexOption.FULL)
+                            .withPayload(("payload" + i).getBytes());
+            for (int f = 0; f < 20; f++) {
+                doc.withField(
+                        "filter" + f,
+                        random.nextInt(f + 2),
+                        DocumentBuilder.IndexOption.FILTERABLE);
+                doc.withField(
+                        "sort" + f,
+                        random.nextInt(100),
+                        DocumentBuilder.IndexOption.SORTABLE);
+            }
+            builder.merge(doc);
+        }
+
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        builder.buildWritable().writeTo(os);
+        return os.toByteArray();
+    }
+
+    @Test
+    public void parallelSameAsSerial() throws IOException {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            assertArrayEquals(
+                    buildWithManyFields(
+                            DatabaseFormat.getCurrent().newDatabaseBuilder()),
+                    buildWithManyFields(
+                            DatabaseFormat.getCurrent()
+                                    .newDatabaseBuilder(executor)));
+        } finally {
+            executor.shutdown();
+        }
+    }
 }
@@ -0,0 +1,238 @@
+/*
+ * (C) YANDEX LLC, 2014-2016
+ *
+ * The Source Code called "YoctoDB" available at
+ * https://github.com/yandex/yoctodb is subject to the terms of the
+ * Mozilla Public License, v. 2.0 (hereinafter referred to as the "License").
+ *
+ * A copy of the License is also available at http://mozilla.org/MPL/2.0/.
+ */
+
+package com.yandex.yoctodb.v1.mutable;
+
+import com.yandex.yoctodb.DatabaseFormat;
+import com.yandex.yoctodb.mutable.DatabaseBuilder;
+import com.yandex.yoctodb.mutable.DocumentBuilder;
+import com.yandex.yoctodb.util.OutputStreamWritable;
+import com.yandex.yoctodb.v1.V1DatabaseFormat;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+import static com.yandex.yoctodb.mutable.DocumentBuilder.IndexOption.*;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Unit tests for {@link V1SpillingDatabaseBuilder}
+ *
+ * @author incubos
+ */
+public class V1SpillingDatabaseBuilderTest {
+    private static final int DOCS = 1000;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static void fill(final DatabaseBuilder builder) {
+        final DatabaseFormat format = DatabaseFormat.getCurrent();
+        final Random random = new Random(42);
+        for (int i = 0; i < DOCS; i++) {
+            builder.merge(
+                    format.newDocumentBuilder()
+                            .withField("id", i, FULL)
+                            .withField("tag", random.nextInt(10), FILTERABLE)
+                            .withField("tag", random.nextInt(10), FILTERABLE)
+                            .withField("name", "name" + random.nextInt(100), FILTERABLE)
+                            .withField("score", random.nextInt(50), SORTABLE)
+                            .withField("text", "text" + i, STORED)
+                            .withPayload(("payload" + i).getBytes()));
+        }
+    }
+
+    private static byte[] write(final OutputStreamWritable writable)
+            throws IOException {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        writable.writeTo(os);
+        return os.toByteArray();
+    }
+
+    @Test
+    public void sameAsInMemory() throws IOException {
+        final DatabaseBuilder expected = new V1DatabaseBuilder(true);
+        fill(expected);
+        final OutputStreamWritable expectedWritable = expected.buildWritable();
+
+        final File temp = folder.newFolder();
+        final DatabaseBuilder spilling =
+                new V1SpillingDatabaseBuilder(true, 4096, temp);
+        fill(spilling);
+        final OutputStreamWritable spillingWritable = spilling.buildWritable();
+
+        assertEquals(
+                expectedWritable.getSizeInBytes(),
+                spillingWritable.getSizeInBytes());
+        final byte[] written = write(spillingWritable);
+        assertEquals(written.length, spillingWritable.getSizeInBytes());
+        assertArrayEquals(write(expectedWritable), written);
+
+        // Temporary files are removed
+        assertEquals(0, temp.list().length);
+    }
+
+    @Test
+    public void withoutSpilling() throws IOException {
+        final DatabaseBuilder expected = new V1DatabaseBuilder(false);
+        fill(expected);
+
+        final DatabaseBuilder spilling =
+                new V1SpillingDatabaseBuilder(
+                        false,
+                        Long.MAX_VALUE,
+                        folder.getRoot());
+        fill(spilling);
+
+        assertArrayEquals(
+                write(expected.buildWritable()),
+                write(spilling.buildWritable()));
+    }
+
+    private static void fillAll(final DatabaseBuilder builder) {
+        final DatabaseFormat format = DatabaseFormat.getCurrent();
+        final Random random = new Random(42);
+        for (int i = 0; i < DOCS; i++) {
+            final DocumentBuilder document =
+                    format.newDocumentBuilder()
+                            .withField(
+                                    "price",
+                                    random.nextInt(500),
+                                    RANGE_FILTERABLE)
+                            .withField("flag", i % 3, FILTERABLE)
+                            .withField("score", random.nextInt(50), FULL)
+                            .withPayload(("payload" + i).getBytes());
+            if (i % 7 != 0) {
+                document.withField("text", "text" + i, STORED);
+            }
+            builder.merge(document);
+        }
+    }
+
+    private static void assertSameAsInMemory(
+            final File temp,
+            final long memoryBudget) throws IOException {
+        final DatabaseBuilder expected = new V1DatabaseBuilder(true);
+        fillAll(expected);
+
+        final DatabaseBuilder spilling =
+                new V1SpillingDatabaseBuilder(true, memoryBudget, temp);
+        fillAll(spilling);
+
+        assertArrayEquals(
+                write(expected.buildWritable()),
+                write(spilling.buildWritable()));
+        assertEquals(0, temp.list().length);
+    }
+
+    @Test
+    public void allIndexOptions() throws IOException {
+        assertSameAsInMemory(folder.newFolder(), 4096);
+    }
+
+    @Test
+    public void multiPassMerge() throws IOException {
+        // A run per document
+        assertSameAsInMemory(folder.newFolder(), 1);
+    }
+
+    @Test
+    public void compressedStored() throws IOException {
+        final boolean original = V1DatabaseFormat.isStoredCompressionEnabled();
+        try {
+            V1DatabaseFormat.setStoredCompressionEnabled(true);
+            assertSameAsInMemory(folder.newFolder(), 4096);
+        } finally {
+            V1DatabaseFormat.setStoredCompressionEnabled(original);
+        }
+    }
+
+    @Test
+    public void empty() throws IOException {
+        assertArrayEquals(
+                write(new V1DatabaseBuilder().buildWritable()),
+                write(
+                        DatabaseFormat.getCurrent()
+                                .newDatabaseBuilder(1024, folder.getRoot())
+                                .buildWritable()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void writtenOnce() throws IOException {
+        final DatabaseBuilder builder =
+                new V1SpillingDatabaseBuilder(true, 1024, folder.getRoot());
+        fill(builder);
+
+        final OutputStreamWritable writable = builder.buildWritable();
+        write(writable);
+        write(writable);
+    }
+
+    @Test
+    public void removedOnFailedBuild() throws IOException {
+        final File temp = folder.newFolder();
+        final DatabaseBuilder builder =
+                new V1SpillingDatabaseBuilder(true, 4096, temp);
+        fill(builder);
+
+        // Corrupting the runs after their sizes
+        final File[] runs = temp.listFiles();
+        assertTrue(runs.length > 0);
+        for (File run : runs) {
+            try (RandomAccessFile raf = new RandomAccessFile(run, "rw")) {
+                raf.setLength(8);
+            }
+        }
+
+        try {
+            builder.buildWritable();
+            fail();
+        } catch (RuntimeException e) {
+            // Expected
+        }
+
+        assertEquals(0, temp.list().length);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void unsupportedIndexOption() {
+        final DocumentBuilder doc =
+                DatabaseFormat
+                        .getCurrent()
+                        .newDocumentBuilder()
+                        .withField(
+                                "k",
+                                "v",
+                                DocumentBuilder.IndexOption.UNSUPPORTED)
+                        .withPayload("payload".getBytes());
+
+        new V1SpillingDatabaseBuilder(true, 1024, folder.getRoot())
+                .merge(doc);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonpositiveBudget() {
+        new V1SpillingDatabaseBuilder(true, 0, folder.getRoot());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notDirectory() throws IOException {
+        new V1SpillingDatabaseBuilder(true, 1024, folder.newFile());
+    }
+}